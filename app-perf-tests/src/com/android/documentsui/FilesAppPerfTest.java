@@ -16,8 +16,10 @@
 
 package com.android.documentsui;
 
+import static androidx.test.platform.app.InstrumentationRegistry.getArguments;
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeNotNull;
 
 import android.app.Activity;
@@ -53,6 +55,10 @@ public class FilesAppPerfTest {
     private static final String KEY_FILES_WARM_START_PERFORMANCE_MEDIAN =
             "files-warm-start-performance-median";
 
+    // Instrumentation argument overriding the maximum median cold start time, in milliseconds.
+    private static final String ARG_MAX_COLD_START_MEDIAN_MS = "max-cold-start-median-ms";
+    private static final long DEFAULT_MAX_COLD_START_MEDIAN_MS = 3000;
+
     private static final int NUM_MEASUREMENTS = 10;
     private static final long REMOVAL_TIMEOUT_MS = 3000;
     private static final long TIMEOUT_INTERVAL_MS = 200;
@@ -118,17 +124,28 @@ public class FilesAppPerfTest {
             waitUntilDocumentsUiActivityRemoved();
         }
 
-        reportMetrics(cold ? KEY_FILES_COLD_START_PERFORMANCE_MEDIAN
+        final long median = reportMetrics(cold ? KEY_FILES_COLD_START_PERFORMANCE_MEDIAN
                 : KEY_FILES_WARM_START_PERFORMANCE_MEDIAN, measurements);
+        if (cold) {
+            final long maxMedian = getMaxColdStartMedianMs();
+            assertTrue("Median cold start time of " + median + "ms exceeds " + maxMedian + "ms",
+                    median <= maxMedian);
+        }
     }
 
-    private void reportMetrics(String key, long[] measurements) {
+    private long reportMetrics(String key, long[] measurements) {
         final Bundle status = new Bundle();
         Arrays.sort(measurements);
         final long median = measurements[NUM_MEASUREMENTS / 2 - 1];
         status.putDouble(key + "(ms)", median);
 
         mInstrumentation.sendStatus(Activity.RESULT_OK, status);
+        return median;
+    }
+
+    private static long getMaxColdStartMedianMs() {
+        final String value = getArguments().getString(ARG_MAX_COLD_START_MEDIAN_MS);
+        return value != null ? Long.parseLong(value) : DEFAULT_MAX_COLD_START_MEDIAN_MS;
     }
 
     private String[] getDocumentsProviderPackageNames() {
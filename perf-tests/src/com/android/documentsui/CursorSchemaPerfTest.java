@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorInt;
+import static com.android.documentsui.base.DocumentInfo.getCursorLong;
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import android.app.Activity;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.CursorSchema;
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures reading the columns that building the model and binding views read, from every row of
+ * a 50,000 row cursor, resolving the columns by name on every row as before, and once per cursor
+ * with {@link CursorSchema}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CursorSchemaPerfTest {
+
+    // Constants starting with KEY_ are used to report metrics to APCT.
+    private static final String KEY_BY_NAME_LATENCY = "cursor-by-name-latency-ms";
+    private static final String KEY_BY_NAME_ALLOCATED = "cursor-by-name-allocated-bytes";
+    private static final String KEY_SCHEMA_LATENCY = "cursor-schema-latency-ms";
+    private static final String KEY_SCHEMA_ALLOCATED = "cursor-schema-allocated-bytes";
+
+    private static final String ALLOCATED_BYTES_STAT = "art.gc.bytes-allocated";
+    private static final int NUM_ROWS = 50_000;
+    private static final int NUM_MEASUREMENTS = 9;
+
+    private MatrixCursor mCursor;
+
+    @Before
+    public void setUp() {
+        mCursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_MIME_TYPE,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_LAST_MODIFIED,
+                Document.COLUMN_FLAGS,
+                Document.COLUMN_SUMMARY,
+                Document.COLUMN_SIZE,
+                Document.COLUMN_ICON,
+                RootCursorWrapper.COLUMN_AUTHORITY,
+                RootCursorWrapper.COLUMN_ROOT_ID,
+                RootCursorWrapper.COLUMN_USER_ID,
+        }, NUM_ROWS);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            mCursor.addRow(new Object[] {
+                    "doc" + i, "text/plain", "file" + i + ".txt", 1_700_000_000_000L + i, 0,
+                    null, (long) i, 0, "com.example.documents", "root", 0,
+            });
+        }
+    }
+
+    @Test
+    public void testReadRows() {
+        final long[] byNameLatency = new long[NUM_MEASUREMENTS];
+        final long[] byNameAllocated = new long[NUM_MEASUREMENTS];
+        final long[] schemaLatency = new long[NUM_MEASUREMENTS];
+        final long[] schemaAllocated = new long[NUM_MEASUREMENTS];
+        final DocumentInfo doc = new DocumentInfo();
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
+            long allocated = getAllocatedBytes();
+            long start = SystemClock.elapsedRealtime();
+            readByName(doc);
+            byNameLatency[i] = SystemClock.elapsedRealtime() - start;
+            byNameAllocated[i] = getAllocatedBytes() - allocated;
+
+            allocated = getAllocatedBytes();
+            start = SystemClock.elapsedRealtime();
+            readWithSchema(doc);
+            schemaLatency[i] = SystemClock.elapsedRealtime() - start;
+            schemaAllocated[i] = getAllocatedBytes() - allocated;
+        }
+
+        final Bundle status = new Bundle();
+        status.putDouble(KEY_BY_NAME_LATENCY, median(byNameLatency));
+        status.putDouble(KEY_BY_NAME_ALLOCATED, median(byNameAllocated));
+        status.putDouble(KEY_SCHEMA_LATENCY, median(schemaLatency));
+        status.putDouble(KEY_SCHEMA_ALLOCATED, median(schemaAllocated));
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    /**
+     * Reads every row as DirectoryResult, the adapter and the holders used to.
+     */
+    private void readByName(DocumentInfo doc) {
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            ModelId.build(UserId.of(getCursorInt(mCursor, RootCursorWrapper.COLUMN_USER_ID)),
+                    getCursorString(mCursor, RootCursorWrapper.COLUMN_AUTHORITY),
+                    getCursorString(mCursor, Document.COLUMN_DOCUMENT_ID));
+            getCursorString(mCursor, Document.COLUMN_DISPLAY_NAME);
+            getCursorString(mCursor, Document.COLUMN_MIME_TYPE);
+            getCursorInt(mCursor, Document.COLUMN_FLAGS);
+            doc.updateFromCursor(mCursor,
+                    UserId.of(getCursorInt(mCursor, RootCursorWrapper.COLUMN_USER_ID)),
+                    getCursorString(mCursor, RootCursorWrapper.COLUMN_AUTHORITY));
+            getCursorLong(mCursor, Document.COLUMN_SIZE);
+        }
+    }
+
+    private void readWithSchema(DocumentInfo doc) {
+        final CursorSchema schema = CursorSchema.of(mCursor);
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            ModelId.build(mCursor, schema);
+            schema.getDisplayName(mCursor);
+            schema.getMimeType(mCursor);
+            schema.getFlags(mCursor);
+            doc.updateFromCursor(mCursor, schema);
+            schema.getSize(mCursor);
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat(ALLOCATED_BYTES_STAT));
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+}
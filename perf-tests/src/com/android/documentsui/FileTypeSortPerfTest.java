@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.Lookup;
+import com.android.documentsui.sorting.SortDimension;
+import com.android.documentsui.sorting.SortModel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures the latency of sorting a large folder by file type, resolving type labels on every
+ * row as before, and through the memoized {@link FileTypeMap}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class FileTypeSortPerfTest {
+
+    // Constants starting with KEY_ are used to report metrics to APCT.
+    private static final String KEY_TYPE_SORT_UNCACHED_MEDIAN = "type-sort-uncached-median";
+    private static final String KEY_TYPE_SORT_CACHED_MEDIAN = "type-sort-cached-median";
+
+    private static final int NUM_ROWS = 10000;
+    private static final int NUM_MEASUREMENTS = 10;
+    private static final String[] MIME_TYPES = {
+            "image/jpeg", "image/png", "video/mp4", "audio/mpeg", "application/pdf",
+            "text/plain", "application/zip", Document.MIME_TYPE_DIR
+    };
+
+    @Test
+    public void testSortByType() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final ContentResolver resolver = context.getContentResolver();
+        final Lookup<String, String> uncached = mimeType -> mimeType == null
+                ? null : String.valueOf(resolver.getTypeInfo(mimeType).getLabel());
+
+        final long[] uncachedTimes = new long[NUM_MEASUREMENTS];
+        final long[] cachedTimes = new long[NUM_MEASUREMENTS];
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
+            uncachedTimes[i] = measureSort(uncached);
+            // A new map each time, so the measurement includes filling the memo.
+            cachedTimes[i] = measureSort(new FileTypeMap(context));
+        }
+
+        final Bundle status = new Bundle();
+        status.putDouble(KEY_TYPE_SORT_UNCACHED_MEDIAN, median(uncachedTimes));
+        status.putDouble(KEY_TYPE_SORT_CACHED_MEDIAN, median(cachedTimes));
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    private static long measureSort(Lookup<String, String> fileTypeLookup) {
+        final SortModel model = SortModel.createModel();
+        model.sortByUser(SortModel.SORT_DIMENSION_ID_FILE_TYPE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = createCursor();
+        final long start = SystemClock.elapsedRealtime();
+        final Cursor sorted = model.sortCursor(cursor, fileTypeLookup);
+        final long elapsed = SystemClock.elapsedRealtime() - start;
+        sorted.close();
+        return elapsed;
+    }
+
+    private static Cursor createCursor() {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_MIME_TYPE
+        }, NUM_ROWS);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            cursor.addRow(new Object[] {
+                    "doc" + i, "file" + i, MIME_TYPES[i % MIME_TYPES.length] });
+        }
+        return cursor;
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import android.app.Activity;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.UserId;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures listing the 10,000 documents of {@link StressProvider}'s first root, requesting all
+ * columns as before, and requesting only {@link DocumentInfo#PROJECTION}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ProjectionPerfTest {
+
+    // Constants starting with KEY_ are used to report metrics to APCT.
+    private static final String KEY_FULL_LATENCY = "projection-full-latency-ms";
+    private static final String KEY_FULL_BYTES = "projection-full-cursor-bytes";
+    private static final String KEY_NARROW_LATENCY = "projection-narrow-latency-ms";
+    private static final String KEY_NARROW_BYTES = "projection-narrow-cursor-bytes";
+
+    private static final String STRESS_ROOT_1_DOC_ID = "STRESS_ROOT_1_DOC";
+    private static final int NUM_MEASUREMENTS = 9;
+
+    private ContentProviderClient mClient;
+    private Uri mUri;
+
+    @Before
+    public void setUp() {
+        final ContentResolver resolver =
+                InstrumentationRegistry.getTargetContext().getContentResolver();
+        mClient = resolver.acquireUnstableContentProviderClient(StressProvider.DEFAULT_AUTHORITY);
+        mUri = DocumentsContract.buildChildDocumentsUri(
+                StressProvider.DEFAULT_AUTHORITY, STRESS_ROOT_1_DOC_ID);
+    }
+
+    @After
+    public void tearDown() {
+        mClient.close();
+    }
+
+    @Test
+    public void testListDirectory() throws Exception {
+        final long[] full = new long[NUM_MEASUREMENTS];
+        final long[] narrow = new long[NUM_MEASUREMENTS];
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
+            full[i] = measureQuery(null);
+            narrow[i] = measureQuery(DocumentInfo.PROJECTION);
+        }
+        Arrays.sort(full);
+        Arrays.sort(narrow);
+
+        final Bundle status = new Bundle();
+        status.putDouble(KEY_FULL_LATENCY, full[NUM_MEASUREMENTS / 2]);
+        status.putDouble(KEY_FULL_BYTES, measureCursorBytes(null));
+        status.putDouble(KEY_NARROW_LATENCY, narrow[NUM_MEASUREMENTS / 2]);
+        status.putDouble(KEY_NARROW_BYTES, measureCursorBytes(DocumentInfo.PROJECTION));
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    /**
+     * @return the time, in milliseconds, to query the directory and read every row, as
+     *     DirectoryLoader does when building the model.
+     */
+    private long measureQuery(String[] projection) throws Exception {
+        final long start = SystemClock.elapsedRealtime();
+        try (Cursor cursor = mClient.query(mUri, projection, null, null)) {
+            while (cursor.moveToNext()) {
+                DocumentInfo.fromCursor(
+                        cursor, UserId.DEFAULT_USER, StressProvider.DEFAULT_AUTHORITY);
+            }
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * @return an estimate of the size of the data carried by the cursor window, in bytes.
+     */
+    private long measureCursorBytes(String[] projection) throws Exception {
+        long bytes = 0;
+        try (Cursor cursor = mClient.query(mUri, projection, null, null)) {
+            final int columns = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < columns; i++) {
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_STRING:
+                            bytes += 2L * cursor.getString(i).length();
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            bytes += cursor.getBlob(i).length;
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            break;
+                        default:
+                            bytes += Long.BYTES;
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+}
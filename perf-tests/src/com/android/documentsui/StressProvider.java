@@ -71,9 +71,15 @@ public class StressProvider extends DocumentsProvider {
             Root.COLUMN_ROOT_ID, Root.COLUMN_FLAGS, Root.COLUMN_TITLE, Root.COLUMN_DOCUMENT_ID,
             Root.COLUMN_AVAILABLE_BYTES
     };
+    // A provider specific column, standing in for the extra columns real providers return when
+    // no projection is requested.
+    public static final String COLUMN_EXTRA = "stress_extra";
+    private static final String EXTRA_VALUE = new String(new char[256]).replace('\0', 'x');
+
     private static final String[] DEFAULT_DOCUMENT_PROJECTION = new String[] {
             Document.COLUMN_DOCUMENT_ID, Document.COLUMN_MIME_TYPE, Document.COLUMN_DISPLAY_NAME,
             Document.COLUMN_LAST_MODIFIED, Document.COLUMN_FLAGS, Document.COLUMN_SIZE,
+            COLUMN_EXTRA,
     };
 
     private String mAuthority = DEFAULT_AUTHORITY;
@@ -150,7 +156,8 @@ public class StressProvider extends DocumentsProvider {
     public Cursor queryChildDocuments(String parentDocumentId, String[] projection,
             String sortOrder)
             throws FileNotFoundException {
-        final MatrixCursor result = new MatrixCursor(DEFAULT_DOCUMENT_PROJECTION);
+        final MatrixCursor result = new MatrixCursor(
+                projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION);
         final ArrayList<StubDocument> childDocuments = mChildDocuments.get(parentDocumentId);
         if (childDocuments != null) {
             for (StubDocument document : childDocuments) {
@@ -192,6 +199,7 @@ public class StressProvider extends DocumentsProvider {
         row.add(Document.COLUMN_FLAGS,
                 document.thumbnail != -1 ? Document.FLAG_SUPPORTS_THUMBNAIL : 0);
         row.add(Document.COLUMN_LAST_MODIFIED, document.lastModified);
+        row.add(COLUMN_EXTRA, EXTRA_VALUE);
     }
 
     private static String getStubDocumentIdForFile(File file) {
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.FileOperationService.MESSAGE_FINISH;
+import static com.android.documentsui.services.FileOperationService.MESSAGE_PROGRESS;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU time spent on reporting the progress of a copy, per GB copied, with every
+ * update sent to the frontend as before, and with updates throttled by {@link ProgressSampler}.
+ *
+ * <p>The copy itself is simulated, so that only the cost of progress reporting is measured.
+ * Time advances as if the files were copied at {@link #THROUGHPUT_BYTES_PER_SECOND}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CopyProgressPerfTest {
+
+    // Constants starting with KEY_ are used to report metrics to APCT.
+    private static final String KEY_CPU_PER_GB_UNTHROTTLED =
+            "copy-progress-cpu-ms-per-gb-unthrottled";
+    private static final String KEY_CPU_PER_GB_THROTTLED =
+            "copy-progress-cpu-ms-per-gb-throttled";
+
+    private static final long GB = 1024L * 1024L * 1024L;
+    private static final long THROUGHPUT_BYTES_PER_SECOND = 200L * 1024L * 1024L;
+    // Many small files are the worst case, one progress update is reported per file.
+    private static final long FILE_SIZE = 16L * 1024L;
+    private static final int NUM_MEASUREMENTS = 5;
+
+    private HandlerThread mFrontendThread;
+    private Messenger mMessenger;
+    private volatile CountDownLatch mFinished;
+    private long mTime;
+
+    @Before
+    public void setUp() {
+        mFrontendThread = new HandlerThread("frontend");
+        mFrontendThread.start();
+        // Mimics OperationProgressDialog, which updates its progress bar on every message.
+        mMessenger = new Messenger(new Handler(mFrontendThread.getLooper(), msg -> {
+            if (msg.what == MESSAGE_FINISH) {
+                mFinished.countDown();
+            }
+            return true;
+        }));
+    }
+
+    @After
+    public void tearDown() {
+        mFrontendThread.quitSafely();
+    }
+
+    @Test
+    public void testProgressCpuPerGb() throws Exception {
+        long unthrottled = Long.MAX_VALUE;
+        long throttled = Long.MAX_VALUE;
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
+            unthrottled = Math.min(unthrottled, measureCopy(null));
+            throttled = Math.min(throttled, measureCopy(
+                    new ProgressSampler(() -> mTime, () -> true)));
+        }
+
+        final Bundle status = new Bundle();
+        status.putDouble(KEY_CPU_PER_GB_UNTHROTTLED, unthrottled);
+        status.putDouble(KEY_CPU_PER_GB_THROTTLED, throttled);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    /**
+     * @param sampler the sampler throttling updates, or null to send every update.
+     * @return the CPU time of this process, in milliseconds, spent on reporting progress of a
+     *     1 GB copy.
+     */
+    private long measureCopy(ProgressSampler sampler) throws Exception {
+        mTime = 0;
+        mFinished = new CountDownLatch(1);
+        final long startCpu = Process.getElapsedCpuTime();
+
+        for (long copied = FILE_SIZE; copied <= GB; copied += FILE_SIZE) {
+            mTime = copied * 1000 / THROUGHPUT_BYTES_PER_SECOND;
+            final int percent = (int) (100 * copied / GB);
+            if (sampler == null || sampler.shouldPublish(percent)) {
+                send(MESSAGE_PROGRESS, percent);
+            }
+        }
+        send(MESSAGE_FINISH, 0);
+        mFinished.await(1, TimeUnit.MINUTES);
+
+        return Process.getElapsedCpuTime() - startCpu;
+    }
+
+    private void send(int what, int arg) throws RemoteException {
+        mMessenger.send(Message.obtain(null, what, arg, -1));
+    }
+}
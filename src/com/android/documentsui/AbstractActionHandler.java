@@ -72,7 +72,9 @@ import com.android.documentsui.files.LauncherActivity;
 import com.android.documentsui.files.QuickViewIntentBuilder;
 import com.android.documentsui.loaders.FolderLoader;
 import com.android.documentsui.loaders.QueryOptions;
+import com.android.documentsui.loaders.SearchExecutor;
 import com.android.documentsui.loaders.SearchLoader;
+import com.android.documentsui.loaders.SearchResultCache;
 import com.android.documentsui.queries.SearchViewManager;
 import com.android.documentsui.roots.GetRootDocumentTask;
 import com.android.documentsui.roots.LoadFirstRootTask;
@@ -89,8 +91,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 
@@ -125,6 +125,7 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
     protected final Injector<?> mInjector;
 
     private final LoaderBindings mBindings;
+    private final @Nullable DirectoryPreloader mPreloader;
 
     private Runnable mDisplayStateChangedListener;
 
@@ -171,6 +172,10 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
         mInjector = injector;
 
         mBindings = new LoaderBindings();
+        mPreloader = injector.features.isDirectoryPreloadEnabled()
+                ? new DirectoryPreloader(activity, injector.features, state,
+                        injector.fileTypeLookup)
+                : null;
     }
 
     @Override
@@ -822,6 +827,9 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
         // multiple consecutive calls to restartLoader() / onCreateLoader() will probably create
         // multiple active loaders, because restartLoader() does not interrupt previous loaders'
         // loading, therefore may block the UI thread and cause ANR.
+        if (mPreloader != null) {
+            mPreloader.cancel();
+        }
         if (mLoaderSemaphore.tryAcquire()) {
             mActivity.getSupportLoaderManager().restartLoader(LOADER_ID, null, mBindings);
         }
@@ -926,7 +934,6 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
 
     private final class LoaderBindings implements LoaderCallbacks<DirectoryResult> {
 
-        private ExecutorService mExecutorService = null;
         private static final long MAX_SEARCH_TIME_MS = 3000;
         private static final int MAX_RESULTS = 500;
 
@@ -1025,11 +1032,6 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
         }
 
         private Loader<DirectoryResult> onCreateLoaderV2(int id, Bundle args) {
-            if (mExecutorService == null) {
-                // TODO(b:388130971): Fine tune the size of the thread pool.
-                mExecutorService = Executors.newFixedThreadPool(
-                        GlobalSearchLoader.MAX_OUTSTANDING_TASK);
-            }
             DocumentStack stack = mState.stack;
             RootInfo root = stack.getRoot();
             List<UserId> userIdList = DocumentsApplication.getUserIdManager(mActivity).getUserIds();
@@ -1058,16 +1060,24 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
                 } else {
                     rootList.add(root);
                 }
+                // Like folder searches, only query, and search the filename index of, the profiles
+                // the caller can interact with.
+                List<UserId> searchUserIdList = userIdList.stream()
+                        .filter(mState::canInteractWith).toList();
                 return new SearchLoader(
                         mActivity,
-                        userIdList,
+                        searchUserIdList,
                         mInjector.fileTypeLookup,
                         observer,
                         rootList,
                         mSearchMgr.getCurrentSearch(),
                         options,
                         mState.sortModel,
-                        mExecutorService
+                        SearchExecutor.getShared(),
+                        SearchResultCache.getShared(),
+                        mInjector.features.isFilenameIndexEnabled()
+                                ? DocumentsApplication.getFilenameIndex(mActivity)
+                                : null
                 );
             }
             Log.d(TAG, "Creating folder loader V2");
@@ -1096,7 +1106,16 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
             assert (result != null);
 
             mInjector.getModel().update(result);
-            mLoaderSemaphore.release();
+            // A loader may finish more than once, e.g. when it first delivers a cached result.
+            if (mLoaderSemaphore.availablePermits() == 0) {
+                mLoaderSemaphore.release();
+            }
+
+            if (mPreloader != null && loader instanceof DirectoryLoader
+                    && !mSearchMgr.isSearching()) {
+                mPreloader.preloadChildren(mInjector.getModel(),
+                        ((DirectoryLoader) loader).getUri(), mFocusHandler.getFocusModelId());
+            }
         }
 
         @Override
@@ -237,6 +237,7 @@ public abstract class BaseActivity
 
         mProviders = DocumentsApplication.getProvidersCache(this);
         mDocs = DocumentsAccess.create(this, mState);
+        DocumentsApplication.getProviderClientPool(this).prewarmAsync(this, UserId.DEFAULT_USER);
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.ComponentCallbacks2;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.FileUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.State;
+import com.android.documentsui.base.UserId;
+
+import java.util.Objects;
+
+/**
+ * LRU caches of loaded directory listings, so that opening a directory can show its contents
+ * right away, while {@link DirectoryLoader} loads them again. A listing is dropped as soon as its
+ * provider reports a change.
+ *
+ * <p>Listings loaded ahead of navigation by {@link DirectoryPreloader}, and listings of the
+ * directories the user navigated away from, are kept in separate caches, so that preloads don't
+ * evict the directories the user may go back to.
+ *
+ * <p>Results are owned by the cache until they are taken, and closed when dropped. Changes to the
+ * cache are made while holding its lock, so that a result is never taken while being dropped.
+ */
+public class DirectoryCache {
+
+    private static final String TAG = "DirectoryCache";
+
+    @VisibleForTesting
+    static final int MAX_PRELOADED_ENTRIES = 4;
+    @VisibleForTesting
+    static final int MAX_VISITED_ENTRIES = 8;
+
+    private final Cache mPreloaded;
+    private final Cache mVisited;
+
+    public DirectoryCache() {
+        this(MAX_PRELOADED_ENTRIES, MAX_VISITED_ENTRIES);
+    }
+
+    @VisibleForTesting
+    DirectoryCache(int maxPreloadedEntries, int maxVisitedEntries) {
+        mPreloaded = new Cache(maxPreloadedEntries);
+        mVisited = new Cache(maxVisitedEntries);
+    }
+
+    /**
+     * Identifies a listing: its documents and the order and filters they were loaded with.
+     */
+    public static final class Key {
+        final UserId userId;
+        final Uri uri;
+        final int sortDimensionId;
+        final int sortDirection;
+        final boolean showHiddenFiles;
+        final boolean photoPicking;
+
+        @VisibleForTesting
+        Key(UserId userId, Uri uri, int sortDimensionId, int sortDirection,
+                boolean showHiddenFiles, boolean photoPicking) {
+            this.userId = userId;
+            this.uri = uri;
+            this.sortDimensionId = sortDimensionId;
+            this.sortDirection = sortDirection;
+            this.showHiddenFiles = showHiddenFiles;
+            this.photoPicking = photoPicking;
+        }
+
+        /**
+         * Returns the key of the children of {@code uri}, as loaded for the given state.
+         */
+        public static Key of(State state, UserId userId, Uri uri) {
+            return new Key(userId, uri, state.sortModel.getSortedDimensionId(),
+                    state.sortModel.getCurrentSortDirection(), state.showHiddenFiles,
+                    state.isPhotoPicking());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return userId.equals(other.userId)
+                    && uri.equals(other.uri)
+                    && sortDimensionId == other.sortDimensionId
+                    && sortDirection == other.sortDirection
+                    && showHiddenFiles == other.showHiddenFiles
+                    && photoPicking == other.photoPicking;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, uri, sortDimensionId, sortDirection, showHiddenFiles,
+                    photoPicking);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + userId + ", " + uri + "}";
+        }
+    }
+
+    /**
+     * Caches a successfully preloaded result, which is then owned by the cache. Results that
+     * can't be cached are closed.
+     */
+    public void putPreloaded(Key key, DirectoryResult result) {
+        put(mPreloaded, key, result);
+    }
+
+    /**
+     * Caches the result of a directory the user navigated away from, which is then owned by the
+     * cache. Results that can't be cached are closed.
+     */
+    public void putVisited(Key key, DirectoryResult result) {
+        put(mVisited, key, result);
+    }
+
+    /**
+     * Returns whether a listing is cached for the key, without affecting its recency.
+     */
+    public boolean contains(Key key) {
+        return mPreloaded.snapshot().containsKey(key) || mVisited.snapshot().containsKey(key);
+    }
+
+    /**
+     * Removes the result cached for the key and returns it, or null if there is none. The caller
+     * owns the result and has to close it.
+     */
+    public synchronized @Nullable DirectoryResult take(Key key) {
+        Entry entry = mVisited.get(key);
+        if (entry == null) {
+            entry = mPreloaded.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        entry.taken = true;
+        entry.owner.remove(key);
+        entry.result.getCursor().unregisterContentObserver(entry.observer);
+        if (DEBUG) Log.d(TAG, "Serving cached listing of " + key);
+        return entry.result;
+    }
+
+    public synchronized void clear() {
+        mPreloaded.evictAll();
+        mVisited.evictAll();
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            clear();
+        }
+    }
+
+    private synchronized void put(Cache cache, Key key, DirectoryResult result) {
+        if (result.exception != null || result.getCursor() == null
+                || result.getCursor().isClosed() || result.doc == null
+                || result.doc.isInArchive()) {
+            FileUtils.closeQuietly(result);
+            return;
+        }
+        // A listing is only kept once, in the cache it was last put in.
+        (cache == mPreloaded ? mVisited : mPreloaded).remove(key);
+        final Entry entry = new Entry(cache, key, result);
+        result.getCursor().registerContentObserver(entry.observer);
+        cache.put(key, entry);
+    }
+
+    private final class Entry {
+        final Cache owner;
+        final Key key;
+        final DirectoryResult result;
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                if (DEBUG) Log.d(TAG, "Dropping changed listing of " + key);
+                synchronized (DirectoryCache.this) {
+                    if (owner.get(key) == Entry.this) {
+                        owner.remove(key);
+                    }
+                }
+            }
+        };
+        // Taken entries are owned by the caller, and must not be closed when removed.
+        boolean taken;
+
+        Entry(Cache owner, Key key, DirectoryResult result) {
+            this.owner = owner;
+            this.key = key;
+            this.result = result;
+        }
+    }
+
+    private final class Cache extends LruCache<Key, Entry> {
+
+        private Cache(int maxEntries) {
+            super(maxEntries);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Key key, Entry oldValue, Entry newValue) {
+            if (oldValue.taken) {
+                return;
+            }
+            oldValue.result.getCursor().unregisterContentObserver(oldValue.observer);
+            FileUtils.closeQuietly(oldValue.result);
+        }
+    }
+}
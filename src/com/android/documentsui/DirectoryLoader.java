@@ -34,6 +34,7 @@ import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.loader.content.AsyncTaskLoader;
 
 import com.android.documentsui.archives.ArchivesProvider;
@@ -61,7 +62,7 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
     private static final String[] PHOTO_PICKING_ACCEPT_MIMES = new String[]
             {Document.MIME_TYPE_DIR, MimeTypes.IMAGE_MIME};
 
-    private final LockingContentObserver mObserver;
+    private final @Nullable LockingContentObserver mObserver;
     private final RootInfo mRoot;
     private final State mState;
     private final Uri mUri;
@@ -70,6 +71,8 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
     private final boolean mSearchMode;
     private final Bundle mQueryArgs;
     private final boolean mPhotoPicking;
+    private final @Nullable DirectoryCache mCache;
+    private final DirectoryCache.Key mCacheKey;
 
     @Nullable
     private DocumentInfo mDoc;
@@ -86,19 +89,61 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             Lookup<String, String> fileTypeLookup,
             ContentLock lock,
             Bundle queryArgs) {
+        this(features, context, state, state.stack.getRoot(), state.stack.peek(), uri,
+                fileTypeLookup, lock, queryArgs);
+    }
+
+    /**
+     * Creates a loader of the children of {@code doc}, which doesn't have to be the current
+     * directory. Without a lock, the loaded cursor isn't observed.
+     */
+    DirectoryLoader(
+            Features features,
+            Context context,
+            State state,
+            RootInfo root,
+            @Nullable DocumentInfo doc,
+            Uri uri,
+            Lookup<String, String> fileTypeLookup,
+            @Nullable ContentLock lock,
+            Bundle queryArgs) {
+        this(features, context, state, root, doc, uri, fileTypeLookup, lock, queryArgs,
+                (features.isDirectoryPreloadEnabled() || features.isDirectorySnapshotsEnabled())
+                        && queryArgs == null
+                        ? DocumentsApplication.getDirectoryCache(context)
+                        : null);
+    }
+
+    @VisibleForTesting
+    DirectoryLoader(
+            Features features,
+            Context context,
+            State state,
+            RootInfo root,
+            @Nullable DocumentInfo doc,
+            Uri uri,
+            Lookup<String, String> fileTypeLookup,
+            @Nullable ContentLock lock,
+            Bundle queryArgs,
+            @Nullable DirectoryCache cache) {
 
         super(context);
         mFeatures = features;
         mState = state;
-        mRoot = state.stack.getRoot();
+        mRoot = root;
         mUri = uri;
         mModel = state.sortModel;
-        mDoc = state.stack.peek();
+        mDoc = doc;
         mFileTypeLookup = fileTypeLookup;
         mSearchMode = queryArgs != null;
         mQueryArgs = queryArgs;
-        mObserver = new LockingContentObserver(lock, this::onContentChanged);
+        mObserver = lock != null
+                ? new LockingContentObserver(lock, this::onContentChanged)
+                : null;
         mPhotoPicking = state.isPhotoPicking();
+        mCache = cache;
+        // Captured now, since the loader is restarted when the sort order or filters change.
+        mCacheKey = DirectoryCache.Key.of(state, root.userId, uri);
     }
 
     @Override
@@ -145,7 +190,7 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
                 if (!mState.canInteractWith(mRoot.userId)) {
                     result.exception = new CrossProfileNoPermissionException();
                     return result;
-                } else if (mRoot.userId.isQuietModeEnabled(getContext())) {
+                } else if (DocumentsApplication.isQuietModeEnabled(getContext(), mRoot.userId)) {
                     result.exception = new CrossProfileQuietModeException(mRoot.userId);
                     return result;
                 } else if (mDoc == null) {
@@ -175,7 +220,16 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             if (cursor == null) {
                 throw new RemoteException("Provider returned null");
             }
-            cursor.registerContentObserver(mObserver);
+            if (mObserver != null) {
+                cursor.registerContentObserver(mObserver);
+            }
+
+            if (mFeatures.isFilenameIndexEnabled() && !mSearchMode && mDoc != null
+                    && !mDoc.isInArchive() && userIds.size() == 1) {
+                // Reloads triggered by the observer keep the index up to date.
+                DocumentsApplication.getFilenameIndex(getContext()).updateDirectory(
+                        mRoot.userId, authority, mRoot.rootId, mDoc.documentId, cursor);
+            }
 
             FilteringCursorWrapper filteringCursor = new FilteringCursorWrapper(cursor);
             filteringCursor.filterHiddenFiles(mState.showHiddenFiles);
@@ -219,17 +273,19 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
     @Nullable
     private Cursor queryOnUsers(List<UserId> userIds, String authority, Bundle queryArgs)
             throws RemoteException {
+        final ProviderClientPool pool = DocumentsApplication.getProviderClientPool(getContext());
         final List<Cursor> cursors = new ArrayList<>(userIds.size());
         for (UserId userId : userIds) {
-            try (ContentProviderClient userClient =
-                         DocumentsApplication.acquireUnstableProviderOrThrow(
-                                 userId.getContentResolver(getContext()), authority)) {
-                Cursor c = userClient.query(mUri, /* projection= */null, queryArgs, mSignal);
+            try (ProviderClientPool.Lease lease =
+                         pool.acquire(userId.getContentResolver(getContext()), userId, authority)) {
+                Cursor c = lease.getClient().query(
+                        mUri, DocumentInfo.PROJECTION, queryArgs, mSignal);
                 if (c != null) {
                     cursors.add(new RootCursorWrapper(userId, mUri.getAuthority(), mRoot.rootId,
                             c, /* maxCount= */-1));
                 }
             } catch (RemoteException e) {
+                pool.onError(userId, authority, e);
                 Log.d(TAG, "Failed to query for user " + userId, e);
                 // Searching on other profile may not succeed because profile may be in quiet mode.
                 if (UserId.CURRENT_USER.equals(userId)) {
@@ -279,6 +335,14 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
 
     @Override
     protected void onStartLoading() {
+        final DirectoryResult cached = mResult == null ? takeCachedResult() : null;
+        if (cached != null) {
+            // Show the cached contents right away, and load them again in case they changed.
+            deliverResult(cached);
+            forceLoad();
+            return;
+        }
+
         boolean isCursorStale = checkIfCursorStale(mResult);
         if (mResult != null && !isCursorStale) {
             deliverResult(mResult);
@@ -309,10 +373,47 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             mResult.getCursor().unregisterContentObserver(mObserver);
         }
 
-        FileUtils.closeQuietly(mResult);
+        if (mResult != null && mCache != null && mFeatures.isDirectorySnapshotsEnabled()) {
+            // Kept for when the user goes back to this directory.
+            mCache.putVisited(mCacheKey, mResult);
+        } else {
+            FileUtils.closeQuietly(mResult);
+        }
         mResult = null;
     }
 
+    Uri getUri() {
+        return mUri;
+    }
+
+    /**
+     * Returns the key of the listing loaded by this loader in the {@link DirectoryCache}.
+     */
+    DirectoryCache.Key getCacheKey() {
+        return mCacheKey;
+    }
+
+    /**
+     * Takes the listing cached for this loader, if any. Listings of users this app can't interact
+     * with, or in quiet mode, are dropped instead, as loading them would fail.
+     */
+    @VisibleForTesting
+    @Nullable DirectoryResult takeCachedResult() {
+        if (mCache == null || mDoc == null) {
+            return null;
+        }
+        final DirectoryResult result = mCache.take(mCacheKey);
+        if (result != null && (!mState.canInteractWith(mRoot.userId)
+                || DocumentsApplication.isQuietModeEnabled(getContext(), mRoot.userId))) {
+            FileUtils.closeQuietly(result);
+            return null;
+        }
+        if (result != null && mObserver != null) {
+            result.getCursor().registerContentObserver(mObserver);
+        }
+        return result;
+    }
+
     private boolean checkIfCursorStale(DirectoryResult result) {
         if (result == null || result.getCursor() == null || result.getCursor().isClosed()) {
             return true;
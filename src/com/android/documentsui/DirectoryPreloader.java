@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.Uri;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.Features;
+import com.android.documentsui.base.Lookup;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the directories that are likely to be opened next into the {@link DirectoryCache}, once
+ * the current directory is loaded: the focused directory, then the first directories listed.
+ * Loads run one at a time on a background priority thread, and pending ones are dropped when the
+ * user navigates elsewhere. Only directories of local roots are preloaded, so that remote providers
+ * are not queried for listings the user may never open.
+ */
+public final class DirectoryPreloader {
+
+    private static final String TAG = "DirectoryPreloader";
+
+    @VisibleForTesting
+    static final int MAX_PRELOADS = 3;
+    // Directories are usually sorted first, so only the head of the listing is looked at.
+    private static final int MAX_SCANNED_ITEMS = 100;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(r ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, TAG));
+
+    private final Context mContext;
+    private final Features mFeatures;
+    private final State mState;
+    private final Lookup<String, String> mFileTypeLookup;
+    private final boolean mEnabled;
+
+    // Incremented when pending preloads are dropped.
+    private volatile int mGeneration;
+    private @Nullable DirectoryLoader mCurrentLoader;
+
+    public DirectoryPreloader(Context context, Features features, State state,
+            Lookup<String, String> fileTypeLookup) {
+        mContext = context.getApplicationContext();
+        mFeatures = features;
+        mState = state;
+        mFileTypeLookup = fileTypeLookup;
+        final ActivityManager am = context.getSystemService(ActivityManager.class);
+        mEnabled = features.isDirectoryPreloadEnabled() && !am.isLowRamDevice();
+    }
+
+    /**
+     * Drops the pending preloads, and starts loading the likely next directories of the current
+     * one, listed in the model.
+     *
+     * @param contentsUri the uri the current directory was loaded from
+     * @param focusedModelId the item focused in the listing, if any
+     */
+    public void preloadChildren(Model model, Uri contentsUri, @Nullable String focusedModelId) {
+        cancel();
+        if (!mEnabled || model.isLoading() || model.doc == null) {
+            return;
+        }
+
+        final RootInfo root = mState.stack.getRoot();
+        if (!root.isLocalOnly()) {
+            return;
+        }
+        final boolean managed = DocumentsContract.isManageMode(contentsUri);
+        final DirectoryCache cache = DocumentsApplication.getDirectoryCache(mContext);
+        final List<DocumentInfo> docs = new ArrayList<>(MAX_PRELOADS);
+        final List<Uri> uris = new ArrayList<>(MAX_PRELOADS);
+        final String[] modelIds = model.getModelIds();
+        for (int i = -1; i < Math.min(modelIds.length, MAX_SCANNED_ITEMS)
+                && docs.size() < MAX_PRELOADS; i++) {
+            final String modelId = i < 0 ? focusedModelId : modelIds[i];
+            if (modelId == null) {
+                continue;
+            }
+            final DocumentInfo doc = model.getDocument(modelId);
+            if (doc == null || !doc.isDirectory() || doc.isInArchive() || docs.contains(doc)) {
+                continue;
+            }
+            Uri uri = DocumentsContract.buildChildDocumentsUri(doc.authority, doc.documentId);
+            if (managed) {
+                uri = DocumentsContract.setManageMode(uri);
+            }
+            if (cache.contains(DirectoryCache.Key.of(mState, root.userId, uri))) {
+                continue;
+            }
+            docs.add(doc);
+            uris.add(uri);
+        }
+
+        final int generation = mGeneration;
+        for (int i = 0; i < docs.size(); i++) {
+            final DocumentInfo doc = docs.get(i);
+            final Uri uri = uris.get(i);
+            sExecutor.execute(() -> preload(generation, cache, root, doc, uri));
+        }
+    }
+
+    /**
+     * Drops the pending preloads, and cancels the running one.
+     */
+    public void cancel() {
+        final DirectoryLoader loader;
+        synchronized (this) {
+            mGeneration++;
+            loader = mCurrentLoader;
+        }
+        if (loader != null) {
+            loader.cancelLoadInBackground();
+        }
+    }
+
+    private void preload(int generation, DirectoryCache cache, RootInfo root, DocumentInfo doc,
+            Uri uri) {
+        final DirectoryLoader loader = new DirectoryLoader(mFeatures, mContext, mState, root, doc,
+                uri, mFileTypeLookup, /* lock= */ null, /* queryArgs= */ null);
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return;
+            }
+            mCurrentLoader = loader;
+        }
+
+        final DirectoryCache.Key key = loader.getCacheKey();
+        DirectoryResult result = null;
+        try {
+            if (!cache.contains(key)) {
+                if (DEBUG) Log.d(TAG, "Preloading " + uri);
+                result = loader.loadInBackground();
+            }
+        } catch (OperationCanceledException e) {
+            // Dropped.
+        } finally {
+            synchronized (this) {
+                mCurrentLoader = null;
+            }
+        }
+        if (result == null) {
+            return;
+        }
+        synchronized (this) {
+            // The result of a preload dropped while loading is discarded.
+            if (generation == mGeneration) {
+                cache.putPreloaded(key, result);
+                return;
+            }
+        }
+        result.close();
+    }
+}
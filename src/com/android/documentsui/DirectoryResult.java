@@ -16,15 +16,13 @@
 
 package com.android.documentsui;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
-
 import android.content.ContentProviderClient;
 import android.database.Cursor;
 import android.os.FileUtils;
-import android.provider.DocumentsContract;
 import android.util.Log;
 
 import com.android.documentsui.archives.ArchivesProvider;
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.DocumentInfo;
 
 import java.util.HashSet;
@@ -85,6 +83,7 @@ public class DirectoryResult implements AutoCloseable {
         int cursorCount = mCursor.getCount();
         String[] modelIds = new String[cursorCount];
         Set<String> fileNames = new HashSet<>();
+        final CursorSchema schema = CursorSchema.of(mCursor);
         try {
             mCursor.moveToPosition(-1);
             for (int pos = 0; pos < cursorCount; ++pos) {
@@ -96,9 +95,8 @@ public class DirectoryResult implements AutoCloseable {
                 // Generates a Model ID for a cursor entry that refers to a document. The Model
                 // ID is a unique string that can be used to identify the document referred to by
                 // the cursor. Prefix the ids with the authority to avoid collisions.
-                modelIds[pos] = ModelId.build(mCursor);
-                fileNames.add(
-                        getCursorString(mCursor, DocumentsContract.Document.COLUMN_DISPLAY_NAME));
+                modelIds[pos] = ModelId.build(mCursor, schema);
+                fileNames.add(schema.getDisplayName(mCursor));
             }
         } catch (Exception e) {
             Log.e(TAG, "Exception when moving cursor. Stale cursor?", e);
@@ -103,13 +103,15 @@ public interface DocumentsAccess {
             if (!mState.canInteractWith(userId)) {
                 throw new CrossProfileNoPermissionException();
             }
-            try (ContentProviderClient client = DocumentsApplication.acquireUnstableProviderOrThrow(
-                    userId.getContentResolver(mContext), authority)) {
+            final ProviderClientPool pool = DocumentsApplication.getProviderClientPool(mContext);
+            try (ProviderClientPool.Lease lease =
+                         pool.acquire(userId.getContentResolver(mContext), userId, authority)) {
 
                 List<DocumentInfo> result = new ArrayList<>(docIds.size());
                 for (String docId : docIds) {
                     final Uri uri = DocumentsContract.buildDocumentUri(authority, docId);
-                    try (final Cursor cursor = client.query(uri, null, null, null, null)) {
+                    try (final Cursor cursor =
+                                 lease.getClient().query(uri, null, null, null, null)) {
                         if (!cursor.moveToNext()) {
                             Log.e(TAG, "Couldn't create DocumentInfo for Uri: " + uri);
                             throw new RemoteException("Failed to move cursor.");
@@ -120,6 +122,9 @@ public interface DocumentsAccess {
                 }
 
                 return result;
+            } catch (RemoteException | RuntimeException e) {
+                pool.onError(userId, authority, e);
+                throw e;
             }
         }
 
@@ -142,9 +147,13 @@ public interface DocumentsAccess {
                 throw new CrossProfileNoPermissionException();
             }
             final ContentResolver resolver = userId.getContentResolver(mContext);
-            try (final ContentProviderClient client = DocumentsApplication
-                    .acquireUnstableProviderOrThrow(resolver, docUri.getAuthority())) {
-                return DocumentsContract.findDocumentPath(wrap(client), docUri);
+            final ProviderClientPool pool = DocumentsApplication.getProviderClientPool(mContext);
+            try (ProviderClientPool.Lease lease =
+                         pool.acquire(resolver, userId, docUri.getAuthority())) {
+                return DocumentsContract.findDocumentPath(wrap(lease.getClient()), docUri);
+            } catch (RemoteException | FileNotFoundException | RuntimeException e) {
+                pool.onError(userId, docUri.getAuthority(), e);
+                throw e;
             }
         }
 
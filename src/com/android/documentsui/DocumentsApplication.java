@@ -27,7 +27,11 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.om.OverlayManager;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
+import android.os.Trace;
 import android.os.UserHandle;
 import android.text.format.DateUtils;
 import android.util.Log;
@@ -35,13 +39,16 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import com.android.documentsui.base.Features;
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.UserId;
 import com.android.documentsui.clipping.ClipStorage;
 import com.android.documentsui.clipping.ClipStore;
 import com.android.documentsui.clipping.DocumentClipper;
+import com.android.documentsui.queries.FilenameIndex;
 import com.android.documentsui.queries.SearchHistoryManager;
 import com.android.documentsui.roots.ProvidersCache;
+import com.android.documentsui.sidebar.HandlerAppsCache;
 import com.android.documentsui.theme.ThemeOverlayManager;
 import com.android.modules.utils.build.SdkLevel;
 
@@ -73,14 +80,26 @@ public class DocumentsApplication extends Application {
     @Nullable
     private static volatile ConfigStore sConfigStore;
 
+    // Used by contexts which aren't part of the app, e.g. in tests.
+    @GuardedBy("DocumentsApplication.class")
+    @Nullable
+    private static ProviderClientPool sUnpooledClientPool;
+
     private ProvidersCache mProviders;
-    private ThumbnailCache mThumbnailCache;
-    private ClipStorage mClipStore;
-    private DocumentClipper mClipper;
-    private DragAndDropManager mDragAndDropManager;
+    // Not needed to show the first activity, so created on first use.
+    private final Object mLazyInitLock = new Object();
+    private volatile ThumbnailCache mThumbnailCache;
+    private volatile ClipStorage mClipStore;
+    private volatile DocumentClipper mClipper;
+    private volatile DragAndDropManager mDragAndDropManager;
     private UserIdManager mUserIdManager;
     private UserManagerState mUserManagerState;
-    private Lookup<String, String> mFileTypeLookup;
+    private FileTypeMap mFileTypeLookup;
+    private FilenameIndex mFilenameIndex;
+    private HandlerAppsCache mHandlerAppsCache;
+    private ProviderClientPool mProviderClientPool;
+    private DirectoryCache mDirectoryCache;
+    private QuietModeSnapshot mQuietModeSnapshot;
 
     public static ProvidersCache getProvidersCache(Context context) {
         return ((DocumentsApplication) context.getApplicationContext()).mProviders;
@@ -88,7 +107,18 @@ public class DocumentsApplication extends Application {
 
     public static ThumbnailCache getThumbnailCache(Context context) {
         final DocumentsApplication app = (DocumentsApplication) context.getApplicationContext();
-        return app.mThumbnailCache;
+        ThumbnailCache thumbnailCache = app.mThumbnailCache;
+        if (thumbnailCache == null) {
+            synchronized (app.mLazyInitLock) {
+                if (app.mThumbnailCache == null) {
+                    final ActivityManager am = app.getSystemService(ActivityManager.class);
+                    final int memoryClassBytes = am.getMemoryClass() * 1024 * 1024;
+                    app.mThumbnailCache = new ThumbnailCache(memoryClassBytes / 4);
+                }
+                thumbnailCache = app.mThumbnailCache;
+            }
+        }
+        return thumbnailCache;
     }
 
     public static ContentProviderClient acquireUnstableProviderOrThrow(
@@ -102,12 +132,83 @@ public class DocumentsApplication extends Application {
         return client;
     }
 
+    /**
+     * Returns the pool of provider clients shared by loads and queries, see
+     * {@link ProviderClientPool}. Returns a pool which doesn't share clients when the context
+     * isn't part of the app, e.g. in tests.
+     */
+    public static ProviderClientPool getProviderClientPool(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (appContext instanceof DocumentsApplication) {
+            return ((DocumentsApplication) appContext).mProviderClientPool;
+        }
+        synchronized (DocumentsApplication.class) {
+            if (sUnpooledClientPool == null) {
+                sUnpooledClientPool = new ProviderClientPool(
+                        new Handler(Looper.getMainLooper()), /* pooled= */ false);
+            }
+            return sUnpooledClientPool;
+        }
+    }
+
+    /**
+     * Returns the cache of directory listings, see {@link DirectoryCache}. Only used when
+     * {@link Features#isDirectoryPreloadEnabled()} or
+     * {@link Features#isDirectorySnapshotsEnabled()}.
+     */
+    public static DirectoryCache getDirectoryCache(Context context) {
+        return ((DocumentsApplication) context.getApplicationContext()).mDirectoryCache;
+    }
+
+    /**
+     * Returns true if the user is in quiet mode, as last known by the {@link QuietModeSnapshot}
+     * of the app, without querying the user manager on every call. Queries it directly when the
+     * context isn't part of the app, e.g. in tests.
+     */
+    public static boolean isQuietModeEnabled(Context context, UserId userId) {
+        final Context appContext = context.getApplicationContext();
+        if (appContext instanceof DocumentsApplication) {
+            return ((DocumentsApplication) appContext).mQuietModeSnapshot.isQuietModeEnabled(
+                    userId);
+        }
+        return userId.isQuietModeEnabled(context);
+    }
+
     public static DocumentClipper getDocumentClipper(Context context) {
-        return ((DocumentsApplication) context.getApplicationContext()).mClipper;
+        final DocumentsApplication app = (DocumentsApplication) context.getApplicationContext();
+        DocumentClipper clipper = app.mClipper;
+        if (clipper == null) {
+            synchronized (app.mLazyInitLock) {
+                if (app.mClipper == null) {
+                    app.mClipper = DocumentClipper.create(app, app.getClipStorage());
+                }
+                clipper = app.mClipper;
+            }
+        }
+        return clipper;
     }
 
     public static ClipStore getClipStore(Context context) {
-        return ((DocumentsApplication) context.getApplicationContext()).mClipStore;
+        return ((DocumentsApplication) context.getApplicationContext()).getClipStorage();
+    }
+
+    private ClipStorage getClipStorage() {
+        ClipStorage clipStore = mClipStore;
+        if (clipStore == null) {
+            synchronized (mLazyInitLock) {
+                if (mClipStore == null) {
+                    // Creates the clip directory and reads the preferences, so it is usually
+                    // created in the background by onCreate().
+                    Trace.beginSection("DocsUI.Startup.ClipStorage");
+                    mClipStore = new ClipStorage(
+                            ClipStorage.prepareStorage(getCacheDir()),
+                            getSharedPreferences(ClipStorage.PREF_NAME, 0));
+                    Trace.endSection();
+                }
+                clipStore = mClipStore;
+            }
+        }
+        return clipStore;
     }
 
     public static UserIdManager getUserIdManager(Context context) {
@@ -132,18 +233,46 @@ public class DocumentsApplication extends Application {
             userManagerState = UserManagerState.create(context);
             ((DocumentsApplication) context.getApplicationContext()).mUserManagerState =
                     userManagerState;
+            userManagerState.refreshAsync();
         }
         return userManagerState;
     }
 
     public static DragAndDropManager getDragAndDropManager(Context context) {
-        return ((DocumentsApplication) context.getApplicationContext()).mDragAndDropManager;
+        final DocumentsApplication app = (DocumentsApplication) context.getApplicationContext();
+        DragAndDropManager dragAndDropManager = app.mDragAndDropManager;
+        if (dragAndDropManager == null) {
+            synchronized (app.mLazyInitLock) {
+                if (app.mDragAndDropManager == null) {
+                    app.mDragAndDropManager =
+                            DragAndDropManager.create(app, getDocumentClipper(app));
+                }
+                dragAndDropManager = app.mDragAndDropManager;
+            }
+        }
+        return dragAndDropManager;
     }
 
     public static Lookup<String, String> getFileTypeLookup(Context context) {
         return ((DocumentsApplication) context.getApplicationContext()).mFileTypeLookup;
     }
 
+    public static HandlerAppsCache getHandlerAppsCache(Context context) {
+        return ((DocumentsApplication) context.getApplicationContext()).mHandlerAppsCache;
+    }
+
+    /**
+     * Returns the on-device index of file names, created and loaded on first use. Only used when
+     * {@link Features#isFilenameIndexEnabled()}.
+     */
+    public static synchronized FilenameIndex getFilenameIndex(Context context) {
+        final DocumentsApplication app = (DocumentsApplication) context.getApplicationContext();
+        if (app.mFilenameIndex == null) {
+            app.mFilenameIndex = FilenameIndex.create(app);
+        }
+        return app.mFilenameIndex;
+    }
+
     /**
      * Retrieve {@link ConfigStore} instance to access feature flags in production code.
      */
@@ -156,10 +285,12 @@ public class DocumentsApplication extends Application {
 
     /**
      * Set {@link #mUserManagerState} as null onDestroy of BaseActivity so that new session uses new
-     * instance of {@link #mUserManagerState}
+     * instance of {@link #mUserManagerState}, and reads the quiet mode of the profiles again.
      */
     public static void invalidateUserManagerState(Context context) {
-        ((DocumentsApplication) context.getApplicationContext()).mUserManagerState = null;
+        final DocumentsApplication app = (DocumentsApplication) context.getApplicationContext();
+        app.mUserManagerState = null;
+        app.mQuietModeSnapshot.clear();
     }
 
     private void onApplyOverlayFinish(boolean result) {
@@ -169,46 +300,56 @@ public class DocumentsApplication extends Application {
     @SuppressLint("NewApi") // OverlayManager.class is @hide
     @Override
     public void onCreate() {
+        Trace.beginSection("DocsUI.Startup.onCreate");
         super.onCreate();
+        Trace.beginSection("DocsUI.Startup.ConfigStore");
         synchronized (DocumentsApplication.class) {
             if (sConfigStore == null) {
                 sConfigStore = new ConfigStore.ConfigStoreImpl();
             }
         }
+        Trace.endSection();
 
-        final ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        Trace.beginSection("DocsUI.Startup.ThemeOverlays");
         final OverlayManager om = getSystemService(OverlayManager.class);
-        final int memoryClassBytes = am.getMemoryClass() * 1024 * 1024;
-
         if (om != null) {
             new ThemeOverlayManager(om, getPackageName()).applyOverlays(this, true,
                     this::onApplyOverlayFinish);
         } else {
             Log.w(TAG, "Can't obtain OverlayManager from System Service!");
         }
+        Trace.endSection();
 
+        Trace.beginSection("DocsUI.Startup.UserState");
+        mQuietModeSnapshot = new QuietModeSnapshot(this);
         if (getConfigStore().isPrivateSpaceInDocsUIEnabled()) {
             mUserManagerState = UserManagerState.create(this);
+            // Computed in the background, so that the first activity doesn't wait for it.
+            mUserManagerState.refreshAsync();
             mUserIdManager = null;
         } else {
             mUserManagerState = null;
             mUserIdManager = UserIdManager.create(this);
         }
+        Trace.endSection();
+
+        Trace.beginSection("DocsUI.Startup.ProvidersCache");
+        mProviderClientPool = new ProviderClientPool();
+        mDirectoryCache = new DirectoryCache();
         mProviders = new ProvidersCache(this);
 
         mProviders.updateAsync(/* forceRefreshAll= */ false, /* callback= */  null);
+        Trace.endSection();
 
-        mThumbnailCache = new ThumbnailCache(memoryClassBytes / 4);
-
-        mClipStore = new ClipStorage(
-                ClipStorage.prepareStorage(getCacheDir()),
-                getSharedPreferences(ClipStorage.PREF_NAME, 0));
-        mClipper = DocumentClipper.create(this, mClipStore);
-
-        mDragAndDropManager = DragAndDropManager.create(this, mClipper);
+        // The thumbnail cache, the clipper and the drag and drop manager are created on first
+        // use. Only the clip storage does I/O, so it is prepared in the background.
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(this::getClipStorage);
 
         mFileTypeLookup = new FileTypeMap(this);
+        mHandlerAppsCache = new HandlerAppsCache();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(mFileTypeLookup::prewarm);
 
+        Trace.beginSection("DocsUI.Startup.Receivers");
         final IntentFilter packageFilter = new IntentFilter();
         for (String packageAction : PACKAGE_FILTER_ACTIONS) {
             packageFilter.addAction(packageAction);
@@ -233,15 +374,23 @@ public class DocumentsApplication extends Application {
             profileFilter.addAction(profileAction);
         }
         registerReceiver(mCacheReceiver, profileFilter);
+        Trace.endSection();
 
+        Trace.beginSection("DocsUI.Startup.SearchHistory");
         SearchHistoryManager.getInstance(getApplicationContext());
+        Trace.endSection();
+        Trace.endSection();
     }
 
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
 
-        mThumbnailCache.onTrimMemory(level);
+        final ThumbnailCache thumbnailCache = mThumbnailCache;
+        if (thumbnailCache != null) {
+            thumbnailCache.onTrimMemory(level);
+        }
+        mDirectoryCache.onTrimMemory(level);
     }
 
     private BroadcastReceiver mCacheReceiver = new BroadcastReceiver() {
@@ -249,10 +398,13 @@ public class DocumentsApplication extends Application {
         public void onReceive(Context context, Intent intent) {
             final Uri data = intent.getData();
             final String action = intent.getAction();
+            // Handler apps and their labels may change with packages, profiles and the locale.
+            mHandlerAppsCache.invalidate();
             if (PACKAGE_FILTER_ACTIONS.contains(action) && data != null) {
                 final String packageName = data.getSchemeSpecificPart();
                 mProviders.updatePackageAsync(UserId.DEFAULT_USER, packageName);
             } else if (PROFILE_FILTER_ACTIONS.contains(action)) {
+                mQuietModeSnapshot.onProfileBroadcast(intent);
                 // Make the changes to UserManagerState object before calling providers updateAsync
                 // so that providers for all the users are loaded
                 if (getConfigStore().isPrivateSpaceInDocsUIEnabled() && SdkLevel.isAtLeastV()) {
@@ -265,6 +417,9 @@ public class DocumentsApplication extends Application {
                 mProviders.updateAsync(/* forceRefreshAll= */ true,
                         () -> LocalBroadcastManager.getInstance(context).sendBroadcast(intent));
             } else {
+                if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
+                    mFileTypeLookup.invalidate();
+                }
                 mProviders.updateAsync(/* forceRefreshAll= */ true, /* callback= */ null);
             }
         }
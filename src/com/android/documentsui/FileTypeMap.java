@@ -18,22 +18,97 @@ package com.android.documentsui;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.Resources;
+import android.os.LocaleList;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.documentsui.base.Lookup;
+import com.android.documentsui.base.MimeTypes;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * A map from mime type to user friendly type string.
+ *
+ * <p>Labels are resolved through {@link ContentResolver#getTypeInfo}, which goes to the system
+ * for every call, and memoized per mime type. A folder typically holds only a handful of
+ * distinct types, so sorting by type or binding a list only resolves each of them once. The
+ * labels are localized, so the memo is dropped whenever the locales change, and a label resolved
+ * while they changed isn't memoized.
  */
 public class FileTypeMap implements Lookup<String, String> {
-    private final ContentResolver mResolver;
+    private final Function<String, String> mResolver;
+    private final Resources mResources;
+    private final Map<String, String> mLabels = new ConcurrentHashMap<>();
+
+    @GuardedBy("this")
+    private LocaleList mLocales;
 
     FileTypeMap(Context context) {
-        mResolver = context.getContentResolver();
+        this(context.getResources(), mimeType -> String.valueOf(
+                context.getContentResolver().getTypeInfo(mimeType).getLabel()));
+    }
+
+    @VisibleForTesting
+    FileTypeMap(Resources resources, Function<String, String> resolver) {
+        mResources = resources;
+        mResolver = resolver;
+        mLocales = resources.getConfiguration().getLocales();
     }
 
     @Override
     public String lookup(String mimeType) {
         if (mimeType == null) return null;
-        return String.valueOf(mResolver.getTypeInfo(mimeType).getLabel());
+
+        final LocaleList locales = mResources.getConfiguration().getLocales();
+        synchronized (this) {
+            if (!locales.equals(mLocales)) {
+                // A locale change broadcast may not have been delivered yet.
+                invalidate(locales);
+            }
+        }
+        String label = mLabels.get(mimeType);
+        if (label == null) {
+            // Resolved without holding the lock, as it goes to the system.
+            label = mResolver.apply(mimeType);
+            synchronized (this) {
+                if (locales.equals(mLocales)) {
+                    mLabels.putIfAbsent(mimeType, label);
+                }
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Drops all memoized labels. Called when the locales change.
+     */
+    public synchronized void invalidate() {
+        invalidate(mResources.getConfiguration().getLocales());
+    }
+
+    @GuardedBy("this")
+    private void invalidate(LocaleList locales) {
+        mLocales = locales;
+        mLabels.clear();
+    }
+
+    /**
+     * Resolves the labels of common document types ahead of time, so the first sort by type
+     * doesn't have to. Must not be called on the main thread.
+     */
+    public void prewarm() {
+        for (String mimeType : MimeTypes.getDocumentMimeTypeArray()) {
+            lookup(mimeType);
+        }
+    }
+
+    @VisibleForTesting
+    int size() {
+        return mLabels.size();
     }
 }
@@ -26,6 +26,7 @@ import android.content.Intent;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.os.RemoteException;
+import android.os.Trace;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Path;
 import android.provider.DocumentsProvider;
@@ -342,6 +343,25 @@ public final class Metrics {
                 getSearchMode(isKeywordSearch, isChipsSearch));
     }
 
+    /**
+     * Logs the latency of a search across roots. There is no atom for it yet, so the values are
+     * recorded as trace counters, which perf tests collect.
+     *
+     * @param timeToFirstResultMs time until the first root returned results, or -1 if none did.
+     * @param timeToCompleteMs time until all roots answered, or the search timed out.
+     * @param complete whether all roots answered in time.
+     */
+    public static void logSearchLatency(
+            int timeToFirstResultMs, int timeToCompleteMs, boolean complete) {
+        if (timeToFirstResultMs >= 0) {
+            Trace.setCounter("DocsUI.SearchTimeToFirstResultMs", timeToFirstResultMs);
+        }
+        Trace.setCounter("DocsUI.SearchTimeToCompleteMs", timeToCompleteMs);
+        if (!complete) {
+            Log.i(TAG, "Search timed out after " + timeToCompleteMs + "ms.");
+        }
+    }
+
     /**
      * Logs drag initiated from which app, documentsUI or another app.
      */
@@ -1,13 +1,9 @@
 package com.android.documentsui;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorInt;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
-
 import android.database.Cursor;
-import android.provider.DocumentsContract;
 
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.UserId;
-import com.android.documentsui.roots.RootCursorWrapper;
 
 public class ModelId {
 
@@ -15,9 +11,16 @@ public class ModelId {
         if (cursor == null) {
             return null;
         }
-        return ModelId.build(UserId.of(getCursorInt(cursor, RootCursorWrapper.COLUMN_USER_ID)),
-                getCursorString(cursor, RootCursorWrapper.COLUMN_AUTHORITY),
-                getCursorString(cursor, DocumentsContract.Document.COLUMN_DOCUMENT_ID));
+        return build(cursor, CursorSchema.of(cursor));
+    }
+
+    /**
+     * Builds the model ID of the current row, with the columns of a schema resolved for the
+     * cursor, when building the IDs of many rows.
+     */
+    public static final String build(Cursor cursor, CursorSchema schema) {
+        return ModelId.build(schema.getUserId(cursor), schema.getAuthority(cursor),
+                schema.getDocumentId(cursor));
     }
 
     public static final String build(UserId userId, String authority, String docId) {
@@ -20,20 +20,24 @@ import static com.android.documentsui.base.SharedMinimal.DEBUG;
 
 import android.app.ActivityManager;
 import android.content.ContentProviderClient;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.FileUtils;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.loader.content.AsyncTaskLoader;
 
 import com.android.documentsui.base.DocumentInfo;
@@ -41,6 +45,7 @@ import com.android.documentsui.base.FilteringCursorWrapper;
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.RootInfo;
 import com.android.documentsui.base.State;
+import com.android.documentsui.base.UserId;
 import com.android.documentsui.roots.ProvidersAccess;
 import com.android.documentsui.roots.RootCursorWrapper;
 
@@ -49,7 +54,10 @@ import com.google.common.util.concurrent.AbstractFuture;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +66,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The abstract class to query multiple roots from {@link android.provider.DocumentsProvider}
@@ -73,11 +82,33 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
 
     public static final int MAX_OUTSTANDING_TASK = 4;
     private static final int MAX_OUTSTANDING_TASK_SVELTE = 2;
+    /**
+     * Upper bound of outstanding tasks on devices with many cores.
+     */
+    private static final int MAX_OUTSTANDING_TASK_MANY_CORES = 8;
 
     /**
      * Time to wait for first pass to complete before returning partial results.
      */
     private static final int MAX_FIRST_PASS_WAIT_MILLIS = 500;
+    /**
+     * Lower bound of the first pass wait, when the latencies of all the authorities are known.
+     */
+    private static final int MIN_FIRST_PASS_WAIT_MILLIS = 100;
+    /**
+     * Percentile of the latency of an authority the first pass waits for.
+     */
+    private static final int FIRST_PASS_PERCENTILE = 90;
+
+    /**
+     * Maximum number of roots of a single authority queried at the same time.
+     */
+    private static final int MAX_ROOT_QUERIES_PER_TASK = 3;
+
+    /**
+     * Latencies of query tasks, shared by loaders, and keyed by loader class and authority.
+     */
+    private static final ProviderLatencyTracker sLatencyTracker = new ProviderLatencyTracker();
 
     protected final State mState;
 
@@ -118,8 +149,10 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         // up moments later to fetch thumbnails anyway.
         final ActivityManager am = (ActivityManager) getContext().getSystemService(
                 Context.ACTIVITY_SERVICE);
-        mQueryPermits = new Semaphore(
-                am.isLowRamDevice() ? MAX_OUTSTANDING_TASK_SVELTE : MAX_OUTSTANDING_TASK);
+        mQueryPermits = new Semaphore(am.isLowRamDevice()
+                ? MAX_OUTSTANDING_TASK_SVELTE
+                : Math.max(MAX_OUTSTANDING_TASK, Math.min(MAX_OUTSTANDING_TASK_MANY_CORES,
+                        Runtime.getRuntime().availableProcessors())));
     }
 
     @Override
@@ -138,6 +171,15 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         mObserver = observer;
     }
 
+    /**
+     * Forgets the latencies of the authorities, which are shared by all loaders, so that the
+     * first pass of tests doesn't depend on the loads of other tests.
+     */
+    @VisibleForTesting
+    static void clearLatencies() {
+        sLatencyTracker.clear();
+    }
+
     private DirectoryResult loadInBackgroundLocked() throws InterruptedException {
         if (mFirstPassLatch == null) {
             // First time through we kick off all the recent tasks, and wait
@@ -154,13 +196,34 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 throw new InterruptedException("Loading is cancelled!");
             }
 
-            mFirstPassLatch = new CountDownLatch(mTasks.size());
-            for (QueryTask task : mTasks.values()) {
+            // Authorities known to be slow are started first, so that their queries overlap with
+            // the others, and the first pass does not wait for them. The first pass waits for the
+            // observed latency of the other authorities, up to MAX_FIRST_PASS_WAIT_MILLIS.
+            final List<QueryTask> tasks = new ArrayList<>(mTasks.values());
+            tasks.sort(Comparator.comparingLong(QueryTask::getExpectedLatency).reversed());
+            int firstPassCount = 0;
+            long firstPassWait = MIN_FIRST_PASS_WAIT_MILLIS;
+            for (QueryTask task : tasks) {
+                final long latency = task.getExpectedLatency();
+                if (latency > MAX_FIRST_PASS_WAIT_MILLIS) {
+                    if (DEBUG) {
+                        Log.d(TAG, "Not waiting for " + task.authority + ", p90 " + latency);
+                    }
+                    continue;
+                }
+                task.mInFirstPass = true;
+                firstPassCount++;
+                firstPassWait = Math.max(firstPassWait,
+                        latency < 0 ? MAX_FIRST_PASS_WAIT_MILLIS : latency);
+            }
+
+            mFirstPassLatch = new CountDownLatch(firstPassCount);
+            for (QueryTask task : tasks) {
                 mExecutors.lookup(task.authority).execute(task);
             }
 
             try {
-                mFirstPassLatch.await(MAX_FIRST_PASS_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                mFirstPassLatch.await(firstPassWait, TimeUnit.MILLISECONDS);
                 mFirstPassDone = true;
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
@@ -179,46 +242,56 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 throw new InterruptedException("Loading is cancelled!");
             }
 
-            if (task.isDone()) {
-                try {
-                    final Cursor[] taskCursors = task.get();
-                    if (taskCursors == null || taskCursors.length == 0) {
+            final boolean done = task.isDone();
+            if (!done) {
+                allDone = false;
+            }
+            try {
+                // Tasks still running contribute the roots they queried so far.
+                final Cursor[] taskCursors = done ? task.get() : task.getPartialCursors();
+                if (taskCursors == null || taskCursors.length == 0) {
+                    continue;
+                }
+
+                totalQuerySize += taskCursors.length;
+                for (Cursor cursor : taskCursors) {
+                    if (cursor == null) {
+                        // It's possible given an authority, some roots fail to return a cursor
+                        // after a query.
                         continue;
                     }
 
-                    totalQuerySize += taskCursors.length;
-                    for (Cursor cursor : taskCursors) {
-                        if (cursor == null) {
-                            // It's possible given an authority, some roots fail to return a cursor
-                            // after a query.
-                            continue;
-                        }
-
-                        final FilteringCursorWrapper filteredCursor =
-                                new FilteringCursorWrapper(cursor) {
-                                    @Override
-                                    public void close() {
-                                        // Ignored, since we manage cursor lifecycle internally
-                                    }
-                                };
-                        filteredCursor.filterHiddenFiles(mState.showHiddenFiles);
-                        filteredCursor.filterMimes(mState.acceptMimes, getRejectMimes());
+                    final FilteringCursorWrapper filteredCursor =
+                            new FilteringCursorWrapper(cursor) {
+                                @Override
+                                public void close() {
+                                    // Ignored, since we manage cursor lifecycle internally
+                                }
+                            };
+                    // Filters the provider already applied are skipped, the others are
+                    // applied here.
+                    final List<String> honoredArgs = getHonoredArgs(cursor);
+                    filteredCursor.filterHiddenFiles(mState.showHiddenFiles);
+                    filteredCursor.filterMimes(
+                            honoredArgs.contains(DocumentsContract.QUERY_ARG_MIME_TYPES)
+                                    ? null : mState.acceptMimes,
+                            getRejectMimes());
+                    if (!honoredArgs.contains(
+                            DocumentsContract.QUERY_ARG_LAST_MODIFIED_AFTER)) {
                         filteredCursor.filterLastModified(rejectBefore);
-
-                        cursors.add(filteredCursor);
                     }
 
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                } catch (ExecutionException e) {
-                    // We already logged on other side
-                } catch (Exception e) {
-                    // Catch exceptions thrown when we read the cursor.
-                    Log.e(TAG, "Failed to query documents for authority: " + task.authority
-                            + ". Skip this authority.", e);
+                    cursors.add(filteredCursor);
                 }
-            } else {
-                allDone = false;
+
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // We already logged on other side
+            } catch (Exception e) {
+                // Catch exceptions thrown when we read the cursor.
+                Log.e(TAG, "Failed to query documents for authority: " + task.authority
+                        + ". Skip this authority.", e);
             }
         }
 
@@ -279,6 +352,13 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         return rootsIndex;
     }
 
+    private static List<String> getHonoredArgs(Cursor cursor) {
+        final Bundle extras = cursor.getExtras();
+        final String[] honoredArgs =
+                extras != null ? extras.getStringArray(ContentResolver.EXTRA_HONORED_ARGS) : null;
+        return honoredArgs != null ? Arrays.asList(honoredArgs) : Collections.emptyList();
+    }
+
     protected long getRejectBeforeTime() {
         return -1;
     }
@@ -358,15 +438,17 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                         | Document.FLAG_SUPPORTS_REMOVE
                         | Document.FLAG_SUPPORTS_MOVE);
 
+        private final int mFlagsIndex;
+
         private NotMovableMaskCursor(Cursor cursor) {
             super(cursor);
+            mFlagsIndex = cursor.getColumnIndex(Document.COLUMN_FLAGS);
         }
 
         @Override
         public int getInt(int index) {
-            final int flagIndex = getWrappedCursor().getColumnIndex(Document.COLUMN_FLAGS);
             final int value = super.getInt(index);
-            return (index == flagIndex) ? (value & NOT_MOVABLE_MASK) : value;
+            return (index == mFlagsIndex) ? (value & NOT_MOVABLE_MASK) : value;
         }
     }
 
@@ -375,12 +457,24 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         public final String authority;
         public final List<RootInfo> rootInfos;
 
+        private final String mLatencyKey;
+        @GuardedBy("this")
         private Cursor[] mCursors;
+        @GuardedBy("this")
+        private int mPendingRoots;
+        @GuardedBy("this")
         private boolean mIsClosed = false;
+        // Whether the first pass waits for this task. Set before the task is executed.
+        private volatile boolean mInFirstPass;
 
         public QueryTask(String authority, List<RootInfo> rootInfos) {
             this.authority = authority;
             this.rootInfos = rootInfos;
+            mLatencyKey = MultiRootDocumentsLoader.this.getClass().getName() + "/" + authority;
+        }
+
+        private long getExpectedLatency() {
+            return sLatencyTracker.getPercentile(mLatencyKey, FIRST_PASS_PERCENTILE);
         }
 
         @Override
@@ -410,62 +504,143 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         protected void addQueryArgs(@NonNull Bundle queryArgs) {
         }
 
-        private synchronized void runInternal() {
-            if (mIsClosed) {
-                return;
+        private void runInternal() {
+            final int rootInfoCount = rootInfos.size();
+            synchronized (this) {
+                if (mIsClosed) {
+                    return;
+                }
+                mCursors = new Cursor[rootInfoCount];
+                mPendingRoots = rootInfoCount;
             }
 
-            final int rootInfoCount = rootInfos.size();
-            final Cursor[] res = new Cursor[rootInfoCount];
-            mCursors = new Cursor[rootInfoCount];
-
-            for (int i = 0; i < rootInfoCount; i++) {
-                final RootInfo rootInfo = rootInfos.get(i);
-                try (ContentProviderClient client =
-                             DocumentsApplication.acquireUnstableProviderOrThrow(
-                                     rootInfo.userId.getContentResolver(getContext()),
-                                     authority)) {
-                    final Uri uri = getQueryUri(rootInfo);
+            // Roots are queried by up to MAX_ROOT_QUERIES_PER_TASK workers: this thread, and
+            // helpers of the shared pool. They share one client per user.
+            final long startTime = SystemClock.elapsedRealtime();
+            final Map<UserId, ProviderClientPool.Lease> clients = new HashMap<>();
+            final AtomicInteger nextRoot = new AtomicInteger();
+            final Runnable worker = () -> {
+                int i;
+                while ((i = nextRoot.getAndIncrement()) < rootInfoCount) {
+                    queryRoot(i, clients);
+                }
+            };
+            final int helperCount = Math.min(rootInfoCount, MAX_ROOT_QUERIES_PER_TASK) - 1;
+            final CountDownLatch helpersDone = new CountDownLatch(Math.max(0, helperCount));
+            for (int i = 0; i < helperCount; i++) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
                     try {
-                        final Bundle queryArgs = new Bundle();
-                        mState.sortModel.addQuerySortArgs(queryArgs);
-                        addQueryArgs(queryArgs);
-                        res[i] = client.query(uri, null, queryArgs, null);
-                        if (mObserver != null) {
-                            res[i].registerContentObserver(mObserver);
-                        }
-                        mCursors[i] = generateResultCursor(rootInfo, res[i]);
-                    } catch (Exception e) {
-                        Log.w(TAG, "Failed to load " + authority + ", " + rootInfo.rootId, e);
+                        worker.run();
+                    } finally {
+                        helpersDone.countDown();
                     }
-
-                } catch (Exception e) {
-                    Log.w(TAG, "Failed to acquire content resolver for authority: " + authority);
+                });
+            }
+            worker.run();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    helpersDone.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
+            for (ProviderClientPool.Lease lease : clients.values()) {
+                lease.close();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
 
-            set(mCursors);
+            sLatencyTracker.record(mLatencyKey, SystemClock.elapsedRealtime() - startTime);
+            synchronized (this) {
+                set(mCursors);
+            }
 
-            mFirstPassLatch.countDown();
+            if (mInFirstPass) {
+                mFirstPassLatch.countDown();
+            }
             if (mFirstPassDone) {
                 onContentChanged();
             }
         }
 
+        private void queryRoot(int index, Map<UserId, ProviderClientPool.Lease> clients) {
+            final RootInfo rootInfo = rootInfos.get(index);
+            Cursor cursor = null;
+            Cursor result = null;
+            try {
+                final ContentProviderClient client = getClient(rootInfo.userId, clients);
+                final Uri uri = getQueryUri(rootInfo);
+                final Bundle queryArgs = new Bundle();
+                mState.sortModel.addQuerySortArgs(queryArgs);
+                addQueryArgs(queryArgs);
+                cursor = client.query(uri, DocumentInfo.PROJECTION, queryArgs, null);
+                if (mObserver != null) {
+                    cursor.registerContentObserver(mObserver);
+                }
+                result = generateResultCursor(rootInfo, cursor);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to load " + authority + ", " + rootInfo.rootId, e);
+                DocumentsApplication.getProviderClientPool(getContext())
+                        .onError(rootInfo.userId, authority, e);
+                FileUtils.closeQuietly(cursor);
+            }
+
+            final boolean publish;
+            synchronized (this) {
+                if (mIsClosed) {
+                    closeCursor(result);
+                    return;
+                }
+                mCursors[index] = result;
+                mPendingRoots--;
+                // The last root is published with the complete results.
+                publish = result != null && mPendingRoots > 0 && mFirstPassDone;
+            }
+            if (publish) {
+                onContentChanged();
+            }
+        }
+
+        private ContentProviderClient getClient(
+                UserId userId, Map<UserId, ProviderClientPool.Lease> clients) throws Exception {
+            synchronized (clients) {
+                ProviderClientPool.Lease lease = clients.get(userId);
+                if (lease == null) {
+                    lease = DocumentsApplication.getProviderClientPool(getContext()).acquire(
+                            userId.getContentResolver(getContext()), userId, authority);
+                    clients.put(userId, lease);
+                }
+                return lease.getClient();
+            }
+        }
+
+        /**
+         * Returns the results of the roots queried so far, while the task is running.
+         */
+        private synchronized Cursor[] getPartialCursors() {
+            return mCursors != null ? mCursors.clone() : new Cursor[0];
+        }
+
         @Override
         public synchronized void close() throws IOException {
+            mIsClosed = true;
             if (mCursors == null) {
                 return;
             }
 
             for (Cursor cursor : mCursors) {
-                if (mObserver != null && cursor != null) {
-                    cursor.unregisterContentObserver(mObserver);
-                }
-                FileUtils.closeQuietly(cursor);
+                closeCursor(cursor);
             }
+        }
 
-            mIsClosed = true;
+        private void closeCursor(Cursor cursor) {
+            if (mObserver != null && cursor != null) {
+                cursor.unregisterContentObserver(mObserver);
+            }
+            FileUtils.closeQuietly(cursor);
         }
     }
 
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.DeadObjectException;
+import android.os.FileUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.UserId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares unstable provider clients, per user and authority, between the loads and queries of the
+ * app, so that providers are bound once instead of for every query. Clients are closed once they
+ * have been unused for {@link #IDLE_TIMEOUT_MS}.
+ *
+ * <p>Note that a pooled client keeps the process of its provider bound, and so more likely to be
+ * kept in memory, for {@link #IDLE_TIMEOUT_MS} after its last use, including after the app went
+ * to the background. The timeout is kept short enough for this to only bridge the queries of a
+ * browsing session, e.g. a reload or the thumbnails of a listing.
+ *
+ * <p>A client whose provider died, including when it was killed for not responding, is replaced
+ * on the next acquire. Authorities whose providers keep dying are not pooled for a while, each
+ * acquire then gets its own client, as before.
+ */
+public final class ProviderClientPool {
+
+    private static final String TAG = "ProviderClientPool";
+
+    @VisibleForTesting
+    static final long IDLE_TIMEOUT_MS = 30_000;
+    @VisibleForTesting
+    static final int MAX_CONSECUTIVE_DEATHS = 3;
+    private static final long UNHEALTHY_BACKOFF_MS = 5 * 60_000;
+    private static final int PREWARM_COUNT = 3;
+
+    private final Object mLock = new Object();
+    private final Handler mHandler;
+    private final boolean mPooled;
+
+    @GuardedBy("mLock")
+    private final Map<Pair<UserId, String>, Entry> mEntries = new HashMap<>();
+    @GuardedBy("mLock")
+    private final Map<Pair<UserId, String>, Health> mHealth = new HashMap<>();
+
+    private final class Entry {
+        final Pair<UserId, String> key;
+        final ContentProviderClient client;
+        @GuardedBy("mLock")
+        int refCount;
+        // Dead entries are no longer in the pool, and are closed once released.
+        @GuardedBy("mLock")
+        boolean dead;
+        final Runnable evict = this::evict;
+
+        Entry(Pair<UserId, String> key, ContentProviderClient client) {
+            this.key = key;
+            this.client = client;
+        }
+
+        private void evict() {
+            synchronized (mLock) {
+                if (refCount > 0 || dead) {
+                    return;
+                }
+                mEntries.remove(key);
+                dead = true;
+            }
+            if (DEBUG) Log.d(TAG, "Closing idle client for " + key);
+            FileUtils.closeQuietly(client);
+        }
+    }
+
+    private static final class Health {
+        int consecutiveDeaths;
+        int deaths;
+        long unhealthyUntil;
+        // How often the authority was acquired, to pick the authorities to pre-warm.
+        int acquireCount;
+    }
+
+    /**
+     * A client acquired from the pool, which must be closed once done with, instead of the
+     * client itself.
+     */
+    public final class Lease implements AutoCloseable {
+        private final ContentProviderClient mClient;
+        private final @Nullable Entry mEntry;
+        private boolean mClosed;
+
+        private Lease(ContentProviderClient client, @Nullable Entry entry) {
+            mClient = client;
+            mEntry = entry;
+        }
+
+        public ContentProviderClient getClient() {
+            return mClient;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mEntry == null) {
+                FileUtils.closeQuietly(mClient);
+            } else {
+                release(mEntry);
+            }
+        }
+    }
+
+    public ProviderClientPool() {
+        this(new Handler(Looper.getMainLooper()), /* pooled= */ true);
+    }
+
+    /**
+     * @param pooled whether clients are shared. If false, each acquire gets its own client,
+     *     which is closed with its lease.
+     */
+    ProviderClientPool(Handler handler, boolean pooled) {
+        mHandler = handler;
+        mPooled = pooled;
+    }
+
+    /**
+     * Returns a lease of the client of the given user and authority, acquiring one if needed.
+     *
+     * @param resolver the content resolver of the user, used when there is no pooled client.
+     */
+    public Lease acquire(ContentResolver resolver, UserId userId, String authority)
+            throws RemoteException {
+        final Pair<UserId, String> key = Pair.create(userId, authority);
+        final boolean pooled;
+        synchronized (mLock) {
+            final Health health = getHealthLocked(key);
+            health.acquireCount++;
+            pooled = mPooled && health.unhealthyUntil <= SystemClock.elapsedRealtime();
+            final Entry entry = pooled ? mEntries.get(key) : null;
+            if (entry != null) {
+                entry.refCount++;
+                mHandler.removeCallbacks(entry.evict);
+                return new Lease(entry.client, entry);
+            }
+        }
+
+        // Binding the provider may take a while, so it is done without holding the lock.
+        final ContentProviderClient client = createClient(resolver, authority);
+        if (!pooled) {
+            return new Lease(client, null);
+        }
+        synchronized (mLock) {
+            final Entry existing = mEntries.get(key);
+            if (existing != null) {
+                // Another thread acquired a client meanwhile.
+                existing.refCount++;
+                mHandler.removeCallbacks(existing.evict);
+                FileUtils.closeQuietly(client);
+                return new Lease(existing.client, existing);
+            }
+            final Entry entry = new Entry(key, client);
+            entry.refCount = 1;
+            mEntries.put(key, entry);
+            return new Lease(client, entry);
+        }
+    }
+
+    /**
+     * Reports that a call through a client of the given user and authority failed. If its
+     * provider died, the pooled client is dropped, so that the next acquire binds the provider
+     * again.
+     */
+    public void onError(UserId userId, String authority, Throwable error) {
+        if (!isDeadObject(error)) {
+            return;
+        }
+        final Pair<UserId, String> key = Pair.create(userId, authority);
+        ContentProviderClient clientToClose = null;
+        synchronized (mLock) {
+            final Health health = getHealthLocked(key);
+            health.deaths++;
+            health.consecutiveDeaths++;
+            if (health.consecutiveDeaths >= MAX_CONSECUTIVE_DEATHS) {
+                Log.w(TAG, "Provider of " + authority + " keeps dying, not pooling its clients");
+                health.unhealthyUntil = SystemClock.elapsedRealtime() + UNHEALTHY_BACKOFF_MS;
+                health.consecutiveDeaths = 0;
+            }
+            final Entry entry = mEntries.remove(key);
+            if (entry != null) {
+                entry.dead = true;
+                mHandler.removeCallbacks(entry.evict);
+                if (entry.refCount == 0) {
+                    clientToClose = entry.client;
+                }
+            }
+        }
+        FileUtils.closeQuietly(clientToClose);
+    }
+
+    /**
+     * Acquires clients of the most acquired authorities of the user in the background, and
+     * keeps them until they are idle for {@link #IDLE_TIMEOUT_MS}. Acquires are only counted
+     * while the process lives, so this helps activities started after the clients were evicted.
+     */
+    public void prewarmAsync(Context context, UserId userId) {
+        final List<String> authorities = getMostAcquiredAuthorities(userId, PREWARM_COUNT);
+        if (authorities.isEmpty()) {
+            return;
+        }
+        final ContentResolver resolver = userId.getContentResolver(context);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            for (String authority : authorities) {
+                try (Lease lease = acquire(resolver, userId, authority)) {
+                    if (DEBUG) Log.d(TAG, "Pre-warmed client for " + authority);
+                } catch (RemoteException e) {
+                    Log.w(TAG, "Failed to pre-warm client for " + authority, e);
+                }
+            }
+        });
+    }
+
+    @VisibleForTesting
+    List<String> getMostAcquiredAuthorities(UserId userId, int count) {
+        final List<Pair<String, Integer>> counts = new ArrayList<>();
+        synchronized (mLock) {
+            for (Map.Entry<Pair<UserId, String>, Health> entry : mHealth.entrySet()) {
+                if (entry.getKey().first.equals(userId)
+                        && entry.getValue().unhealthyUntil <= SystemClock.elapsedRealtime()) {
+                    counts.add(Pair.create(entry.getKey().second,
+                            entry.getValue().acquireCount));
+                }
+            }
+        }
+        counts.sort((lhs, rhs) -> Integer.compare(rhs.second, lhs.second));
+        final List<String> authorities = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, counts.size()); i++) {
+            authorities.add(counts.get(i).first);
+        }
+        return authorities;
+    }
+
+    @VisibleForTesting
+    int getDeathCount(UserId userId, String authority) {
+        synchronized (mLock) {
+            final Health health = mHealth.get(Pair.create(userId, authority));
+            return health != null ? health.deaths : 0;
+        }
+    }
+
+    private void release(Entry entry) {
+        final boolean close;
+        synchronized (mLock) {
+            entry.refCount--;
+            if (entry.refCount > 0) {
+                return;
+            }
+            close = entry.dead;
+            if (!close) {
+                // The provider answered until now, so it's healthy again.
+                getHealthLocked(entry.key).consecutiveDeaths = 0;
+                mHandler.postDelayed(entry.evict, IDLE_TIMEOUT_MS);
+            }
+        }
+        if (close) {
+            FileUtils.closeQuietly(entry.client);
+        }
+    }
+
+    private static boolean isDeadObject(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof DeadObjectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @GuardedBy("mLock")
+    private Health getHealthLocked(Pair<UserId, String> key) {
+        Health health = mHealth.get(key);
+        if (health == null) {
+            health = new Health();
+            mHealth.put(key, health);
+        }
+        return health;
+    }
+
+    @VisibleForTesting
+    ContentProviderClient createClient(ContentResolver resolver, String authority)
+            throws RemoteException {
+        return DocumentsApplication.acquireUnstableProviderOrThrow(resolver, authority);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks how long queries take, per key, usually a provider authority, in histograms with four
+ * buckets per power of two milliseconds. Once a histogram holds {@link #MAX_SAMPLES} samples, its
+ * counts are halved, so that estimates follow changes in the behavior of providers.
+ */
+final class ProviderLatencyTracker {
+
+    @VisibleForTesting
+    static final int MIN_SAMPLES = 3;
+    private static final int MAX_SAMPLES = 64;
+
+    private static final int SUB_BUCKETS = 4;
+    // Covers up to about a minute, longer latencies all go to the last bucket.
+    private static final int BUCKET_COUNT = 60;
+
+    @GuardedBy("mHistograms")
+    private final Map<String, int[]> mHistograms = new HashMap<>();
+    @GuardedBy("mHistograms")
+    private final Map<String, Integer> mSampleCounts = new HashMap<>();
+
+    void record(String key, long latencyMillis) {
+        final int bucket = getBucket(latencyMillis);
+        synchronized (mHistograms) {
+            final int[] histogram = mHistograms.computeIfAbsent(key, k -> new int[BUCKET_COUNT]);
+            histogram[bucket]++;
+            int samples = mSampleCounts.getOrDefault(key, 0) + 1;
+            if (samples >= MAX_SAMPLES) {
+                samples = 0;
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    histogram[i] /= 2;
+                    samples += histogram[i];
+                }
+            }
+            mSampleCounts.put(key, samples);
+        }
+    }
+
+    /**
+     * Returns an estimate of the given percentile of the latencies of the key, rounded up to the
+     * upper bound of its bucket, or -1 if too few latencies were recorded.
+     */
+    long getPercentile(String key, int percentile) {
+        synchronized (mHistograms) {
+            final int samples = mSampleCounts.getOrDefault(key, 0);
+            if (samples < MIN_SAMPLES) {
+                return -1;
+            }
+            final int[] histogram = mHistograms.get(key);
+            final int rank = (int) Math.ceil(samples * percentile / 100.0);
+            int count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += histogram[i];
+                if (count >= rank) {
+                    return getLowerBound(i + 1);
+                }
+            }
+            return getLowerBound(BUCKET_COUNT);
+        }
+    }
+
+    @VisibleForTesting
+    void clear() {
+        synchronized (mHistograms) {
+            mHistograms.clear();
+            mSampleCounts.clear();
+        }
+    }
+
+    @VisibleForTesting
+    static int getBucket(long millis) {
+        if (millis < SUB_BUCKETS) {
+            return (int) Math.max(0, millis);
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(millis);
+        final int subBucket = (int) (millis >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKET_COUNT - 1, (exponent - 1) * SUB_BUCKETS + subBucket);
+    }
+
+    @VisibleForTesting
+    static long getLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS + 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.UserHandle;
+
+import com.android.documentsui.base.UserId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Whether the profiles are in quiet mode, so that loaders don't ask the user manager on every
+ * load. The state of a profile is read on first use, then kept up to date by the profile
+ * broadcasts. It is cleared when a session ends, in case a broadcast was missed meanwhile.
+ */
+public final class QuietModeSnapshot {
+
+    private final Context mContext;
+    private final Map<UserId, Boolean> mQuietMode = new ConcurrentHashMap<>();
+
+    public QuietModeSnapshot(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Returns true if the user is in quiet mode. Only queries the user manager the first time the
+     * user is asked about.
+     */
+    public boolean isQuietModeEnabled(UserId userId) {
+        // The query is made while holding the entry, so that it can't override a broadcast
+        // received meanwhile.
+        return mQuietMode.computeIfAbsent(userId, id -> id.isQuietModeEnabled(mContext));
+    }
+
+    /**
+     * Updates the state of the profile of a profile broadcast. Profiles that were added or
+     * removed are read again on next use.
+     */
+    public void onProfileBroadcast(Intent intent) {
+        final UserHandle userHandle = intent.getParcelableExtra(Intent.EXTRA_USER);
+        if (userHandle == null) {
+            mQuietMode.clear();
+            return;
+        }
+        final UserId userId = UserId.of(userHandle);
+        switch (intent.getAction()) {
+            case Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE:
+            case Intent.ACTION_PROFILE_UNAVAILABLE:
+                mQuietMode.put(userId, true);
+                break;
+            case Intent.ACTION_MANAGED_PROFILE_UNLOCKED:
+            case Intent.ACTION_PROFILE_AVAILABLE:
+                mQuietMode.put(userId, false);
+                break;
+            default:
+                mQuietMode.remove(userId);
+        }
+    }
+
+    public void clear() {
+        mQuietMode.clear();
+    }
+}
@@ -16,14 +16,19 @@
 
 package com.android.documentsui;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.text.format.DateUtils;
 
+import androidx.annotation.NonNull;
+
 import com.android.documentsui.base.Lookup;
+import com.android.documentsui.base.MimeTypes;
 import com.android.documentsui.base.RootInfo;
 import com.android.documentsui.base.State;
 import com.android.documentsui.base.UserId;
@@ -59,7 +64,7 @@ public class RecentsLoader extends MultiRootDocumentsLoader {
             DirectoryResult result = new DirectoryResult();
             result.exception = new CrossProfileNoPermissionException();
             return result;
-        } else if (mUserId.isQuietModeEnabled(getContext())) {
+        } else if (DocumentsApplication.isQuietModeEnabled(getContext(), mUserId)) {
             DirectoryResult result = new DirectoryResult();
             result.exception = new CrossProfileQuietModeException(mUserId);
             return result;
@@ -99,6 +104,23 @@ public class RecentsLoader extends MultiRootDocumentsLoader {
             return DocumentsContract.buildRecentDocumentsUri(authority, rootInfo.rootId);
         }
 
+        /**
+         * Pushes the limit and the filters of recents down to the provider, so that it doesn't
+         * return rows that would be dropped anyway. Providers report the arguments they applied
+         * in {@link ContentResolver#EXTRA_HONORED_ARGS}, the others are applied after the query.
+         */
+        @Override
+        protected void addQueryArgs(@NonNull Bundle queryArgs) {
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, MAX_DOCS_FROM_ROOT);
+            queryArgs.putLong(DocumentsContract.QUERY_ARG_LAST_MODIFIED_AFTER,
+                    getRejectBeforeTime());
+            // Only filter by mime type when not all types are accepted.
+            if (!MimeTypes.mimeMatches(mState.acceptMimes, "*/*")) {
+                queryArgs.putStringArray(DocumentsContract.QUERY_ARG_MIME_TYPES,
+                        mState.acceptMimes);
+            }
+        }
+
         @Override
         protected RootCursorWrapper generateResultCursor(RootInfo rootInfo, Cursor oriCursor) {
             return new RootCursorWrapper(rootInfo.userId, authority, rootInfo.rootId, oriCursor,
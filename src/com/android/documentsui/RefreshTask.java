@@ -85,7 +85,8 @@ public class RefreshTask extends TimeoutTask<Void, Boolean> {
             return false;
         }
 
-        if (!mState.canInteractWith(mDoc.userId) || mDoc.userId.isQuietModeEnabled(mContext)) {
+        if (!mState.canInteractWith(mDoc.userId)
+                || DocumentsApplication.isQuietModeEnabled(mContext, mDoc.userId)) {
             // No result was returned by these errors so it does not support refresh.
             Log.w(TAG, "Cannot refresh due to cross profile error.");
             return false;
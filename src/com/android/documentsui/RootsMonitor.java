@@ -22,6 +22,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.android.documentsui.AbstractActionHandler.CommonAddons;
@@ -34,6 +36,7 @@ import com.android.documentsui.queries.SearchViewManager;
 import com.android.documentsui.roots.ProvidersAccess;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Monitors roots change and refresh the page when necessary.
@@ -56,6 +59,10 @@ final class RootsMonitor<T extends Activity & CommonAddons> {
         mReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
+                final RootInfo currentRoot = activity.getCurrentRoot();
+                if (!mayHaveRemoved(currentRoot, intent)) {
+                    return;
+                }
                 new HandleRootsChangedTask<>(
                         activity,
                         actions,
@@ -63,11 +70,24 @@ final class RootsMonitor<T extends Activity & CommonAddons> {
                         docs,
                         state,
                         searchMgr,
-                        actionModeFinisher).execute(activity.getCurrentRoot());
+                        actionModeFinisher).execute(currentRoot);
             }
         };
     }
 
+    /**
+     * Returns false if the roots changes of the broadcast can't have removed the given root,
+     * i.e. if the broadcast lists the changed authorities, and the authority of the root isn't
+     * one of them.
+     */
+    @VisibleForTesting
+    static boolean mayHaveRemoved(@Nullable RootInfo root, Intent intent) {
+        final List<String> changedAuthorities =
+                intent.getStringArrayListExtra(ProvidersAccess.EXTRA_AUTHORITIES);
+        return root == null || changedAuthorities == null
+                || changedAuthorities.contains(root.authority);
+    }
+
     void start() {
         mManager.registerReceiver(mReceiver, new IntentFilter(ProvidersAccess.BROADCAST_ACTION));
     }
@@ -19,7 +19,6 @@ import static android.content.ContentResolver.wrap;
 
 import static com.android.documentsui.base.SharedMinimal.VERBOSE;
 
-import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -27,7 +26,6 @@ import android.graphics.Point;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.CancellationSignal;
-import android.os.FileUtils;
 import android.os.OperationCanceledException;
 import android.provider.DocumentsContract;
 import android.util.Log;
@@ -108,23 +106,21 @@ public final class ThumbnailLoader extends AsyncTask<Uri, Void, Bitmap> implemen
         final Context context = mIconThumb.getContext();
         final ContentResolver resolver = mUserId.getContentResolver(context);
 
-        ContentProviderClient client = null;
+        final ProviderClientPool pool = DocumentsApplication.getProviderClientPool(context);
         Bitmap result = null;
-        try {
-            client = DocumentsApplication.acquireUnstableProviderOrThrow(
-                resolver, mUri.getAuthority());
-            result = DocumentsContract.getDocumentThumbnail(wrap(client),
+        try (ProviderClientPool.Lease lease =
+                     pool.acquire(resolver, mUserId, mUri.getAuthority())) {
+            result = DocumentsContract.getDocumentThumbnail(wrap(lease.getClient()),
                     mUri, mThumbSize, mSignal);
             if (result != null && mAddToCache) {
                 final ThumbnailCache cache = DocumentsApplication.getThumbnailCache(context);
                 cache.putThumbnail(mUri, mUserId, mThumbSize, result, mLastModified);
             }
         } catch (Exception e) {
+            pool.onError(mUserId, mUri.getAuthority(), e);
             if (!(e instanceof OperationCanceledException)) {
                 Log.w(TAG, "Failed to load thumbnail for " + mUri + ": " + e);
             }
-        } finally {
-            FileUtils.closeQuietly(client);
         }
         return result;
     }
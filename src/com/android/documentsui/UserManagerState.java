@@ -35,12 +35,15 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.pm.UserProperties;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.util.Log;
 
 import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.RequiresPermission;
 import androidx.annotation.VisibleForTesting;
@@ -54,9 +57,12 @@ import com.google.common.base.Objects;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 @RequiresApi(Build.VERSION_CODES.S)
 public interface UserManagerState {
@@ -100,6 +106,14 @@ public interface UserManagerState {
     /** Returns true if there are hidden profiles */
     boolean areHiddenInQuietModeProfilesPresent();
 
+    /**
+     * Computes the list of userIds and all the associated maps in the background. They are
+     * published together once computed, and the previous ones are served until then. Before the
+     * first refresh completes, getters wait for it for a bounded time, then serve only the current
+     * user, with empty maps.
+     */
+    void refreshAsync();
+
     /** Creates an implementation of {@link UserManagerState}. */
     // TODO: b/314746383 Make this class a singleton
     static UserManagerState create(Context context) {
@@ -110,52 +124,68 @@ public interface UserManagerState {
     final class RuntimeUserManagerState implements UserManagerState {
 
         private static final String TAG = "UserManagerState";
+        // How long a getter waits for a refresh when nothing was published yet.
+        @VisibleForTesting
+        static final long REFRESH_TIMEOUT_MS = 500;
         private final Context mContext;
         private final UserId mCurrentUser;
         private final boolean mIsDeviceSupported;
         private final UserManager mUserManager;
         private final ConfigStore mConfigStore;
+        private final Executor mExecutor;
+
+        /*
+         * The list and maps below are unmodifiable, and replaced as a whole while holding mLock,
+         * so that readers don't need to lock. Each of them is null until it's first refreshed.
+         */
+        private final Object mLock = new Object();
 
         /**
          * List of all the {@link UserId} that have the {@link UserProperties.ShowInSharingSurfaces}
          * set as `SHOW_IN_SHARING_SURFACES_SEPARATE` OR it is a system/personal user
          */
-        @GuardedBy("mUserIds")
-        private final List<UserId> mUserIds = new ArrayList<>();
+        private volatile @Nullable List<UserId> mUserIds;
 
         /** Mapping between the {@link UserId} to the corresponding profile label */
-        @GuardedBy("mUserIdToLabelMap")
-        private final Map<UserId, String> mUserIdToLabelMap = new HashMap<>();
+        private volatile @Nullable Map<UserId, String> mUserIdToLabelMap;
 
         /** Mapping between the {@link UserId} to the corresponding profile badge */
-        @GuardedBy("mUserIdToBadgeMap")
-        private final Map<UserId, Drawable> mUserIdToBadgeMap = new HashMap<>();
+        private volatile @Nullable Map<UserId, Drawable> mUserIdToBadgeMap;
 
         /**
          * Map containing {@link UserId}, other than that of the current user, as key and boolean
          * denoting whether it is accessible by the current user or not as value
          */
-        @GuardedBy("mCanForwardToProfileIdMap")
-        private final Map<UserId, Boolean> mCanForwardToProfileIdMap = new HashMap<>();
+        private volatile @Nullable Map<UserId, Boolean> mCanForwardToProfileIdMap;
+
+        /** Incremented on every change, so that values computed before are not published. */
+        @GuardedBy("mLock")
+        private int mGeneration;
+
+        /** The generation of the last refresh started, which is pending if it's still current. */
+        @GuardedBy("mLock")
+        private int mRefreshGeneration = -1;
 
-        private Intent mCurrentStateIntent;
+        /** Whether the pending refresh, if any, computes the cross-profile map. */
+        @GuardedBy("mLock")
+        private boolean mRefreshHasIntent;
+
+        private volatile Intent mCurrentStateIntent;
 
         private final BroadcastReceiver mIntentReceiver =
                 new BroadcastReceiver() {
                     @Override
                     public void onReceive(Context context, Intent intent) {
-                        synchronized (mUserIds) {
-                            mUserIds.clear();
-                        }
-                        synchronized (mUserIdToLabelMap) {
-                            mUserIdToLabelMap.clear();
-                        }
-                        synchronized (mUserIdToBadgeMap) {
-                            mUserIdToBadgeMap.clear();
-                        }
-                        synchronized (mCanForwardToProfileIdMap) {
-                            mCanForwardToProfileIdMap.clear();
+                        // Removed profiles are dropped right away, the rest is refreshed in the
+                        // background while the previous state is still served.
+                        final UserHandle user = intent.getParcelableExtra(Intent.EXTRA_USER);
+                        if (user != null
+                                && (Intent.ACTION_MANAGED_PROFILE_REMOVED.equals(intent.getAction())
+                                        || Intent.ACTION_PROFILE_REMOVED.equals(
+                                                intent.getAction()))) {
+                            removeUserId(UserId.of(user));
                         }
+                        refreshAsync();
                     }
                 };
 
@@ -164,7 +194,8 @@ public interface UserManagerState {
                     context,
                     UserId.CURRENT_USER,
                     Features.CROSS_PROFILE_TABS && isDeviceSupported(context),
-                    DocumentsApplication.getConfigStore());
+                    DocumentsApplication.getConfigStore(),
+                    AsyncTask.THREAD_POOL_EXECUTOR);
         }
 
         @VisibleForTesting
@@ -172,8 +203,10 @@ public interface UserManagerState {
                 Context context,
                 UserId currentUser,
                 boolean isDeviceSupported,
-                ConfigStore configStore) {
+                ConfigStore configStore,
+                Executor executor) {
             mContext = context.getApplicationContext();
+            mExecutor = executor;
             mCurrentUser = checkNotNull(currentUser);
             mIsDeviceSupported = isDeviceSupported;
             mUserManager = mContext.getSystemService(UserManager.class);
@@ -191,44 +224,128 @@ public interface UserManagerState {
 
         @Override
         public List<UserId> getUserIds() {
-            synchronized (mUserIds) {
-                if (mUserIds.isEmpty()) {
-                    mUserIds.addAll(getUserIdsInternal());
-                }
-                return mUserIds;
+            final List<UserId> userIds = mUserIds;
+            if (userIds != null) {
+                return userIds;
             }
+            final List<UserId> refreshed = awaitRefresh(mCurrentStateIntent, () -> mUserIds);
+            return refreshed != null ? refreshed : Collections.singletonList(mCurrentUser);
         }
 
         @Override
         public Map<UserId, String> getUserIdToLabelMap() {
-            synchronized (mUserIdToLabelMap) {
-                if (mUserIdToLabelMap.isEmpty()) {
-                    getUserIdToLabelMapInternal();
-                }
-                return mUserIdToLabelMap;
+            final Map<UserId, String> labels = mUserIdToLabelMap;
+            if (labels != null) {
+                return labels;
             }
+            final Map<UserId, String> refreshed =
+                    awaitRefresh(mCurrentStateIntent, () -> mUserIdToLabelMap);
+            return refreshed != null ? refreshed : Collections.emptyMap();
         }
 
         @Override
         public Map<UserId, Drawable> getUserIdToBadgeMap() {
-            synchronized (mUserIdToBadgeMap) {
-                if (mUserIdToBadgeMap.isEmpty()) {
-                    getUserIdToBadgeMapInternal();
-                }
-                return mUserIdToBadgeMap;
+            final Map<UserId, Drawable> badges = mUserIdToBadgeMap;
+            if (badges != null) {
+                return badges;
             }
+            final Map<UserId, Drawable> refreshed =
+                    awaitRefresh(mCurrentStateIntent, () -> mUserIdToBadgeMap);
+            return refreshed != null ? refreshed : Collections.emptyMap();
         }
 
         @Override
         public Map<UserId, Boolean> getCanForwardToProfileIdMap(Intent intent) {
-            synchronized (mCanForwardToProfileIdMap) {
-                if (mCanForwardToProfileIdMap.isEmpty()) {
-                    getCanForwardToProfileIdMapInternal(intent);
+            final Map<UserId, Boolean> canForward = mCanForwardToProfileIdMap;
+            if (canForward != null) {
+                return canForward;
+            }
+            // If the refresh doesn't complete in time, no other profile can be forwarded to.
+            final Map<UserId, Boolean> refreshed =
+                    awaitRefresh(intent, () -> mCanForwardToProfileIdMap);
+            return refreshed != null ? refreshed : Collections.emptyMap();
+        }
+
+        @Override
+        public void refreshAsync() {
+            refreshAsync(mCurrentStateIntent);
+        }
+
+        /**
+         * Returns the value once a refresh published it, starting one if needed, and waiting for
+         * it for up to {@link #REFRESH_TIMEOUT_MS}. This way the first use in a session sees all
+         * the profiles, as nothing tells the callers when a refresh completes. Returns null if
+         * the value wasn't published in time.
+         */
+        private <T> @Nullable T awaitRefresh(@Nullable Intent intent, Supplier<T> value) {
+            refreshIfNeeded(intent);
+            final long deadline = SystemClock.uptimeMillis() + REFRESH_TIMEOUT_MS;
+            synchronized (mLock) {
+                T result = value.get();
+                long remaining = deadline - SystemClock.uptimeMillis();
+                // Stops waiting once the refresh completes, or is discarded.
+                while (result == null && remaining > 0 && mRefreshGeneration == mGeneration) {
+                    try {
+                        mLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    result = value.get();
+                    remaining = deadline - SystemClock.uptimeMillis();
                 }
-                return mCanForwardToProfileIdMap;
+                return result;
             }
         }
 
+        /**
+         * Starts a refresh for a value that wasn't computed yet, unless one is already pending
+         * that computes it.
+         */
+        private void refreshIfNeeded(@Nullable Intent intent) {
+            synchronized (mLock) {
+                if (mRefreshGeneration == mGeneration && (intent == null || mRefreshHasIntent)) {
+                    return;
+                }
+            }
+            refreshAsync(intent);
+        }
+
+        private void refreshAsync(@Nullable Intent intent) {
+            final int generation;
+            synchronized (mLock) {
+                generation = ++mGeneration;
+                mRefreshGeneration = generation;
+                mRefreshHasIntent = intent != null;
+            }
+            mExecutor.execute(() -> {
+                final List<UserId> userIds = Collections.unmodifiableList(getUserIdsInternal());
+                final Map<UserId, String> labels =
+                        Collections.unmodifiableMap(getUserIdToLabelMapInternal(userIds));
+                final Map<UserId, Drawable> badges =
+                        Collections.unmodifiableMap(getUserIdToBadgeMapInternal(userIds));
+                // Without the intent of an activity, this map is refreshed on its first use.
+                final Map<UserId, Boolean> canForward = intent != null
+                        ? Collections.unmodifiableMap(
+                                getCanForwardToProfileIdMapInternal(intent, userIds))
+                        : null;
+                synchronized (mLock) {
+                    // Wakes up the getters waiting for the refresh, see awaitRefresh.
+                    mLock.notifyAll();
+                    if (generation != mGeneration) {
+                        // Changed meanwhile, a newer refresh or change wins.
+                        return;
+                    }
+                    mUserIds = userIds;
+                    mUserIdToLabelMap = labels;
+                    mUserIdToBadgeMap = badges;
+                    mCanForwardToProfileIdMap = canForward;
+                    // No longer pending, so values still missing are refreshed again.
+                    mRefreshGeneration = -1;
+                }
+            });
+        }
+
         @Override
         @SuppressLint("NewApi")
         public void onProfileActionStatusChange(String action, UserId userId) {
@@ -240,36 +357,32 @@ public interface UserManagerState {
             }
             if (Intent.ACTION_PROFILE_UNAVAILABLE.equals(action)
                     || Intent.ACTION_PROFILE_REMOVED.equals(action)) {
-                synchronized (mUserIds) {
-                    mUserIds.remove(userId);
-                }
+                removeUserId(userId);
             } else if (Intent.ACTION_PROFILE_AVAILABLE.equals(action)
                     || Intent.ACTION_PROFILE_ADDED.equals(action)) {
-                synchronized (mUserIds) {
-                    if (!mUserIds.contains(userId)) {
-                        mUserIds.add(userId);
-                    }
-                }
-                synchronized (mUserIdToLabelMap) {
-                    if (!mUserIdToLabelMap.containsKey(userId)) {
-                        mUserIdToLabelMap.put(userId, getProfileLabel(userId));
-                    }
-                }
-                synchronized (mUserIdToBadgeMap) {
-                    if (!mUserIdToBadgeMap.containsKey(userId)) {
-                        mUserIdToBadgeMap.put(userId, getProfileBadge(userId));
-                    }
-                }
-                synchronized (mCanForwardToProfileIdMap) {
-                    if (!mCanForwardToProfileIdMap.containsKey(userId)) {
-                        mCanForwardToProfileIdMap.put(
-                                userId,
-                                isCrossProfileAllowedToUser(
-                                        mContext,
-                                        mCurrentStateIntent,
-                                        UserId.CURRENT_USER,
-                                        userId));
+                // Values that were not computed yet will include the profile once computed. The
+                // user manager is queried before locking, so that readers never wait for it.
+                final String label = needsEntry(mUserIdToLabelMap, userId)
+                        ? getProfileLabel(userId)
+                        : null;
+                final Drawable badge = needsEntry(mUserIdToBadgeMap, userId)
+                        ? getProfileBadge(userId)
+                        : null;
+                final Boolean canForward = needsEntry(mCanForwardToProfileIdMap, userId)
+                        ? isCrossProfileAllowedToUser(
+                                mContext, mCurrentStateIntent, UserId.CURRENT_USER, userId)
+                        : null;
+                synchronized (mLock) {
+                    mGeneration++;
+                    if (mUserIds != null && !mUserIds.contains(userId)) {
+                        final List<UserId> userIds = new ArrayList<>(mUserIds);
+                        userIds.add(userId);
+                        mUserIds = Collections.unmodifiableList(userIds);
                     }
+                    mUserIdToLabelMap = withEntry(mUserIdToLabelMap, userId, label);
+                    mUserIdToBadgeMap = withEntry(mUserIdToBadgeMap, userId, badge);
+                    mCanForwardToProfileIdMap =
+                            withEntry(mCanForwardToProfileIdMap, userId, canForward);
                 }
             } else {
                 Log.e(TAG, "Unexpected action received: " + action);
@@ -279,6 +392,10 @@ public interface UserManagerState {
         @Override
         public void setCurrentStateIntent(Intent intent) {
             mCurrentStateIntent = intent;
+            // The cross-profile map can only be computed with the intent.
+            if (mCanForwardToProfileIdMap == null) {
+                refreshIfNeeded(intent);
+            }
         }
 
         @Override
@@ -298,6 +415,36 @@ public interface UserManagerState {
             return false;
         }
 
+        private void removeUserId(UserId userId) {
+            synchronized (mLock) {
+                mGeneration++;
+                if (mUserIds != null && mUserIds.contains(userId)) {
+                    final List<UserId> userIds = new ArrayList<>(mUserIds);
+                    userIds.remove(userId);
+                    mUserIds = Collections.unmodifiableList(userIds);
+                }
+            }
+        }
+
+        /** Returns whether the map was computed, but has no value for the user yet. */
+        private static boolean needsEntry(@Nullable Map<UserId, ?> map, UserId userId) {
+            return map != null && !map.containsKey(userId);
+        }
+
+        /**
+         * Returns a copy of the map with the value of the user added, or the map itself if it
+         * was not computed yet, already has a value for the user, or there is no value.
+         */
+        private static <V> @Nullable Map<UserId, V> withEntry(
+                @Nullable Map<UserId, V> map, UserId userId, @Nullable V value) {
+            if (!needsEntry(map, userId) || value == null) {
+                return map;
+            }
+            final Map<UserId, V> result = new HashMap<>(map);
+            result.put(userId, value);
+            return Collections.unmodifiableMap(result);
+        }
+
         private List<UserId> getUserIdsInternal() {
             final List<UserId> result = new ArrayList<>();
 
@@ -415,47 +562,41 @@ public interface UserManagerState {
             return false;
         }
 
-        private void getUserIdToLabelMapInternal() {
+        private Map<UserId, String> getUserIdToLabelMapInternal(List<UserId> userIds) {
             if (SdkLevel.isAtLeastV()) {
-                getUserIdToLabelMapInternalPostV();
+                return getUserIdToLabelMapInternalPostV(userIds);
             } else {
-                getUserIdToLabelMapInternalPreV();
+                return getUserIdToLabelMapInternalPreV(userIds);
             }
         }
 
         @SuppressLint("NewApi")
-        private void getUserIdToLabelMapInternalPostV() {
+        private Map<UserId, String> getUserIdToLabelMapInternalPostV(List<UserId> userIds) {
+            final Map<UserId, String> result = new HashMap<>();
             if (mUserManager == null) {
                 Log.e(TAG, "cannot obtain user manager");
-                return;
+                return result;
             }
-            List<UserId> userIds = getUserIds();
             for (UserId userId : userIds) {
-                synchronized (mUserIdToLabelMap) {
-                    mUserIdToLabelMap.put(userId, getProfileLabel(userId));
-                }
+                result.put(userId, getProfileLabel(userId));
             }
+            return result;
         }
 
-        private void getUserIdToLabelMapInternalPreV() {
+        private Map<UserId, String> getUserIdToLabelMapInternalPreV(List<UserId> userIds) {
+            final Map<UserId, String> result = new HashMap<>();
             if (mUserManager == null) {
                 Log.e(TAG, "cannot obtain user manager");
-                return;
+                return result;
             }
-            List<UserId> userIds = getUserIds();
             for (UserId userId : userIds) {
                 if (mUserManager.isManagedProfile(userId.getIdentifier())) {
-                    synchronized (mUserIdToLabelMap) {
-                        mUserIdToLabelMap.put(
-                                userId, getEnterpriseString(WORK_TAB, R.string.work_tab));
-                    }
+                    result.put(userId, getEnterpriseString(WORK_TAB, R.string.work_tab));
                 } else {
-                    synchronized (mUserIdToLabelMap) {
-                        mUserIdToLabelMap.put(
-                                userId, getEnterpriseString(PERSONAL_TAB, R.string.personal_tab));
-                    }
+                    result.put(userId, getEnterpriseString(PERSONAL_TAB, R.string.personal_tab));
                 }
             }
+            return result;
         }
 
         @SuppressLint("NewApi")
@@ -498,46 +639,44 @@ public interface UserManagerState {
                     .getString(updatableStringId, () -> mContext.getString(defaultStringId));
         }
 
-        private void getUserIdToBadgeMapInternal() {
+        private Map<UserId, Drawable> getUserIdToBadgeMapInternal(List<UserId> userIds) {
             if (SdkLevel.isAtLeastV()) {
-                getUserIdToBadgeMapInternalPostV();
+                return getUserIdToBadgeMapInternalPostV(userIds);
             } else {
-                getUserIdToBadgeMapInternalPreV();
+                return getUserIdToBadgeMapInternalPreV(userIds);
             }
         }
 
         @SuppressLint("NewApi")
-        private void getUserIdToBadgeMapInternalPostV() {
+        private Map<UserId, Drawable> getUserIdToBadgeMapInternalPostV(List<UserId> userIds) {
+            final Map<UserId, Drawable> result = new HashMap<>();
             if (mUserManager == null) {
                 Log.e(TAG, "cannot obtain user manager");
-                return;
+                return result;
             }
-            List<UserId> userIds = getUserIds();
             for (UserId userId : userIds) {
-                synchronized (mUserIdToBadgeMap) {
-                    mUserIdToBadgeMap.put(userId, getProfileBadge(userId));
-                }
+                result.put(userId, getProfileBadge(userId));
             }
+            return result;
         }
 
-        private void getUserIdToBadgeMapInternalPreV() {
-            if (!SdkLevel.isAtLeastR()) return;
+        private Map<UserId, Drawable> getUserIdToBadgeMapInternalPreV(List<UserId> userIds) {
+            final Map<UserId, Drawable> result = new HashMap<>();
+            if (!SdkLevel.isAtLeastR()) return result;
             if (mUserManager == null) {
                 Log.e(TAG, "cannot obtain user manager");
-                return;
+                return result;
             }
-            List<UserId> userIds = getUserIds();
             for (UserId userId : userIds) {
                 if (mUserManager.isManagedProfile(userId.getIdentifier())) {
-                    synchronized (mUserIdToBadgeMap) {
-                        mUserIdToBadgeMap.put(
-                                userId,
-                                SdkLevel.isAtLeastT()
-                                        ? getWorkProfileBadge()
-                                        : mContext.getDrawable(R.drawable.ic_briefcase));
-                    }
+                    result.put(
+                            userId,
+                            SdkLevel.isAtLeastT()
+                                    ? getWorkProfileBadge()
+                                    : mContext.getDrawable(R.drawable.ic_briefcase));
                 }
             }
+            return result;
         }
 
         @SuppressLint("NewApi")
@@ -593,17 +732,14 @@ public interface UserManagerState {
          * @param intent The intent Photopicker is currently running under, for
          *     CrossProfileForwardActivity checking.
          */
-        private void getCanForwardToProfileIdMapInternal(Intent intent) {
-
-            synchronized (mCanForwardToProfileIdMap) {
-                mCanForwardToProfileIdMap.clear();
-                for (UserId userId : getUserIds()) {
-                    mCanForwardToProfileIdMap.put(
-                            userId,
-                            isCrossProfileAllowedToUser(
-                                    mContext, intent, mCurrentUser, userId));
-                }
+        private Map<UserId, Boolean> getCanForwardToProfileIdMapInternal(
+                Intent intent, List<UserId> userIds) {
+            final Map<UserId, Boolean> result = new HashMap<>();
+            for (UserId userId : userIds) {
+                result.put(userId,
+                        isCrossProfileAllowedToUser(mContext, intent, mCurrentUser, userId));
             }
+            return result;
         }
 
         /**
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import android.database.Cursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * The indices of the document columns of a cursor, resolved once instead of on every row.
+ *
+ * <p>Accessors follow {@link DocumentInfo#getCursorString}, {@link DocumentInfo#getCursorLong}
+ * and {@link DocumentInfo#getCursorInt}: missing strings are null, missing or null longs are -1,
+ * and missing ints are 0.
+ */
+public final class CursorSchema {
+
+    private final WeakReference<Cursor> mCursor;
+
+    private final int mDocumentId;
+    private final int mMimeType;
+    private final int mDisplayName;
+    private final int mLastModified;
+    private final int mFlags;
+    private final int mSummary;
+    private final int mSize;
+    private final int mIcon;
+    private final int mAuthority;
+    private final int mUserId;
+
+    private CursorSchema(Cursor cursor) {
+        mCursor = new WeakReference<>(cursor);
+        mDocumentId = cursor.getColumnIndex(Document.COLUMN_DOCUMENT_ID);
+        mMimeType = cursor.getColumnIndex(Document.COLUMN_MIME_TYPE);
+        mDisplayName = cursor.getColumnIndex(Document.COLUMN_DISPLAY_NAME);
+        mLastModified = cursor.getColumnIndex(Document.COLUMN_LAST_MODIFIED);
+        mFlags = cursor.getColumnIndex(Document.COLUMN_FLAGS);
+        mSummary = cursor.getColumnIndex(Document.COLUMN_SUMMARY);
+        mSize = cursor.getColumnIndex(Document.COLUMN_SIZE);
+        mIcon = cursor.getColumnIndex(Document.COLUMN_ICON);
+        mAuthority = cursor.getColumnIndex(RootCursorWrapper.COLUMN_AUTHORITY);
+        mUserId = cursor.getColumnIndex(RootCursorWrapper.COLUMN_USER_ID);
+    }
+
+    public static CursorSchema of(Cursor cursor) {
+        return new CursorSchema(cursor);
+    }
+
+    /**
+     * Returns the given schema if it was resolved for the given cursor, or else resolves a new
+     * one. Used by callers that are handed the same cursor over and over, such as view holders.
+     */
+    public static CursorSchema of(@Nullable CursorSchema schema, Cursor cursor) {
+        return schema != null && schema.mCursor.get() == cursor ? schema : new CursorSchema(cursor);
+    }
+
+    public @Nullable String getDocumentId(Cursor cursor) {
+        return getString(cursor, mDocumentId);
+    }
+
+    public @Nullable String getMimeType(Cursor cursor) {
+        return getString(cursor, mMimeType);
+    }
+
+    public @Nullable String getDisplayName(Cursor cursor) {
+        return getString(cursor, mDisplayName);
+    }
+
+    public long getLastModified(Cursor cursor) {
+        return getLong(cursor, mLastModified);
+    }
+
+    public int getFlags(Cursor cursor) {
+        return getInt(cursor, mFlags);
+    }
+
+    public @Nullable String getSummary(Cursor cursor) {
+        return getString(cursor, mSummary);
+    }
+
+    public long getSize(Cursor cursor) {
+        return getLong(cursor, mSize);
+    }
+
+    public int getIcon(Cursor cursor) {
+        return getInt(cursor, mIcon);
+    }
+
+    public @Nullable String getAuthority(Cursor cursor) {
+        return getString(cursor, mAuthority);
+    }
+
+    public UserId getUserId(Cursor cursor) {
+        return UserId.of(getInt(cursor, mUserId));
+    }
+
+    private static @Nullable String getString(Cursor cursor, int index) {
+        return index != -1 ? cursor.getString(index) : null;
+    }
+
+    private static long getLong(Cursor cursor, int index) {
+        if (index == -1) return -1;
+        // Integers are read as such, which avoids allocating a string for every row.
+        if (cursor.getType(index) == Cursor.FIELD_TYPE_INTEGER) {
+            return cursor.getLong(index);
+        }
+        final String value = cursor.getString(index);
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int getInt(Cursor cursor, int index) {
+        return index != -1 ? cursor.getInt(index) : 0;
+    }
+}
@@ -58,6 +58,22 @@ public class DocumentInfo implements Durable, Parcelable {
     private static final int VERSION_SPLIT_URI = 2;
     private static final int VERSION_USER_ID = 3;
 
+    /**
+     * The columns read from document cursors by {@link #updateFromCursor}, and by the sort, filter
+     * and view holder code working on directory cursors. Directory, recents and search queries
+     * request only these, so providers don't ship any other columns they may have.
+     */
+    public static final String[] PROJECTION = new String[] {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_LAST_MODIFIED,
+            Document.COLUMN_FLAGS,
+            Document.COLUMN_SUMMARY,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_ICON,
+    };
+
     public UserId userId;
     public String authority;
     public String documentId;
@@ -187,6 +203,24 @@ public class DocumentInfo implements Durable, Parcelable {
         this.deriveFields();
     }
 
+    /**
+     * Updates from the current row of a cursor that has the {@link RootCursorWrapper} columns,
+     * with the columns of a schema resolved for the cursor. Used when reading many rows.
+     */
+    public void updateFromCursor(Cursor cursor, CursorSchema schema) {
+        this.userId = schema.getUserId(cursor);
+        this.authority = schema.getAuthority(cursor);
+        this.documentId = schema.getDocumentId(cursor);
+        this.mimeType = schema.getMimeType(cursor);
+        this.displayName = schema.getDisplayName(cursor);
+        this.lastModified = schema.getLastModified(cursor);
+        this.flags = schema.getFlags(cursor);
+        this.summary = schema.getSummary(cursor);
+        this.size = schema.getSize(cursor);
+        this.icon = schema.getIcon(cursor);
+        this.deriveFields();
+    }
+
     /**
      * Resolves a document info from the uri. The caller should specify the user of the resolver
      * by providing a {@link UserId}.
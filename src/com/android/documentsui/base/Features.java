@@ -39,6 +39,9 @@ public interface Features {
     boolean isContentPagingEnabled();
     boolean isContentRefreshEnabled();
     boolean isDebugSupportEnabled();
+    boolean isDirectoryPreloadEnabled();
+    boolean isDirectorySnapshotsEnabled();
+    boolean isFilenameIndexEnabled();
     boolean isFoldersInSearchResultsEnabled();
     boolean isGestureScaleEnabled();
     boolean isInspectorEnabled();
@@ -122,6 +125,21 @@ public interface Features {
             return isDebugPolicyEnabled() && isFunPolicyEnabled();
         }
 
+        @Override
+        public boolean isDirectoryPreloadEnabled() {
+            return isEnabled(R.bool.feature_directory_preload);
+        }
+
+        @Override
+        public boolean isDirectorySnapshotsEnabled() {
+            return isEnabled(R.bool.feature_directory_snapshots);
+        }
+
+        @Override
+        public boolean isFilenameIndexEnabled() {
+            return isEnabled(R.bool.feature_filename_index);
+        }
+
         @Override
         public boolean isFoldersInSearchResultsEnabled() {
             return isEnabled(R.bool.feature_folders_in_search_results);
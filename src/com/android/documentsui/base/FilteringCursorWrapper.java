@@ -16,8 +16,6 @@
 
 package com.android.documentsui.base;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorLong;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 import static com.android.documentsui.base.SharedMinimal.TAG;
 
@@ -25,7 +23,6 @@ import android.database.AbstractCursor;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Bundle;
-import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
 /**
@@ -33,6 +30,8 @@ import android.util.Log;
  */
 public class FilteringCursorWrapper extends AbstractCursor {
     private final Cursor mCursor;
+    // Resolved by the first filter.
+    private CursorSchema mSchema;
 
     private int[] mPositions;
     private int mCount;
@@ -53,8 +52,8 @@ public class FilteringCursorWrapper extends AbstractCursor {
      * @param rejectMimes blocked list of mimes
      */
     public void filterMimes(String[] acceptMimes, String[] rejectMimes) {
-        filterByCondition((cursor) -> {
-            final String mimeType = getCursorString(cursor, Document.COLUMN_MIME_TYPE);
+        filterByCondition((cursor, schema) -> {
+            final String mimeType = schema.getMimeType(cursor);
             if (rejectMimes != null && MimeTypes.mimeMatches(rejectMimes, mimeType)) {
                 return false;
             }
@@ -64,8 +63,8 @@ public class FilteringCursorWrapper extends AbstractCursor {
 
     /** Filters cursor according to last modified time, and reject earlier than given timestamp. */
     public void filterLastModified(long rejectBeforeTimestamp) {
-        filterByCondition((cursor) -> {
-            final long lastModified = getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED);
+        filterByCondition((cursor, schema) -> {
+            final long lastModified = schema.getLastModified(cursor);
             return lastModified >= rejectBeforeTimestamp;
         });
     }
@@ -76,11 +75,11 @@ public class FilteringCursorWrapper extends AbstractCursor {
             return;
         }
 
-        filterByCondition((cursor) -> {
+        filterByCondition((cursor, schema) -> {
             // Judge by name and documentId separately because for some providers
             // e.g. DownloadProvider, documentId may not contain file name.
-            final String name = getCursorString(cursor, Document.COLUMN_DISPLAY_NAME);
-            final String documentId = getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
+            final String name = schema.getDisplayName(cursor);
+            final String documentId = schema.getDocumentId(cursor);
             boolean documentIdHidden = documentId != null && documentId.contains("/.");
             boolean fileNameHidden = name != null && name.startsWith(".");
             return !(documentIdHidden || fileNameHidden);
@@ -164,17 +163,20 @@ public class FilteringCursorWrapper extends AbstractCursor {
     }
 
     private interface FilteringCondition {
-        boolean accept(Cursor cursor);
+        boolean accept(Cursor cursor, CursorSchema schema);
     }
 
     private void filterByCondition(FilteringCondition condition) {
+        if (mSchema == null) {
+            mSchema = CursorSchema.of(mCursor);
+        }
         final int oldCount = this.getCount();
         int[] newPositions = new int[oldCount];
         int newCount = 0;
 
         this.moveToPosition(-1);
         while (this.moveToNext() && newCount < oldCount) {
-            if (condition.accept(mCursor)) {
+            if (condition.accept(mCursor, mSchema)) {
                 newPositions[newCount++] = mPositions[this.getPosition()];
             }
         }
@@ -41,6 +41,7 @@ import com.android.documentsui.ConfigStore;
 import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.R;
 import com.android.documentsui.UserManagerState;
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.Shared;
 import com.android.documentsui.base.State;
 import com.android.documentsui.base.UserId;
@@ -70,6 +71,9 @@ public abstract class DocumentHolder
 
     private final DocumentItemDetails mDetails;
 
+    // Holders are bound to rows of the same cursor until the model is updated.
+    private @Nullable CursorSchema mSchema;
+
     public DocumentHolder(Context context, ViewGroup parent, int layout, ConfigStore configStore) {
         this(context, inflateLayout(context, parent, layout), configStore);
     }
@@ -89,6 +93,14 @@ public abstract class DocumentHolder
      */
     public abstract void bind(Cursor cursor, String modelId);
 
+    /**
+     * Returns the schema of the given cursor, which is resolved once per cursor.
+     */
+    protected CursorSchema getSchema(Cursor cursor) {
+        mSchema = CursorSchema.of(mSchema, cursor);
+        return mSchema;
+    }
+
     public String getModelId() {
         return mModelId;
     }
@@ -18,7 +18,6 @@ package com.android.documentsui.dirlist;
 
 import static com.android.documentsui.DevicePolicyResources.Drawables.Style.SOLID_COLORED;
 import static com.android.documentsui.DevicePolicyResources.Drawables.WORK_PROFILE_ICON;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 
 import android.app.admin.DevicePolicyManager;
 import android.content.Context;
@@ -26,7 +25,6 @@ import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.provider.DocumentsContract;
-import android.provider.DocumentsContract.Document;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -138,7 +136,7 @@ final class GridDirectoryHolder extends DocumentHolder {
         this.mModelId = modelId;
 
         mTitle.setText(
-                getCursorString(cursor, Document.COLUMN_DISPLAY_NAME),
+                getSchema(cursor).getDisplayName(cursor),
                 TextView.BufferType.SPANNABLE);
     }
 }
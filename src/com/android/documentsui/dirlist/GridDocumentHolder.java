@@ -18,9 +18,6 @@ package com.android.documentsui.dirlist;
 
 import static com.android.documentsui.DevicePolicyResources.Drawables.Style.SOLID_COLORED;
 import static com.android.documentsui.DevicePolicyResources.Drawables.WORK_PROFILE_ICON;
-import static com.android.documentsui.base.DocumentInfo.getCursorInt;
-import static com.android.documentsui.base.DocumentInfo.getCursorLong;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 import static com.android.documentsui.util.FlagUtils.isUseMaterial3FlagEnabled;
 
 import android.app.admin.DevicePolicyManager;
@@ -28,7 +25,6 @@ import android.content.Context;
 import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
-import android.provider.DocumentsContract.Document;
 import android.text.format.Formatter;
 import android.view.MotionEvent;
 import android.view.View;
@@ -43,11 +39,11 @@ import com.android.documentsui.ConfigStore;
 import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.IconUtils;
 import com.android.documentsui.R;
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.Shared;
 import com.android.documentsui.base.State;
 import com.android.documentsui.base.UserId;
-import com.android.documentsui.roots.RootCursorWrapper;
 import com.android.documentsui.ui.Views;
 import com.android.modules.utils.build.SdkLevel;
 
@@ -254,9 +250,8 @@ final class GridDocumentHolder extends DocumentHolder {
 
         mModelId = modelId;
 
-        mDoc.updateFromCursor(cursor,
-                UserId.of(getCursorInt(cursor, RootCursorWrapper.COLUMN_USER_ID)),
-                getCursorString(cursor, RootCursorWrapper.COLUMN_AUTHORITY));
+        final CursorSchema schema = getSchema(cursor);
+        mDoc.updateFromCursor(cursor, schema);
 
         mIconHelper.stopLoading(mIconThumb);
 
@@ -287,7 +282,7 @@ final class GridDocumentHolder extends DocumentHolder {
         // If file is partial, we want to show summary field as that's more relevant than fileSize
         // and date
         if (mDoc.isPartial()) {
-            final String docSummary = getCursorString(cursor, Document.COLUMN_SUMMARY);
+            final String docSummary = schema.getSummary(cursor);
             mDetails.setVisibility(View.VISIBLE);
             mDate.setText(null);
             mDetails.setText(docSummary);
@@ -298,7 +293,7 @@ final class GridDocumentHolder extends DocumentHolder {
                 mDate.setText(Shared.formatTime(mContext, mDoc.lastModified));
             }
 
-            final long docSize = getCursorLong(cursor, Document.COLUMN_SIZE);
+            final long docSize = schema.getSize(cursor);
             if (mDoc.isDirectory() || docSize == -1) {
                 mDetails.setVisibility(View.GONE);
             } else {
@@ -18,16 +18,12 @@ package com.android.documentsui.dirlist;
 
 import static com.android.documentsui.DevicePolicyResources.Drawables.Style.SOLID_NOT_COLORED;
 import static com.android.documentsui.DevicePolicyResources.Drawables.WORK_PROFILE_ICON;
-import static com.android.documentsui.base.DocumentInfo.getCursorInt;
-import static com.android.documentsui.base.DocumentInfo.getCursorLong;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 
 import android.app.admin.DevicePolicyManager;
 import android.content.Context;
 import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
-import android.provider.DocumentsContract.Document;
 import android.text.format.Formatter;
 import android.view.MotionEvent;
 import android.view.View;
@@ -39,10 +35,10 @@ import androidx.annotation.RequiresApi;
 import com.android.documentsui.ConfigStore;
 import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.R;
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.Shared;
 import com.android.documentsui.base.UserId;
-import com.android.documentsui.roots.RootCursorWrapper;
 import com.android.documentsui.ui.Views;
 import com.android.modules.utils.build.SdkLevel;
 
@@ -178,9 +174,8 @@ final class GridPhotoHolder extends DocumentHolder {
 
         mModelId = modelId;
 
-        mDoc.updateFromCursor(cursor,
-                UserId.of(getCursorInt(cursor, RootCursorWrapper.COLUMN_USER_ID)),
-                getCursorString(cursor, RootCursorWrapper.COLUMN_AUTHORITY));
+        final CursorSchema schema = getSchema(cursor);
+        mDoc.updateFromCursor(cursor, schema);
 
         mIconHelper.stopLoading(mIconThumb);
 
@@ -197,7 +192,7 @@ final class GridPhotoHolder extends DocumentHolder {
                 /* thumbnailLoadedCallback= */ null);
 
         final String docSize =
-                Formatter.formatFileSize(mContext, getCursorLong(cursor, Document.COLUMN_SIZE));
+                Formatter.formatFileSize(mContext, schema.getSize(cursor));
         final String docDate = Shared.formatTime(mContext, mDoc.lastModified);
         if (mIconHelper.shouldShowBadge(mDoc.userId.getIdentifier())) {
             itemView.setContentDescription(
@@ -16,14 +16,11 @@
 
 package com.android.documentsui.dirlist;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorInt;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 import static com.android.documentsui.base.State.MODE_GRID;
 import static com.android.documentsui.base.State.MODE_LIST;
 import static com.android.documentsui.util.FlagUtils.isUseMaterial3FlagEnabled;
 
 import android.database.Cursor;
-import android.provider.DocumentsContract.Document;
 import android.util.Log;
 import android.view.ViewGroup;
 
@@ -33,10 +30,10 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.android.documentsui.ConfigStore;
 import com.android.documentsui.Model;
 import com.android.documentsui.Model.Update;
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.EventListener;
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.State;
-import com.android.documentsui.roots.RootCursorWrapper;
 import com.android.modules.utils.build.SdkLevel;
 
 import java.util.ArrayList;
@@ -143,9 +140,10 @@ final class ModelBackedDocumentsAdapter extends DocumentsAdapter {
         Cursor cursor = mEnv.getModel().getItem(modelId);
         holder.bind(cursor, modelId);
 
-        final String docMimeType = getCursorString(cursor, Document.COLUMN_MIME_TYPE);
-        final int docFlags = getCursorInt(cursor, Document.COLUMN_FLAGS);
-        final int userIdIdentifier = getCursorInt(cursor, RootCursorWrapper.COLUMN_USER_ID);
+        final CursorSchema schema = holder.getSchema(cursor);
+        final String docMimeType = schema.getMimeType(cursor);
+        final int docFlags = schema.getFlags(cursor);
+        final int userIdIdentifier = schema.getUserId(cursor).getIdentifier();
 
         boolean enabled = mEnv.isDocumentEnabled(docMimeType, docFlags);
         boolean selected = mEnv.isSelected(modelId);
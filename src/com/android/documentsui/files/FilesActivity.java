@@ -63,6 +63,7 @@ import com.android.documentsui.dirlist.AnimationView.AnimationType;
 import com.android.documentsui.dirlist.AppsRowManager;
 import com.android.documentsui.dirlist.DirectoryFragment;
 import com.android.documentsui.services.FileOperationService;
+import com.android.documentsui.services.FileOperations;
 import com.android.documentsui.sidebar.RootsFragment;
 import com.android.documentsui.ui.DialogController;
 import com.android.documentsui.ui.MessageBuilder;
@@ -221,6 +222,10 @@ public class FilesActivity extends BaseActivity implements AbstractActionHandler
         }
 
         presentFileErrors(icicle, intent);
+
+        if (icicle == null) {
+            FileOperations.offerToResumeInterrupted(this, features);
+        }
     }
 
     private AppsRowManager getAppsRowManager() {
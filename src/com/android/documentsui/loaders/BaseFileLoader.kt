@@ -23,26 +23,21 @@ import android.net.Uri
 import android.os.Bundle
 import android.os.CancellationSignal
 import android.os.RemoteException
-import android.provider.DocumentsContract.Document
 import android.util.Log
 import androidx.loader.content.AsyncTaskLoader
 import com.android.documentsui.DirectoryResult
+import com.android.documentsui.base.DocumentInfo
 import com.android.documentsui.base.Lookup
 import com.android.documentsui.base.UserId
 import com.android.documentsui.roots.RootCursorWrapper
 
 const val TAG = "SearchV2"
 
-val FILE_ENTRY_COLUMNS = arrayOf(
-    Document.COLUMN_DOCUMENT_ID,
-    Document.COLUMN_MIME_TYPE,
-    Document.COLUMN_DISPLAY_NAME,
-    Document.COLUMN_LAST_MODIFIED,
-    Document.COLUMN_FLAGS,
-    Document.COLUMN_SUMMARY,
-    Document.COLUMN_SIZE,
-    Document.COLUMN_ICON,
-)
+/**
+ * The columns requested from providers, and the columns of empty results. These are all the
+ * columns the UI, sort and filter code read from a document cursor.
+ */
+val FILE_ENTRY_COLUMNS: Array<String> = DocumentInfo.PROJECTION
 
 fun emptyCursor(): Cursor {
     return MatrixCursor(FILE_ENTRY_COLUMNS)
@@ -62,6 +57,40 @@ fun toSingleCursor(cursorList: List<Cursor>): Cursor {
     return MergeCursor(cursorList.toTypedArray())
 }
 
+/**
+ * Copies the given columns of the rows of the source cursor accepted by the given predicate to
+ * the destination cursor. Columns missing in the source are left null.
+ */
+fun copyRows(
+    source: Cursor,
+    destination: MatrixCursor,
+    accept: (Cursor) -> Boolean = { true },
+) {
+    val columns = destination.columnNames
+    val indices = IntArray(columns.size) { source.getColumnIndex(columns[it]) }
+    source.moveToPosition(-1)
+    while (source.moveToNext()) {
+        if (!accept(source)) {
+            continue
+        }
+        val row = arrayOfNulls<Any>(columns.size)
+        for (i in columns.indices) {
+            val index = indices[i]
+            if (index < 0) {
+                continue
+            }
+            row[i] = when (source.getType(index)) {
+                Cursor.FIELD_TYPE_INTEGER -> source.getLong(index)
+                Cursor.FIELD_TYPE_FLOAT -> source.getDouble(index)
+                Cursor.FIELD_TYPE_BLOB -> source.getBlob(index)
+                Cursor.FIELD_TYPE_STRING -> source.getString(index)
+                else -> null
+            }
+        }
+        destination.addRow(row)
+    }
+}
+
 /**
  * The base class for search and directory loaders. This class implements common functionality
  * shared by these loaders. The extending classes should implement loadInBackground, which
@@ -76,6 +105,10 @@ abstract class BaseFileLoader(
     private var mSignal: CancellationSignal? = null
     private var mResult: DirectoryResult? = null
 
+    // Whether mResult is a partial result, delivered while the load is in progress. Partial
+    // results are not redelivered as if they were complete, the load is started again instead.
+    private var mResultIsPartial = false
+
     override fun cancelLoadInBackground() {
         Log.d(TAG, "${this::class.simpleName}.cancelLoadInBackground")
         super.cancelLoadInBackground()
@@ -93,6 +126,7 @@ abstract class BaseFileLoader(
         }
         val oldResult: DirectoryResult? = mResult
         mResult = result
+        mResultIsPartial = false
 
         if (isStarted) {
             super.deliverResult(result)
@@ -109,7 +143,7 @@ abstract class BaseFileLoader(
         if (mResult != null && !isCursorStale) {
             deliverResult(mResult)
         }
-        if (takeContentChanged() || mResult == null || isCursorStale) {
+        if (takeContentChanged() || mResult == null || isCursorStale || mResultIsPartial) {
             forceLoad()
         }
     }
@@ -135,6 +169,16 @@ abstract class BaseFileLoader(
         mResult = null
     }
 
+    /**
+     * Delivers a partial result of the load in progress. Must be called on the main thread.
+     */
+    protected fun deliverPartialResult(result: DirectoryResult) {
+        deliverResult(result)
+        if (!isReset) {
+            mResultIsPartial = true
+        }
+    }
+
     /**
      * Quietly closes the result cursor, if results are still available.
      */
@@ -171,13 +215,15 @@ abstract class BaseFileLoader(
      * A function that, for the specified location rooted in the root with the given rootId
      * attempts to obtain a non-null cursor from the content provider client obtained for the
      * given locationUri. It returns the first non-null cursor, if one can be found, or null,
-     * if it fails to query the given location for all known users.
+     * if it fails to query the given location for all known users. The query is abandoned once
+     * the given signal is cancelled.
      */
     fun queryLocation(
         rootId: String,
         locationUri: Uri,
         queryArgs: Bundle?,
         maxResults: Int,
+        signal: CancellationSignal? = mSignal,
     ): Cursor? {
         val authority = locationUri.authority ?: return null
         for (userId in mUserIdList) {
@@ -192,7 +238,8 @@ abstract class BaseFileLoader(
                     }
                     try {
                         val cursor =
-                            client.query(locationUri, null, queryArgs, mSignal) ?: return null
+                            client.query(locationUri, FILE_ENTRY_COLUMNS, queryArgs, signal)
+                                ?: return null
                         return RootCursorWrapper(userId, authority, rootId, cursor, maxResults)
                     } catch (e: RemoteException) {
                         Log.d(TAG, "Failed to get cursor for $locationUri", e)
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.documentsui.loaders
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.os.CancellationSignal
+import android.util.Log
+import androidx.annotation.GuardedBy
+import com.android.documentsui.GlobalSearchLoader
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Maximum number of queries run at the same time against a single authority.
+ */
+private const val MAX_QUERIES_PER_AUTHORITY = 2
+
+/**
+ * Time after which idle threads of the shared search pool are stopped.
+ */
+private const val KEEP_ALIVE_SECONDS = 30L
+
+/**
+ * Runs provider queries for search loaders. Every submitted query is identified by a key, and
+ * its subscriber receives a token with which it cancels its interest in the query.
+ *
+ *  - Identical queries submitted while one is in flight are coalesced: they share a single
+ *    provider query. The first subscriber still interested gets the provider cursor, the others
+ *    get a copy of it.
+ *  - At most maxQueriesPerAuthority queries run against a single authority, the others wait.
+ *  - Once all its subscribers cancelled, a waiting query is dropped, and a running query has its
+ *    CancellationSignal cancelled, so that superseded searches stop loading the provider.
+ *
+ * Every subscriber is called back exactly once, with null if the query failed or the token was
+ * cancelled first.
+ */
+class SearchExecutor(
+    private val mExecutor: Executor,
+    private val mMaxQueriesPerAuthority: Int,
+) {
+    companion object {
+        /**
+         * The executor shared by all search loaders. Its threads are stopped when idle.
+         */
+        @JvmStatic
+        val shared: SearchExecutor by lazy {
+            val pool = ThreadPoolExecutor(
+                GlobalSearchLoader.MAX_OUTSTANDING_TASK,
+                GlobalSearchLoader.MAX_OUTSTANDING_TASK,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                LinkedBlockingQueue()
+            )
+            pool.allowCoreThreadTimeOut(true)
+            SearchExecutor(pool, MAX_QUERIES_PER_AUTHORITY)
+        }
+    }
+
+    /**
+     * A handle on a submitted query, held by a single subscriber.
+     */
+    inner class Token internal constructor(
+        internal val mQuery: Query,
+        internal val mCallback: (Cursor?) -> Unit,
+    ) {
+        /**
+         * Cancels the interest of the subscriber in the query. If the query has not completed
+         * yet, the subscriber is called back with null.
+         */
+        fun cancel() {
+            cancelToken(this)
+        }
+    }
+
+    internal inner class Query(
+        val key: String,
+        val authority: String,
+        private val mQuery: (CancellationSignal) -> Cursor?,
+    ) : Runnable {
+        val signal = CancellationSignal()
+        val tokens = mutableListOf<Token>()
+
+        override fun run() {
+            var cursor: Cursor? = null
+            try {
+                if (!signal.isCanceled) {
+                    cursor = mQuery(signal)
+                }
+            } catch (e: Exception) {
+                Log.d(TAG, "Query $key failed", e)
+            } finally {
+                onQueryDone(this, cursor)
+            }
+        }
+    }
+
+    private val mLock = Any()
+
+    @GuardedBy("mLock")
+    private val mInFlight = HashMap<String, Query>()
+
+    @GuardedBy("mLock")
+    private val mWaiting = HashMap<String, ArrayDeque<Query>>()
+
+    @GuardedBy("mLock")
+    private val mRunningCount = HashMap<String, Int>()
+
+    /**
+     * Submits a query, or joins an identical one in flight.
+     *
+     * @param key identifies the query; identical queries must have the same key
+     * @param authority the authority queried
+     * @param query runs the query, honoring the given signal
+     * @param callback called with the resulting cursor, which the subscriber then owns
+     */
+    fun submit(
+        key: String,
+        authority: String,
+        query: (CancellationSignal) -> Cursor?,
+        callback: (Cursor?) -> Unit,
+    ): Token {
+        synchronized(mLock) {
+            val inFlight = mInFlight[key]
+            if (inFlight != null) {
+                Log.d(TAG, "Coalescing query $key")
+                val token = Token(inFlight, callback)
+                inFlight.tokens.add(token)
+                return token
+            }
+            val newQuery = Query(key, authority, query)
+            val token = Token(newQuery, callback)
+            newQuery.tokens.add(token)
+            mInFlight[key] = newQuery
+            mWaiting.getOrPut(authority) { ArrayDeque() }.addLast(newQuery)
+            scheduleLocked(authority)
+            return token
+        }
+    }
+
+    @GuardedBy("mLock")
+    private fun scheduleLocked(authority: String) {
+        val waiting = mWaiting[authority] ?: return
+        var running = mRunningCount[authority] ?: 0
+        while (running < mMaxQueriesPerAuthority && waiting.isNotEmpty()) {
+            mExecutor.execute(waiting.removeFirst())
+            running++
+        }
+        mRunningCount[authority] = running
+        if (waiting.isEmpty()) {
+            mWaiting.remove(authority)
+        }
+    }
+
+    private fun cancelToken(token: Token) {
+        val query = token.mQuery
+        var cancelSignal = false
+        synchronized(mLock) {
+            if (!query.tokens.remove(token)) {
+                // Already called back.
+                return
+            }
+            if (query.tokens.isEmpty()) {
+                mInFlight.remove(query.key, query)
+                val waiting = mWaiting[query.authority]
+                if (waiting != null && waiting.remove(query)) {
+                    if (waiting.isEmpty()) {
+                        mWaiting.remove(query.authority)
+                    }
+                } else {
+                    cancelSignal = true
+                }
+            }
+        }
+        if (cancelSignal) {
+            Log.d(TAG, "Cancelling query ${query.key}")
+            query.signal.cancel()
+        }
+        token.mCallback(null)
+    }
+
+    private fun onQueryDone(query: Query, cursor: Cursor?) {
+        val tokens: List<Token>
+        synchronized(mLock) {
+            mInFlight.remove(query.key, query)
+            tokens = query.tokens.toList()
+            query.tokens.clear()
+            mRunningCount[query.authority] = (mRunningCount[query.authority] ?: 1) - 1
+            scheduleLocked(query.authority)
+        }
+
+        if (cursor == null) {
+            tokens.forEach { it.mCallback(null) }
+            return
+        }
+        if (tokens.isEmpty()) {
+            cursor.close()
+            return
+        }
+        // Copies are made before the provider cursor is handed over, as its owner may move it.
+        val copies = tokens.drop(1).map { token ->
+            val copy = MatrixCursor(cursor.columnNames, cursor.count)
+            copyRows(cursor, copy)
+            token to copy
+        }
+        tokens[0].mCallback(cursor)
+        for ((token, copy) in copies) {
+            token.mCallback(copy)
+        }
+    }
+}
@@ -17,26 +17,47 @@ package com.android.documentsui.loaders
 
 import android.content.Context
 import android.database.Cursor
+import android.database.MatrixCursor
 import android.net.Uri
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import android.provider.DocumentsContract
 import android.provider.DocumentsContract.Document
 import android.text.TextUtils
 import android.util.Log
 import com.android.documentsui.DirectoryResult
+import com.android.documentsui.DocumentsApplication
 import com.android.documentsui.LockingContentObserver
+import com.android.documentsui.Metrics
 import com.android.documentsui.base.DocumentInfo
 import com.android.documentsui.base.FilteringCursorWrapper
 import com.android.documentsui.base.Lookup
 import com.android.documentsui.base.RootInfo
 import com.android.documentsui.base.UserId
+import com.android.documentsui.queries.FilenameIndex
+import com.android.documentsui.roots.RootCursorWrapper
 import com.android.documentsui.sorting.SortModel
-import com.google.common.util.concurrent.AbstractFuture
 import java.io.Closeable
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.ExecutorService
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.TimeUnit
-import kotlin.time.measureTime
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Minimum time between two deliveries of partial search results.
+ */
+private const val STREAMING_INTERVAL_MS = 250L
+
+/**
+ * Columns of the partial results delivered while a search is in progress.
+ */
+private val SNAPSHOT_COLUMNS = FILE_ENTRY_COLUMNS + arrayOf(
+    RootCursorWrapper.COLUMN_AUTHORITY,
+    RootCursorWrapper.COLUMN_ROOT_ID,
+    RootCursorWrapper.COLUMN_USER_ID,
+)
 
 /**
  * A specialization of the BaseFileLoader that searches the set of specified roots. To search
@@ -50,11 +71,27 @@ import kotlin.time.measureTime
  *  - Query options such as maximum number of results, last modified time delta, etc.
  *  - a lookup from file extension to file type
  *  - The model capable of sorting results
- *  - An executor for running searches across multiple roots in parallel
+ *  - An executor for running searches across multiple roots in parallel, usually
+ *    SearchExecutor.shared
+ *  - A cache of recent search results, usually SearchResultCache.shared
+ *  - Optionally, the on-device filename index
  *
  *  SearchLoader requires that either a query is not null and not empty or that QueryOptions
  *  specify a last modified time restriction. This is to prevent searching for every file
  *  across every specified root.
+ *
+ *  When searching more than one root, results are streamed: as soon as a root answers, the
+ *  results collected so far are filtered, sorted and delivered, at most every
+ *  STREAMING_INTERVAL_MS. The final result, with all roots that answered in time, is delivered
+ *  once every search completed or the maximum query time elapsed.
+ *
+ *  When the query refines a recently completed one, e.g. "report" after "rep", the cached
+ *  results of the earlier query are filtered locally and delivered right away, before any root
+ *  answers. Complete results are added to the cache.
+ *
+ *  With a filename index, matching documents of the searched roots are delivered right away
+ *  too, and they stand in for the results of roots that did not answer yet in partial results.
+ *  As the index may be stale, indexed documents are never part of the complete results.
  */
 class SearchLoader(
     context: Context,
@@ -65,58 +102,119 @@ class SearchLoader(
     private val mQuery: String?,
     private val mOptions: QueryOptions,
     private val mSortModel: SortModel,
-    private val mExecutorService: ExecutorService,
+    private val mSearchExecutor: SearchExecutor,
+    private val mResultCache: SearchResultCache,
+    private val mFilenameIndex: FilenameIndex?,
 ) : BaseFileLoader(context, userIdList, mimeTypeLookup) {
 
     /**
-     * Helper class that runs query on a single user for the given parameter. This class implements
-     * an abstract future so that if the task is completed, we can retrieve the cursor via the get
-     * method.
+     * Helper class that runs query on a single user for the given parameter, through the search
+     * executor. Once done, cancelled or failed, the task adds itself to the given queue of done
+     * tasks.
      */
     inner class SearchTask(
         private val mRootId: String,
+        val rootKey: String,
         private val mSearchUri: Uri,
         private val mQueryArgs: Bundle,
-        private val mLatch: CountDownLatch,
-    ) : Closeable, Runnable, AbstractFuture<Cursor>() {
+        private val mDoneQueue: BlockingQueue<SearchTask>,
+    ) : Closeable {
+        @Volatile
         private var mCursor: Cursor? = null
+        @Volatile
+        private var mToken: SearchExecutor.Token? = null
+        private var mClosed = false
         val cursor: Cursor? get() = mCursor
         val taskId: String get() = mSearchUri.toString()
 
+        fun start() {
+            val startTime = SystemClock.elapsedRealtime()
+            val token = mSearchExecutor.submit(
+                createQueryKey(mSearchUri, mQueryArgs),
+                mSearchUri.authority ?: "",
+                { signal ->
+                    queryLocation(mRootId, mSearchUri, mQueryArgs, mOptions.maxResults, signal)
+                }
+            ) { cursor -> onQueryDone(cursor, startTime) }
+            mToken = token
+            if (synchronized(this) { mClosed }) {
+                token.cancel()
+            }
+        }
+
+        /**
+         * Cancels the query, unless it is done already.
+         */
+        fun cancel() {
+            mToken?.cancel()
+        }
+
         override fun close() {
-            mCursor = null
+            synchronized(this) {
+                mClosed = true
+                mCursor = null
+            }
+            cancel()
         }
 
-        override fun run() {
-            val queryDuration = measureTime {
-                try {
-                    mCursor = queryLocation(mRootId, mSearchUri, mQueryArgs, mOptions.maxResults)
-                    set(mCursor)
-                } finally {
-                    mLatch.countDown()
+        private fun onQueryDone(cursor: Cursor?, startTime: Long) {
+            synchronized(this) {
+                if (mClosed) {
+                    cursor?.close()
+                } else {
+                    mCursor = cursor
                 }
             }
-            Log.d(TAG, "Query on $mSearchUri took $queryDuration")
+            Log.d(TAG, "Query on $mSearchUri took ${SystemClock.elapsedRealtime() - startTime}ms")
+            mDoneQueue.offer(this)
         }
     }
 
+    // Identifies the users on whose behalf queries are run, as part of the query keys.
+    private val mUserIdsKey = userIdList.toString()
+
+    // Only the roots of these users are searched in the filename index.
+    private val mIndexedUserIds = userIdList.toSet()
+
+    // Identifies the searched roots and all filters but the query, as the result cache scope.
+    private val mCacheScope: String by lazy {
+        val scope = StringBuilder(mUserIdsKey)
+        for (root in mRootList.map { it.searchKey }.sorted()) {
+            scope.append(' ').append(root)
+        }
+        scope.append(' ').append(mOptions.maxResults)
+            .append(' ').append(mOptions.maxLastModifiedDelta)
+            .append(' ').append(mOptions.showHidden)
+            .append(' ').append(mOptions.acceptableMimeTypes.contentToString())
+        val otherArgs = Bundle(mOptions.otherQueryArgs)
+        otherArgs.remove(DocumentsContract.QUERY_ARG_DISPLAY_NAME)
+        appendQueryArgs(scope, otherArgs)
+        scope.toString()
+    }
+
     @Volatile
     private var mSearchTaskList: List<SearchTask> = listOf()
 
+    private val mMainHandler = Handler(Looper.getMainLooper())
+
+    // Incremented for every load, so that partial results of a previous load are dropped.
+    private val mLoadGeneration = AtomicInteger()
+
     // Creates a directory result object corresponding to the current parameters of the loader.
     override fun loadInBackground(): DirectoryResult? {
+        val startTime = SystemClock.elapsedRealtime()
+        val generation = mLoadGeneration.incrementAndGet()
         val result = DirectoryResult()
         // TODO(b:378590632): If root list has one root use it to construct result.doc
         result.doc = DocumentInfo()
         result.cursor = emptyCursor()
 
-        val searchedRoots = mRootList
-        val countDownLatch = CountDownLatch(searchedRoots.size)
+        val doneQueue = LinkedBlockingQueue<SearchTask>()
         val rejectBeforeTimestamp = mOptions.getRejectBeforeTimestamp()
 
         // Step 1: Build a list of search tasks.
         val searchTaskList =
-            createSearchTaskList(rejectBeforeTimestamp, countDownLatch, mRootList)
+            createSearchTaskList(rejectBeforeTimestamp, doneQueue, mRootList)
         Log.d(TAG, "${searchTaskList.size} tasks have been created")
 
         // Check if we are cancelled; if not copy the task list.
@@ -125,52 +223,120 @@ class SearchLoader(
         }
         mSearchTaskList = searchTaskList
 
-        // Step 2: Enqueue tasks and wait for them to complete or time out.
+        // Step 2: Enqueue tasks.
         for (task in mSearchTaskList) {
-            mExecutorService.execute(task)
+            task.start()
         }
         Log.d(TAG, "${mSearchTaskList.size} tasks have been enqueued")
 
-        // Step 3: Wait for the results.
+        // While providers are queried, show the cached results of a query this one refines, or
+        // else the indexed results.
+        val query = mQuery
+        val cached =
+            if (query.isNullOrEmpty()) null else mResultCache.getRefined(mCacheScope, query)
+        if (cached != null) {
+            deliverSnapshot(generation, cached)
+        } else {
+            searchIndex(mRootList)?.use {
+                if (it.count > 0) {
+                    deliverSnapshot(generation, createSnapshot(listOf(it), rejectBeforeTimestamp))
+                }
+            }
+        }
+
+        // Step 3: Collect cursors as tasks complete, until all are done or the time is up. With
+        // more than one root, results collected so far are delivered while waiting for the rest.
+        val streaming = mSearchTaskList.size > 1
+        val deadline = if (mOptions.isQueryTimeUnlimited()) {
+            Long.MAX_VALUE
+        } else {
+            Log.d(TAG, "Waiting ${mOptions.maxQueryTime!!.toMillis()}ms for results")
+            startTime + mOptions.maxQueryTime.toMillis()
+        }
+        val cursorList = mutableListOf<Cursor>()
+        val answeredRoots = mutableSetOf<String>()
+        var pendingTasks = mSearchTaskList.size
+        var nullCursorCount = 0
+        var hasUndeliveredResults = false
+        var nextDeliveryTime = 0L
+        var firstResultTime = -1L
         try {
-            if (mOptions.isQueryTimeUnlimited()) {
-                Log.d(TAG, "Waiting for results with no time limit")
-                countDownLatch.await()
-            } else {
-                Log.d(TAG, "Waiting ${mOptions.maxQueryTime!!.toMillis()}ms for results")
-                countDownLatch.await(
-                    mOptions.maxQueryTime.toMillis(),
-                    TimeUnit.MILLISECONDS
-                )
+            while (pendingTasks > 0 && !isLoadInBackgroundCanceled) {
+                val now = SystemClock.elapsedRealtime()
+                if (now >= deadline) {
+                    break
+                }
+                val waitUntil = if (hasUndeliveredResults) {
+                    minOf(deadline, nextDeliveryTime)
+                } else {
+                    deadline
+                }
+                val task = doneQueue.poll(maxOf(waitUntil - now, 0L), TimeUnit.MILLISECONDS)
+                if (task != null) {
+                    pendingTasks--
+                    val cursor = task.cursor
+                    if (cursor == null) {
+                        nullCursorCount++
+                    } else {
+                        Log.d(TAG, "Task ${task.taskId} has ${cursor.count} results")
+                        cursorList.add(cursor)
+                        answeredRoots.add(task.rootKey)
+                        if (firstResultTime < 0 && cursor.count > 0) {
+                            firstResultTime = SystemClock.elapsedRealtime()
+                        }
+                        hasUndeliveredResults = streaming
+                    }
+                }
+                if (hasUndeliveredResults && pendingTasks > 0 &&
+                    SystemClock.elapsedRealtime() >= nextDeliveryTime
+                ) {
+                    val indexed = searchIndex(getUnansweredRoots(answeredRoots))
+                    deliverSnapshot(
+                        generation,
+                        createSnapshot(cursorList + listOfNotNull(indexed), rejectBeforeTimestamp)
+                    )
+                    indexed?.close()
+                    hasUndeliveredResults = false
+                    nextDeliveryTime = SystemClock.elapsedRealtime() + STREAMING_INTERVAL_MS
+                }
             }
             Log.d(TAG, "Waiting for results is done")
         } catch (e: InterruptedException) {
             Log.d(TAG, "Failed to complete all searches within ${mOptions.maxQueryTime}")
-            // TODO(b:388336095): Record a metrics indicating incomplete search.
+            logSearchTimes(startTime, firstResultTime, mSearchTaskList.size, pendingTasks)
             throw RuntimeException(e)
         }
+        Log.d(
+            TAG,
+            "Search complete with ${cursorList.size} cursors collected, " +
+                "$nullCursorCount null cursors, $pendingTasks tasks not done"
+        )
 
-        // Step 4: Collect cursors from done tasks.
-        val cursorList = mutableListOf<Cursor>()
-        for (task in mSearchTaskList) {
-            Log.d(TAG, "Processing task ${task.taskId}")
-            if (isLoadInBackgroundCanceled) {
-                break
-            }
-            // TODO(b:388336095): Record a metric for each done and not done task.
-            val cursor = task.cursor
-            if (task.isDone && cursor != null) {
-                // TODO(b:388336095): Record a metric for null and not null cursor.
-                Log.d(TAG, "Task ${task.taskId} has ${cursor.count} results")
-                cursorList.add(cursor)
-            }
+        if (!query.isNullOrEmpty() && pendingTasks == 0 && !isLoadInBackgroundCanceled) {
+            mResultCache.put(
+                mCacheScope,
+                query,
+                createSnapshot(cursorList, rejectBeforeTimestamp)
+            )
         }
-        Log.d(TAG, "Search complete with ${cursorList.size} cursors collected")
 
-        // Step 5: Assign the cursor, after adding filtering and sorting, to the results.
+        // Step 4: Assign the cursor, after adding filtering and sorting, to the results.
         val mergedCursor = toSingleCursor(cursorList)
         mergedCursor.registerContentObserver(mObserver)
-        val filteringCursor = FilteringCursorWrapper(mergedCursor)
+        result.cursor = mSortModel.sortCursor(
+            createFilteringCursor(mergedCursor, rejectBeforeTimestamp),
+            mMimeTypeLookup
+        )
+
+        logSearchTimes(startTime, firstResultTime, mSearchTaskList.size, pendingTasks)
+        return result
+    }
+
+    private fun createFilteringCursor(
+        cursor: Cursor,
+        rejectBeforeTimestamp: Long
+    ): FilteringCursorWrapper {
+        val filteringCursor = FilteringCursorWrapper(cursor)
         filteringCursor.filterHiddenFiles(mOptions.showHidden)
         filteringCursor.filterMimes(
             mOptions.acceptableMimeTypes,
@@ -179,10 +345,110 @@ class SearchLoader(
         if (rejectBeforeTimestamp > 0L) {
             filteringCursor.filterLastModified(rejectBeforeTimestamp)
         }
-        result.cursor = mSortModel.sortCursor(filteringCursor, mMimeTypeLookup)
+        return filteringCursor
+    }
 
-        // TODO(b:388336095): Record the total time it took to complete search.
-        return result
+    /**
+     * Copies the filtered rows of the results collected so far. The cursors of the tasks remain
+     * owned by the final result, so partial results and the result cache get a copy, which they
+     * can close on their own and which can be read on other threads while tasks complete.
+     */
+    private fun createSnapshot(
+        cursorList: List<Cursor>,
+        rejectBeforeTimestamp: Long
+    ): MatrixCursor {
+        val snapshot = MatrixCursor(SNAPSHOT_COLUMNS)
+        for (cursor in cursorList) {
+            // Not closed, as closing the wrapper closes the task cursor.
+            copyRows(createFilteringCursor(cursor, rejectBeforeTimestamp), snapshot)
+        }
+        return snapshot
+    }
+
+    /**
+     * Sorts and delivers the given snapshot of results, unless a newer load started meanwhile.
+     */
+    private fun deliverSnapshot(generation: Int, snapshot: MatrixCursor) {
+        val partial = DirectoryResult()
+        partial.doc = DocumentInfo()
+        partial.cursor = mSortModel.sortCursor(snapshot, mMimeTypeLookup)
+        Log.d(TAG, "Delivering ${snapshot.count} partial results")
+
+        mMainHandler.post {
+            if (generation == mLoadGeneration.get() && !isLoadInBackgroundCanceled &&
+                isStarted && !isAbandoned && !isReset
+            ) {
+                deliverPartialResult(partial)
+            } else {
+                closeResult(partial)
+            }
+        }
+    }
+
+    /**
+     * Finds the documents of the given roots in the filename index. Roots of users the loader
+     * does not run queries for, or which are in quiet mode, are skipped. Returns null if there is
+     * no index, no such roots, or if this is not a search by name or by type.
+     */
+    private fun searchIndex(searchedRoots: Collection<RootInfo>): Cursor? {
+        val index = mFilenameIndex ?: return null
+        val roots = searchedRoots.filter {
+            it.userId in mIndexedUserIds &&
+                !DocumentsApplication.isQuietModeEnabled(context, it.userId)
+        }
+        val mimeTypes =
+            mOptions.otherQueryArgs.getStringArray(DocumentsContract.QUERY_ARG_MIME_TYPES)
+        if (roots.isEmpty() || (mQuery.isNullOrEmpty() && mimeTypes == null)) {
+            return null
+        }
+        val cursor = MatrixCursor(SNAPSHOT_COLUMNS)
+        index.search(mQuery, mimeTypes, roots, cursor)
+        return cursor
+    }
+
+    private fun getUnansweredRoots(answeredRoots: Set<String>) =
+        mRootList.filter { it.searchKey !in answeredRoots }
+
+    // Identifies a searched root. Roots of different users can share authority and root id.
+    private val RootInfo.searchKey: String get() = "$userId:$authority:$rootId"
+
+    private fun logSearchTimes(
+        startTime: Long,
+        firstResultTime: Long,
+        taskCount: Int,
+        pendingTaskCount: Int
+    ) {
+        val timeToFirstResult = if (firstResultTime < 0) -1L else firstResultTime - startTime
+        val timeToComplete = SystemClock.elapsedRealtime() - startTime
+        Log.d(
+            TAG,
+            "Search took ${timeToComplete}ms, first result after ${timeToFirstResult}ms, " +
+                "${taskCount - pendingTaskCount} of $taskCount roots answered"
+        )
+        Metrics.logSearchLatency(
+            timeToFirstResult.toInt(),
+            timeToComplete.toInt(),
+            pendingTaskCount == 0
+        )
+    }
+
+    /**
+     * Creates the key identifying a query, so that the search executor coalesces identical ones.
+     */
+    private fun createQueryKey(uri: Uri, queryArgs: Bundle): String {
+        val key = StringBuilder()
+        key.append(mUserIdsKey).append(' ').append(mOptions.maxResults).append(' ').append(uri)
+        appendQueryArgs(key, queryArgs)
+        return key.toString()
+    }
+
+    private fun appendQueryArgs(key: StringBuilder, queryArgs: Bundle) {
+        for (name in queryArgs.keySet().sorted()) {
+            @Suppress("DEPRECATION")
+            val value = queryArgs.get(name)
+            key.append(' ').append(name).append('=')
+            key.append(if (value is Array<*>) value.contentToString() else value.toString())
+        }
     }
 
     private fun createContentProviderQuery(root: RootInfo) =
@@ -219,11 +485,11 @@ class SearchLoader(
     }
 
     /**
-     * Helper function that creates a list of search tasks for the given countdown latch.
+     * Helper function that creates a list of search tasks reporting to the given queue.
      */
     private fun createSearchTaskList(
         rejectBeforeTimestamp: Long,
-        countDownLatch: CountDownLatch,
+        doneQueue: BlockingQueue<SearchTask>,
         rootList: Collection<RootInfo>
     ): List<SearchTask> {
         val searchTaskList = mutableListOf<SearchTask>()
@@ -238,16 +504,28 @@ class SearchLoader(
             Log.d(TAG, "Query $rootSearchUri and queryArgs $queryArgs")
             val task = SearchTask(
                 root.rootId,
+                root.searchKey,
                 rootSearchUri,
                 queryArgs,
-                countDownLatch
+                doneQueue
             )
             searchTaskList.add(task)
         }
         return searchTaskList
     }
 
+    override fun cancelLoadInBackground() {
+        super.cancelLoadInBackground()
+        // Stops the provider queries of the cancelled load. This also wakes up the load, as
+        // cancelled tasks report to the done queue.
+        for (task in mSearchTaskList) {
+            task.cancel()
+        }
+    }
+
     override fun onReset() {
+        // Drop partial results which are still in flight.
+        mLoadGeneration.incrementAndGet()
         for (task in mSearchTaskList) {
             task.close()
         }
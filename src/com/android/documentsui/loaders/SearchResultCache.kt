@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.documentsui.loaders
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.os.SystemClock
+import android.provider.DocumentsContract.Document
+import android.util.Log
+import androidx.annotation.GuardedBy
+import com.android.documentsui.base.SharedMinimal.DEBUG
+
+/**
+ * Maximum number of search results kept by the shared cache.
+ */
+private const val MAX_ENTRIES = 8
+
+/**
+ * Time after which cached search results are no longer used.
+ */
+private const val TTL_MILLIS = 30_000L
+
+/**
+ * A short-lived cache of search results, used while a query is being typed. Results are cached
+ * per scope, which identifies the searched roots and every filter other than the query, such as
+ * mime types.
+ *
+ * When a query gets refined, e.g. from "rep" to "report", every file whose display name matches
+ * the new query also matched the old one. The results of the old query are then filtered locally
+ * and shown right away, while providers are queried for the authoritative results.
+ */
+class SearchResultCache(
+    private val mMaxEntries: Int,
+    private val mTtlMillis: Long,
+    private val mClock: () -> Long,
+) {
+    companion object {
+        /**
+         * The cache shared by all search loaders.
+         */
+        @JvmStatic
+        val shared: SearchResultCache by lazy {
+            SearchResultCache(MAX_ENTRIES, TTL_MILLIS, SystemClock::elapsedRealtime)
+        }
+    }
+
+    private class Entry(val scope: String, val query: String, val rows: Cursor, val time: Long)
+
+    // Ordered from least to most recently used.
+    @GuardedBy("this")
+    private val mEntries = LinkedHashMap<String, Entry>(mMaxEntries, 0.75f, true)
+
+    /**
+     * Stores the complete results of a query. The cache takes ownership of the given rows.
+     */
+    @Synchronized
+    fun put(scope: String, query: String, rows: MatrixCursor) {
+        mEntries.put(scope + '\u0000' + query, Entry(scope, query, rows, mClock()))?.rows?.close()
+        while (mEntries.size > mMaxEntries) {
+            val eldest = mEntries.entries.iterator()
+            eldest.next().value.rows.close()
+            eldest.remove()
+        }
+    }
+
+    /**
+     * Returns the cached results of the longest query that the given query refines, filtered by
+     * the given query, or null if there is none.
+     */
+    @Synchronized
+    fun getRefined(scope: String, query: String): MatrixCursor? {
+        val now = mClock()
+        var best: Entry? = null
+        val iterator = mEntries.values.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (now - entry.time > mTtlMillis) {
+                entry.rows.close()
+                iterator.remove()
+                continue
+            }
+            if (entry.scope == scope && query.contains(entry.query, ignoreCase = true) &&
+                (best == null || entry.query.length > best.query.length)
+            ) {
+                best = entry
+            }
+        }
+        if (best == null) {
+            return null
+        }
+
+        val rows = best.rows
+        val refined = MatrixCursor(rows.columnNames)
+        val nameIndex = rows.getColumnIndex(Document.COLUMN_DISPLAY_NAME)
+        copyRows(rows, refined) {
+            it.getString(nameIndex)?.contains(query, ignoreCase = true) == true
+        }
+        if (DEBUG) {
+            Log.d(TAG, "\"$query\" refines cached \"${best.query}\": ${refined.count} results")
+        }
+        return refined
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    @Synchronized
+    fun clear() {
+        mEntries.values.forEach { it.rows.close() }
+        mEntries.clear()
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.queries;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorInt;
+import static com.android.documentsui.base.DocumentInfo.getCursorLong;
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.provider.DocumentsContract.Document;
+import android.text.TextUtils;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.MimeTypes;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An on-device index of the file names of directories listed in the app, used to answer searches
+ * without waiting for providers.
+ *
+ * <p>Directories are indexed as they are loaded, so reloads triggered by content observers keep
+ * them up to date. Each indexed directory keeps a signature of the trigrams of its file names;
+ * a search only scans the directories whose signature contains every trigram of the query.
+ *
+ * <p>The index is kept in no-backup app storage, and is limited to {@link #MAX_DOCUMENTS}
+ * documents, dropping the least recently listed directories first. It is only as fresh as the
+ * last listing of each directory, so local results are merged with, and superseded by, the
+ * results of providers.
+ */
+public final class FilenameIndex {
+
+    private static final String TAG = "FilenameIndex";
+    private static final String FILE_NAME = "filename_index";
+    private static final int VERSION = 1;
+
+    @VisibleForTesting
+    static final int MAX_DOCUMENTS = 50_000;
+    private static final int SIGNATURE_BITS = 2048;
+    private static final long SAVE_DELAY_MILLIS = 10_000;
+
+    private final Object mLock = new Object();
+    private final AtomicFile mFile;
+    // Loads, updates and saves the index, in order.
+    private final Handler mHandler;
+
+    // Directories ordered from least to most recently listed.
+    @GuardedBy("mLock")
+    private final LinkedHashMap<String, Directory> mDirectories = new LinkedHashMap<>();
+    @GuardedBy("mLock")
+    private int mDocumentCount;
+    @GuardedBy("mLock")
+    private boolean mSaveScheduled;
+
+    private final Runnable mSaveRunnable = this::save;
+
+    private static final class Entry {
+        final String documentId;
+        final String displayName;
+        final @Nullable String mimeType;
+        final long lastModified;
+        final long size;
+        final int flags;
+
+        Entry(String documentId, String displayName, @Nullable String mimeType,
+                long lastModified, long size, int flags) {
+            this.documentId = documentId;
+            this.displayName = displayName;
+            this.mimeType = mimeType;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.flags = flags;
+        }
+    }
+
+    private static final class Directory {
+        final UserId userId;
+        final String authority;
+        final String rootId;
+        final String documentId;
+        final List<Entry> entries;
+        final long[] signature = new long[SIGNATURE_BITS / Long.SIZE];
+
+        Directory(UserId userId, String authority, String rootId, String documentId,
+                List<Entry> entries) {
+            this.userId = userId;
+            this.authority = authority;
+            this.rootId = rootId;
+            this.documentId = documentId;
+            this.entries = entries;
+            for (Entry entry : entries) {
+                addTrigrams(entry.displayName, signature);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    FilenameIndex(File file, Handler handler) {
+        mFile = new AtomicFile(file);
+        mHandler = handler;
+        mHandler.post(this::load);
+    }
+
+    public static FilenameIndex create(Context context) {
+        final HandlerThread thread =
+                new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        return new FilenameIndex(new File(context.getNoBackupFilesDir(), FILE_NAME),
+                new Handler(thread.getLooper()));
+    }
+
+    /**
+     * Replaces the indexed children of a directory with the rows of the given cursor, which is
+     * read on the calling thread. The cursor position is not restored.
+     */
+    public void updateDirectory(
+            UserId userId, String authority, String rootId, String documentId, Cursor cursor) {
+        final List<Entry> entries = new ArrayList<>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final String childId = getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
+            final String name = getCursorString(cursor, Document.COLUMN_DISPLAY_NAME);
+            if (childId == null || TextUtils.isEmpty(name)) {
+                continue;
+            }
+            entries.add(new Entry(
+                    childId,
+                    name,
+                    getCursorString(cursor, Document.COLUMN_MIME_TYPE),
+                    getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED),
+                    getCursorLong(cursor, Document.COLUMN_SIZE),
+                    getCursorInt(cursor, Document.COLUMN_FLAGS)));
+        }
+        final Directory directory =
+                new Directory(userId, authority, rootId, documentId, entries);
+        mHandler.post(() -> {
+            synchronized (mLock) {
+                putLocked(directory);
+                scheduleSaveLocked();
+            }
+        });
+    }
+
+    /**
+     * Finds the indexed documents of the given roots whose display name contains the query,
+     * ignoring case, and whose mime type matches one of the given ones. Until the index is
+     * loaded from storage, only directories listed since are searched.
+     *
+     * @param query the query, or null or empty to match all names
+     * @param mimeTypes the accepted mime types, or null to accept all
+     * @param roots the searched roots
+     * @param cursor the cursor the matching documents are added to. Only its columns that are
+     *     document or {@link RootCursorWrapper} columns are filled.
+     * @return the number of documents added
+     */
+    public int search(@Nullable String query, @Nullable String[] mimeTypes,
+            Collection<RootInfo> roots, MatrixCursor cursor) {
+        final Set<String> rootKeys = new HashSet<>();
+        for (RootInfo root : roots) {
+            rootKeys.add(getRootKey(root.userId, root.authority, root.rootId));
+        }
+        final long[] querySignature = new long[SIGNATURE_BITS / Long.SIZE];
+        final boolean hasQuery = !TextUtils.isEmpty(query);
+        if (hasQuery) {
+            addTrigrams(query, querySignature);
+        }
+
+        int count = 0;
+        synchronized (mLock) {
+            for (Directory directory : mDirectories.values()) {
+                if (!rootKeys.contains(
+                        getRootKey(directory.userId, directory.authority, directory.rootId))
+                        || !containsAll(directory.signature, querySignature)) {
+                    continue;
+                }
+                for (Entry entry : directory.entries) {
+                    if ((hasQuery && !containsIgnoreCase(entry.displayName, query))
+                            || (mimeTypes != null
+                                    && !MimeTypes.mimeMatches(mimeTypes, entry.mimeType))) {
+                        continue;
+                    }
+                    cursor.newRow()
+                            .add(Document.COLUMN_DOCUMENT_ID, entry.documentId)
+                            .add(Document.COLUMN_DISPLAY_NAME, entry.displayName)
+                            .add(Document.COLUMN_MIME_TYPE, entry.mimeType)
+                            .add(Document.COLUMN_LAST_MODIFIED, entry.lastModified)
+                            .add(Document.COLUMN_SIZE, entry.size)
+                            .add(Document.COLUMN_FLAGS, entry.flags)
+                            .add(RootCursorWrapper.COLUMN_AUTHORITY, directory.authority)
+                            .add(RootCursorWrapper.COLUMN_ROOT_ID, directory.rootId)
+                            .add(RootCursorWrapper.COLUMN_USER_ID,
+                                    directory.userId.getIdentifier());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @VisibleForTesting
+    int getDocumentCount() {
+        synchronized (mLock) {
+            return mDocumentCount;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void putLocked(Directory directory) {
+        final String key = getRootKey(directory.userId, directory.authority, directory.rootId)
+                + '/' + directory.documentId;
+        final Directory old = mDirectories.remove(key);
+        if (old != null) {
+            mDocumentCount -= old.entries.size();
+        }
+        mDirectories.put(key, directory);
+        mDocumentCount += directory.entries.size();
+
+        final Iterator<Directory> eldest = mDirectories.values().iterator();
+        while (mDocumentCount > MAX_DOCUMENTS && eldest.hasNext()) {
+            mDocumentCount -= eldest.next().entries.size();
+            eldest.remove();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void scheduleSaveLocked() {
+        if (!mSaveScheduled) {
+            mSaveScheduled = true;
+            mHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MILLIS);
+        }
+    }
+
+    private void load() {
+        final List<Directory> directories = new ArrayList<>();
+        try (DataInputStream in =
+                     new DataInputStream(new BufferedInputStream(mFile.openRead()))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unknown version");
+            }
+            final int directoryCount = in.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                final UserId userId = UserId.of(in.readInt());
+                final String authority = in.readUTF();
+                final String rootId = in.readUTF();
+                final String documentId = in.readUTF();
+                final int entryCount = in.readInt();
+                final List<Entry> entries = new ArrayList<>(entryCount);
+                for (int j = 0; j < entryCount; j++) {
+                    entries.add(new Entry(in.readUTF(), in.readUTF(), readNullableUTF(in),
+                            in.readLong(), in.readLong(), in.readInt()));
+                }
+                directories.add(new Directory(userId, authority, rootId, documentId, entries));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing indexed yet.
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load the index, starting over", e);
+            directories.clear();
+            mFile.delete();
+        }
+
+        synchronized (mLock) {
+            // Directories listed while loading are more recent than the stored ones.
+            final Map<String, Directory> listed = new LinkedHashMap<>(mDirectories);
+            mDirectories.clear();
+            mDocumentCount = 0;
+            for (Directory directory : directories) {
+                putLocked(directory);
+            }
+            for (Directory directory : listed.values()) {
+                putLocked(directory);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void save() {
+        // Directories are immutable, so they are written without holding the lock.
+        final List<Directory> directories;
+        synchronized (mLock) {
+            mSaveScheduled = false;
+            directories = new ArrayList<>(mDirectories.values());
+        }
+
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(VERSION);
+            out.writeInt(directories.size());
+            for (Directory directory : directories) {
+                out.writeInt(directory.userId.getIdentifier());
+                out.writeUTF(directory.authority);
+                out.writeUTF(directory.rootId);
+                out.writeUTF(directory.documentId);
+                out.writeInt(directory.entries.size());
+                for (Entry entry : directory.entries) {
+                    out.writeUTF(entry.documentId);
+                    out.writeUTF(entry.displayName);
+                    writeNullableUTF(out, entry.mimeType);
+                    out.writeLong(entry.lastModified);
+                    out.writeLong(entry.size);
+                    out.writeInt(entry.flags);
+                }
+            }
+            out.flush();
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save the index", e);
+            mFile.failWrite(stream);
+        }
+    }
+
+    private static String getRootKey(UserId userId, String authority, String rootId) {
+        return userId.getIdentifier() + ":" + authority + ":" + rootId;
+    }
+
+    private static void addTrigrams(String text, long[] signature) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            final int hash = (Character.toLowerCase(text.charAt(i)) * 31
+                    + Character.toLowerCase(text.charAt(i + 1))) * 31
+                    + Character.toLowerCase(text.charAt(i + 2));
+            final int bit = (hash & Integer.MAX_VALUE) % SIGNATURE_BITS;
+            signature[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+        }
+    }
+
+    private static boolean containsAll(long[] signature, long[] subset) {
+        for (int i = 0; i < signature.length; i++) {
+            if ((signature[i] & subset[i]) != subset[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(String text, String query) {
+        for (int i = 0; i + query.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static @Nullable String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
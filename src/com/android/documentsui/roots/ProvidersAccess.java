@@ -40,6 +40,12 @@ public interface ProvidersAccess {
 
     String BROADCAST_ACTION = "com.android.documentsui.action.ROOT_CHANGED";
 
+    /**
+     * String array list extra of {@link #BROADCAST_ACTION}, with the authorities whose roots
+     * changed. Absent when roots of any authority may have changed.
+     */
+    String EXTRA_AUTHORITIES = "com.android.documentsui.extra.AUTHORITIES";
+
     /**
      * Return the requested {@link RootInfo}, but only loading the roots for the
      * requested user and authority. This is useful when we want to load fast without
@@ -29,6 +29,7 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
@@ -47,12 +48,14 @@ import android.util.Log;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.R;
 import com.android.documentsui.UserPackage;
 import com.android.documentsui.archives.ArchivesProvider;
+import com.android.documentsui.base.DurableUtils;
 import com.android.documentsui.base.LookupApplicationName;
 import com.android.documentsui.base.Providers;
 import com.android.documentsui.base.RootInfo;
@@ -61,9 +64,16 @@ import com.android.documentsui.base.UserId;
 import com.android.modules.utils.build.SdkLevel;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -71,6 +81,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -93,6 +105,9 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
             // ArchivesProvider doesn't support any roots.
             ArchivesProvider.AUTHORITY);
     private static final int FIRST_LOAD_TIMEOUT_MS = 5000;
+    private static final String SNAPSHOT_FILE_NAME = "roots_snapshot";
+    // Notifications of roots changes often come in bursts, which are coalesced.
+    private static final int PACKAGE_UPDATE_DELAY_MS = 100;
     private static final int NUM_THREADS = 10;
     private static final ExecutorService ASYNC_TASKS_THREAD_POOL =
             Executors.newFixedThreadPool(NUM_THREADS);
@@ -113,14 +128,35 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
     @GuardedBy("mLock")
     private PendingResult mBootCompletedResult;
 
-    @GuardedBy("mLock")
-    private Multimap<UserAuthority, RootInfo> mRoots = ArrayListMultimap.create();
-    @GuardedBy("mLock")
-    private HashSet<UserAuthority> mStoppedAuthorities = new HashSet<>();
+    // Readers use the current snapshot without locking. Writers load roots without holding
+    // mLock, and only hold it to publish a new snapshot.
+    private volatile Snapshot mSnapshot = new Snapshot(
+            ImmutableListMultimap.of(), ImmutableSet.of(), ImmutableMap.of());
+    // Held by the update running, full or per package, so that updates publish in order.
     private final Semaphore mMultiProviderUpdateTaskSemaphore = new Semaphore(1);
+    // Set from when a full update starts until it is done, whether it holds the semaphore or
+    // still waits for a package update to release it. Another full update in the meantime is
+    // dropped, as the pending one will load the roots anyway.
+    @GuardedBy("mLock")
+    private boolean mFullUpdateStarted;
+
+    // Packages to update incrementally, coalesced while an update is scheduled or running.
+    @GuardedBy("mPendingPackages")
+    private final Multimap<UserId, String> mPendingPackages = HashMultimap.create();
+    @GuardedBy("mPendingPackages")
+    private boolean mPackageUpdateScheduled;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Read without locking, also while provider update tasks add to it. Adding an authority and
+    // registering its observer is done while holding the map's lock.
+    private final Map<UserAuthority, PackageDetails> mObservedAuthoritiesDetails =
+            new ConcurrentHashMap<>();
+    // Details of the authorities served from the stored snapshot, until they are loaded.
+    @GuardedBy("mStoredAuthoritiesDetails")
+    private final Map<UserAuthority, PackageDetails> mStoredAuthoritiesDetails = new HashMap<>();
 
-    @GuardedBy("mObservedAuthoritiesDetails")
-    private final Map<UserAuthority, PackageDetails> mObservedAuthoritiesDetails = new HashMap<>();
+    @GuardedBy("mLock")
+    private @Nullable RootsSnapshotStore mSnapshotStore;
 
     public ProvidersCache(Context context) {
         mContext = context;
@@ -185,13 +221,22 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
     @Override
     public String getApplicationName(UserId userId, String authority) {
-        return mObservedAuthoritiesDetails.get(
-                new UserAuthority(userId, authority)).applicationName;
+        return getPackageDetails(new UserAuthority(userId, authority)).applicationName;
     }
 
     @Override
     public String getPackageName(UserId userId, String authority) {
-        return mObservedAuthoritiesDetails.get(new UserAuthority(userId, authority)).packageName;
+        return getPackageDetails(new UserAuthority(userId, authority)).packageName;
+    }
+
+    private PackageDetails getPackageDetails(UserAuthority userAuthority) {
+        final PackageDetails details = mObservedAuthoritiesDetails.get(userAuthority);
+        if (details != null) {
+            return details;
+        }
+        synchronized (mStoredAuthoritiesDetails) {
+            return mStoredAuthoritiesDetails.get(userAuthority);
+        }
     }
 
     public void updateAsync(boolean forceRefreshAll, @Nullable Runnable callback) {
@@ -217,12 +262,128 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
                 AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
+    /**
+     * Reloads the roots of the providers of a package. Once the first update is done, only the
+     * authorities of the package are reloaded, and requests that come in bursts are coalesced.
+     */
     public void updatePackageAsync(UserId userId, String packageName) {
-        new MultiProviderUpdateTask(
-                /* forceRefreshAll= */ false,
-                new UserPackage(userId, packageName),
-                /* callback= */ null)
-                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        final boolean firstLoadDone;
+        synchronized (mLock) {
+            firstLoadDone = mFirstLoadDone;
+        }
+        if (!firstLoadDone) {
+            new MultiProviderUpdateTask(
+                    /* forceRefreshAll= */ false,
+                    new UserPackage(userId, packageName),
+                    /* callback= */ null)
+                    .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            return;
+        }
+
+        synchronized (mPendingPackages) {
+            mPendingPackages.put(userId, packageName);
+            if (mPackageUpdateScheduled) {
+                return;
+            }
+            mPackageUpdateScheduled = true;
+        }
+        mHandler.postDelayed(
+                () -> AsyncTask.THREAD_POOL_EXECUTOR.execute(this::updatePendingPackages),
+                PACKAGE_UPDATE_DELAY_MS);
+    }
+
+    private void updatePendingPackages() {
+        while (true) {
+            final Multimap<UserId, String> packages;
+            synchronized (mPendingPackages) {
+                if (mPendingPackages.isEmpty()) {
+                    mPackageUpdateScheduled = false;
+                    return;
+                }
+                packages = HashMultimap.create(mPendingPackages);
+                mPendingPackages.clear();
+            }
+            // Waits for a running full update, which would otherwise publish its snapshot over
+            // the changes of this one.
+            mMultiProviderUpdateTaskSemaphore.acquireUninterruptibly();
+            try {
+                updatePackages(packages);
+            } finally {
+                mMultiProviderUpdateTaskSemaphore.release();
+            }
+        }
+    }
+
+    /**
+     * Reloads the authorities of the given packages, and notifies listeners of the authorities
+     * whose roots changed, if any. Only called while holding the update semaphore.
+     */
+    @VisibleForTesting
+    void updatePackages(Multimap<UserId, String> packages) {
+        final List<UserId> userIds = getUserIds();
+        final Snapshot current = mSnapshot;
+        final Map<UserAuthority, Collection<RootInfo>> loadedAuthorities = new HashMap<>();
+        final Set<UserAuthority> stoppedAuthorities = new HashSet<>();
+        final Set<UserAuthority> removedAuthorities = new HashSet<>();
+        final Map<UserAuthority, String> packageNames = new HashMap<>();
+        for (Map.Entry<UserAuthority, String> entry : current.packageNames.entrySet()) {
+            if (packages.containsEntry(entry.getKey().userId, entry.getValue())) {
+                // Removed unless the package still provides it.
+                removedAuthorities.add(entry.getKey());
+            }
+        }
+
+        for (Map.Entry<UserId, String> entry : packages.entries()) {
+            final UserId userId = entry.getKey();
+            final String packageName = entry.getValue();
+            if (!userIds.contains(userId)) {
+                continue;
+            }
+            final Intent intent = new Intent(DocumentsContract.PROVIDER_INTERFACE)
+                    .setPackage(packageName);
+            final List<ResolveInfo> providers =
+                    userId.getPackageManager(mContext).queryIntentContentProviders(intent, 0);
+            for (ResolveInfo info : providers) {
+                final ProviderInfo providerInfo = info.providerInfo;
+                if (providerInfo.authority == null) {
+                    continue;
+                }
+                final UserAuthority userAuthority =
+                        new UserAuthority(userId, providerInfo.authority);
+                removedAuthorities.remove(userAuthority);
+                packageNames.put(userAuthority, packageName);
+                if ((providerInfo.applicationInfo.flags & ApplicationInfo.FLAG_STOPPED) != 0) {
+                    stoppedAuthorities.add(userAuthority);
+                } else {
+                    loadedAuthorities.put(userAuthority,
+                            loadRootsForAuthority(userAuthority, /* forceRefresh= */ true));
+                }
+            }
+        }
+
+        final Snapshot previous;
+        final Snapshot snapshot;
+        synchronized (mLock) {
+            previous = mSnapshot;
+            snapshot = previous.withChanges(loadedAuthorities, stoppedAuthorities,
+                    removedAuthorities, packageNames);
+            mSnapshot = snapshot;
+        }
+
+        final Set<UserAuthority> changed = snapshot.getChangedAuthorities(previous);
+        if (VERBOSE) Log.v(TAG, "Package update changed roots of " + changed);
+        if (changed.isEmpty()) {
+            return;
+        }
+        final ArrayList<String> changedAuthorities = new ArrayList<>();
+        for (UserAuthority userAuthority : changed) {
+            if (!changedAuthorities.contains(userAuthority.authority)) {
+                changedAuthorities.add(userAuthority.authority);
+            }
+        }
+        LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(BROADCAST_ACTION)
+                .putStringArrayListExtra(EXTRA_AUTHORITIES, changedAuthorities));
+        storeSnapshot(snapshot);
     }
 
     public void updateAuthorityAsync(UserId userId, String authority) {
@@ -233,6 +394,17 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         }
     }
 
+    /**
+     * Makes package updates incremental, as they are once the first update is done.
+     */
+    @VisibleForTesting
+    void setFirstLoadDoneForTest() {
+        synchronized (mLock) {
+            mFirstLoadDone = true;
+        }
+        mFirstLoad.countDown();
+    }
+
     void setBootCompletedResult(PendingResult result) {
         synchronized (mLock) {
             // Quickly check if we've already finished loading, otherwise hang
@@ -263,16 +435,114 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         return success;
     }
 
+    private RootsSnapshotStore getSnapshotStore() {
+        synchronized (mLock) {
+            if (mSnapshotStore == null) {
+                mSnapshotStore = new RootsSnapshotStore(
+                        new File(mContext.getNoBackupFilesDir(), SNAPSHOT_FILE_NAME));
+            }
+            return mSnapshotStore;
+        }
+    }
+
+    private String getLocale() {
+        return mContext.getResources().getConfiguration().getLocales().toLanguageTags();
+    }
+
+    /**
+     * Publishes the roots stored by the last complete update, except those of packages that
+     * changed since, and releases callers waiting for the first load.
+     *
+     * @return {@code true} if a stored snapshot was published.
+     */
+    private boolean publishStoredSnapshot(List<UserId> userIds) {
+        final List<RootsSnapshotStore.AuthorityRoots> entries =
+                getSnapshotStore().load(getLocale());
+        if (entries.isEmpty()) {
+            return false;
+        }
+
+        final ImmutableListMultimap.Builder<UserAuthority, RootInfo> roots =
+                ImmutableListMultimap.builder();
+        final ImmutableSet.Builder<UserAuthority> stoppedAuthorities = ImmutableSet.builder();
+        final ImmutableMap.Builder<UserAuthority, String> packageNames = ImmutableMap.builder();
+        for (UserId userId : userIds) {
+            final RootInfo recents = createOrGetRecentsRoot(userId);
+            roots.put(new UserAuthority(recents.userId, recents.authority), recents);
+        }
+        for (RootsSnapshotStore.AuthorityRoots entry : entries) {
+            if (!userIds.contains(entry.userId)) {
+                continue;
+            }
+            final PackageInfo packageInfo = getPackageInfo(entry.userId, entry.packageName);
+            if (packageInfo == null
+                    || packageInfo.getLongVersionCode() != entry.versionCode
+                    || packageInfo.lastUpdateTime != entry.lastUpdateTime) {
+                continue;
+            }
+            final UserAuthority userAuthority = new UserAuthority(entry.userId, entry.authority);
+            packageNames.put(userAuthority, entry.packageName);
+            if (entry.stopped) {
+                stoppedAuthorities.add(userAuthority);
+                continue;
+            }
+            roots.putAll(userAuthority, entry.roots);
+            if (entry.applicationName != null) {
+                synchronized (mStoredAuthoritiesDetails) {
+                    mStoredAuthoritiesDetails.put(userAuthority,
+                            new PackageDetails(entry.applicationName, entry.packageName));
+                }
+            }
+        }
+
+        final Snapshot snapshot = new Snapshot(roots.build(), stoppedAuthorities.build(),
+                packageNames.build());
+        synchronized (mLock) {
+            mSnapshot = snapshot;
+        }
+        if (VERBOSE) Log.v(TAG, "Serving " + snapshot.roots.size() + " stored roots");
+        mFirstLoad.countDown();
+        LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(BROADCAST_ACTION));
+        return true;
+    }
+
+    /**
+     * Stores the roots found by updates, for the next cold start.
+     */
+    private void storeSnapshot(Snapshot snapshot) {
+        final List<RootsSnapshotStore.AuthorityRoots> entries = new ArrayList<>();
+        for (Map.Entry<UserAuthority, String> entry : snapshot.packageNames.entrySet()) {
+            final UserAuthority userAuthority = entry.getKey();
+            final PackageInfo packageInfo = getPackageInfo(userAuthority.userId, entry.getValue());
+            if (packageInfo == null) {
+                continue;
+            }
+            final PackageDetails details = mObservedAuthoritiesDetails.get(userAuthority);
+            entries.add(new RootsSnapshotStore.AuthorityRoots(userAuthority.userId,
+                    userAuthority.authority, entry.getValue(),
+                    details != null ? details.applicationName : null,
+                    packageInfo.getLongVersionCode(), packageInfo.lastUpdateTime,
+                    snapshot.stoppedAuthorities.contains(userAuthority),
+                    snapshot.roots.get(userAuthority)));
+        }
+        getSnapshotStore().save(getLocale(), entries);
+    }
+
+    private @Nullable PackageInfo getPackageInfo(UserId userId, String packageName) {
+        try {
+            return userId.getPackageManager(mContext).getPackageInfo(packageName, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
     /**
      * Load roots from authorities that are in stopped state. Normal
      * {@link MultiProviderUpdateTask} passes ignore stopped applications.
      */
     private void loadStoppedAuthorities() {
-        synchronized (mLock) {
-            for (UserAuthority userAuthority : mStoppedAuthorities) {
-                mRoots.replaceValues(userAuthority, loadRootsForAuthority(userAuthority, true));
-            }
-            mStoppedAuthorities.clear();
+        for (UserAuthority userAuthority : mSnapshot.stoppedAuthorities) {
+            loadStoppedAuthority(userAuthority);
         }
     }
 
@@ -281,15 +551,108 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
      * ignore stopped applications.
      */
     private void loadStoppedAuthority(UserAuthority userAuthority) {
+        if (!mSnapshot.stoppedAuthorities.contains(userAuthority)) {
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Loading stopped authority " + userAuthority);
+        }
+        final Collection<RootInfo> roots = loadRootsForAuthority(userAuthority, true);
         synchronized (mLock) {
-            if (!mStoppedAuthorities.contains(userAuthority)) {
-                return;
+            // Another thread may have loaded the authority meanwhile.
+            if (mSnapshot.stoppedAuthorities.contains(userAuthority)) {
+                mSnapshot = mSnapshot.withRoots(userAuthority, roots);
             }
-            if (DEBUG) {
-                Log.d(TAG, "Loading stopped authority " + userAuthority);
+        }
+    }
+
+    /**
+     * An immutable view of the cached roots, replaced as a whole on every update.
+     */
+    @VisibleForTesting
+    static final class Snapshot {
+        final ImmutableListMultimap<UserAuthority, RootInfo> roots;
+        final ImmutableSet<UserAuthority> stoppedAuthorities;
+        // The packages of the authorities found by updates, used to update them per package.
+        final ImmutableMap<UserAuthority, String> packageNames;
+        final ImmutableSet<RootInfo> allRoots;
+
+        Snapshot(ImmutableListMultimap<UserAuthority, RootInfo> roots,
+                ImmutableSet<UserAuthority> stoppedAuthorities,
+                ImmutableMap<UserAuthority, String> packageNames) {
+            this.roots = roots;
+            this.stoppedAuthorities = stoppedAuthorities;
+            this.packageNames = packageNames;
+            allRoots = ImmutableSet.copyOf(roots.values());
+        }
+
+        /**
+         * Returns a snapshot where the given authority has the given roots, and is not stopped.
+         */
+        Snapshot withRoots(UserAuthority userAuthority, Collection<RootInfo> authorityRoots) {
+            return withChanges(Collections.singletonMap(userAuthority, authorityRoots),
+                    Collections.emptySet(), Collections.emptySet(), Collections.emptyMap());
+        }
+
+        /**
+         * Returns a snapshot where the given authorities have the given roots, or are stopped,
+         * or are removed. Other authorities are kept as they are.
+         */
+        Snapshot withChanges(Map<UserAuthority, Collection<RootInfo>> loadedAuthorities,
+                Set<UserAuthority> newStoppedAuthorities, Set<UserAuthority> removedAuthorities,
+                Map<UserAuthority, String> newPackageNames) {
+            final ImmutableListMultimap.Builder<UserAuthority, RootInfo> rootsBuilder =
+                    ImmutableListMultimap.builder();
+            for (UserAuthority key : roots.keySet()) {
+                if (!loadedAuthorities.containsKey(key) && !newStoppedAuthorities.contains(key)
+                        && !removedAuthorities.contains(key)) {
+                    rootsBuilder.putAll(key, roots.get(key));
+                }
             }
-            mRoots.replaceValues(userAuthority, loadRootsForAuthority(userAuthority, true));
-            mStoppedAuthorities.remove(userAuthority);
+            for (Map.Entry<UserAuthority, Collection<RootInfo>> entry
+                    : loadedAuthorities.entrySet()) {
+                rootsBuilder.putAll(entry.getKey(), entry.getValue());
+            }
+
+            final ImmutableSet.Builder<UserAuthority> stoppedBuilder = ImmutableSet.builder();
+            for (UserAuthority key : stoppedAuthorities) {
+                if (!loadedAuthorities.containsKey(key) && !removedAuthorities.contains(key)) {
+                    stoppedBuilder.add(key);
+                }
+            }
+            stoppedBuilder.addAll(newStoppedAuthorities);
+
+            final Map<UserAuthority, String> packages = new HashMap<>(packageNames);
+            packages.keySet().removeAll(removedAuthorities);
+            packages.putAll(newPackageNames);
+
+            return new Snapshot(rootsBuilder.build(), stoppedBuilder.build(),
+                    ImmutableMap.copyOf(packages));
+        }
+
+        /**
+         * Returns the authorities whose roots, or stopped state, differ between both snapshots.
+         * Roots are compared by content, since {@link RootInfo#equals} only compares their ids.
+         */
+        Set<UserAuthority> getChangedAuthorities(Snapshot other) {
+            final Set<UserAuthority> changed = new HashSet<>(
+                    Sets.symmetricDifference(stoppedAuthorities, other.stoppedAuthorities));
+            for (UserAuthority key : Sets.union(roots.keySet(), other.roots.keySet())) {
+                final List<RootInfo> authorityRoots = roots.get(key);
+                final List<RootInfo> otherRoots = other.roots.get(key);
+                if (authorityRoots.size() != otherRoots.size()) {
+                    changed.add(key);
+                    continue;
+                }
+                for (int i = 0; i < authorityRoots.size(); i++) {
+                    if (!Arrays.equals(DurableUtils.writeToArrayOrNull(authorityRoots.get(i)),
+                            DurableUtils.writeToArrayOrNull(otherRoots.get(i)))) {
+                        changed.add(key);
+                        break;
+                    }
+                }
+            }
+            return changed;
         }
     }
 
@@ -401,28 +764,27 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
     public RootInfo getRootOneshot(UserId userId, String authority, String rootId,
             boolean forceRefresh) {
-        synchronized (mLock) {
-            UserAuthority userAuthority = new UserAuthority(userId, authority);
-            RootInfo root = forceRefresh ? null : getRootLocked(userAuthority, rootId);
-            if (root == null) {
-                mRoots.replaceValues(userAuthority,
-                        loadRootsForAuthority(userAuthority, forceRefresh));
-                root = getRootLocked(userAuthority, rootId);
+        UserAuthority userAuthority = new UserAuthority(userId, authority);
+        RootInfo root = forceRefresh ? null : getRoot(mSnapshot, userAuthority, rootId);
+        if (root == null) {
+            final Collection<RootInfo> roots = loadRootsForAuthority(userAuthority, forceRefresh);
+            synchronized (mLock) {
+                mSnapshot = mSnapshot.withRoots(userAuthority, roots);
             }
-            return root;
+            root = getRoot(mSnapshot, userAuthority, rootId);
         }
+        return root;
     }
 
     public RootInfo getRootBlocking(UserId userId, String authority, String rootId) {
         waitForFirstLoad();
         loadStoppedAuthorities();
-        synchronized (mLock) {
-            return getRootLocked(new UserAuthority(userId, authority), rootId);
-        }
+        return getRoot(mSnapshot, new UserAuthority(userId, authority), rootId);
     }
 
-    private RootInfo getRootLocked(UserAuthority userAuthority, String rootId) {
-        for (RootInfo root : mRoots.get(userAuthority)) {
+    private static RootInfo getRoot(Snapshot snapshot, UserAuthority userAuthority,
+            String rootId) {
+        for (RootInfo root : snapshot.roots.get(userAuthority)) {
             if (Objects.equals(root.rootId, rootId)) {
                 return root;
             }
@@ -443,18 +805,14 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
     public Collection<RootInfo> getRootsBlocking() {
         waitForFirstLoad();
         loadStoppedAuthorities();
-        synchronized (mLock) {
-            return new HashSet<>(mRoots.values());
-        }
+        return mSnapshot.allRoots;
     }
 
     @Override
     public Collection<RootInfo> getMatchingRootsBlocking(State state) {
         waitForFirstLoad();
         loadStoppedAuthorities();
-        synchronized (mLock) {
-            return ProvidersAccess.getMatchingRoots(mRoots.values(), state);
-        }
+        return ProvidersAccess.getMatchingRoots(mSnapshot.roots.values(), state);
     }
 
     @Override
@@ -462,10 +820,7 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         waitForFirstLoad();
         UserAuthority userAuthority = new UserAuthority(userId, authority);
         loadStoppedAuthority(userAuthority);
-        synchronized (mLock) {
-            final Collection<RootInfo> roots = mRoots.get(userAuthority);
-            return roots != null ? roots : Collections.<RootInfo>emptyList();
-        }
+        return mSnapshot.roots.get(userAuthority);
     }
 
     @Override
@@ -503,10 +858,15 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         @Nullable
         private final Runnable mCallback;
 
-        @GuardedBy("mLock")
-        private Multimap<UserAuthority, RootInfo> mLocalRoots = ArrayListMultimap.create();
-        @GuardedBy("mLock")
-        private HashSet<UserAuthority> mLocalStoppedAuthorities = new HashSet<>();
+        // Filled concurrently by the single provider tasks, which only lock to add their
+        // results.
+        @GuardedBy("mLocalRoots")
+        private final Multimap<UserAuthority, RootInfo> mLocalRoots =
+                ArrayListMultimap.create();
+        @GuardedBy("mLocalRoots")
+        private final HashSet<UserAuthority> mLocalStoppedAuthorities = new HashSet<>();
+        @GuardedBy("mLocalRoots")
+        private final Map<UserAuthority, String> mLocalPackageNames = new HashMap<>();
 
         /**
          * Create task to update roots cache.
@@ -529,9 +889,18 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
         @Override
         protected Void doInBackground(Void... params) {
-            if (!mMultiProviderUpdateTaskSemaphore.tryAcquire()) {
-                // Abort, since previous update task is still running.
-                return null;
+            synchronized (mLock) {
+                if (mFullUpdateStarted) {
+                    // Abort, since previous update task is still running.
+                    return null;
+                }
+                mFullUpdateStarted = true;
+            }
+            // Package updates are quick, and don't replace a full update, so wait for them.
+            mMultiProviderUpdateTaskSemaphore.acquireUninterruptibly();
+            final boolean firstLoadDone;
+            synchronized (mLock) {
+                firstLoadDone = mFirstLoadDone;
             }
 
             int previousPriority = Thread.currentThread().getPriority();
@@ -540,13 +909,16 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
             final long start = SystemClock.elapsedRealtime();
 
             List<UserId> userIds = new ArrayList<>(getUserIds());
+            // On cold start, serve the stored snapshot until providers have been queried.
+            final boolean servedStoredSnapshot = !firstLoadDone && publishStoredSnapshot(userIds);
             for (UserId userId : userIds) {
                 final RootInfo recents = createOrGetRecentsRoot(userId);
-                synchronized (mLock) {
+                synchronized (mLocalRoots) {
                     mLocalRoots.put(new UserAuthority(recents.userId, recents.authority), recents);
                 }
             }
 
+            boolean success = true;
             List<SingleProviderUpdateTaskInfo> taskInfos = new ArrayList<>();
             for (UserId userId : userIds) {
                 final PackageManager pm = userId.getPackageManager(mContext);
@@ -574,11 +946,11 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
                 // Block until all SingleProviderUpdateTask threads finish executing.
                 // Use a shorter timeout for first load since it could block picker UI.
-                long timeoutMs = mFirstLoadDone ? 15000 : FIRST_LOAD_TIMEOUT_MS;
-                boolean success = false;
+                long timeoutMs = firstLoadDone ? 15000 : FIRST_LOAD_TIMEOUT_MS;
                 try {
                     success = updateTaskInternalCountDown.await(timeoutMs, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
+                    success = false;
                 }
                 if (!success) {
                     Log.w(TAG, "Timeout executing update task!");
@@ -586,22 +958,42 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
             }
 
             final long delta = SystemClock.elapsedRealtime() - start;
+            final Snapshot snapshot;
+            synchronized (mLocalRoots) {
+                // Tasks that timed out may still add to the local roots, they are ignored.
+                snapshot = new Snapshot(ImmutableListMultimap.copyOf(mLocalRoots),
+                        ImmutableSet.copyOf(mLocalStoppedAuthorities),
+                        ImmutableMap.copyOf(mLocalPackageNames));
+            }
+            final Snapshot previous;
             synchronized (mLock) {
                 mFirstLoadDone = true;
                 if (mBootCompletedResult != null) {
                     mBootCompletedResult.finish();
                     mBootCompletedResult = null;
                 }
-                mRoots = mLocalRoots;
-                mStoppedAuthorities = mLocalStoppedAuthorities;
+                previous = mSnapshot;
+                mSnapshot = snapshot;
             }
             if (VERBOSE) {
-                Log.v(TAG, "Update found " + mLocalRoots.size() + " roots in " + delta + "ms");
+                Log.v(TAG, "Update found " + snapshot.roots.size() + " roots in " + delta + "ms");
             }
 
             mFirstLoad.countDown();
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(BROADCAST_ACTION));
+            // Listeners already got the stored snapshot, only notify them if it was stale.
+            if (!servedStoredSnapshot || !snapshot.getChangedAuthorities(previous).isEmpty()) {
+                LocalBroadcastManager.getInstance(mContext).sendBroadcast(
+                        new Intent(BROADCAST_ACTION));
+            }
+            // Don't store a partial snapshot, providers that timed out would be missing from
+            // the next cold start.
+            if (success) {
+                storeSnapshot(snapshot);
+            }
             mMultiProviderUpdateTaskSemaphore.release();
+            synchronized (mLock) {
+                mFullUpdateStarted = false;
+            }
 
             Thread.currentThread().setPriority(previousPriority);
             return null;
@@ -633,8 +1025,9 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
                 if (VERBOSE) {
                     Log.v(TAG, "Ignoring stopped authority " + info.authority + ", user " + userId);
                 }
-                synchronized (mLock) {
+                synchronized (mLocalRoots) {
                     mLocalStoppedAuthorities.add(userAuthority);
+                    mLocalPackageNames.put(userAuthority, info.packageName);
                 }
                 return;
             }
@@ -642,19 +1035,23 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
             final boolean forceRefresh = mForceRefreshAll
                     || Objects.equals(
                     new UserPackage(userId, info.packageName), mForceRefreshUserPackage);
-            synchronized (mLock) {
-                mLocalRoots.putAll(userAuthority,
-                        loadRootsForAuthority(userAuthority, forceRefresh));
+            // The provider is queried without holding any lock, so that providers load in
+            // parallel, and readers are never blocked by a slow provider.
+            final Collection<RootInfo> roots = loadRootsForAuthority(userAuthority, forceRefresh);
+            synchronized (mLocalRoots) {
+                mLocalRoots.putAll(userAuthority, roots);
+                mLocalPackageNames.put(userAuthority, info.packageName);
             }
         }
     }
 
-    private static class UserAuthority {
+    @VisibleForTesting
+    static class UserAuthority {
         private final UserId userId;
         @Nullable
         private final String authority;
 
-        private UserAuthority(UserId userId, @Nullable String authority) {
+        UserAuthority(UserId userId, @Nullable String authority) {
             this.userId = checkNotNull(userId);
             this.authority = authority;
         }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.base.DurableUtils;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persists the roots of all providers, so that they can be shown as soon as the app starts,
+ * instead of once every provider has been queried.
+ *
+ * <p>Every authority is stored with the version of its package, so that callers can drop the
+ * roots of packages updated since. The whole snapshot is dropped when the locale changes, since
+ * root titles are localized by providers.
+ */
+final class RootsSnapshotStore {
+
+    private static final String TAG = "RootsSnapshotStore";
+    private static final int VERSION = 1;
+
+    private final AtomicFile mFile;
+
+    /**
+     * The roots of an authority, and the version of the package that provided them.
+     */
+    static final class AuthorityRoots {
+        final UserId userId;
+        final String authority;
+        final String packageName;
+        final @Nullable String applicationName;
+        final long versionCode;
+        final long lastUpdateTime;
+        final boolean stopped;
+        final List<RootInfo> roots;
+
+        AuthorityRoots(UserId userId, String authority, String packageName,
+                @Nullable String applicationName, long versionCode, long lastUpdateTime,
+                boolean stopped, List<RootInfo> roots) {
+            this.userId = userId;
+            this.authority = authority;
+            this.packageName = packageName;
+            this.applicationName = applicationName;
+            this.versionCode = versionCode;
+            this.lastUpdateTime = lastUpdateTime;
+            this.stopped = stopped;
+            this.roots = roots;
+        }
+    }
+
+    RootsSnapshotStore(File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * Returns the stored roots, or an empty list if none were stored for the given locale.
+     */
+    synchronized List<AuthorityRoots> load(String locale) {
+        final List<AuthorityRoots> entries = new ArrayList<>();
+        try (DataInputStream in =
+                     new DataInputStream(new BufferedInputStream(mFile.openRead()))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unknown version");
+            }
+            if (!locale.equals(in.readUTF())) {
+                return Collections.emptyList();
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final UserId userId = UserId.read(in);
+                final String authority = in.readUTF();
+                final String packageName = in.readUTF();
+                final String applicationName = DurableUtils.readNullableString(in);
+                final long versionCode = in.readLong();
+                final long lastUpdateTime = in.readLong();
+                final boolean stopped = in.readBoolean();
+                final int rootCount = in.readInt();
+                final List<RootInfo> roots = new ArrayList<>(rootCount);
+                for (int j = 0; j < rootCount; j++) {
+                    final RootInfo root = new RootInfo();
+                    root.read(in);
+                    roots.add(root);
+                }
+                entries.add(new AuthorityRoots(userId, authority, packageName, applicationName,
+                        versionCode, lastUpdateTime, stopped, roots));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing stored yet.
+            return Collections.emptyList();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load the roots snapshot", e);
+            mFile.delete();
+            return Collections.emptyList();
+        }
+        return entries;
+    }
+
+    synchronized void save(String locale, List<AuthorityRoots> entries) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(VERSION);
+            out.writeUTF(locale);
+            out.writeInt(entries.size());
+            for (AuthorityRoots entry : entries) {
+                UserId.write(out, entry.userId);
+                out.writeUTF(entry.authority);
+                out.writeUTF(entry.packageName);
+                DurableUtils.writeNullableString(out, entry.applicationName);
+                out.writeLong(entry.versionCode);
+                out.writeLong(entry.lastUpdateTime);
+                out.writeBoolean(entry.stopped);
+                out.writeInt(entry.roots.size());
+                for (RootInfo root : entry.roots) {
+                    root.write(out);
+                }
+            }
+            out.flush();
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save the roots snapshot", e);
+            mFile.failWrite(stream);
+        }
+    }
+}
@@ -172,6 +172,12 @@ final class CompressJob extends CopyJob {
         super.finish();
     }
 
+    @Override
+    boolean isResumable() {
+        // The archive is written in one go, and removed if the job doesn't finish.
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -24,8 +24,6 @@ import static android.provider.DocumentsContract.getDocumentId;
 import static android.provider.DocumentsContract.isChildDocument;
 
 import static com.android.documentsui.OperationDialogFragment.DIALOG_TYPE_CONVERTED;
-import static com.android.documentsui.base.DocumentInfo.getCursorLong;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 import static com.android.documentsui.base.Providers.AUTHORITY_DOWNLOADS;
 import static com.android.documentsui.base.Providers.AUTHORITY_STORAGE;
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
@@ -68,10 +66,10 @@ import android.system.Os;
 import android.system.OsConstants;
 import android.system.StructStat;
 import android.text.BidiFormatter;
-import android.util.ArrayMap;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 import androidx.annotation.VisibleForTesting;
 
@@ -96,6 +94,7 @@ import java.io.SyncFailedException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
@@ -108,15 +107,23 @@ class CopyJob extends ResolvedResourcesJob {
 
     private static final long LOADING_TIMEOUT = 60000; // 1 min
 
+    // How often the offset of a file being copied is made durable and journaled.
+    private static final long JOURNAL_OFFSET_INTERVAL = 16 * 1024 * 1024; // 16 MiB
+
     final ArrayList<DocumentInfo> convertedFiles = new ArrayList<>();
     DocumentInfo mDstInfo;
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
     private final Messenger mMessenger;
-    private final Map<String, Long> mDirSizeMap = new ArrayMap<>();
 
     private CopyJobProgressTracker mProgressTracker;
 
+    // Journal allowing the job to be resumed if the process is killed. Null if the job isn't
+    // resumable, or the journal couldn't be opened.
+    @Nullable CopyJournal mJournal;
+
+    private final ProgressSampler mProgressSampler;
+
     /**
      * @see @link {@link Job} constructor for most param descriptions.
      */
@@ -130,6 +137,7 @@ class CopyJob extends ResolvedResourcesJob {
         super(service, listener, id, opType, destination, srcs, features);
         mDstInfo = destination.peek();
         mMessenger = messenger;
+        mProgressSampler = ProgressSampler.create(service);
 
         assert(srcs.getItemCount() > 0);
     }
@@ -166,6 +174,12 @@ class CopyJob extends ResolvedResourcesJob {
         } catch (RemoteException e) {
             // Ignore. Most likely the frontend was killed.
         }
+
+        // The job is over, either way there's nothing left to resume.
+        if (mJournal != null) {
+            mJournal.delete();
+            mJournal = null;
+        }
         super.finish();
     }
 
@@ -242,6 +256,46 @@ class CopyJob extends ResolvedResourcesJob {
                 mProgressTracker.getRemainingTimeEstimate());
     }
 
+    /**
+     * Whether the job can be resumed after being interrupted. See {@link CopyJournal}.
+     */
+    boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * @return the parent of the sources, recorded in the journal to resume the job.
+     */
+    @Nullable Uri getSrcParentUri() {
+        return null;
+    }
+
+    @Override
+    boolean onUrisRead(List<Uri> uris) {
+        if (isResumable()) {
+            // Opened before the sources are resolved, so sources moved away by an interrupted
+            // run are not reported as failures.
+            try {
+                mJournal = CopyJournal.open(CopyJournal.getFile(appContext, id),
+                        new CopyJournal.Header(operationType, stack, getSrcParentUri(), uris));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to open the journal. The job won't be resumable.", e);
+            }
+        }
+        return super.onUrisRead(uris);
+    }
+
+    @Override
+    void onResolveFailed(Uri uri) {
+        if (mJournal != null && mJournal.isCompleted(uri)) {
+            if (DEBUG) {
+                Log.d(TAG, "Source processed before the job was interrupted: " + uri);
+            }
+            return;
+        }
+        super.onResolveFailed(uri);
+    }
+
     @Override
     boolean setUp() {
         if (!super.setUp()) {
@@ -356,14 +410,26 @@ class CopyJob extends ResolvedResourcesJob {
      * @param bytesCopied
      */
     private void makeCopyProgress(long bytesCopied) {
+        mProgressTracker.onBytesCopied(bytesCopied);
+        publishProgress();
+    }
+
+    /**
+     * Sends the progress to the frontend, if the sampler decides it's worth it. Progress is
+     * updated on every chunk copied, which would otherwise flood the frontend with messages.
+     */
+    private void publishProgress() {
+        final int percent = (int) (100 * mProgressTracker.getProgress());
+        if (!mProgressSampler.shouldPublish(percent, /* maxValue= */ 100)) {
+            return;
+        }
         try {
             mMessenger.send(Message.obtain(mHandler, MESSAGE_PROGRESS,
-                    (int) (100 * mProgressTracker.getProgress()), // Progress in percentage
+                    percent, // Progress in percentage
                     (int) mProgressTracker.getRemainingTimeEstimate()));
         } catch (RemoteException e) {
             // Ignore. The frontend may be gone.
         }
-        mProgressTracker.onBytesCopied(bytesCopied);
     }
 
     /**
@@ -374,8 +440,7 @@ class CopyJob extends ResolvedResourcesJob {
     protected void makeOptimizedCopyProgress(DocumentInfo doc) {
         long bytes;
         if (doc.isDirectory()) {
-            Long byteObject = mDirSizeMap.get(doc.documentId);
-            bytes = byteObject == null ? 0 : byteObject.longValue();
+            bytes = Math.max(mManifest.getTreeSize(doc.derivedUri), 0);
         } else {
             bytes = doc.size;
         }
@@ -394,6 +459,11 @@ class CopyJob extends ResolvedResourcesJob {
      */
     void processDocument(DocumentInfo src, DocumentInfo srcParent,
             DocumentInfo dstDirInfo) throws ResourceException {
+        if (isCompletedBeforeInterruption(src)) {
+            makeOptimizedCopyProgress(src);
+            return;
+        }
+
         // For now. Local storage isn't using optimized copy.
 
         // When copying within the same provider, try to use optimized copying.
@@ -405,6 +475,7 @@ class CopyJob extends ResolvedResourcesJob {
                             dstDirInfo.derivedUri) != null) {
                         Metrics.logFileOperated(operationType, MetricConsts.OPMODE_PROVIDER);
                         makeOptimizedCopyProgress(src);
+                        recordCompleted(src);
                         return;
                     }
                 } catch (FileNotFoundException | RemoteException | RuntimeException e) {
@@ -428,10 +499,31 @@ class CopyJob extends ResolvedResourcesJob {
         byteCopyDocument(src, dstDirInfo);
     }
 
+    /**
+     * @return true if {@code src} was completely processed by a run of this job which got
+     *     interrupted, and hasn't been modified since.
+     */
+    final boolean isCompletedBeforeInterruption(DocumentInfo src) {
+        if (mJournal != null && mJournal.isCompleted(src)) {
+            if (DEBUG) {
+                Log.d(TAG, "Skipping document processed before interruption: " + src.derivedUri);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    final void recordCompleted(DocumentInfo src) {
+        if (mJournal != null) {
+            mJournal.recordCompleted(src);
+        }
+    }
+
     private void processDocumentThenUpdateProgress(DocumentInfo src, DocumentInfo srcParent,
             DocumentInfo dstDirInfo) throws ResourceException {
         processDocument(src, srcParent, dstDirInfo);
         mProgressTracker.onDocumentCompleted();
+        publishProgress();
     }
 
     void byteCopyDocument(DocumentInfo src, DocumentInfo dest) throws ResourceException {
@@ -473,45 +565,76 @@ class CopyJob extends ResolvedResourcesJob {
         }
 
         // Create the target document (either a file or a directory), then copy recursively the
-        // contents (bytes or children).
-        Uri dstUri = null;
-        try {
-            dstUri = DocumentsContract.createDocument(
-                    wrap(getClient(dest)), dest.derivedUri, dstMimeType, dstDisplayName);
-        } catch (FileNotFoundException | RemoteException | RuntimeException e) {
-            if (e instanceof DeadObjectException) {
-                releaseClient(dest);
+        // contents (bytes or children). If an interrupted run of this job already created it,
+        // continue with that one instead.
+        DocumentInfo dstInfo = getCreatedBeforeInterruption(src, dest);
+        final boolean resumed = dstInfo != null;
+        if (!resumed) {
+            Uri dstUri = null;
+            try {
+                dstUri = DocumentsContract.createDocument(
+                        wrap(getClient(dest)), dest.derivedUri, dstMimeType, dstDisplayName);
+            } catch (FileNotFoundException | RemoteException | RuntimeException e) {
+                if (e instanceof DeadObjectException) {
+                    releaseClient(dest);
+                }
+                Metrics.logFileOperationFailure(
+                        appContext, MetricConsts.SUBFILEOP_CREATE_DOCUMENT, dest.derivedUri);
+                throw new ResourceException(
+                        "Couldn't create destination document " + dstDisplayName
+                        + " in directory %s due to an exception.", dest.derivedUri, e);
+            }
+            if (dstUri == null) {
+                // If this is a directory, the entire subdir will not be copied over.
+                Metrics.logFileOperationFailure(
+                        appContext, MetricConsts.SUBFILEOP_CREATE_DOCUMENT, dest.derivedUri);
+                throw new ResourceException(
+                        "Couldn't create destination document " + dstDisplayName
+                        + " in directory %s.", dest.derivedUri);
             }
-            Metrics.logFileOperationFailure(
-                    appContext, MetricConsts.SUBFILEOP_CREATE_DOCUMENT, dest.derivedUri);
-            throw new ResourceException(
-                    "Couldn't create destination document " + dstDisplayName + " in directory %s "
-                    + "due to an exception.", dest.derivedUri, e);
-        }
-        if (dstUri == null) {
-            // If this is a directory, the entire subdir will not be copied over.
-            Metrics.logFileOperationFailure(
-                    appContext, MetricConsts.SUBFILEOP_CREATE_DOCUMENT, dest.derivedUri);
-            throw new ResourceException(
-                    "Couldn't create destination document " + dstDisplayName + " in directory %s.",
-                    dest.derivedUri);
-        }
 
-        DocumentInfo dstInfo = null;
-        try {
-            dstInfo = DocumentInfo.fromUri(dest.userId.getContentResolver(service), dstUri,
-                    dest.userId);
-        } catch (FileNotFoundException | RuntimeException e) {
-            Metrics.logFileOperationFailure(
-                    appContext, MetricConsts.SUBFILEOP_QUERY_DOCUMENT, dstUri);
-            throw new ResourceException("Could not load DocumentInfo for newly created file %s.",
-                    dstUri);
+            try {
+                dstInfo = DocumentInfo.fromUri(dest.userId.getContentResolver(service), dstUri,
+                        dest.userId);
+            } catch (FileNotFoundException | RuntimeException e) {
+                Metrics.logFileOperationFailure(
+                        appContext, MetricConsts.SUBFILEOP_QUERY_DOCUMENT, dstUri);
+                throw new ResourceException(
+                        "Could not load DocumentInfo for newly created file %s.", dstUri);
+            }
+
+            if (mJournal != null) {
+                mJournal.recordCreated(src.derivedUri, dstUri);
+            }
         }
 
         if (Document.MIME_TYPE_DIR.equals(src.mimeType)) {
             copyDirectoryHelper(src, dstInfo);
         } else {
-            copyFileHelper(src, dstInfo, dest, dstMimeType);
+            final long resumeOffset = resumed && !src.isVirtual()
+                    ? mJournal.getResumeOffset(src) : 0;
+            copyFileHelper(src, dstInfo, dest, dstMimeType, resumed, resumeOffset);
+        }
+
+        recordCompleted(src);
+    }
+
+    /**
+     * @return the destination document created for {@code src} by a run of this job which got
+     *     interrupted, or null if there is none or it doesn't exist anymore.
+     */
+    private @Nullable DocumentInfo getCreatedBeforeInterruption(
+            DocumentInfo src, DocumentInfo dest) {
+        final Uri dstUri = mJournal != null ? mJournal.getCreated(src.derivedUri) : null;
+        if (dstUri == null) {
+            return null;
+        }
+        try {
+            return DocumentInfo.fromUri(dest.userId.getContentResolver(service), dstUri,
+                    dest.userId);
+        } catch (FileNotFoundException | RuntimeException e) {
+            Log.w(TAG, "Document created before interruption is gone: " + dstUri);
+            return null;
         }
     }
 
@@ -527,19 +650,16 @@ class CopyJob extends ResolvedResourcesJob {
     private void copyDirectoryHelper(DocumentInfo srcDir, DocumentInfo destDir)
             throws ResourceException {
         // Recurse into directories. Copy children into the new subdirectory.
-        final String queryColumns[] = new String[] {
-                Document.COLUMN_DISPLAY_NAME,
-                Document.COLUMN_DOCUMENT_ID,
-                Document.COLUMN_MIME_TYPE,
-                Document.COLUMN_SIZE,
-                Document.COLUMN_FLAGS
-        };
         Cursor cursor = null;
         boolean success = true;
         // Iterate over srcs in the directory; copy to the destination directory.
         try {
             try {
-                cursor = queryChildren(srcDir, queryColumns);
+                // Reuse the listing fetched while calculating the size, if any.
+                cursor = mManifest.getChildren(srcDir.derivedUri);
+                if (cursor == null) {
+                    cursor = queryChildren(srcDir, TreeManifest.COLUMNS);
+                }
             } catch (RemoteException | RuntimeException e) {
                 if (e instanceof DeadObjectException) {
                     releaseClient(srcDir);
@@ -584,10 +704,13 @@ class CopyJob extends ResolvedResourcesJob {
      * @param dest Info of the *file* to copy to. Must be created beforehand.
      * @param destParent Info of the parent of the destination.
      * @param mimeType Mime type for the target. Can be different than source for virtual files.
+     * @param resumed Whether {@code dest} was created by an interrupted run of this job.
+     * @param resumeOffset Offset up to which {@code dest} was durably written by an interrupted
+     *     run of this job, or 0.
      * @throws ResourceException
      */
     private void copyFileHelper(DocumentInfo src, DocumentInfo dest, DocumentInfo destParent,
-            String mimeType) throws ResourceException {
+            String mimeType, boolean resumed, long resumeOffset) throws ResourceException {
         AssetFileDescriptor srcFileAsAsset = null;
         ParcelFileDescriptor srcFile = null;
         ParcelFileDescriptor dstFile = null;
@@ -639,16 +762,14 @@ class CopyJob extends ResolvedResourcesJob {
                 Metrics.logFileOperated(operationType, MetricConsts.OPMODE_CONVENTIONAL);
             }
 
-            try {
-                dstFile = getClient(dest).openFile(dest.derivedUri, "w", mSignal);
-            } catch (FileNotFoundException | RemoteException | RuntimeException e) {
-                if (e instanceof DeadObjectException) {
-                    releaseClient(dest);
-                }
-                Metrics.logFileOperationFailure(
-                        appContext, MetricConsts.SUBFILEOP_OPEN_FILE, dest.derivedUri);
-                throw new ResourceException("Failed to open the destination file %s for writing "
-                        + "due to an exception.", dest.derivedUri, e);
+            // Continue after the offset reached before interruption, if both files can seek.
+            // Otherwise a resumed destination is truncated and copied from the start.
+            dstFile = openDestination(dest, resumeOffset > 0 ? "rw" : (resumed ? "wt" : "w"));
+            if (resumeOffset > 0 && !seekForResume(srcFile, dstFile, resumeOffset)) {
+                FileUtils.closeQuietly(dstFile);
+                dstFile = null;
+                dstFile = openDestination(dest, "wt");
+                resumeOffset = 0;
             }
             out = new ParcelFileDescriptor.AutoCloseOutputStream(dstFile);
 
@@ -665,11 +786,22 @@ class CopyJob extends ResolvedResourcesJob {
                 }
 
                 try {
+                    final long startOffset = resumeOffset;
+                    if (startOffset > 0) {
+                        makeCopyProgress(startOffset);
+                    }
                     final Int64Ref last = new Int64Ref(0);
+                    final Int64Ref lastJournaled = new Int64Ref(0);
                     FileUtils.copy(in, out, mSignal, Runnable::run, (long progress) -> {
                         final long delta = progress - last.value;
                         last.value = progress;
                         makeCopyProgress(delta);
+
+                        if (mJournal != null
+                                && progress - lastJournaled.value >= JOURNAL_OFFSET_INTERVAL) {
+                            lastJournaled.value = progress;
+                            journalOffset(src, dstFd, startOffset + progress);
+                        }
                     });
                 } catch (OperationCanceledException e) {
                     if (DEBUG) {
@@ -738,6 +870,55 @@ class CopyJob extends ResolvedResourcesJob {
         }
     }
 
+    private ParcelFileDescriptor openDestination(DocumentInfo dest, String mode)
+            throws ResourceException {
+        try {
+            return getClient(dest).openFile(dest.derivedUri, mode, mSignal);
+        } catch (FileNotFoundException | RemoteException | RuntimeException e) {
+            if (e instanceof DeadObjectException) {
+                releaseClient(dest);
+            }
+            Metrics.logFileOperationFailure(
+                    appContext, MetricConsts.SUBFILEOP_OPEN_FILE, dest.derivedUri);
+            throw new ResourceException("Failed to open the destination file %s for writing "
+                    + "due to an exception.", dest.derivedUri, e);
+        }
+    }
+
+    /**
+     * Positions both files at {@code offset} to continue an interrupted copy.
+     *
+     * @return false if either file can't seek, or the destination is shorter than the offset.
+     */
+    private static boolean seekForResume(
+            ParcelFileDescriptor src, ParcelFileDescriptor dst, long offset) {
+        try {
+            if (Os.fstat(dst.getFileDescriptor()).st_size < offset) {
+                return false;
+            }
+            Os.lseek(dst.getFileDescriptor(), offset, OsConstants.SEEK_SET);
+            Os.lseek(src.getFileDescriptor(), offset, OsConstants.SEEK_SET);
+            return true;
+        } catch (ErrnoException e) {
+            if (DEBUG) {
+                Log.d(TAG, "Can't resume copy at " + offset + ", starting over.", e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Syncs the destination and journals the offset copied so far.
+     */
+    private void journalOffset(DocumentInfo src, FileDescriptor dstFd, long offset) {
+        try {
+            Os.fsync(dstFd);
+            mJournal.recordOffset(src, offset);
+        } catch (ErrnoException e) {
+            // Not a regular file, so the copy couldn't be resumed from an offset anyway.
+        }
+    }
+
     /**
      * Create CopyJobProgressTracker instance for notification to update copy progress.
      *
@@ -752,9 +933,8 @@ class CopyJob extends ResolvedResourcesJob {
                 if (src.isDirectory()) {
                     // Directories need to be recursed into.
                     try {
-                        long size = calculateFileSizesRecursively(getClient(src), src.derivedUri);
-                        bytesRequired += size;
-                        mDirSizeMap.put(src.documentId, size);
+                        bytesRequired += calculateFileSizesRecursively(
+                                getClient(src), src.derivedUri);
                     } catch (RemoteException e) {
                         Log.w(TAG, "Failed to obtain the client for " + src.derivedUri, e);
                         return new IndeterminateProgressTracker(bytesRequired);
@@ -781,35 +961,24 @@ class CopyJob extends ResolvedResourcesJob {
 
     /**
      * Calculates (recursively) the cumulative size of all the files under the given directory.
+     * Every listing fetched on the way is recorded in {@link #mManifest}, together with the size
+     * of each directory, so later phases of the job don't need to query the provider again.
      *
      * @throws ResourceException
      */
     long calculateFileSizesRecursively(
             ContentProviderClient client, Uri uri) throws ResourceException {
-        final String authority = uri.getAuthority();
-        final String queryColumns[] = new String[] {
-                Document.COLUMN_DOCUMENT_ID,
-                Document.COLUMN_MIME_TYPE,
-                Document.COLUMN_SIZE
-        };
+        final long cached = mManifest.getTreeSize(uri);
+        if (cached >= 0) {
+            return cached;
+        }
 
-        long result = 0;
+        final String authority = uri.getAuthority();
+        final List<TreeManifest.Entry> children;
         Cursor cursor = null;
         try {
-            cursor = queryChildren(client, uri, queryColumns);
-            while (cursor.moveToNext() && !isCanceled()) {
-                if (Document.MIME_TYPE_DIR.equals(
-                        getCursorString(cursor, Document.COLUMN_MIME_TYPE))) {
-                    // Recurse into directories.
-                    final Uri dirUri = buildDocumentUri(authority,
-                            getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
-                    result += calculateFileSizesRecursively(client, dirUri);
-                } else {
-                    // This may return -1 if the size isn't defined. Ignore those cases.
-                    long size = getCursorLong(cursor, Document.COLUMN_SIZE);
-                    result += size > 0 ? size : 0;
-                }
-            }
+            cursor = queryChildren(client, uri, TreeManifest.COLUMNS);
+            children = mManifest.putChildren(uri, cursor);
         } catch (RemoteException | RuntimeException e) {
             if (e instanceof DeadObjectException) {
                 releaseClient(uri);
@@ -820,6 +989,22 @@ class CopyJob extends ResolvedResourcesJob {
             FileUtils.closeQuietly(cursor);
         }
 
+        long result = 0;
+        for (TreeManifest.Entry child : children) {
+            if (isCanceled()) {
+                return result;
+            }
+            if (child.isDirectory()) {
+                // Recurse into directories.
+                result += calculateFileSizesRecursively(
+                        client, buildDocumentUri(authority, child.documentId));
+            } else {
+                // This may return -1 if the size isn't defined. Ignore those cases.
+                result += child.size > 0 ? child.size : 0;
+            }
+        }
+
+        mManifest.putTreeSize(uri, result);
         return result;
     }
 
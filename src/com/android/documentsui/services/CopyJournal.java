@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.base.DurableUtils;
+import com.android.documentsui.services.FileOperationService.OpType;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Append-only journal of a copy or move job, kept in app storage so the job can be resumed if
+ * the service process is killed before the job finishes.
+ *
+ * <p>The journal starts with a {@link Header} describing the operation, followed by records of
+ * destination documents created, source documents completed, and offsets up to which a file has
+ * been durably copied. A torn record at the end of the file is ignored when reading it back.
+ *
+ * <p>The file is locked while its job is running. A journal whose lock can be acquired belongs
+ * to a job that was interrupted. Once the user was offered to resume it, a record says so, until
+ * the job runs again.
+ */
+final class CopyJournal implements Closeable {
+    private static final String TAG = "CopyJournal";
+
+    @VisibleForTesting
+    static final String JOURNALS_DIR = "journals";
+
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_CREATED = 1;
+    private static final byte RECORD_COMPLETED = 2;
+    private static final byte RECORD_OFFSET = 3;
+    private static final byte RECORD_OFFERED = 4;
+    private static final byte RECORD_OPENED = 5;
+
+    private final File mFile;
+    private final DataOutputStream mOut;
+    private final FileLock mLock;
+
+    private final Records mRecords = new Records();
+
+    private CopyJournal(File file, FileOutputStream stream, FileLock lock) {
+        mFile = file;
+        mOut = new DataOutputStream(stream);
+        mLock = lock;
+    }
+
+    static File getFile(Context context, String jobId) {
+        return new File(new File(context.getFilesDir(), JOURNALS_DIR), jobId);
+    }
+
+    /**
+     * Opens the journal for a job, taking over the state recorded by a previous, interrupted run
+     * of the same operation. If the existing journal describes a different operation, or can't be
+     * read, it is discarded and a new one is started.
+     *
+     * @throws IOException if the journal is in use or can't be written.
+     */
+    static CopyJournal open(File file, Header header) throws IOException {
+        file.getParentFile().mkdirs();
+
+        final FileOutputStream stream = new FileOutputStream(file, /* append= */ true);
+        final FileLock lock;
+        try {
+            lock = stream.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            stream.close();
+            throw new IOException("Journal is in use: " + file, e);
+        }
+        if (lock == null) {
+            stream.close();
+            throw new IOException("Journal is in use: " + file);
+        }
+
+        final CopyJournal journal = new CopyJournal(file, stream, lock);
+        try {
+            final long valid = journal.readExisting(header);
+            if (valid < 0) {
+                stream.getChannel().truncate(0);
+                journal.mRecords.clear();
+                header.write(journal.mOut);
+                journal.flush();
+            } else {
+                if (valid < file.length()) {
+                    // Drop a torn record, so new records are appended after the last complete one.
+                    stream.getChannel().truncate(valid);
+                }
+                if (journal.mRecords.offered) {
+                    // Running again, so the job is offered to be resumed if interrupted again.
+                    journal.mOut.writeByte(RECORD_OPENED);
+                    journal.flush();
+                }
+            }
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the headers of journals left behind by jobs that didn't finish, and weren't offered
+     * to be resumed since they last ran, keyed by job id.
+     */
+    static Map<String, Header> findInterrupted(Context context) {
+        return findInterrupted(new File(context.getFilesDir(), JOURNALS_DIR));
+    }
+
+    @VisibleForTesting
+    static Map<String, Header> findInterrupted(File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Header> interrupted = new HashMap<>();
+        for (File file : files) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                final FileLock lock = raf.getChannel().tryLock();
+                if (lock == null) {
+                    // The job is still running.
+                    continue;
+                }
+                try {
+                    final ByteArrayInputStream bytes =
+                            new ByteArrayInputStream(Files.readAllBytes(file.toPath()));
+                    final Header header = Header.read(new DataInputStream(bytes));
+                    final Records records = new Records();
+                    readRecords(bytes, records);
+                    if (!records.offered) {
+                        interrupted.put(file.getName(), header);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (OverlappingFileLockException e) {
+                // The job is running in this process.
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable journal " + file, e);
+                file.delete();
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * Returns the header of the journal of an interrupted job, or null if there is none, or the
+     * job is running again.
+     */
+    static @Nullable Header readInterrupted(Context context, String jobId) {
+        final File file = getFile(context, jobId);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final FileLock lock = raf.getChannel().tryLock();
+            if (lock == null) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                return Header.read(in);
+            } finally {
+                lock.release();
+            }
+        } catch (OverlappingFileLockException e) {
+            // The job is running in this process.
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read journal " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Records that the user was offered to resume an interrupted job, so the offer isn't made
+     * again until the job runs again.
+     */
+    static void markOffered(Context context, String jobId) {
+        markOffered(getFile(context, jobId));
+    }
+
+    @VisibleForTesting
+    static void markOffered(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final FileLock lock = raf.getChannel().tryLock();
+            if (lock == null) {
+                return;
+            }
+            try {
+                // Appends after the last complete record, so a torn one doesn't hide the marker.
+                final ByteArrayInputStream bytes =
+                        new ByteArrayInputStream(Files.readAllBytes(file.toPath()));
+                Header.read(new DataInputStream(bytes));
+                final long header = raf.length() - bytes.available();
+                raf.setLength(header + readRecords(bytes, new Records()));
+                raf.seek(raf.length());
+                raf.writeByte(RECORD_OFFERED);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            Log.w(TAG, "Failed to mark journal " + file + " as offered", e);
+        }
+    }
+
+    /**
+     * Deletes the journal of an interrupted job, unless the job is running again.
+     */
+    static void discard(Context context, String jobId) {
+        final File file = getFile(context, jobId);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final FileLock lock = raf.getChannel().tryLock();
+            if (lock != null) {
+                file.delete();
+                lock.release();
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            Log.w(TAG, "Failed to discard journal " + file, e);
+        }
+    }
+
+    void recordCreated(Uri src, Uri dst) {
+        mRecords.created.put(src.toString(), dst.toString());
+        try {
+            mOut.writeByte(RECORD_CREATED);
+            mOut.writeUTF(src.toString());
+            mOut.writeUTF(dst.toString());
+            flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record created document for " + src, e);
+        }
+    }
+
+    void recordCompleted(DocumentInfo src) {
+        mRecords.completed.put(src.derivedUri.toString(),
+                new long[] { src.size, src.lastModified });
+        try {
+            mOut.writeByte(RECORD_COMPLETED);
+            mOut.writeUTF(src.derivedUri.toString());
+            mOut.writeLong(src.size);
+            mOut.writeLong(src.lastModified);
+            flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record completion of " + src.derivedUri, e);
+        }
+    }
+
+    /**
+     * Records that the first {@code offset} bytes of {@code src} are durably written to its
+     * destination. The caller must have synced the destination beforehand.
+     */
+    void recordOffset(DocumentInfo src, long offset) {
+        mRecords.offsets.put(src.derivedUri.toString(),
+                new long[] { src.size, src.lastModified, offset });
+        try {
+            mOut.writeByte(RECORD_OFFSET);
+            mOut.writeUTF(src.derivedUri.toString());
+            mOut.writeLong(src.size);
+            mOut.writeLong(src.lastModified);
+            mOut.writeLong(offset);
+            flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record offset of " + src.derivedUri, e);
+        }
+    }
+
+    /**
+     * @return the destination document created for {@code src} by an interrupted run, or null.
+     */
+    @Nullable Uri getCreated(Uri src) {
+        final String dst = mRecords.created.get(src.toString());
+        return dst != null ? Uri.parse(dst) : null;
+    }
+
+    /**
+     * @return true if {@code src} was completed by an interrupted run, and hasn't been modified
+     *     since.
+     */
+    boolean isCompleted(DocumentInfo src) {
+        final long[] completed = mRecords.completed.get(src.derivedUri.toString());
+        return completed != null && completed[0] == src.size && completed[1] == src.lastModified;
+    }
+
+    /**
+     * @return true if {@code src} was completed by an interrupted run. Used for sources which
+     *     can't be resolved anymore, for instance because they were already moved.
+     */
+    boolean isCompleted(Uri src) {
+        return mRecords.completed.containsKey(src.toString());
+    }
+
+    /**
+     * @return the offset up to which {@code src} was copied by an interrupted run, or 0 if it
+     *     has to be copied from the start.
+     */
+    long getResumeOffset(DocumentInfo src) {
+        final long[] offset = mRecords.offsets.get(src.derivedUri.toString());
+        if (offset == null || offset[0] != src.size || offset[1] != src.lastModified) {
+            return 0;
+        }
+        return offset[2];
+    }
+
+    /**
+     * Closes and deletes the journal. Called once the job is over, successfully or not.
+     */
+    void delete() {
+        close();
+        if (!mFile.delete()) {
+            Log.w(TAG, "Failed to delete journal " + mFile);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mLock.release();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to release journal lock.", e);
+        }
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close journal.", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        // Records only need to survive the process being killed, which doesn't lose data that
+        // already reached the kernel. Syncing is left to the destination files.
+        mOut.flush();
+    }
+
+    /**
+     * Loads the state recorded in the journal, if it belongs to the same operation.
+     *
+     * @return the length of the journal up to the last complete record, or -1 if the journal is
+     *     empty, unreadable or describes another operation.
+     */
+    private long readExisting(Header header) {
+        if (mFile.length() == 0) {
+            return -1;
+        }
+
+        try {
+            final byte[] data = Files.readAllBytes(mFile.toPath());
+            final ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+            final DataInputStream in = new DataInputStream(bytes);
+            if (!header.equals(Header.read(in))) {
+                Log.w(TAG, "Journal " + mFile + " belongs to another operation. Discarding.");
+                return -1;
+            }
+
+            final long valid = data.length - bytes.available() + readRecords(bytes, mRecords);
+
+            if (DEBUG) {
+                Log.d(TAG, "Resuming from " + mRecords.count + " records in " + mFile);
+            }
+            return valid;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read journal " + mFile, e);
+            mRecords.clear();
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the records following the header, up to the end of the journal or a torn record.
+     *
+     * @return the number of bytes of the complete records read.
+     */
+    private static long readRecords(ByteArrayInputStream bytes, Records records) {
+        final DataInputStream in = new DataInputStream(bytes);
+        final int start = bytes.available();
+        int valid = 0;
+        try {
+            while (true) {
+                final int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                switch (type) {
+                    case RECORD_CREATED:
+                        records.created.put(in.readUTF(), in.readUTF());
+                        break;
+                    case RECORD_COMPLETED:
+                        records.completed.put(in.readUTF(),
+                                new long[] { in.readLong(), in.readLong() });
+                        break;
+                    case RECORD_OFFSET:
+                        records.offsets.put(in.readUTF(),
+                                new long[] { in.readLong(), in.readLong(), in.readLong() });
+                        break;
+                    case RECORD_OFFERED:
+                        records.offered = true;
+                        break;
+                    case RECORD_OPENED:
+                        records.offered = false;
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+                records.count++;
+                valid = start - bytes.available();
+            }
+        } catch (IOException e) {
+            // A torn record at the end, most likely the process was killed while writing it.
+            Log.w(TAG, "Ignoring the tail of a journal", e);
+        }
+        return valid;
+    }
+
+    /**
+     * The state recorded in a journal after its header.
+     */
+    private static final class Records {
+        final Map<String, String> created = new HashMap<>();
+        final Map<String, long[]> completed = new HashMap<>();
+        final Map<String, long[]> offsets = new HashMap<>();
+        // Whether the job was offered to be resumed since it last ran.
+        boolean offered;
+        int count;
+
+        void clear() {
+            created.clear();
+            completed.clear();
+            offsets.clear();
+            offered = false;
+            count = 0;
+        }
+    }
+
+    /**
+     * Describes the operation a journal belongs to, so it can be started again.
+     */
+    static final class Header {
+        final @OpType int opType;
+        final DocumentStack destination;
+        final @Nullable Uri srcParent;
+        final List<Uri> srcs;
+
+        Header(@OpType int opType, DocumentStack destination, @Nullable Uri srcParent,
+                List<Uri> srcs) {
+            this.opType = opType;
+            this.destination = destination;
+            this.srcParent = srcParent;
+            this.srcs = srcs;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(VERSION);
+            out.writeInt(opType);
+            final byte[] stack = DurableUtils.writeToArray(destination);
+            out.writeInt(stack.length);
+            out.write(stack);
+            DurableUtils.writeNullableString(out, srcParent != null ? srcParent.toString() : null);
+            out.writeInt(srcs.size());
+            for (Uri uri : srcs) {
+                out.writeUTF(uri.toString());
+            }
+        }
+
+        static Header read(DataInputStream in) throws IOException {
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+            final int opType = in.readInt();
+            final byte[] stack = new byte[in.readInt()];
+            in.readFully(stack);
+            final String srcParent = DurableUtils.readNullableString(in);
+            final int count = in.readInt();
+            final List<Uri> srcs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                srcs.add(Uri.parse(in.readUTF()));
+            }
+            return new Header(opType,
+                    DurableUtils.readFromArray(stack, new DocumentStack()),
+                    srcParent != null ? Uri.parse(srcParent) : null,
+                    srcs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Header)) {
+                return false;
+            }
+            final Header other = (Header) o;
+            return opType == other.opType
+                    && Objects.equals(srcParent, other.srcParent)
+                    && srcs.equals(other.srcs)
+                    && Objects.equals(destination.peek(), other.destination.peek());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(opType, srcParent, srcs);
+        }
+    }
+}
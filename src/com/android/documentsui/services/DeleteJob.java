@@ -16,31 +16,55 @@
 
 package com.android.documentsui.services;
 
+import static android.content.ContentResolver.wrap;
+
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 import static com.android.documentsui.services.FileOperationService.OPERATION_DELETE;
 
 import android.app.Notification;
 import android.app.Notification.Builder;
+import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.database.Cursor;
 import android.icu.text.MessageFormat;
 import android.net.Uri;
+import android.os.DeadObjectException;
+import android.os.FileUtils;
+import android.os.RemoteException;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Path;
 import android.text.BidiFormatter;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.MetricConsts;
 import com.android.documentsui.Metrics;
 import com.android.documentsui.R;
 import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.DocumentStack;
 import com.android.documentsui.base.Features;
+import com.android.documentsui.base.RootInfo;
 import com.android.documentsui.base.UserId;
 import com.android.documentsui.clipping.UrisSupplier;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
@@ -48,9 +72,17 @@ final class DeleteJob extends ResolvedResourcesJob {
 
     private static final String TAG = "DeleteJob";
 
+    // Maximum number of delete calls issued to providers concurrently.
+    @VisibleForTesting
+    static final int MAX_CONCURRENT_DELETES = 4;
+
+    // Maximum number of documents deleted by a single task.
+    @VisibleForTesting
+    static final int BATCH_SIZE = 32;
+
     private final Uri mParentUri;
 
-    private volatile int mDocsProcessed = 0;
+    private final AtomicInteger mDocsProcessed = new AtomicInteger();
 
     /**
      * Moves files to a destination identified by {@code destination}.
@@ -81,10 +113,11 @@ final class DeleteJob extends ResolvedResourcesJob {
 
     @Override
     public Notification getProgressNotification() {
-        mProgressBuilder.setProgress(mResourceUris.getItemCount(), mDocsProcessed, false);
+        final int docsProcessed = mDocsProcessed.get();
+        mProgressBuilder.setProgress(mResourceUris.getItemCount(), docsProcessed, false);
         String format = service.getString(R.string.delete_progress);
         mProgressBuilder.setSubText(
-                String.format(format, mDocsProcessed, mResourceUris.getItemCount()));
+                String.format(format, docsProcessed, mResourceUris.getItemCount()));
 
         mProgressBuilder.setContentText(null);
 
@@ -145,26 +178,198 @@ final class DeleteJob extends ResolvedResourcesJob {
           return;
         }
 
-        for (DocumentInfo doc : mResolvedDocs) {
+        final Map<String, Set<String>> dirIds = findDeletableDirs(mResolvedDocs, parentDoc);
+        final List<List<DocumentInfo>> batches = createBatches(mResolvedDocs);
+        final List<DocumentInfo> failed = new ArrayList<>();
+        if (batches.size() <= 1) {
+            for (List<DocumentInfo> batch : batches) {
+                deleteBatch(batch, parentDoc, dirIds, failed);
+            }
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(MAX_CONCURRENT_DELETES, batches.size()));
+            for (List<DocumentInfo> batch : batches) {
+                executor.execute(() -> deleteBatch(batch, parentDoc, dirIds, failed));
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for deletions to finish.", e);
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (failed) {
+            for (DocumentInfo doc : failed) {
+                onFileFailed(doc);
+            }
+        }
+
+        if (isCanceled()) {
+            return;
+        }
+
+        Metrics.logFileOperation(operationType, mResolvedDocs, null);
+    }
+
+    /**
+     * Deletes documents of a batch one by one, stopping early if the job gets canceled.
+     * Called concurrently for different batches.
+     *
+     * Documents in one of the selected directories of their authority, given by {@code dirIds},
+     * are skipped as deleting the directory removes them too. As the directory may be deleted
+     * by another batch first, a document which is gone after failing to be deleted isn't
+     * reported as a failure either.
+     */
+    private void deleteBatch(List<DocumentInfo> batch, @Nullable DocumentInfo parentDoc,
+            Map<String, Set<String>> dirIds, List<DocumentInfo> failed) {
+        for (DocumentInfo doc : batch) {
+            if (isCanceled()) {
+                return;
+            }
+            final Set<String> ids = dirIds.get(doc.authority);
+            if (ids != null && isInAnyOf(doc, ids)) {
+                if (DEBUG) {
+                    Log.d(TAG, "Skipping document deleted with its ancestor @ " + doc.derivedUri);
+                }
+                mDocsProcessed.incrementAndGet();
+                continue;
+            }
             if (DEBUG) {
                 Log.d(TAG, "Deleting document @ " + doc.derivedUri);
             }
             try {
                 deleteDocument(doc, parentDoc);
             } catch (ResourceException e) {
+                if (ids != null && isGone(doc)) {
+                    if (DEBUG) {
+                        Log.d(TAG, "Document deleted with its ancestor @ " + doc.derivedUri);
+                    }
+                    mDocsProcessed.incrementAndGet();
+                    continue;
+                }
                 Metrics.logFileOperationFailure(
                         appContext, MetricConsts.SUBFILEOP_DELETE_DOCUMENT, doc.derivedUri);
                 Log.e(TAG, "Failed to delete document @ " + doc.derivedUri, e);
-                onFileFailed(doc);
+                synchronized (failed) {
+                    failed.add(doc);
+                }
             }
+            mDocsProcessed.incrementAndGet();
+        }
+    }
 
-            mDocsProcessed++;
-            if (isCanceled()) {
-                return;
+    /**
+     * Groups documents by authority, and splits each group into batches of at most
+     * {@link #BATCH_SIZE} documents, so that a slow provider doesn't hold up the others.
+     */
+    @VisibleForTesting
+    static List<List<DocumentInfo>> createBatches(List<DocumentInfo> docs) {
+        final Map<String, List<DocumentInfo>> byAuthority = new LinkedHashMap<>();
+        for (DocumentInfo doc : docs) {
+            byAuthority.computeIfAbsent(doc.authority, k -> new ArrayList<>()).add(doc);
+        }
+
+        final List<List<DocumentInfo>> batches = new ArrayList<>();
+        for (List<DocumentInfo> group : byAuthority.values()) {
+            for (int i = 0; i < group.size(); i += BATCH_SIZE) {
+                batches.add(group.subList(i, Math.min(i + BATCH_SIZE, group.size())));
             }
         }
+        return batches;
+    }
 
-        Metrics.logFileOperation(operationType, mResolvedDocs, null);
+    /**
+     * Returns the document ids of the selected directories which can be deleted with their whole
+     * subtree, per authority whose roots support it. Documents within them don't need to be
+     * deleted separately, and deleting them would fail once the directory is gone.
+     *
+     * When all documents share a known parent none of them can contain another, so an empty map
+     * is returned. No calls are made to the providers themselves; whether a document is within
+     * one of the directories is only checked by the batch deleting it.
+     */
+    private Map<String, Set<String>> findDeletableDirs(List<DocumentInfo> docs,
+            @Nullable DocumentInfo parentDoc) {
+        if (parentDoc != null || docs.size() < 2) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Set<String>> dirIds = new HashMap<>();
+        final Map<String, Boolean> supportsChildren = new HashMap<>();
+        for (DocumentInfo doc : docs) {
+            if (doc.isDirectory() && doc.isDeleteSupported()
+                    && supportsChildren.computeIfAbsent(
+                            doc.authority, k -> supportsChildren(doc.userId, k))) {
+                dirIds.computeIfAbsent(doc.authority, k -> new HashSet<>()).add(doc.documentId);
+            }
+        }
+        return dirIds;
+    }
+
+    private boolean supportsChildren(UserId userId, String authority) {
+        final Collection<RootInfo> roots = DocumentsApplication.getProvidersCache(appContext)
+                .getRootsForAuthorityBlocking(userId, authority);
+        for (RootInfo root : roots) {
+            if (root.supportsChildren()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if an ancestor of the document is one of the given directories. Documents
+     * whose path can't be found are deleted on their own.
+     */
+    private boolean isInAnyOf(DocumentInfo doc, Set<String> dirIds) {
+        ContentProviderClient client = null;
+        final Path path;
+        try {
+            client = getClient(doc);
+            path = DocumentsContract.findDocumentPath(wrap(client), doc.derivedUri);
+        } catch (FileNotFoundException | RemoteException | RuntimeException e) {
+            if (e instanceof DeadObjectException) {
+                releaseClient(doc.derivedUri, client);
+            }
+            if (DEBUG) Log.d(TAG, "Failed to find path of " + doc.derivedUri, e);
+            return false;
+        }
+        if (path == null) {
+            return false;
+        }
+        final List<String> ids = path.getPath();
+        // The last id is the document itself.
+        for (int i = 0; i < ids.size() - 1; i++) {
+            if (dirIds.contains(ids.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the provider no longer has the document. Providers report a missing
+     * document either by throwing or by returning no rows.
+     */
+    private boolean isGone(DocumentInfo doc) {
+        ContentProviderClient client = null;
+        Cursor cursor = null;
+        try {
+            client = getClient(doc);
+            cursor = client.query(doc.derivedUri, null, null, null, null);
+            return cursor != null && !cursor.moveToFirst();
+        } catch (RemoteException e) {
+            if (e instanceof DeadObjectException) {
+                releaseClient(doc.derivedUri, client);
+            }
+            return false;
+        } catch (RuntimeException e) {
+            return true;
+        } finally {
+            FileUtils.closeQuietly(cursor);
+        }
     }
 
     @Override
@@ -34,9 +34,12 @@ import android.util.Log;
 import androidx.annotation.IntDef;
 import androidx.annotation.VisibleForTesting;
 
+import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.R;
 import com.android.documentsui.base.Features;
+import com.android.documentsui.clipping.UrisSupplier;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
@@ -67,6 +70,10 @@ public class FileOperationService extends Service implements Job.Listener {
     public static final String EXTRA_JOB_ID = "com.android.documentsui.JOB_ID";
     public static final String EXTRA_OPERATION = "com.android.documentsui.OPERATION";
     public static final String EXTRA_CANCEL = "com.android.documentsui.CANCEL";
+    // Discards the journal of an interrupted job instead of resuming it.
+    public static final String EXTRA_DISCARD = "com.android.documentsui.DISCARD";
+    // Resumes an interrupted job from its journal.
+    public static final String EXTRA_RESUME = "com.android.documentsui.RESUME";
 
     public static final String ACTION_PROGRESS = "com.android.documentsui.action.PROGRESS";
     public static final String EXTRA_PROGRESS = "com.android.documentsui.PROGRESS";
@@ -109,6 +116,7 @@ public class FileOperationService extends Service implements Job.Listener {
     @VisibleForTesting static final int NOTIFICATION_ID_PROGRESS = 1;
     private static final int NOTIFICATION_ID_FAILURE = 2;
     private static final int NOTIFICATION_ID_WARNING = 3;
+    static final int NOTIFICATION_ID_RESUME = 4;
 
     // The executor and job factory are visible for testing and non-final
     // so we'll have a way to inject test doubles from the test. It's
@@ -130,6 +138,9 @@ public class FileOperationService extends Service implements Job.Listener {
     // Use a features to determine if notification channel is enabled.
     @VisibleForTesting Features features;
 
+    // Decides how often monitors poll jobs, depending on the screen state.
+    @VisibleForTesting ProgressSampler progressSampler;
+
     // Used so tests can force the state of visual signals.
     @VisibleForTesting Boolean mVisualSignalsEnabled = isVisualSignalsFlagEnabled();
 
@@ -172,6 +183,10 @@ public class FileOperationService extends Service implements Job.Listener {
             notificationManager = getSystemService(NotificationManager.class);
         }
 
+        if (progressSampler == null) {
+            progressSampler = ProgressSampler.create(this);
+        }
+
         if (mVisualSignalsEnabled && mJobMonitor == null) {
             mJobMonitor = new GlobalJobMonitor();
         }
@@ -239,6 +254,10 @@ public class FileOperationService extends Service implements Job.Listener {
 
         if (intent.hasExtra(EXTRA_CANCEL)) {
             handleCancel(intent);
+        } else if (intent.hasExtra(EXTRA_DISCARD)) {
+            handleDiscard(jobId);
+        } else if (intent.hasExtra(EXTRA_RESUME)) {
+            handleResume(jobId);
         } else {
             FileOperation operation = intent.getParcelableExtra(EXTRA_OPERATION);
             handleOperation(jobId, operation);
@@ -318,6 +337,57 @@ public class FileOperationService extends Service implements Job.Listener {
         // TODO: Guarantee the job is being finalized
     }
 
+    /**
+     * Discards the journal of an interrupted job the user chose not to resume.
+     */
+    private void handleDiscard(String jobId) {
+        if (DEBUG) {
+            Log.d(TAG, "handleDiscard: " + jobId);
+        }
+
+        notificationManager.cancel(jobId, NOTIFICATION_ID_RESUME);
+        CopyJournal.discard(this, jobId);
+
+        synchronized (mJobs) {
+            if (mJobs.isEmpty()) {
+                handler.post(this::shutdown);
+            }
+        }
+    }
+
+    /**
+     * Resumes an interrupted job, recreating its operation from the journal.
+     */
+    private void handleResume(String jobId) {
+        if (DEBUG) {
+            Log.d(TAG, "handleResume: " + jobId);
+        }
+
+        notificationManager.cancel(jobId, NOTIFICATION_ID_RESUME);
+        final CopyJournal.Header header = CopyJournal.readInterrupted(this, jobId);
+        if (header != null) {
+            try {
+                final FileOperation operation = new FileOperation.Builder()
+                        .withOpType(header.opType)
+                        .withSrcs(UrisSupplier.create(
+                                header.srcs, DocumentsApplication.getClipStore(this)))
+                        .withSrcParent(header.srcParent)
+                        .withDestination(header.destination)
+                        .build();
+                handleOperation(jobId, operation);
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to resume job " + jobId, e);
+            }
+        }
+
+        synchronized (mJobs) {
+            if (mJobs.isEmpty()) {
+                handler.post(this::shutdown);
+            }
+        }
+    }
+
     private ExecutorService getExecutorService(@OpType int operationType) {
         switch (operationType) {
             case OPERATION_COPY:
@@ -540,8 +610,6 @@ public class FileOperationService extends Service implements Job.Listener {
      * we poll states of jobs.
      */
     private final class JobMonitor implements Runnable {
-        private static final long PROGRESS_INTERVAL_MILLIS = 500L;
-
         private final Job mJob;
 
         private JobMonitor(Job job) {
@@ -569,7 +637,7 @@ public class FileOperationService extends Service implements Job.Listener {
                             mJob.getProgressNotification());
                 }
 
-                handler.postDelayed(this, PROGRESS_INTERVAL_MILLIS);
+                handler.postDelayed(this, progressSampler.getPollIntervalMillis());
             }
         }
     }
@@ -581,7 +649,6 @@ public class FileOperationService extends Service implements Job.Listener {
      * job, have one for the whole service.
      */
     private final class GlobalJobMonitor implements Runnable {
-        private static final long PROGRESS_INTERVAL_MILLIS = 500L;
         private boolean mRunning = false;
         private long mLastId = 0;
 
@@ -616,7 +683,7 @@ public class FileOperationService extends Service implements Job.Listener {
         public void run() {
             sendProgress();
             if (mRunning) {
-                handler.postDelayed(this, PROGRESS_INTERVAL_MILLIS);
+                handler.postDelayed(this, progressSampler.getPollIntervalMillis());
             }
         }
     }
@@ -19,20 +19,32 @@ package com.android.documentsui.services;
 import static android.os.SystemClock.elapsedRealtime;
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 import static com.android.documentsui.services.FileOperationService.EXTRA_CANCEL;
+import static com.android.documentsui.services.FileOperationService.EXTRA_DISCARD;
 import static com.android.documentsui.services.FileOperationService.EXTRA_JOB_ID;
 import static com.android.documentsui.services.FileOperationService.EXTRA_OPERATION;
+import static com.android.documentsui.services.FileOperationService.EXTRA_RESUME;
+import static com.android.documentsui.services.FileOperationService.NOTIFICATION_ID_RESUME;
+import static com.android.documentsui.services.FileOperationService.OPERATION_MOVE;
 
 import androidx.annotation.IntDef;
 import android.app.Activity;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
 
+import com.android.documentsui.R;
+import com.android.documentsui.base.Features;
 import com.android.documentsui.services.FileOperationService.OpType;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -87,6 +99,61 @@ public final class FileOperations {
         activity.startService(intent);
     }
 
+    /**
+     * Looks for copy and move jobs which were interrupted, for instance because the service
+     * process was killed, and posts a notification offering to resume each of them. Tapping
+     * the notification resumes the job, dismissing it discards the job's journal. A job is only
+     * offered once, until it runs again.
+     */
+    public static void offerToResumeInterrupted(Context context, Features features) {
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final Map<String, CopyJournal.Header> interrupted =
+                    CopyJournal.findInterrupted(appContext);
+            for (Map.Entry<String, CopyJournal.Header> entry : interrupted.entrySet()) {
+                postResumeNotification(appContext, features, entry.getKey(), entry.getValue());
+                CopyJournal.markOffered(appContext, entry.getKey());
+            }
+        });
+    }
+
+    private static void postResumeNotification(Context context, Features features, String jobId,
+            CopyJournal.Header header) {
+        // Distinct data per job and action, so the pending intents don't replace each other.
+        // The service reads the operation back from the journal, which keeps the intent small.
+        final Intent resumeIntent = new Intent(context, FileOperationService.class);
+        resumeIntent.setData(Uri.fromParts("job", jobId, "resume"));
+        resumeIntent.putExtra(EXTRA_RESUME, true);
+        resumeIntent.putExtra(EXTRA_JOB_ID, jobId);
+
+        final Intent discardIntent = new Intent(context, FileOperationService.class);
+        discardIntent.setData(Uri.fromParts("job", jobId, "discard"));
+        discardIntent.putExtra(EXTRA_DISCARD, true);
+        discardIntent.putExtra(EXTRA_JOB_ID, jobId);
+
+        final Notification.Builder builder = features.isNotificationChannelEnabled()
+                ? new Notification.Builder(context, FileOperationService.NOTIFICATION_CHANNEL_ID)
+                : new Notification.Builder(context);
+        final Notification notification = builder
+                .setContentTitle(context.getString(header.opType == OPERATION_MOVE
+                        ? R.string.move_interrupted_notification_title
+                        : R.string.copy_interrupted_notification_title))
+                .setContentText(context.getString(R.string.notification_touch_to_resume))
+                .setContentIntent(PendingIntent.getService(context, 0, resumeIntent,
+                        PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_ONE_SHOT
+                        | PendingIntent.FLAG_IMMUTABLE))
+                .setDeleteIntent(PendingIntent.getService(context, 0, discardIntent,
+                        PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_ONE_SHOT
+                        | PendingIntent.FLAG_IMMUTABLE))
+                .setCategory(Notification.CATEGORY_ERROR)
+                .setSmallIcon(R.drawable.ic_menu_copy)
+                .setAutoCancel(true)
+                .build();
+
+        context.getSystemService(NotificationManager.class)
+                .notify(jobId, NOTIFICATION_ID_RESUME, notification);
+    }
+
     /**
      * Starts the service for an operation.
      *
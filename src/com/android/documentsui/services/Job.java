@@ -196,7 +196,11 @@ abstract public class Job implements Runnable {
         return Uri.parse(String.format("data,%s-%s", tag, id));
     }
 
-    ContentProviderClient getClient(Uri uri) throws RemoteException {
+    /**
+     * Returns a client for the authority of {@code uri}, shared by all calls within the job.
+     * Safe to call from multiple threads.
+     */
+    synchronized ContentProviderClient getClient(Uri uri) throws RemoteException {
         ContentProviderClient client = mClients.get(uri.getAuthority());
         if (client == null) {
             // Acquire content providers.
@@ -215,7 +219,7 @@ abstract public class Job implements Runnable {
         return getClient(doc.derivedUri);
     }
 
-    void releaseClient(Uri uri) {
+    synchronized void releaseClient(Uri uri) {
         ContentProviderClient client = mClients.get(uri.getAuthority());
         if (client != null) {
             client.close();
@@ -227,7 +231,17 @@ abstract public class Job implements Runnable {
         releaseClient(doc.derivedUri);
     }
 
-    final void cleanup() {
+    /**
+     * Closes a client whose provider died, unless another thread already replaced it with a
+     * fresh one. Use this instead of {@link #releaseClient(Uri)} where calls run concurrently.
+     */
+    synchronized void releaseClient(Uri uri, @Nullable ContentProviderClient client) {
+        if (client != null && mClients.remove(uri.getAuthority(), client)) {
+            client.close();
+        }
+    }
+
+    final synchronized void cleanup() {
         for (ContentProviderClient client : mClients.values()) {
             FileUtils.closeQuietly(client);
         }
@@ -275,19 +289,22 @@ abstract public class Job implements Runnable {
 
     final void deleteDocument(DocumentInfo doc, @Nullable DocumentInfo parent)
             throws ResourceException {
+        ContentProviderClient client = null;
         try {
             if (parent != null && doc.isRemoveSupported()) {
-                DocumentsContract.removeDocument(wrap(getClient(doc)), doc.derivedUri,
+                client = getClient(doc);
+                DocumentsContract.removeDocument(wrap(client), doc.derivedUri,
                         parent.derivedUri);
             } else if (doc.isDeleteSupported()) {
-                DocumentsContract.deleteDocument(wrap(getClient(doc)), doc.derivedUri);
+                client = getClient(doc);
+                DocumentsContract.deleteDocument(wrap(client), doc.derivedUri);
             } else {
                 throw new ResourceException("Unable to delete source document. "
                         + "File is not deletable or removable: %s.", doc.derivedUri);
             }
         } catch (FileNotFoundException | RemoteException | RuntimeException e) {
             if (e instanceof DeadObjectException) {
-                releaseClient(doc);
+                releaseClient(doc.derivedUri, client);
             }
             throw new ResourceException("Failed to delete file %s due to an exception.",
                     doc.derivedUri, e);
@@ -143,6 +143,9 @@ final class MoveJob extends CopyJob {
      * {@link #mSrcs} is in the same root of destination, and if it's optimized move in the same
      * root it should succeed regardless of free space, but it's for sure a failure if there is no
      * enough free space if docs are moved from another authority.
+     *
+     * Directory sizes were already calculated while setting up the progress tracker, and are
+     * served from the job's {@link TreeManifest} rather than walking the tree again.
      */
     @Override
     boolean checkSpace() {
@@ -167,8 +170,22 @@ final class MoveJob extends CopyJob {
         return verifySpaceAvailable(size);
     }
 
+    @Override
+    @Nullable Uri getSrcParentUri() {
+        return mSrcParentUri;
+    }
+
     void processDocument(DocumentInfo src, DocumentInfo srcParent, DocumentInfo dest)
             throws ResourceException {
+        // If the copy finished before the job was interrupted, only the source is left to delete.
+        if (isCompletedBeforeInterruption(src)) {
+            makeOptimizedCopyProgress(src);
+            if (!isCanceled()) {
+                deleteDocument(src, srcParent);
+            }
+            return;
+        }
+
         // When moving within the same provider, try to use optimized moving.
         // If not supported, then fallback to byte-by-byte copy/move.
         if (src.authority.equals(dest.authority) && (srcParent != null || mSrcParent != null)) {
@@ -179,6 +196,7 @@ final class MoveJob extends CopyJob {
                             dest.derivedUri) != null) {
                         Metrics.logFileOperated(operationType, MetricConsts.OPMODE_PROVIDER);
                         makeOptimizedCopyProgress(src);
+                        recordCompleted(src);
                         return;
                     }
                 } catch (FileNotFoundException | RemoteException | RuntimeException e) {
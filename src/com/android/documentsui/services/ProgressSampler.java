@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when the progress of a job is published. Jobs update their progress counters on
+ * every chunk or document processed, and ask the sampler whether the new value is worth
+ * sending.
+ *
+ * <p>A value is published when it changed since the last published one, but no more often than
+ * every {@link #MIN_INTERVAL_MILLIS}. Fast jobs therefore publish at a fixed, low rate, while
+ * slow jobs publish only when their visible progress moves, plus a heartbeat every
+ * {@link #HEARTBEAT_MILLIS} so that the remaining time keeps updating. While the screen is off
+ * nobody is watching, and both intervals are stretched to {@link #SCREEN_OFF_INTERVAL_MILLIS}.
+ *
+ * <p>{@link #shouldPublish} is lock-free and cheap enough to be called from the copy loop. The
+ * screen state is only checked once the time gate has passed.
+ */
+final class ProgressSampler {
+    @VisibleForTesting
+    static final long MIN_INTERVAL_MILLIS = 250L;
+    @VisibleForTesting
+    static final long HEARTBEAT_MILLIS = 1000L;
+    @VisibleForTesting
+    static final long POLL_INTERVAL_MILLIS = 500L;
+    @VisibleForTesting
+    static final long SCREEN_OFF_INTERVAL_MILLIS = 5000L;
+
+    private final LongSupplier mClock;
+    private final BooleanSupplier mScreenOn;
+
+    // Time before which no value is published. Long.MAX_VALUE while a thread is deciding.
+    private final AtomicLong mNextSampleTime = new AtomicLong(Long.MIN_VALUE);
+    private volatile long mLastValue = Long.MIN_VALUE;
+    private volatile long mLastPublishTime = Long.MIN_VALUE;
+    private final AtomicBoolean mMaxValuePublished = new AtomicBoolean();
+
+    @VisibleForTesting
+    ProgressSampler(LongSupplier clock, BooleanSupplier screenOn) {
+        mClock = clock;
+        mScreenOn = screenOn;
+    }
+
+    static ProgressSampler create(Context context) {
+        final PowerManager pm = context.getSystemService(PowerManager.class);
+        return new ProgressSampler(
+                SystemClock::elapsedRealtime, pm != null ? pm::isInteractive : () -> true);
+    }
+
+    /**
+     * @return true if {@code value} should be published now. At most one of concurrent callers
+     *     is told to publish.
+     */
+    boolean shouldPublish(long value) {
+        final long now = mClock.getAsLong();
+        final long next = mNextSampleTime.get();
+        if (now < next || !mNextSampleTime.compareAndSet(next, Long.MAX_VALUE)) {
+            return false;
+        }
+
+        final boolean screenOn = mScreenOn.getAsBoolean();
+        final long interval = screenOn ? MIN_INTERVAL_MILLIS : SCREEN_OFF_INTERVAL_MILLIS;
+        final long heartbeat = screenOn ? HEARTBEAT_MILLIS : SCREEN_OFF_INTERVAL_MILLIS;
+
+        final boolean publish = value != mLastValue
+                || mLastPublishTime == Long.MIN_VALUE
+                || now - mLastPublishTime >= heartbeat;
+        if (publish) {
+            mLastValue = value;
+            mLastPublishTime = now;
+        }
+        mNextSampleTime.set(now + interval);
+        return publish;
+    }
+
+    /**
+     * Same as {@link #shouldPublish(long)}, except that the first value reaching {@code maxValue}
+     * is always published, so that the completion of a job is never throttled away.
+     */
+    boolean shouldPublish(long value, long maxValue) {
+        if (value >= maxValue && mMaxValuePublished.compareAndSet(false, true)) {
+            mLastValue = value;
+            mLastPublishTime = mClock.getAsLong();
+            return true;
+        }
+        return shouldPublish(value);
+    }
+
+    /**
+     * @return the interval at which progress notifications and broadcasts should be polled.
+     */
+    long getPollIntervalMillis() {
+        return mScreenOn.getAsBoolean() ? POLL_INTERVAL_MILLIS : SCREEN_OFF_INTERVAL_MILLIS;
+    }
+}
@@ -20,12 +20,18 @@ import static android.os.SystemClock.uptimeMillis;
 
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 
-import android.content.ContentResolver;
+import android.content.ContentProviderClient;
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.DeadObjectException;
+import android.os.FileUtils;
 import android.os.RemoteException;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import com.android.documentsui.archives.ArchivesProvider;
 import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.DocumentStack;
@@ -35,10 +41,16 @@ import com.android.documentsui.base.UserId;
 import com.android.documentsui.clipping.UrisSupplier;
 import com.android.documentsui.services.FileOperationService.OpType;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract job that resolves all resource URIs into mResolvedDocs. This provides
@@ -47,6 +59,15 @@ import java.util.List;
  */
 public abstract class ResolvedResourcesJob extends Job {
     private static final String TAG = "ResolvedResourcesJob";
+    private static final String MANIFESTS_DIR = "manifests";
+
+    // Maximum number of queries in flight while resolving documents.
+    @VisibleForTesting
+    static final int MAX_CONCURRENT_RESOLVES = 4;
+
+    // Below this many URIs per thread, resolving concurrently isn't worth it.
+    @VisibleForTesting
+    static final int MIN_RESOLVE_BATCH_SIZE = 16;
 
     // Used in logs.
     protected final long mStartTime = uptimeMillis();
@@ -54,6 +75,9 @@ public abstract class ResolvedResourcesJob extends Job {
     final List<DocumentInfo> mResolvedDocs;
     final List<Uri> mAcquiredArchivedUris = new ArrayList<>();
 
+    // Shared by all phases of the job, see TreeManifest.
+    final TreeManifest mManifest;
+
     ResolvedResourcesJob(Context service, Listener listener, String id, @OpType int opType,
             DocumentStack destination, UrisSupplier srcs, Features features) {
         super(service, listener, id, opType, destination, srcs, features);
@@ -62,6 +86,8 @@ public abstract class ResolvedResourcesJob extends Job {
 
         // Delay the initialization of it to setUp() because it may be IO extensive.
         mResolvedDocs = new ArrayList<>(srcs.getItemCount());
+        mManifest = new TreeManifest(
+                new File(new File(appContext.getCacheDir(), MANIFESTS_DIR), id));
     }
 
     boolean setUp() {
@@ -69,26 +95,35 @@ public abstract class ResolvedResourcesJob extends Job {
             return false;
         }
 
-        // Acquire all source archived documents, so they are not gone while copying from.
+        // Read the URIs only once, as for jumbo clips they are stored on disk.
+        final List<Uri> uris = new ArrayList<>(mResourceUris.getItemCount());
         try {
-            Iterable<Uri> uris = mResourceUris.getUris(appContext);
-            for (Uri uri : uris) {
-                try {
-                    if (ArchivesProvider.AUTHORITY.equals(uri.getAuthority())) {
-                        ArchivesProvider.acquireArchive(getClient(uri), uri);
-                        mAcquiredArchivedUris.add(uri);
-                    }
-                } catch (RemoteException e) {
-                    Log.e(TAG, "Cannot acquire an archive", e);
-                    return false;
-                }
+            for (Uri uri : mResourceUris.getUris(appContext)) {
+                uris.add(uri);
             }
         } catch (IOException e) {
             Log.e(TAG, "Cannot read list of target resource URIs", e);
             return false;
         }
 
-        int docsResolved = buildDocumentList();
+        if (!onUrisRead(uris)) {
+            return false;
+        }
+
+        // Acquire all source archived documents, so they are not gone while copying from.
+        for (Uri uri : uris) {
+            try {
+                if (ArchivesProvider.AUTHORITY.equals(uri.getAuthority())) {
+                    ArchivesProvider.acquireArchive(getClient(uri), uri);
+                    mAcquiredArchivedUris.add(uri);
+                }
+            } catch (RemoteException e) {
+                Log.e(TAG, "Cannot acquire an archive", e);
+                return false;
+            }
+        }
+
+        int docsResolved = buildDocumentList(uris);
         if (!isCanceled() && docsResolved < mResourceUris.getItemCount()) {
             if (docsResolved == 0) {
                 Log.e(TAG, "Cannot load any documents. Aborting.");
@@ -112,12 +147,23 @@ public abstract class ResolvedResourcesJob extends Job {
             }
         }
 
+        mManifest.close();
+
         if (DEBUG) {
             Log.d(TAG, String.format("%s %s finished after %d ms", getClass().getSimpleName(), id,
                     uptimeMillis() - mStartTime));
         }
     }
 
+    /**
+     * Called once the resource URIs are read, before they are resolved.
+     *
+     * @return false to abort the job.
+     */
+    boolean onUrisRead(List<Uri> uris) {
+        return true;
+    }
+
     /**
      * Allows sub-classes to exclude files from processing.
      * By default all files are eligible.
@@ -127,43 +173,118 @@ public abstract class ResolvedResourcesJob extends Job {
     }
 
     /**
+     * Resolves {@code uris} into {@link #mResolvedDocs}, keeping their order. URIs are grouped by
+     * authority and resolved concurrently, with at most {@link #MAX_CONCURRENT_RESOLVES} queries
+     * in flight. Queries to an authority share a single {@link ContentProviderClient}.
+     *
      * @return number of docs successfully loaded.
      */
-    protected int buildDocumentList() {
-        final ContentResolver resolver = appContext.getContentResolver();
-        Iterable<Uri> uris;
-        try {
-            uris = mResourceUris.getUris(appContext);
-        } catch (IOException e) {
-            Log.e(TAG, "Cannot read list of target resource URIs", e);
-            failureCount = this.mResourceUris.getItemCount();
-            return 0;
+    protected int buildDocumentList(List<Uri> uris) {
+        final DocumentInfo[] docs = new DocumentInfo[uris.size()];
+        final boolean[] attempted = new boolean[uris.size()];
+
+        final List<List<Integer>> batches = createResolveBatches(uris);
+        if (batches.size() <= 1) {
+            for (List<Integer> batch : batches) {
+                resolveBatch(uris, batch, docs, attempted);
+            }
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(MAX_CONCURRENT_RESOLVES, batches.size()));
+            for (List<Integer> batch : batches) {
+                executor.execute(() -> resolveBatch(uris, batch, docs, attempted));
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while resolving documents.", e);
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
         }
 
         int docsLoaded = 0;
-        for (Uri uri : uris) {
+        synchronized (docs) {
+            for (int i = 0; i < uris.size(); i++) {
+                if (!attempted[i]) {
+                    // Canceled before this document was resolved.
+                    break;
+                }
 
-            DocumentInfo doc;
-            try {
-                doc = DocumentInfo.fromUri(resolver, uri, UserId.DEFAULT_USER);
-            } catch (FileNotFoundException e) {
-                Log.e(TAG, "Cannot resolve content from URI " + uri, e);
-                onResolveFailed(uri);
-                continue;
+                final DocumentInfo doc = docs[i];
+                if (doc == null) {
+                    onResolveFailed(uris.get(i));
+                    continue;
+                }
+
+                if (isEligibleDoc(doc, stack.getRoot())) {
+                    mResolvedDocs.add(doc);
+                } else {
+                    onFileFailed(doc);
+                }
+                docsLoaded++;
             }
+        }
 
-            if (isEligibleDoc(doc, stack.getRoot())) {
-                mResolvedDocs.add(doc);
-            } else {
-                onFileFailed(doc);
+        return docsLoaded;
+    }
+
+    /**
+     * Groups positions of {@code uris} by authority, and splits each group so the URIs are
+     * spread evenly over up to {@link #MAX_CONCURRENT_RESOLVES} threads.
+     */
+    @VisibleForTesting
+    static List<List<Integer>> createResolveBatches(List<Uri> uris) {
+        final Map<String, List<Integer>> byAuthority = new LinkedHashMap<>();
+        for (int i = 0; i < uris.size(); i++) {
+            byAuthority.computeIfAbsent(uris.get(i).getAuthority(), k -> new ArrayList<>())
+                    .add(i);
+        }
+
+        final int batchSize = Math.max(MIN_RESOLVE_BATCH_SIZE,
+                (uris.size() + MAX_CONCURRENT_RESOLVES - 1) / MAX_CONCURRENT_RESOLVES);
+        final List<List<Integer>> batches = new ArrayList<>();
+        for (List<Integer> group : byAuthority.values()) {
+            for (int i = 0; i < group.size(); i += batchSize) {
+                batches.add(group.subList(i, Math.min(i + batchSize, group.size())));
             }
-            docsLoaded++;
+        }
+        return batches;
+    }
 
+    private void resolveBatch(List<Uri> uris, List<Integer> batch, DocumentInfo[] docs,
+            boolean[] attempted) {
+        for (int i : batch) {
             if (isCanceled()) {
-                break;
+                return;
+            }
+            final DocumentInfo doc = resolveDocument(uris.get(i));
+            synchronized (docs) {
+                docs[i] = doc;
+                attempted[i] = true;
             }
         }
+    }
 
-        return docsLoaded;
+    private @Nullable DocumentInfo resolveDocument(Uri uri) {
+        ContentProviderClient client = null;
+        Cursor cursor = null;
+        try {
+            client = getClient(uri);
+            cursor = client.query(uri, null, null, null, null);
+            if (cursor == null || !cursor.moveToFirst()) {
+                throw new FileNotFoundException("Missing details for " + uri);
+            }
+            return DocumentInfo.fromCursor(cursor, UserId.DEFAULT_USER, uri.getAuthority());
+        } catch (FileNotFoundException | RemoteException | RuntimeException e) {
+            if (e instanceof DeadObjectException) {
+                releaseClient(uri, client);
+            }
+            Log.e(TAG, "Cannot resolve content from URI " + uri, e);
+            return null;
+        } finally {
+            FileUtils.closeQuietly(cursor);
+        }
     }
 }
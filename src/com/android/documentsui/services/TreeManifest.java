@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorInt;
+import static com.android.documentsui.base.DocumentInfo.getCursorLong;
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract.Document;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.DurableUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-job manifest of the source tree of a recursive operation. The tree is walked once, while
+ * calculating the required space, and the children listings recorded here are then reused by the
+ * copy phase instead of querying the provider again.
+ *
+ * <p>Listings are kept in memory until the maximum number of entries given to the constructor,
+ * {@link #MAX_IN_MEMORY_ENTRIES} by default, are held, after which further listings are appended
+ * to a spill file and read back on demand.
+ *
+ * <p>Not thread safe. A manifest is only accessed from the thread running its job.
+ */
+final class TreeManifest implements Closeable {
+    private static final String TAG = "TreeManifest";
+
+    /** Maximum number of entries kept in memory before listings are spilled to disk. */
+    static final int MAX_IN_MEMORY_ENTRIES = 10000;
+
+    /** Columns recorded for every child document. */
+    static final String[] COLUMNS = new String[] {
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_FLAGS,
+            Document.COLUMN_LAST_MODIFIED
+    };
+
+    private final File mSpillFile;
+    private final int mMaxInMemoryEntries;
+
+    private final Map<String, List<Entry>> mChildren = new HashMap<>();
+    private final Map<String, Long> mSpilledChildren = new HashMap<>();
+    private final Map<String, Long> mTreeSizes = new HashMap<>();
+
+    private int mInMemoryEntries;
+    private @Nullable RandomAccessFile mSpill;
+
+    TreeManifest(File spillFile) {
+        this(spillFile, MAX_IN_MEMORY_ENTRIES);
+    }
+
+    @VisibleForTesting
+    TreeManifest(File spillFile, int maxInMemoryEntries) {
+        mSpillFile = spillFile;
+        mMaxInMemoryEntries = maxInMemoryEntries;
+    }
+
+    /**
+     * Records all the children in {@code cursor} as the listing of {@code dirUri}. The cursor is
+     * read to the end but not closed.
+     *
+     * @return the recorded children, in cursor order.
+     */
+    List<Entry> putChildren(Uri dirUri, Cursor cursor) {
+        final List<Entry> children = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            children.add(Entry.fromCursor(cursor));
+        }
+
+        final String key = dirUri.toString();
+        if (mInMemoryEntries + children.size() <= mMaxInMemoryEntries) {
+            mChildren.put(key, children);
+            mInMemoryEntries += children.size();
+        } else {
+            try {
+                mSpilledChildren.put(key, spill(children));
+            } catch (IOException e) {
+                // Not fatal, the listing will be queried from the provider again if needed.
+                Log.w(TAG, "Failed to spill listing of " + dirUri, e);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns a cursor over the recorded children of {@code dirUri}, with {@link #COLUMNS}, or
+     * null if the directory has not been recorded.
+     */
+    @Nullable Cursor getChildren(Uri dirUri) {
+        final String key = dirUri.toString();
+        List<Entry> children = mChildren.get(key);
+        if (children == null) {
+            final Long offset = mSpilledChildren.get(key);
+            if (offset == null) {
+                return null;
+            }
+            try {
+                children = readSpilled(offset);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read spilled listing of " + dirUri, e);
+                return null;
+            }
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS, children.size());
+        for (Entry entry : children) {
+            cursor.newRow()
+                    .add(Document.COLUMN_DISPLAY_NAME, entry.displayName)
+                    .add(Document.COLUMN_DOCUMENT_ID, entry.documentId)
+                    .add(Document.COLUMN_MIME_TYPE, entry.mimeType)
+                    .add(Document.COLUMN_SIZE, entry.size)
+                    .add(Document.COLUMN_FLAGS, entry.flags)
+                    .add(Document.COLUMN_LAST_MODIFIED, entry.lastModified);
+        }
+        return cursor;
+    }
+
+    void putTreeSize(Uri dirUri, long size) {
+        mTreeSizes.put(dirUri.toString(), size);
+    }
+
+    /**
+     * @return the cumulative size of all files under {@code dirUri}, or -1 if unknown.
+     */
+    long getTreeSize(Uri dirUri) {
+        final Long size = mTreeSizes.get(dirUri.toString());
+        return size != null ? size : -1;
+    }
+
+    @VisibleForTesting
+    boolean isSpilled(Uri dirUri) {
+        return mSpilledChildren.containsKey(dirUri.toString());
+    }
+
+    @Override
+    public void close() {
+        mChildren.clear();
+        mSpilledChildren.clear();
+        mTreeSizes.clear();
+        mInMemoryEntries = 0;
+
+        if (mSpill != null) {
+            try {
+                mSpill.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close spill file.", e);
+            }
+            mSpill = null;
+        }
+        if (mSpillFile.exists() && !mSpillFile.delete()) {
+            Log.w(TAG, "Failed to delete spill file " + mSpillFile);
+        }
+    }
+
+    private long spill(List<Entry> children) throws IOException {
+        if (mSpill == null) {
+            mSpillFile.getParentFile().mkdirs();
+            mSpill = new RandomAccessFile(mSpillFile, "rw");
+            mSpill.setLength(0);
+            if (DEBUG) {
+                Log.d(TAG, "Spilling listings to " + mSpillFile);
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(children.size());
+        for (Entry entry : children) {
+            entry.write(out);
+        }
+        out.flush();
+
+        final long offset = mSpill.length();
+        mSpill.seek(offset);
+        mSpill.writeInt(bytes.size());
+        mSpill.write(bytes.toByteArray());
+        return offset;
+    }
+
+    private List<Entry> readSpilled(long offset) throws IOException {
+        mSpill.seek(offset);
+        final byte[] data = new byte[mSpill.readInt()];
+        mSpill.readFully(data);
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final int count = in.readInt();
+        final List<Entry> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(Entry.read(in));
+        }
+        return children;
+    }
+
+    /**
+     * A single child document recorded in the manifest.
+     */
+    static final class Entry {
+        final @Nullable String documentId;
+        final @Nullable String displayName;
+        final @Nullable String mimeType;
+        final long size;
+        final int flags;
+        final long lastModified;
+
+        Entry(@Nullable String documentId, @Nullable String displayName, @Nullable String mimeType,
+                long size, int flags, long lastModified) {
+            this.documentId = documentId;
+            this.displayName = displayName;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.flags = flags;
+            this.lastModified = lastModified;
+        }
+
+        boolean isDirectory() {
+            return Document.MIME_TYPE_DIR.equals(mimeType);
+        }
+
+        static Entry fromCursor(Cursor cursor) {
+            return new Entry(
+                    getCursorString(cursor, Document.COLUMN_DOCUMENT_ID),
+                    getCursorString(cursor, Document.COLUMN_DISPLAY_NAME),
+                    getCursorString(cursor, Document.COLUMN_MIME_TYPE),
+                    getCursorLong(cursor, Document.COLUMN_SIZE),
+                    getCursorInt(cursor, Document.COLUMN_FLAGS),
+                    getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            DurableUtils.writeNullableString(out, documentId);
+            DurableUtils.writeNullableString(out, displayName);
+            DurableUtils.writeNullableString(out, mimeType);
+            out.writeLong(size);
+            out.writeInt(flags);
+            out.writeLong(lastModified);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            return new Entry(
+                    DurableUtils.readNullableString(in),
+                    DurableUtils.readNullableString(in),
+                    DurableUtils.readNullableString(in),
+                    in.readLong(),
+                    in.readInt(),
+                    in.readLong());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sidebar;
+
+import static com.android.documentsui.base.SharedMinimal.VERBOSE;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.os.ext.SdkExtensions;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.base.UserId;
+import com.android.modules.utils.build.SdkLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the apps that can handle the intent of the picker, per user and intent, as shown in the
+ * sidebar. The cache is invalidated when packages, profiles or the locale change. The app only
+ * receives the package broadcasts of its own user, so the packages of the other profiles are
+ * checked for changes whenever the sidebar is built, see {@link #warmUp}.
+ */
+public final class HandlerAppsCache {
+
+    private static final String TAG = "HandlerAppsCache";
+
+    /**
+     * An app that can handle an intent, and its label.
+     */
+    static final class HandlerApp {
+        final ResolveInfo info;
+        final String label;
+
+        HandlerApp(ResolveInfo info, String label) {
+            this.info = info;
+            this.label = label;
+        }
+    }
+
+    @GuardedBy("mApps")
+    private final Map<Pair<UserId, Intent.FilterComparison>, List<HandlerApp>> mApps =
+            new HashMap<>();
+
+    // The sequence number of the package changes of each user, as of its last check.
+    @GuardedBy("mApps")
+    private final Map<UserId, Integer> mSequenceNumbers = new HashMap<>();
+
+    /**
+     * Drops the apps cached for the users whose packages changed since their last check, then
+     * resolves the apps of each user that can handle the intent. Queries the package manager, so
+     * it should not be called on the main thread.
+     */
+    void warmUp(Context context, List<UserId> userIds, Intent intent) {
+        for (UserId userId : userIds) {
+            invalidateIfPackagesChanged(context, userId);
+            getHandlerApps(context, userId, intent);
+        }
+    }
+
+    /**
+     * Returns the exported activities of the given user that can handle the intent, except those
+     * of this app and of the photo picker. May query the package manager, so it should not be
+     * called on the main thread when nothing was cached yet.
+     */
+    List<HandlerApp> getHandlerApps(Context context, UserId userId, Intent intent) {
+        final Pair<UserId, Intent.FilterComparison> key =
+                Pair.create(userId, new Intent.FilterComparison(intent));
+        synchronized (mApps) {
+            final List<HandlerApp> apps = mApps.get(key);
+            if (apps != null) {
+                return apps;
+            }
+        }
+
+        final List<HandlerApp> apps = Collections.unmodifiableList(
+                queryHandlerApps(context, userId, intent));
+        synchronized (mApps) {
+            mApps.put(key, apps);
+        }
+        return apps;
+    }
+
+    public void invalidate() {
+        synchronized (mApps) {
+            mApps.clear();
+        }
+    }
+
+    private void invalidateIfPackagesChanged(Context context, UserId userId) {
+        final Integer sequenceNumber;
+        synchronized (mApps) {
+            sequenceNumber = mSequenceNumbers.get(userId);
+        }
+        final @Nullable ChangedPackages changes = userId.getPackageManager(context)
+                .getChangedPackages(sequenceNumber != null ? sequenceNumber : 0);
+        if (changes == null) {
+            return;
+        }
+        synchronized (mApps) {
+            mSequenceNumbers.put(userId, changes.getSequenceNumber());
+            mApps.keySet().removeIf(key -> key.first.equals(userId));
+        }
+    }
+
+    private static List<HandlerApp> queryHandlerApps(
+            Context context, UserId userId, Intent intent) {
+        final PackageManager pm = userId.getPackageManager(context);
+        final List<ResolveInfo> infos = pm.queryIntentActivities(
+                intent, PackageManager.MATCH_DEFAULT_ONLY);
+
+        // In addition to hiding DocumentsUI from possible handler apps, the Android
+        // Photopicker should also be hidden. ACTION_PICK_IMAGES is used to identify
+        // the Photopicker package since that is the primary API.
+        final List<String> photopickerPackages;
+        if (SdkLevel.isAtLeastR()
+                && SdkExtensions.getExtensionVersion(Build.VERSION_CODES.R) >= 2) {
+            photopickerPackages = pm.queryIntentActivities(
+                    new Intent(MediaStore.ACTION_PICK_IMAGES),
+                    PackageManager.MATCH_DEFAULT_ONLY).stream()
+                    .map(info -> info.activityInfo.packageName)
+                    .collect(Collectors.toList());
+        } else {
+            photopickerPackages = Collections.emptyList();
+        }
+
+        final String myPackageName = context.getPackageName();
+        final List<HandlerApp> apps = new ArrayList<>();
+        for (ResolveInfo info : infos) {
+            if (!info.activityInfo.exported) {
+                if (VERBOSE) {
+                    Log.v(TAG, "Non exported activity: " + info.activityInfo);
+                }
+                continue;
+            }
+
+            final String packageName = info.activityInfo.packageName;
+            // If the package name for the activity is in the list of Photopicker
+            // activities, exclude it.
+            if (photopickerPackages.contains(packageName) || myPackageName.equals(packageName)) {
+                continue;
+            }
+            apps.add(new HandlerApp(info, info.loadLabel(pm).toString()));
+        }
+        return apps;
+    }
+}
@@ -57,6 +57,16 @@ class RootsAdapter extends ArrayAdapter<Item> {
         mDragListener = dragListener;
     }
 
+    /**
+     * Replaces the items, keeping the views of the list, which are rebound by their stable ids.
+     */
+    void setItems(List<Item> items) {
+        setNotifyOnChange(false);
+        clear();
+        addAll(items);
+        notifyDataSetChanged();
+    }
+
     @Override
     public boolean hasStableIds() {
         return true;
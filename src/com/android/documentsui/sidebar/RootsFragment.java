@@ -29,11 +29,10 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.ext.SdkExtensions;
 import android.provider.DocumentsContract;
-import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.ContextMenu;
@@ -77,6 +76,7 @@ import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.DocumentStack;
 import com.android.documentsui.base.Events;
 import com.android.documentsui.base.Features;
+import com.android.documentsui.base.PairedTask;
 import com.android.documentsui.base.Providers;
 import com.android.documentsui.base.RootInfo;
 import com.android.documentsui.base.State;
@@ -95,7 +95,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * Display list of known storage backend roots.
@@ -139,6 +138,7 @@ public class RootsFragment extends Fragment {
     private ListView mList;
     private RootsAdapter mAdapter;
     private LoaderCallbacks<Collection<RootInfo>> mCallbacks;
+    private @Nullable BuildItemsTask mBuildItemsTask;
     private @Nullable OnDragListener mDragListener;
 
     @Injected
@@ -324,104 +324,160 @@ public class RootsFragment extends Fragment {
                         /* defaultValue= */ false);
                 Intent handlerAppIntent = getArguments().getParcelable(EXTRA_INCLUDE_APPS_INTENT);
 
-                final Intent intent = activity.getIntent();
-                final boolean excludeSelf =
-                        intent.getBooleanExtra(DocumentsContract.EXTRA_EXCLUDE_SELF, false);
-                final String excludePackage = excludeSelf ? activity.getCallingPackage() : null;
-                final boolean maybeShowBadge =
-                        getBaseActivity().getDisplayState().supportsCrossProfile();
-
-                // For action which supports cross profile, update the policy value in state if
-                // necessary.
-                ResolveInfo crossProfileResolveInfo = null;
-                UserManagerState userManagerState = null;
-                if (state.supportsCrossProfile() && handlerAppIntent != null) {
-                    if (state.configStore.isPrivateSpaceInDocsUIEnabled()
-                            && SdkLevel.isAtLeastS()) {
-                        userManagerState = DocumentsApplication.getUserManagerState(getContext());
-                        Map<UserId, Boolean> canForwardToProfileIdMap =
-                                userManagerState.getCanForwardToProfileIdMap(handlerAppIntent);
-                        updateCrossProfileMapStateAndMaybeRefresh(canForwardToProfileIdMap);
-                    } else {
-                        crossProfileResolveInfo = CrossProfileUtils.getCrossProfileResolveInfo(
-                                UserId.CURRENT_USER, getContext().getPackageManager(),
-                                handlerAppIntent, getContext(),
-                                state.configStore.isPrivateSpaceInDocsUIEnabled());
-                        updateCrossProfileStateAndMaybeRefresh(
-                                /* canShareAcrossProfile= */ crossProfileResolveInfo != null);
-                    }
-                }
-
-                if (state.configStore.isPrivateSpaceInDocsUIEnabled()
-                        && userManagerState == null) {
-                    userManagerState = DocumentsApplication.getUserManagerState(getContext());
+                // Cross profile access and handler apps are resolved through the package
+                // manager, so this is done in the background before the items are built.
+                if (mBuildItemsTask != null) {
+                    mBuildItemsTask.cancel(/* mayInterruptIfRunning= */ false);
                 }
+                mBuildItemsTask = new BuildItemsTask(activity, state, roots, handlerAppIntent,
+                        shouldIncludeHandlerApp);
+                mBuildItemsTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            }
 
-                List<Item> sortedItems = sortLoadResult(
-                        getContext(),
-                        state,
-                        roots,
-                        excludePackage,
-                        shouldIncludeHandlerApp ? handlerAppIntent : null,
-                        DocumentsApplication.getProvidersCache(getContext()),
-                        getBaseActivity().getSelectedUser(),
-                        getUserIds(),
-                        maybeShowBadge,
-                        userManagerState);
-
-                // This will be removed when feature flag is removed.
-                if (crossProfileResolveInfo != null && !Features.CROSS_PROFILE_TABS) {
-                    // Add profile item if we don't support cross-profile tab.
-                    sortedItems.add(new SpacerItem());
-                    if (mUseRailAsContainer) {
-                        sortedItems.add(new NavRailProfileItem(crossProfileResolveInfo,
-                                crossProfileResolveInfo.loadLabel(
-                                        getContext().getPackageManager()).toString(),
-                                mActionHandler));
-                    } else {
-                        sortedItems.add(new ProfileItem(crossProfileResolveInfo,
-                                crossProfileResolveInfo.loadLabel(
-                                        getContext().getPackageManager()).toString(),
-                                mActionHandler));
-                    }
+            @Override
+            public void onLoaderReset(Loader<Collection<RootInfo>> loader) {
+                if (mBuildItemsTask != null) {
+                    mBuildItemsTask.cancel(/* mayInterruptIfRunning= */ false);
+                    mBuildItemsTask = null;
                 }
+                // The items don't hold on to any data of the loader, so they are kept until the
+                // next load finishes and replaces them, instead of flashing an empty list.
+            }
+        };
+    }
 
-                // Disable drawer if only one root
-                activity.setRootsDrawerLocked(sortedItems.size() <= 1);
+    private List<UserId> getUserIds(State state) {
+        if (state.configStore.isPrivateSpaceInDocsUIEnabled() && SdkLevel.isAtLeastS()) {
+            return DocumentsApplication.getUserManagerState(getContext()).getUserIds();
+        }
+        return DocumentsApplication.getUserIdManager(getContext()).getUserIds();
+    }
 
-                // Get the first visible position and offset
-                final int firstPosition = mList.getFirstVisiblePosition();
-                View firstChild = mList.getChildAt(0);
-                final int offset =
-                        firstChild != null ? firstChild.getTop() - mList.getPaddingTop() : 0;
-                final int oriItemCount = mAdapter != null ? mAdapter.getCount() : 0;
-                mAdapter = new RootsAdapter(activity, sortedItems, mDragListener);
-                mList.setAdapter(mAdapter);
+    /**
+     * Resolves what the sidebar items depend on through the package manager in the background,
+     * then builds the items and shows them.
+     */
+    private final class BuildItemsTask extends PairedTask<BaseActivity, Void, Void> {
+        private final Context mContext;
+        private final State mState;
+        private final Collection<RootInfo> mRoots;
+        private final @Nullable Intent mHandlerAppIntent;
+        private final boolean mShouldIncludeHandlerApp;
+        private final boolean mUseProfileIdMap;
+        private final List<UserId> mUserIds;
+
+        private @Nullable Map<UserId, Boolean> mCanForwardToProfileIdMap;
+        private @Nullable ResolveInfo mCrossProfileResolveInfo;
+        private @Nullable String mCrossProfileLabel;
+
+        BuildItemsTask(BaseActivity activity, State state, Collection<RootInfo> roots,
+                @Nullable Intent handlerAppIntent, boolean shouldIncludeHandlerApp) {
+            super(activity);
+            mContext = activity.getApplicationContext();
+            mState = state;
+            mRoots = roots;
+            mHandlerAppIntent = handlerAppIntent;
+            mShouldIncludeHandlerApp = shouldIncludeHandlerApp;
+            mUseProfileIdMap = state.configStore.isPrivateSpaceInDocsUIEnabled()
+                    && SdkLevel.isAtLeastS();
+            mUserIds = getUserIds(state);
+        }
 
-                // recover the position.
-                if (oriItemCount == mAdapter.getCount()) {
-                    mList.setSelectionFromTop(firstPosition, offset);
+        @Override
+        protected Void run(Void... params) {
+            if (mState.supportsCrossProfile() && mHandlerAppIntent != null) {
+                if (mUseProfileIdMap) {
+                    mCanForwardToProfileIdMap = DocumentsApplication.getUserManagerState(mContext)
+                            .getCanForwardToProfileIdMap(mHandlerAppIntent);
+                } else {
+                    final PackageManager pm = mContext.getPackageManager();
+                    mCrossProfileResolveInfo = CrossProfileUtils.getCrossProfileResolveInfo(
+                            UserId.CURRENT_USER, pm, mHandlerAppIntent, mContext,
+                            mState.configStore.isPrivateSpaceInDocsUIEnabled());
+                    if (mCrossProfileResolveInfo != null) {
+                        mCrossProfileLabel = mCrossProfileResolveInfo.loadLabel(pm).toString();
+                    }
                 }
+            }
+            if (mShouldIncludeHandlerApp && mHandlerAppIntent != null) {
+                // Warms up the cache read when the items are built.
+                DocumentsApplication.getHandlerAppsCache(mContext)
+                        .warmUp(mContext, mUserIds, mHandlerAppIntent);
+            }
+            return null;
+        }
 
-                mInjector.shortcutsUpdater.accept(roots);
-                mInjector.appsRowManager.updateList(mApplicationItemList);
-                mInjector.appsRowManager.updateView(activity);
-                onCurrentRootChanged();
+        @Override
+        protected void finish(Void result) {
+            if (mBuildItemsTask != this || !isAdded()) {
+                return;
+            }
+            mBuildItemsTask = null;
+            final BaseActivity activity = mOwner;
+
+            // For action which supports cross profile, update the policy value in state if
+            // necessary.
+            if (mState.supportsCrossProfile() && mHandlerAppIntent != null) {
+                if (mUseProfileIdMap) {
+                    updateCrossProfileMapStateAndMaybeRefresh(mCanForwardToProfileIdMap);
+                } else {
+                    updateCrossProfileStateAndMaybeRefresh(
+                            /* canShareAcrossProfile= */ mCrossProfileResolveInfo != null);
+                }
             }
 
-            private List<UserId> getUserIds() {
-                if (state.configStore.isPrivateSpaceInDocsUIEnabled() && SdkLevel.isAtLeastS()) {
-                    return DocumentsApplication.getUserManagerState(getContext()).getUserIds();
+            final Intent intent = activity.getIntent();
+            final boolean excludeSelf =
+                    intent.getBooleanExtra(DocumentsContract.EXTRA_EXCLUDE_SELF, false);
+            final String excludePackage = excludeSelf ? activity.getCallingPackage() : null;
+            final boolean maybeShowBadge = mState.supportsCrossProfile();
+            final UserManagerState userManagerState =
+                    mState.configStore.isPrivateSpaceInDocsUIEnabled()
+                            ? DocumentsApplication.getUserManagerState(activity)
+                            : null;
+
+            List<Item> sortedItems = sortLoadResult(
+                    activity,
+                    mState,
+                    mRoots,
+                    excludePackage,
+                    mShouldIncludeHandlerApp ? mHandlerAppIntent : null,
+                    DocumentsApplication.getProvidersCache(activity),
+                    activity.getSelectedUser(),
+                    mUserIds,
+                    maybeShowBadge,
+                    userManagerState);
+
+            // This will be removed when feature flag is removed.
+            if (mCrossProfileResolveInfo != null && !Features.CROSS_PROFILE_TABS) {
+                // Add profile item if we don't support cross-profile tab.
+                sortedItems.add(new SpacerItem());
+                if (mUseRailAsContainer) {
+                    sortedItems.add(new NavRailProfileItem(mCrossProfileResolveInfo,
+                            mCrossProfileLabel, mActionHandler));
+                } else {
+                    sortedItems.add(new ProfileItem(mCrossProfileResolveInfo,
+                            mCrossProfileLabel, mActionHandler));
                 }
-                return DocumentsApplication.getUserIdManager(getContext()).getUserIds();
             }
 
-            @Override
-            public void onLoaderReset(Loader<Collection<RootInfo>> loader) {
-                mAdapter = null;
-                mList.setAdapter(null);
+            // Disable drawer if only one root
+            activity.setRootsDrawerLocked(sortedItems.size() <= 1);
+
+            // Items have stable ids, so updating the items of the adapter keeps the scroll
+            // position and recycles the views that are already shown.
+            if (mAdapter == null || mList.getAdapter() != mAdapter) {
+                mAdapter = new RootsAdapter(activity, sortedItems, mDragListener);
+                mList.setAdapter(mAdapter);
+            } else {
+                mAdapter.setItems(sortedItems);
             }
-        };
+
+            mInjector.shortcutsUpdater.accept(mRoots);
+            mInjector.appsRowManager.updateList(mApplicationItemList);
+            mInjector.appsRowManager.updateView(activity);
+            onCurrentRootChanged();
+        }
     }
 
     /**
@@ -609,50 +665,16 @@ public class RootsFragment extends Fragment {
         final Map<UserPackage, ResolveInfo> appsMapping = new HashMap<>();
         final Map<UserPackage, Item> appItems = new HashMap<>();
 
-        final String myPackageName = context.getPackageName();
+        final HandlerAppsCache handlerAppsCache = DocumentsApplication.getHandlerAppsCache(context);
         for (UserId userId : userIds) {
-            final PackageManager pm = userId.getPackageManager(context);
-            final List<ResolveInfo> infos = pm.queryIntentActivities(
-                    handlerAppIntent, PackageManager.MATCH_DEFAULT_ONLY);
-
-            // In addition to hiding DocumentsUI from possible handler apps, the Android
-            // Photopicker should also be hidden. ACTION_PICK_IMAGES is used to identify
-            // the Photopicker package since that is the primary API.
-            List<ResolveInfo> photopickerActivities;
-            List<String> photopickerPackages;
-
-            if (SdkLevel.isAtLeastR()
-                    && SdkExtensions.getExtensionVersion(Build.VERSION_CODES.R) >= 2) {
-                photopickerActivities = pm.queryIntentActivities(
-                        new Intent(MediaStore.ACTION_PICK_IMAGES),
-                        PackageManager.MATCH_DEFAULT_ONLY);
-                photopickerPackages = photopickerActivities.stream()
-                        .map(info -> info.activityInfo.packageName)
-                .collect(Collectors.toList());
-            } else {
-                photopickerActivities = Collections.emptyList();
-                photopickerPackages = Collections.emptyList();
-            }
-
-            // Omit ourselves and maybe calling package from the list
-            for (ResolveInfo info : infos) {
-                if (!info.activityInfo.exported) {
-                    if (VERBOSE) {
-                        Log.v(TAG, "Non exported activity: " + info.activityInfo);
-                    }
-                    continue;
-                }
-
+            // Usually resolved in the background before the roots are shown, see BuildItemsTask.
+            for (HandlerAppsCache.HandlerApp app
+                    : handlerAppsCache.getHandlerApps(context, userId, handlerAppIntent)) {
+                final ResolveInfo info = app.info;
                 final String packageName = info.activityInfo.packageName;
 
-                // If the package name for the activity is in the list of Photopicker
-                // activities, exclude it.
-                if (photopickerPackages.contains(packageName)) {
-                    continue;
-                }
-
-                if (!myPackageName.equals(packageName)
-                        && !TextUtils.equals(excludePackage, packageName)) {
+                // Omit maybe calling package from the list
+                if (!TextUtils.equals(excludePackage, packageName)) {
                     UserPackage userPackage = new UserPackage(userId, packageName);
                     appsMapping.put(userPackage, info);
 
@@ -661,12 +683,12 @@ public class RootsFragment extends Fragment {
                                 mUseRailAsContainer
                                         ? new NavRailAppItem(
                                                 info,
-                                                info.loadLabel(pm).toString(),
+                                                app.label,
                                                 userId,
                                                 mActionHandler)
                                         : new AppItem(
                                                 info,
-                                                info.loadLabel(pm).toString(),
+                                                app.label,
                                                 userId,
                                                 mActionHandler);
                         appItems.put(userPackage, item);
@@ -16,15 +16,13 @@
 
 package com.android.documentsui.sorting;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorLong;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
-
 import android.database.AbstractCursor;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.provider.DocumentsContract.Document;
 
+import com.android.documentsui.base.CursorSchema;
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.Shared;
 
@@ -57,25 +55,24 @@ class SortingCursorWrapper extends AbstractCursor {
             longValues = new long[count];
         }
 
+        final CursorSchema schema = CursorSchema.of(cursor);
         cursor.moveToPosition(-1);
         for (int i = 0; i < count; i++) {
             cursor.moveToNext();
             mPosition[i] = i;
 
-            final String mimeType = getCursorString(mCursor, Document.COLUMN_MIME_TYPE);
+            final String mimeType = schema.getMimeType(mCursor);
             isDirs[i] = Document.MIME_TYPE_DIR.equals(mimeType);
-            ids[i] = getCursorString(mCursor, Document.COLUMN_DOCUMENT_ID);
+            ids[i] = schema.getDocumentId(mCursor);
 
             if (id == SortModel.SORT_DIMENSION_ID_TITLE) {
-                final String displayName = getCursorString(
-                        mCursor, Document.COLUMN_DISPLAY_NAME);
-                stringValues[i] = displayName;
+                stringValues[i] = schema.getDisplayName(mCursor);
             } else if (id == SortModel.SORT_DIMENSION_ID_FILE_TYPE) {
                 stringValues[i] = fileTypeLookup.lookup(mimeType);
             } else if (id == SortModel.SORT_DIMENSION_ID_DATE) {
-                longValues[i] = getLastModified(mCursor);
+                longValues[i] = getLastModified(mCursor, schema);
             } else if (id == SortModel.SORT_DIMENSION_ID_SIZE) {
-                longValues[i] = getCursorLong(mCursor, Document.COLUMN_SIZE);
+                longValues[i] = schema.getSize(mCursor);
             }
 
         }
@@ -171,8 +168,8 @@ class SortingCursorWrapper extends AbstractCursor {
      * timestamp - these will be replaced with MAX_LONG so that such files get sorted to the top
      * when sorting descending by date.
      */
-    private static long getLastModified(Cursor cursor) {
-        long l = getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED);
+    private static long getLastModified(Cursor cursor, CursorSchema schema) {
+        long l = schema.getLastModified(cursor);
         return (l == -1) ? Long.MAX_VALUE : l;
     }
 
@@ -93,4 +93,8 @@ public class TestUserManagerState implements UserManagerState {
     public boolean areHiddenInQuietModeProfilesPresent() {
         return false;
     }
+
+    @Override
+    public void refreshAsync() {
+    }
 }
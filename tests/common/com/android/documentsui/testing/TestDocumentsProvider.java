@@ -18,6 +18,7 @@ package com.android.documentsui.testing;
 
 import android.annotation.NonNull;
 import android.annotation.Nullable;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -53,6 +54,7 @@ public class TestDocumentsProvider extends DocumentsProvider {
 
     private Cursor mNextChildDocuments;
     private Cursor mNextRecentDocuments;
+    private Bundle mLastRecentQueryArgs;
 
     public TestDocumentsProvider(Context context, String authority) {
         ProviderInfo info = new ProviderInfo();
@@ -93,6 +95,13 @@ public class TestDocumentsProvider extends DocumentsProvider {
         return mNextRecentDocuments;
     }
 
+    @Override
+    public Cursor queryRecentDocuments(String rootId, String[] projection,
+            @Nullable Bundle queryArgs, @Nullable CancellationSignal signal) {
+        mLastRecentQueryArgs = queryArgs;
+        return mNextRecentDocuments;
+    }
+
     private String getStringColumn(Cursor cursor, String name) {
         return cursor.getString(cursor.getColumnIndexOrThrow(name));
     }
@@ -165,6 +174,23 @@ public class TestDocumentsProvider extends DocumentsProvider {
         mNextRecentDocuments = createDocumentsCursor(docs);
     }
 
+    /**
+     * Sets the query arguments the next recent documents are reported to be filtered by, in
+     * {@link ContentResolver#EXTRA_HONORED_ARGS}.
+     */
+    public void setNextRecentDocumentsHonoredArgs(String... honoredArgs) {
+        final Bundle extras = new Bundle();
+        extras.putStringArray(ContentResolver.EXTRA_HONORED_ARGS, honoredArgs);
+        mNextRecentDocuments.setExtras(extras);
+    }
+
+    /**
+     * @return the query arguments of the last recent documents query.
+     */
+    public Bundle getLastRecentQueryArgs() {
+        return mLastRecentQueryArgs;
+    }
+
     private Cursor createDocumentsCursor(DocumentInfo... docs) {
         TestCursor cursor = new TestCursor(DOCUMENTS_PROJECTION);
         for (DocumentInfo doc : docs) {
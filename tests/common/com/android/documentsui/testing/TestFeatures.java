@@ -26,6 +26,9 @@ public class TestFeatures implements Features {
     public boolean contentPaging = true;
     public boolean contentRefresh = true;
     public boolean debugSupport = true;
+    public boolean directoryPreload = false;
+    public boolean directorySnapshots = false;
+    public boolean filenameIndex = false;
     public boolean foldersInSearchResults = true;
     public boolean gestureScale = true;
     public boolean inspector = true;
@@ -62,6 +65,21 @@ public class TestFeatures implements Features {
         return debugSupport;
     }
 
+    @Override
+    public boolean isDirectoryPreloadEnabled() {
+        return directoryPreload;
+    }
+
+    @Override
+    public boolean isDirectorySnapshotsEnabled() {
+        return directorySnapshots;
+    }
+
+    @Override
+    public boolean isFilenameIndexEnabled() {
+        return filenameIndex;
+    }
+
     @Override
     public boolean isFoldersInSearchResultsEnabled() {
         return foldersInSearchResults;
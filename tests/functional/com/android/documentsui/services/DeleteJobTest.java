@@ -25,6 +25,9 @@ import android.provider.DocumentsContract;
 
 import androidx.test.filters.MediumTest;
 
+import com.android.documentsui.base.DocumentInfo;
+
+import java.util.ArrayList;
 import java.util.List;
 
 @MediumTest
@@ -68,6 +71,75 @@ public class DeleteJobTest extends AbstractJobTest<DeleteJob> {
         assertEquals("Deleting 2 files", progress.msg);
     }
 
+    public void testDeleteFolderWithDescendant_NoSrcParent() throws Exception {
+        Uri testDir = mDocs.createFolder(mSrcRoot, "testDir");
+        Uri testFile = mDocs.createDocument(testDir, "text/plain", "test1.txt");
+        mDocs.writeDocument(testFile, HAM_BYTES);
+
+        DeleteJob job = createJob(newArrayList(testFile, testDir), null);
+        job.run();
+        mJobListener.waitForFinished();
+
+        mDocs.assertChildCount(mSrcRoot, 0);
+        var progress = job.getJobProgress();
+        assertEquals(Job.STATE_COMPLETED, progress.state);
+        assertFalse(progress.hasFailures);
+    }
+
+    public void testDeleteFolderBeforeDescendant_NoSrcParent() throws Exception {
+        Uri testDir = mDocs.createFolder(mSrcRoot, "testDir");
+        Uri testFile = mDocs.createDocument(testDir, "text/plain", "test1.txt");
+        mDocs.writeDocument(testFile, HAM_BYTES);
+
+        DeleteJob job = createJob(newArrayList(testDir, testFile), null);
+        job.run();
+        mJobListener.waitForFinished();
+
+        mDocs.assertChildCount(mSrcRoot, 0);
+        var progress = job.getJobProgress();
+        assertEquals(Job.STATE_COMPLETED, progress.state);
+        assertFalse(progress.hasFailures);
+    }
+
+    public void testDeleteManyFiles() throws Exception {
+        int count = DeleteJob.BATCH_SIZE * 2 + 1;
+        List<Uri> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(mDocs.createDocument(mSrcRoot, "text/plain", "test" + i + ".txt"));
+        }
+
+        DeleteJob job = createJob(files,
+                DocumentsContract.buildDocumentUri(AUTHORITY, mSrcRoot.documentId));
+        job.run();
+        mJobListener.waitForFinished();
+
+        mDocs.assertChildCount(mSrcRoot, 0);
+        assertFalse(job.getJobProgress().hasFailures);
+    }
+
+    public void testCreateBatches_GroupsByAuthority() {
+        List<DocumentInfo> docs = new ArrayList<>();
+        for (int i = 0; i < DeleteJob.BATCH_SIZE + 1; i++) {
+            docs.add(createDocumentInfo("a", "doc" + i));
+        }
+        docs.add(createDocumentInfo("b", "doc"));
+
+        List<List<DocumentInfo>> batches = DeleteJob.createBatches(docs);
+
+        assertEquals(3, batches.size());
+        assertEquals(DeleteJob.BATCH_SIZE, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+        assertEquals("a", batches.get(1).get(0).authority);
+        assertEquals("b", batches.get(2).get(0).authority);
+    }
+
+    private static DocumentInfo createDocumentInfo(String authority, String documentId) {
+        DocumentInfo doc = new DocumentInfo();
+        doc.authority = authority;
+        doc.documentId = documentId;
+        return doc;
+    }
+
     /**
      * Creates a job with a stack consisting to the default src directory.
      */
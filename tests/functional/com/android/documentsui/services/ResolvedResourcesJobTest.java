@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.FileOperationService.OPERATION_DELETE;
+
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.test.filters.MediumTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@MediumTest
+public class ResolvedResourcesJobTest extends AbstractJobTest<DeleteJob> {
+
+    public void testCreateResolveBatches_FewUris() {
+        List<Uri> uris = createUris("a", ResolvedResourcesJob.MIN_RESOLVE_BATCH_SIZE);
+
+        List<List<Integer>> batches = ResolvedResourcesJob.createResolveBatches(uris);
+
+        assertEquals(1, batches.size());
+        assertEquals(uris.size(), batches.get(0).size());
+    }
+
+    public void testCreateResolveBatches_SplitsPerAuthority() {
+        List<Uri> uris = new ArrayList<>();
+        uris.addAll(createUris("a", 100));
+        uris.addAll(createUris("b", 20));
+        uris.add(2, DocumentsContract.buildDocumentUri("b", "first"));
+
+        List<List<Integer>> batches = ResolvedResourcesJob.createResolveBatches(uris);
+
+        // 121 URIs on 4 threads: batches of at most 31 URIs of a single authority.
+        assertEquals(5, batches.size());
+        assertEquals(List.of(31, 31, 31, 7, 21), sizesOf(batches));
+        assertEquals(Integer.valueOf(0), batches.get(0).get(0));
+        assertEquals(Integer.valueOf(3), batches.get(0).get(2));
+        assertEquals(Integer.valueOf(2), batches.get(4).get(0));
+        for (List<Integer> batch : batches) {
+            String authority = uris.get(batch.get(0)).getAuthority();
+            for (int i = 1; i < batch.size(); i++) {
+                assertEquals(authority, uris.get(batch.get(i)).getAuthority());
+                assertTrue(batch.get(i - 1) < batch.get(i));
+            }
+        }
+    }
+
+    public void testBuildDocumentList_KeepsOrder() throws Exception {
+        List<Uri> files = createFiles(ResolvedResourcesJob.MIN_RESOLVE_BATCH_SIZE * 3);
+        DeleteJob job = createJob(files);
+
+        assertEquals(files.size(), job.buildDocumentList(files));
+
+        assertEquals(files.size(), job.mResolvedDocs.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i), job.mResolvedDocs.get(i).derivedUri);
+        }
+        assertFalse(job.hasFailures());
+    }
+
+    public void testBuildDocumentList_OneFailure() throws Exception {
+        List<Uri> files = createFiles(ResolvedResourcesJob.MIN_RESOLVE_BATCH_SIZE * 3);
+        Uri missing = DocumentsContract.buildDocumentUri(AUTHORITY, "missing");
+        List<Uri> uris = new ArrayList<>(files);
+        uris.add(5, missing);
+        DeleteJob job = createJob(uris);
+
+        assertEquals(files.size(), job.buildDocumentList(uris));
+
+        assertEquals(files.size(), job.mResolvedDocs.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i), job.mResolvedDocs.get(i).derivedUri);
+        }
+        assertTrue(job.hasFailures());
+        assertEquals(1, job.failedUris.size());
+        assertEquals(missing, job.failedUris.get(0));
+    }
+
+    private static List<Integer> sizesOf(List<List<Integer>> batches) {
+        List<Integer> sizes = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            sizes.add(batch.size());
+        }
+        return sizes;
+    }
+
+    private List<Uri> createFiles(int count) {
+        List<Uri> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(mDocs.createDocument(mSrcRoot, "text/plain", "test" + i + ".txt"));
+        }
+        return files;
+    }
+
+    private static List<Uri> createUris(String authority, int count) {
+        List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            uris.add(DocumentsContract.buildDocumentUri(authority, "doc" + i));
+        }
+        return uris;
+    }
+
+    private DeleteJob createJob(List<Uri> srcs) throws Exception {
+        Uri stack = DocumentsContract.buildDocumentUri(AUTHORITY, mSrcRoot.documentId);
+        return createJob(OPERATION_DELETE, srcs, null, stack);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.database.ContentObserver;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.UserId;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class DirectoryCacheTest {
+
+    private static final DirectoryCache.Key KEY_1 = createKey("1");
+    private static final DirectoryCache.Key KEY_2 = createKey("2");
+    private static final DirectoryCache.Key KEY_3 = createKey("3");
+
+    private DirectoryCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new DirectoryCache(/* maxPreloadedEntries= */ 2, /* maxVisitedEntries= */ 2);
+    }
+
+    @Test
+    public void testTake() {
+        final DirectoryResult result = createResult();
+        mCache.putPreloaded(KEY_1, result);
+
+        assertThat(mCache.contains(KEY_1)).isTrue();
+        assertThat(mCache.take(KEY_1)).isSameInstanceAs(result);
+        assertThat(mCache.take(KEY_1)).isNull();
+        verify(result.getCursor(), never()).close();
+    }
+
+    @Test
+    public void testTake_OtherSortOrder() {
+        mCache.putPreloaded(KEY_1, createResult());
+
+        final DirectoryCache.Key key = new DirectoryCache.Key(KEY_1.userId, KEY_1.uri,
+                KEY_1.sortDimensionId, KEY_1.sortDirection + 1, KEY_1.showHiddenFiles,
+                KEY_1.photoPicking);
+        assertThat(mCache.take(key)).isNull();
+    }
+
+    @Test
+    public void testPut_EvictsLeastRecentlyUsed() {
+        final DirectoryResult result1 = createResult();
+        final MatrixCursor cursor1 = (MatrixCursor) result1.getCursor();
+        mCache.putPreloaded(KEY_1, result1);
+        mCache.putPreloaded(KEY_2, createResult());
+        mCache.putPreloaded(KEY_3, createResult());
+
+        assertThat(mCache.contains(KEY_1)).isFalse();
+        assertThat(mCache.contains(KEY_2)).isTrue();
+        assertThat(mCache.contains(KEY_3)).isTrue();
+        verify(cursor1).close();
+    }
+
+    @Test
+    public void testPutPreloaded_KeepsVisited() {
+        final DirectoryResult visited = createResult();
+        mCache.putVisited(KEY_1, visited);
+        mCache.putPreloaded(KEY_2, createResult());
+        mCache.putPreloaded(KEY_3, createResult());
+        mCache.putPreloaded(createKey("4"), createResult());
+
+        assertThat(mCache.take(KEY_1)).isSameInstanceAs(visited);
+        assertThat(mCache.contains(KEY_2)).isFalse();
+    }
+
+    @Test
+    public void testPutVisited_ReplacesPreloaded() {
+        final DirectoryResult preloaded = createResult();
+        final MatrixCursor cursor = (MatrixCursor) preloaded.getCursor();
+        mCache.putPreloaded(KEY_1, preloaded);
+        final DirectoryResult visited = createResult();
+        mCache.putVisited(KEY_1, visited);
+
+        verify(cursor).close();
+        assertThat(mCache.take(KEY_1)).isSameInstanceAs(visited);
+        assertThat(mCache.take(KEY_1)).isNull();
+    }
+
+    @Test
+    public void testPut_Failed() {
+        final DirectoryResult result = createResult();
+        final MatrixCursor cursor = (MatrixCursor) result.getCursor();
+        result.exception = new Exception();
+        mCache.putPreloaded(KEY_1, result);
+
+        assertThat(mCache.contains(KEY_1)).isFalse();
+        verify(cursor).close();
+    }
+
+    @Test
+    public void testContentChange_DropsResult() {
+        final DirectoryResult result = createResult();
+        final MatrixCursor cursor = (MatrixCursor) result.getCursor();
+        mCache.putPreloaded(KEY_1, result);
+
+        final ArgumentCaptor<ContentObserver> observer =
+                ArgumentCaptor.forClass(ContentObserver.class);
+        verify(cursor).registerContentObserver(observer.capture());
+        observer.getValue().onChange(false);
+
+        assertThat(mCache.take(KEY_1)).isNull();
+        verify(cursor).close();
+    }
+
+    @Test
+    public void testClear() {
+        final DirectoryResult result = createResult();
+        final MatrixCursor cursor = (MatrixCursor) result.getCursor();
+        mCache.putPreloaded(KEY_1, result);
+
+        mCache.clear();
+
+        assertThat(mCache.contains(KEY_1)).isFalse();
+        verify(cursor).unregisterContentObserver(any());
+        verify(cursor).close();
+    }
+
+    private static DirectoryCache.Key createKey(String documentId) {
+        return new DirectoryCache.Key(UserId.DEFAULT_USER,
+                Uri.parse("content://com.example/document/" + documentId + "/children"),
+                /* sortDimensionId= */ 0, /* sortDirection= */ 0, /* showHiddenFiles= */ false,
+                /* photoPicking= */ false);
+    }
+
+    private static DirectoryResult createResult() {
+        final DirectoryResult result = new DirectoryResult();
+        result.setCursor(mock(MatrixCursor.class));
+        result.doc = new DocumentInfo();
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.testing.TestEnv;
+import com.android.documentsui.testing.TestFileTypeLookup;
+import com.android.documentsui.testing.TestProvidersAccess;
+import com.android.documentsui.testing.UserManagers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class DirectoryLoaderTest {
+
+    private static final RootInfo OTHER_USER_ROOT = TestProvidersAccess.OtherUser.DOWNLOADS;
+
+    private TestEnv mEnv;
+    private TestActivity mActivity;
+    private DirectoryCache mCache;
+
+    @Before
+    public void setUp() {
+        mEnv = TestEnv.create();
+        mEnv.state.configStore = new TestConfigStore();
+        mEnv.state.canShareAcrossProfile = true;
+        mActivity = TestActivity.create(mEnv);
+        mActivity.userManager = UserManagers.create();
+        mCache = new DirectoryCache();
+    }
+
+    @Test
+    public void testTakeCachedResult() {
+        final DirectoryLoader loader = createLoader(OTHER_USER_ROOT);
+        final DirectoryResult result = createResult();
+        mCache.putPreloaded(loader.getCacheKey(), result);
+
+        assertThat(loader.takeCachedResult()).isSameInstanceAs(result);
+        assertThat(mCache.contains(loader.getCacheKey())).isFalse();
+    }
+
+    @Test
+    public void testTakeCachedResult_CannotInteractWithUser() {
+        mEnv.state.canShareAcrossProfile = false;
+        final DirectoryLoader loader = createLoader(OTHER_USER_ROOT);
+        final DirectoryResult result = createResult();
+        final MatrixCursor cursor = (MatrixCursor) result.getCursor();
+        mCache.putPreloaded(loader.getCacheKey(), result);
+
+        assertThat(loader.takeCachedResult()).isNull();
+        assertThat(mCache.contains(loader.getCacheKey())).isFalse();
+        verify(cursor).close();
+    }
+
+    @Test
+    public void testTakeCachedResult_QuietMode() {
+        when(mActivity.userManager.isQuietModeEnabled(any())).thenReturn(true);
+        final DirectoryLoader loader = createLoader(OTHER_USER_ROOT);
+        final DirectoryResult result = createResult();
+        final MatrixCursor cursor = (MatrixCursor) result.getCursor();
+        mCache.putPreloaded(loader.getCacheKey(), result);
+
+        assertThat(loader.takeCachedResult()).isNull();
+        verify(cursor).close();
+    }
+
+    private DirectoryLoader createLoader(RootInfo root) {
+        final DocumentInfo doc = mEnv.model.createFolder("kittens");
+        final Uri uri = DocumentsContract.buildChildDocumentsUri(root.authority, doc.documentId);
+        return new DirectoryLoader(mEnv.features, mActivity, mEnv.state, root, doc, uri,
+                new TestFileTypeLookup(), /* lock= */ null, /* queryArgs= */ null, mCache);
+    }
+
+    private static DirectoryResult createResult() {
+        final DirectoryResult result = new DirectoryResult();
+        result.setCursor(mock(MatrixCursor.class));
+        result.doc = new DocumentInfo();
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.LocaleList;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FileTypeMapTest {
+
+    private final List<String> mResolved = new ArrayList<>();
+    private Configuration mConfiguration;
+    private FileTypeMap mMap;
+
+    @Before
+    public void setUp() {
+        mConfiguration = new Configuration();
+        mConfiguration.setLocales(LocaleList.forLanguageTags("en-US"));
+        Resources resources = mock(Resources.class);
+        when(resources.getConfiguration()).thenReturn(mConfiguration);
+
+        mMap = new FileTypeMap(resources, mimeType -> {
+            mResolved.add(mimeType);
+            return mConfiguration.getLocales().get(0).getLanguage() + ":" + mimeType;
+        });
+    }
+
+    @Test
+    public void testLookup_Null() {
+        assertNull(mMap.lookup(null));
+    }
+
+    @Test
+    public void testLookup_Memoized() {
+        assertEquals("en:image/png", mMap.lookup("image/png"));
+        assertEquals("en:image/png", mMap.lookup("image/png"));
+        assertEquals("en:text/plain", mMap.lookup("text/plain"));
+
+        assertEquals(2, mResolved.size());
+    }
+
+    @Test
+    public void testLookup_LocaleChanged() {
+        mMap.lookup("image/png");
+
+        mConfiguration.setLocales(LocaleList.forLanguageTags("fr-FR"));
+
+        assertEquals("fr:image/png", mMap.lookup("image/png"));
+        assertEquals(2, mResolved.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        mMap.lookup("image/png");
+
+        mMap.invalidate();
+
+        assertEquals(0, mMap.size());
+        mMap.lookup("image/png");
+        assertEquals(2, mResolved.size());
+    }
+
+    @Test
+    public void testLookup_LocaleChangedWhileResolving() {
+        Resources resources = mock(Resources.class);
+        when(resources.getConfiguration()).thenReturn(mConfiguration);
+        mMap = new FileTypeMap(resources, mimeType -> {
+            String label = mConfiguration.getLocales().get(0).getLanguage() + ":" + mimeType;
+            if (mResolved.isEmpty()) {
+                mConfiguration.setLocales(LocaleList.forLanguageTags("fr-FR"));
+                mMap.invalidate();
+            }
+            mResolved.add(mimeType);
+            return label;
+        });
+
+        assertEquals("en:image/png", mMap.lookup("image/png"));
+
+        assertEquals(0, mMap.size());
+        assertEquals("fr:image/png", mMap.lookup("image/png"));
+    }
+
+    @Test
+    public void testPrewarm() {
+        mMap.prewarm();
+
+        int resolved = mResolved.size();
+        mMap.lookup("application/pdf");
+
+        assertEquals(resolved, mResolved.size());
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.State;
+import com.android.documentsui.roots.RootCursorWrapper;
+import com.android.documentsui.testing.ActivityManagers;
+import com.android.documentsui.testing.TestEnv;
+import com.android.documentsui.testing.TestFileTypeLookup;
+import com.android.documentsui.testing.TestProvidersAccess;
+import com.android.documentsui.testing.UserManagers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class MultiRootDocumentsLoaderTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    // The roots of the storage authority, queried by the same task, and the downloads root.
+    private static final RootInfo HOME = TestProvidersAccess.HOME;
+    private static final RootInfo DEVICE = TestProvidersAccess.EXTERNALSTORAGE;
+    private static final RootInfo DOWNLOADS = TestProvidersAccess.DOWNLOADS;
+
+    // Roots whose queries wait for their latch, and roots whose queries fail. The roots of the
+    // storage authority share the cursor of its provider, so only the downloads root fails.
+    private final Map<String, CountDownLatch> mBlockedRoots = new ConcurrentHashMap<>();
+    private final Set<String> mFailingRoots = ConcurrentHashMap.newKeySet();
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private TestEnv mEnv;
+    private TestActivity mActivity;
+    private TestLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mEnv = TestEnv.create();
+        mActivity = TestActivity.create(mEnv);
+        mActivity.activityManager = ActivityManagers.create(false);
+        mActivity.userManager = UserManagers.create();
+        mEnv.state.action = State.ACTION_BROWSE;
+        mEnv.state.acceptMimes = new String[]{"*/*"};
+
+        final DocumentInfo doc = mEnv.model.createFile("freddy.jpg");
+        for (RootInfo root : List.of(HOME, DOWNLOADS)) {
+            mEnv.mockProviders.get(root.authority).setNextRecentDocumentsReturns(doc);
+        }
+
+        MultiRootDocumentsLoader.clearLatencies();
+        mLoader = new TestLoader();
+    }
+
+    @After
+    public void tearDown() {
+        for (CountDownLatch latch : mBlockedRoots.values()) {
+            latch.countDown();
+        }
+        mLoader.reset();
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void testLoad_AllRootsAnswer_Complete() {
+        final DirectoryResult result = mLoader.loadInBackground();
+
+        assertThat(result.getCursor().getCount()).isEqualTo(3);
+        assertThat(isLoading(result)).isFalse();
+    }
+
+    @Test
+    public void testLoad_RootPending_ReturnsOtherRootsOfTask() {
+        block(DEVICE);
+
+        final DirectoryResult result = mLoader.loadInBackground();
+
+        // The first pass gave up on the storage task, but the home root answered meanwhile.
+        assertThat(result.getCursor().getCount()).isEqualTo(2);
+        assertThat(isLoading(result)).isTrue();
+    }
+
+    @Test
+    public void testLoad_RootPending_CompletesOnceAnswered() throws Exception {
+        block(DEVICE);
+        assertThat(isLoading(mLoader.loadInBackground())).isTrue();
+
+        mBlockedRoots.get(DEVICE.rootId).countDown();
+
+        final DirectoryResult result = loadUntilComplete();
+        assertThat(result.getCursor().getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testLoad_AuthorityPending_FirstPassReturnsOtherAuthorities() {
+        block(DOWNLOADS);
+        final long startTime = SystemClock.elapsedRealtime();
+
+        final DirectoryResult result = mLoader.loadInBackground();
+
+        // The first pass doesn't wait for the blocked root.
+        assertThat(SystemClock.elapsedRealtime() - startTime).isLessThan(TIMEOUT_MS);
+        assertThat(result.getCursor().getCount()).isEqualTo(2);
+        assertThat(isLoading(result)).isTrue();
+    }
+
+    @Test
+    public void testLoad_RootAnswersAfterFirstPass_OtherRootPending() throws Exception {
+        block(DEVICE);
+        block(DOWNLOADS);
+        mLoader.loadInBackground();
+        assertThat(mLoader.takeContentChanged()).isFalse();
+
+        mBlockedRoots.get(DOWNLOADS.rootId).countDown();
+
+        // Each root answering after the first pass is reported right away.
+        waitForContentChanged();
+        final DirectoryResult result = mLoader.loadInBackground();
+        assertThat(result.getCursor().getCount()).isEqualTo(2);
+        assertThat(isLoading(result)).isTrue();
+    }
+
+    @Test
+    public void testLoad_RootFails_ReturnsOtherRoots() {
+        mFailingRoots.add(DOWNLOADS.rootId);
+
+        final DirectoryResult result = mLoader.loadInBackground();
+
+        assertThat(result.getCursor().getCount()).isEqualTo(2);
+        assertThat(isLoading(result)).isFalse();
+    }
+
+    @Test
+    public void testLoad_RootFails_DoesNotBlockPendingRoots() throws Exception {
+        mFailingRoots.add(DOWNLOADS.rootId);
+        block(DEVICE);
+        assertThat(mLoader.loadInBackground().getCursor().getCount()).isEqualTo(1);
+
+        mBlockedRoots.get(DEVICE.rootId).countDown();
+
+        final DirectoryResult result = loadUntilComplete();
+        assertThat(result.getCursor().getCount()).isEqualTo(2);
+    }
+
+    private void block(RootInfo root) {
+        mBlockedRoots.put(root.rootId, new CountDownLatch(1));
+    }
+
+    private void waitForContentChanged() throws InterruptedException {
+        final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+        while (!mLoader.takeContentChanged()) {
+            assertThat(SystemClock.elapsedRealtime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private DirectoryResult loadUntilComplete() throws InterruptedException {
+        final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+        DirectoryResult result = mLoader.loadInBackground();
+        while (isLoading(result) && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(10);
+            result = mLoader.loadInBackground();
+        }
+        assertThat(isLoading(result)).isFalse();
+        return result;
+    }
+
+    private static boolean isLoading(DirectoryResult result) {
+        return result.getCursor().getExtras().getBoolean(DocumentsContract.EXTRA_LOADING);
+    }
+
+    private final class TestLoader extends MultiRootDocumentsLoader {
+
+        TestLoader() {
+            super(mActivity, mEnv.providers, mEnv.state, authority -> mExecutor,
+                    new TestFileTypeLookup());
+        }
+
+        @Override
+        protected boolean shouldIgnoreRoot(RootInfo root) {
+            return !HOME.authority.equals(root.authority)
+                    && !DOWNLOADS.authority.equals(root.authority);
+        }
+
+        @Override
+        protected QueryTask getQueryTask(String authority, List<RootInfo> rootInfos) {
+            return new QueryTask(authority, rootInfos) {
+                @Override
+                protected Uri getQueryUri(RootInfo rootInfo) {
+                    return DocumentsContract.buildRecentDocumentsUri(
+                            authority, rootInfo.rootId);
+                }
+
+                @Override
+                protected RootCursorWrapper generateResultCursor(RootInfo rootInfo,
+                        Cursor oriCursor) {
+                    final CountDownLatch latch = mBlockedRoots.get(rootInfo.rootId);
+                    if (latch != null) {
+                        try {
+                            latch.await(2 * TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    if (mFailingRoots.contains(rootInfo.rootId)) {
+                        throw new IllegalStateException("Failed to query " + rootInfo.rootId);
+                    }
+                    return new RootCursorWrapper(rootInfo.userId, authority, rootInfo.rootId,
+                            oriCursor, -1);
+                }
+            };
+        }
+    }
+}
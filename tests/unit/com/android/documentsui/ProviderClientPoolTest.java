@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.RemoteException;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.testing.TestEnv;
+import com.android.documentsui.testing.TestProvidersAccess;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ProviderClientPoolTest {
+
+    private static final UserId USER_ID = TestProvidersAccess.USER_ID;
+    private static final String AUTHORITY = TestProvidersAccess.HOME.authority;
+
+    // Evictions posted by the pool, which are only run when a test says so.
+    private final List<Runnable> mPosted = new ArrayList<>();
+
+    private ContentResolver mResolver;
+    private Handler mHandler;
+    private ProviderClientPool mPool;
+
+    @Before
+    public void setUp() {
+        mResolver = TestEnv.create().contentResolver;
+        mHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+                mPosted.add(msg.getCallback());
+                return true;
+            }
+        };
+        mPool = new ProviderClientPool(mHandler, /* pooled= */ true);
+    }
+
+    @Test
+    public void testAcquire_SharesClient() throws Exception {
+        final ProviderClientPool.Lease first = acquire();
+        final ProviderClientPool.Lease second = acquire();
+
+        assertThat(second.getClient()).isSameInstanceAs(first.getClient());
+    }
+
+    @Test
+    public void testRelease_EvictsOnceUnused() throws Exception {
+        final ProviderClientPool.Lease first = acquire();
+        final ProviderClientPool.Lease second = acquire();
+
+        first.close();
+        assertThat(mPosted).isEmpty();
+
+        second.close();
+        assertThat(mPosted).hasSize(1);
+    }
+
+    @Test
+    public void testAcquire_BeforeIdleTimeout_ReusesClient() throws Exception {
+        final ContentProviderClient client = acquireAndRelease();
+
+        assertThat(acquire().getClient()).isSameInstanceAs(client);
+        // The pending eviction doesn't close the client while it is leased.
+        runPosted();
+        assertThat(acquire().getClient()).isSameInstanceAs(client);
+    }
+
+    @Test
+    public void testAcquire_AfterIdleTimeout_CreatesClient() throws Exception {
+        final ContentProviderClient client = acquireAndRelease();
+
+        runPosted();
+
+        assertThat(acquire().getClient()).isNotSameInstanceAs(client);
+    }
+
+    @Test
+    public void testLease_CloseTwice_ReleasesOnce() throws Exception {
+        final ProviderClientPool.Lease first = acquire();
+        final ProviderClientPool.Lease second = acquire();
+
+        first.close();
+        first.close();
+
+        assertThat(mPosted).isEmpty();
+        second.close();
+        assertThat(mPosted).hasSize(1);
+    }
+
+    @Test
+    public void testOnError_DeadProvider_ReplacesClient() throws Exception {
+        final ProviderClientPool.Lease lease = acquire();
+
+        mPool.onError(USER_ID, AUTHORITY, new DeadObjectException());
+
+        assertThat(acquire().getClient()).isNotSameInstanceAs(lease.getClient());
+        assertThat(mPool.getDeathCount(USER_ID, AUTHORITY)).isEqualTo(1);
+        // The client of the dead provider is closed on release, not evicted.
+        lease.close();
+        assertThat(mPosted).isEmpty();
+    }
+
+    @Test
+    public void testOnError_OtherError_KeepsClient() throws Exception {
+        final ProviderClientPool.Lease lease = acquire();
+
+        mPool.onError(USER_ID, AUTHORITY, new RemoteException());
+
+        assertThat(acquire().getClient()).isSameInstanceAs(lease.getClient());
+        assertThat(mPool.getDeathCount(USER_ID, AUTHORITY)).isEqualTo(0);
+    }
+
+    @Test
+    public void testOnError_KeepsDying_StopsPooling() throws Exception {
+        for (int i = 0; i < ProviderClientPool.MAX_CONSECUTIVE_DEATHS; i++) {
+            acquire();
+            mPool.onError(USER_ID, AUTHORITY, new RuntimeException(new DeadObjectException()));
+        }
+
+        final ProviderClientPool.Lease first = acquire();
+        final ProviderClientPool.Lease second = acquire();
+
+        assertThat(second.getClient()).isNotSameInstanceAs(first.getClient());
+        assertThat(mPool.getMostAcquiredAuthorities(USER_ID, 1)).isEmpty();
+        // Clients which aren't pooled are closed with their lease.
+        first.close();
+        assertThat(mPosted).isEmpty();
+    }
+
+    @Test
+    public void testRelease_ResetsConsecutiveDeaths() throws Exception {
+        for (int i = 0; i < ProviderClientPool.MAX_CONSECUTIVE_DEATHS - 1; i++) {
+            acquire();
+            mPool.onError(USER_ID, AUTHORITY, new DeadObjectException());
+        }
+        acquireAndRelease();
+        mPool.onError(USER_ID, AUTHORITY, new DeadObjectException());
+
+        final ProviderClientPool.Lease first = acquire();
+        final ProviderClientPool.Lease second = acquire();
+
+        assertThat(second.getClient()).isSameInstanceAs(first.getClient());
+    }
+
+    @Test
+    public void testAcquire_NotPooled() throws Exception {
+        mPool = new ProviderClientPool(mHandler, /* pooled= */ false);
+
+        final ProviderClientPool.Lease first = acquire();
+        final ProviderClientPool.Lease second = acquire();
+
+        assertThat(second.getClient()).isNotSameInstanceAs(first.getClient());
+        first.close();
+        assertThat(mPosted).isEmpty();
+    }
+
+    private ProviderClientPool.Lease acquire() throws RemoteException {
+        return mPool.acquire(mResolver, USER_ID, AUTHORITY);
+    }
+
+    private ContentProviderClient acquireAndRelease() throws RemoteException {
+        try (ProviderClientPool.Lease lease = acquire()) {
+            return lease.getClient();
+        }
+    }
+
+    private void runPosted() {
+        final List<Runnable> posted = new ArrayList<>(mPosted);
+        mPosted.clear();
+        for (Runnable runnable : posted) {
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ProviderLatencyTrackerTest {
+
+    private static final String KEY = "com.example.documents";
+
+    private ProviderLatencyTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mTracker = new ProviderLatencyTracker();
+    }
+
+    @Test
+    public void testGetPercentile_TooFewSamples() {
+        for (int i = 1; i < ProviderLatencyTracker.MIN_SAMPLES; i++) {
+            mTracker.record(KEY, 10);
+        }
+
+        assertEquals(-1, mTracker.getPercentile(KEY, 90));
+        assertEquals(-1, mTracker.getPercentile("other", 90));
+    }
+
+    @Test
+    public void testGetPercentile() {
+        for (int i = 0; i < 9; i++) {
+            mTracker.record(KEY, 10);
+        }
+        mTracker.record(KEY, 1000);
+
+        // Rounded up to the upper bounds of the buckets of 10 and 1000 milliseconds.
+        assertEquals(12, mTracker.getPercentile(KEY, 90));
+        assertEquals(1024, mTracker.getPercentile(KEY, 100));
+    }
+
+    @Test
+    public void testRecord_AgesOldSamples() {
+        for (int i = 0; i < 64; i++) {
+            mTracker.record(KEY, 1000);
+        }
+        for (int i = 0; i < 100; i++) {
+            mTracker.record(KEY, 10);
+        }
+
+        assertEquals(12, mTracker.getPercentile(KEY, 50));
+    }
+
+    @Test
+    public void testGetBucket_BoundsContainLatency() {
+        for (long millis = 0; millis < 100_000; millis += 7) {
+            final int bucket = ProviderLatencyTracker.getBucket(millis);
+            assertTrue(ProviderLatencyTracker.getLowerBound(bucket) <= millis);
+            if (millis < 60_000) {
+                assertTrue(millis < ProviderLatencyTracker.getLowerBound(bucket + 1));
+            }
+        }
+    }
+}
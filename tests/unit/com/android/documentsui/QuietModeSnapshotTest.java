@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Intent;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.testing.TestEnv;
+import com.android.documentsui.testing.TestProvidersAccess;
+import com.android.documentsui.testing.UserManagers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class QuietModeSnapshotTest {
+
+    private static final UserId OTHER_USER = TestProvidersAccess.OtherUser.USER_ID;
+
+    private TestActivity mActivity;
+    private QuietModeSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        mActivity = TestActivity.create(TestEnv.create());
+        mActivity.userManager = UserManagers.create();
+        mSnapshot = new QuietModeSnapshot(mActivity);
+    }
+
+    @Test
+    public void testIsQuietModeEnabled_QueriesOnce() {
+        when(mActivity.userManager.isQuietModeEnabled(any())).thenReturn(true);
+
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isTrue();
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isTrue();
+        verify(mActivity.userManager, times(1)).isQuietModeEnabled(any());
+    }
+
+    @Test
+    public void testOnProfileBroadcast_Unavailable() {
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isFalse();
+
+        mSnapshot.onProfileBroadcast(createIntent(Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE));
+
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isTrue();
+        verify(mActivity.userManager, times(1)).isQuietModeEnabled(any());
+    }
+
+    @Test
+    public void testOnProfileBroadcast_Unlocked() {
+        when(mActivity.userManager.isQuietModeEnabled(any())).thenReturn(true);
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isTrue();
+
+        mSnapshot.onProfileBroadcast(createIntent(Intent.ACTION_MANAGED_PROFILE_UNLOCKED));
+
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isFalse();
+    }
+
+    @Test
+    public void testOnProfileBroadcast_Removed() {
+        assertThat(mSnapshot.isQuietModeEnabled(OTHER_USER)).isFalse();
+
+        mSnapshot.onProfileBroadcast(createIntent(Intent.ACTION_MANAGED_PROFILE_REMOVED));
+        mSnapshot.isQuietModeEnabled(OTHER_USER);
+
+        verify(mActivity.userManager, times(2)).isQuietModeEnabled(any());
+    }
+
+    @Test
+    public void testClear() {
+        mSnapshot.isQuietModeEnabled(OTHER_USER);
+
+        mSnapshot.clear();
+        mSnapshot.isQuietModeEnabled(OTHER_USER);
+
+        verify(mActivity.userManager, times(2)).isQuietModeEnabled(any());
+    }
+
+    private static Intent createIntent(String action) {
+        return new Intent(action).putExtra(Intent.EXTRA_USER, OTHER_USER.getUserHandle());
+    }
+}
@@ -25,7 +25,10 @@ import static junit.framework.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
+import android.content.ContentResolver;
 import android.database.Cursor;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 
 import androidx.test.filters.MediumTest;
@@ -35,6 +38,7 @@ import com.android.documentsui.base.State;
 import com.android.documentsui.base.UserId;
 import com.android.documentsui.testing.ActivityManagers;
 import com.android.documentsui.testing.TestCursor;
+import com.android.documentsui.testing.TestDocumentsProvider;
 import com.android.documentsui.testing.TestEnv;
 import com.android.documentsui.testing.TestFileTypeLookup;
 import com.android.documentsui.testing.TestImmediateExecutor;
@@ -149,6 +153,56 @@ public class RecentsLoaderTests {
         assertEquals(2, result.getCursor().getCount());
     }
 
+    @Test
+    public void testQueryArgs_pushedDownToProvider() {
+        mEnv.state.acceptMimes = new String[]{"image/*"};
+        final TestDocumentsProvider provider =
+                mEnv.mockProviders.get(TestProvidersAccess.HOME.authority);
+        provider.setNextRecentDocumentsReturns();
+
+        mLoader.loadInBackground();
+
+        final Bundle queryArgs = provider.getLastRecentQueryArgs();
+        assertEquals(RecentsLoader.MAX_DOCS_FROM_ROOT,
+                queryArgs.getInt(ContentResolver.QUERY_ARG_LIMIT));
+        assertTrue(queryArgs.getLong(DocumentsContract.QUERY_ARG_LAST_MODIFIED_AFTER)
+                > System.currentTimeMillis() - RecentsLoader.REJECT_OLDER_THAN - 60_000);
+        assertThat(queryArgs.getStringArray(DocumentsContract.QUERY_ARG_MIME_TYPES))
+                .asList().containsExactly("image/*");
+    }
+
+    @Test
+    public void testQueryArgs_allMimesNotPushedDown() {
+        final TestDocumentsProvider provider =
+                mEnv.mockProviders.get(TestProvidersAccess.HOME.authority);
+        provider.setNextRecentDocumentsReturns();
+
+        mLoader.loadInBackground();
+
+        assertFalse(provider.getLastRecentQueryArgs()
+                .containsKey(DocumentsContract.QUERY_ARG_MIME_TYPES));
+    }
+
+    @Test
+    public void testHonoredArgs_skipsClientSideFilter() {
+        final DocumentInfo doc = mEnv.model.createFile("freddy.jpg");
+        doc.lastModified = 0;
+        final TestDocumentsProvider provider =
+                mEnv.mockProviders.get(TestProvidersAccess.HOME.authority);
+        provider.setNextRecentDocumentsReturns(doc);
+
+        assertEquals(0, mLoader.loadInBackground().getCursor().getCount());
+
+        // The provider claims to have filtered by last modified time, so its result is trusted.
+        provider.setNextRecentDocumentsHonoredArgs(
+                DocumentsContract.QUERY_ARG_LAST_MODIFIED_AFTER);
+        mLoader = new RecentsLoader(mActivity, mEnv.providers, mEnv.state,
+                TestImmediateExecutor.createLookup(), new TestFileTypeLookup(),
+                TestProvidersAccess.USER_ID);
+
+        assertEquals(1, mLoader.loadInBackground().getCursor().getCount());
+    }
+
     @Test
     public void testDocumentsNotMovable() {
         final DocumentInfo doc = mEnv.model.createFile("freddy.jpg",
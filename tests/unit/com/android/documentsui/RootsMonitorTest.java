@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Intent;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.roots.ProvidersAccess;
+import com.android.documentsui.testing.TestProvidersAccess;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RootsMonitorTest {
+
+    @Test
+    public void testMayHaveRemoved_FullUpdate() {
+        final Intent intent = new Intent(ProvidersAccess.BROADCAST_ACTION);
+
+        assertThat(RootsMonitor.mayHaveRemoved(TestProvidersAccess.HOME, intent)).isTrue();
+    }
+
+    @Test
+    public void testMayHaveRemoved_AuthorityChanged() {
+        final Intent intent = createIntent(
+                TestProvidersAccess.DOWNLOADS.authority, TestProvidersAccess.HOME.authority);
+
+        assertThat(RootsMonitor.mayHaveRemoved(TestProvidersAccess.HOME, intent)).isTrue();
+    }
+
+    @Test
+    public void testMayHaveRemoved_OtherAuthorityChanged() {
+        final Intent intent = createIntent(TestProvidersAccess.DOWNLOADS.authority);
+
+        assertThat(RootsMonitor.mayHaveRemoved(TestProvidersAccess.HOME, intent)).isFalse();
+    }
+
+    @Test
+    public void testMayHaveRemoved_NoCurrentRoot() {
+        final Intent intent = createIntent(TestProvidersAccess.DOWNLOADS.authority);
+
+        assertThat(RootsMonitor.mayHaveRemoved(null, intent)).isTrue();
+    }
+
+    private static Intent createIntent(String... authorities) {
+        final ArrayList<String> changedAuthorities = new ArrayList<>(List.of(authorities));
+        return new Intent(ProvidersAccess.BROADCAST_ACTION)
+                .putStringArrayListExtra(ProvidersAccess.EXTRA_AUTHORITIES, changedAuthorities);
+    }
+}
@@ -30,6 +30,8 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.Manifest;
@@ -42,6 +44,7 @@ import android.content.pm.ResolveInfo;
 import android.content.pm.UserProperties;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 
@@ -63,6 +66,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 @SmallTest
 @SdkSuppress(minSdkVersion = 31, codeName = "S")
@@ -92,6 +96,8 @@ public class UserManagerStateTest {
     private static final String WORK = "Work";
     private static final String PRIVATE = "Private";
     private static final String PACKAGE_NAME = "com.android.documentsui";
+    private static final long REFRESH_DELAY_MS =
+            UserManagerState.RuntimeUserManagerState.REFRESH_TIMEOUT_MS / 5;
 
     /**
      * Assume that the current user is SYSTEM_USER. For HSUM targets, the primary user is set as the
@@ -118,6 +124,8 @@ public class UserManagerStateTest {
     private final UserManager mMockUserManager = UserManagers.create();
     private final PackageManager mMockPackageManager = mock(PackageManager.class);
     private final DevicePolicyManager mDevicePolicyManager = mock(DevicePolicyManager.class);
+    // Refreshes queued by the state, which are only run when a test says so.
+    private final List<Runnable> mRefreshes = new ArrayList<>();
     private UserManagerState mUserManagerState;
 
     @Before
@@ -193,6 +201,9 @@ public class UserManagerStateTest {
                 .thenReturn(Context.DEVICE_POLICY_SERVICE);
         when(mMockContext.getSystemService(Context.DEVICE_POLICY_SERVICE))
                 .thenReturn(mDevicePolicyManager);
+        // Refreshes compute the labels and badges along with the user ids.
+        when(mDevicePolicyManager.getResources())
+                .thenReturn(mock(DevicePolicyResourcesManager.class));
         when(mMockContext.getResources())
                 .thenReturn(
                         InstrumentationRegistry.getInstrumentation()
@@ -342,6 +353,110 @@ public class UserManagerStateTest {
                 .isSameInstanceAs(mUserManagerState.getUserIds());
     }
 
+    @Test
+    public void testGetUserIds_notRefreshed_returnsCurrentUserAndRefreshes() {
+        UserId currentUser = UserId.of(mSystemUser);
+        initializeUserManagerState(
+                currentUser, Lists.newArrayList(mSystemUser, mManagedUser), mRefreshes::add);
+
+        assertWithMessage("getUserIds should only return the current user until refreshed")
+                .that(mUserManagerState.getUserIds())
+                .containsExactly(currentUser);
+        assertWithMessage("getUserIdToLabelMap should be empty until refreshed")
+                .that(mUserManagerState.getUserIdToLabelMap())
+                .isEmpty();
+        verify(mMockUserManager, never()).getUserProfiles();
+        assertWithMessage("Only one refresh should be pending")
+                .that(mRefreshes)
+                .hasSize(1);
+
+        runRefreshes();
+
+        assertWithMessage("getUserIds returns unexpected list of user ids")
+                .that(mUserManagerState.getUserIds())
+                .containsExactly(currentUser, UserId.of(mManagedUser));
+    }
+
+    @Test
+    public void testGetUserIds_refreshInProgress_waitsForRefresh() {
+        UserId currentUser = UserId.of(mSystemUser);
+        // Refreshes complete on another thread, after the getter was called.
+        initializeUserManagerState(
+                currentUser,
+                Lists.newArrayList(mSystemUser, mManagedUser),
+                refresh -> new Thread(() -> {
+                    SystemClock.sleep(REFRESH_DELAY_MS);
+                    refresh.run();
+                }).start());
+
+        assertWithMessage("getUserIds should return the user ids of the pending refresh")
+                .that(mUserManagerState.getUserIds())
+                .containsExactly(currentUser, UserId.of(mManagedUser));
+    }
+
+    @Test
+    public void testSetCurrentStateIntent_refreshesCanForwardToProfileIdMap() {
+        UserId currentUser = UserId.of(mSystemUser);
+        when(mMockPackageManager.queryIntentActivitiesAsUser(
+                        any(Intent.class), anyInt(), eq(mSystemUser)))
+                .thenReturn(Lists.newArrayList(mMockInfoManagedUser));
+        initializeUserManagerState(
+                currentUser, Lists.newArrayList(mSystemUser, mManagedUser), mRefreshes::add);
+        mUserManagerState.refreshAsync();
+        runRefreshes();
+
+        mUserManagerState.setCurrentStateIntent(mMockIntent);
+
+        assertWithMessage("Setting the intent should refresh the cross-profile map")
+                .that(mRefreshes)
+                .hasSize(1);
+        runRefreshes();
+        assertWithMessage("getCanForwardToProfileIdMap returns incorrect mappings")
+                .that(mUserManagerState.getCanForwardToProfileIdMap(mMockIntent))
+                .containsEntry(UserId.of(mManagedUser), true);
+    }
+
+    @Test
+    public void testRefreshAsync_updatesUserIds() {
+        UserId currentUser = UserId.of(mSystemUser);
+        initializeUserManagerState(
+                currentUser, Lists.newArrayList(mSystemUser, mManagedUser), mRefreshes::add);
+        mUserManagerState.refreshAsync();
+        runRefreshes();
+        List<UserId> userIdsBeforeRefresh = mUserManagerState.getUserIds();
+
+        when(mMockUserManager.getUserProfiles()).thenReturn(Lists.newArrayList(mSystemUser));
+        mUserManagerState.refreshAsync();
+
+        assertWithMessage("The previous user ids should be returned until refreshed")
+                .that(mUserManagerState.getUserIds())
+                .isSameInstanceAs(userIdsBeforeRefresh);
+        runRefreshes();
+        assertWithMessage("getUserIds returns unexpected list of user ids")
+                .that(mUserManagerState.getUserIds())
+                .containsExactly(currentUser);
+    }
+
+    @Test
+    public void testRefreshAsync_staleRefreshDiscarded() {
+        UserId currentUser = UserId.of(mSystemUser);
+        initializeUserManagerState(
+                currentUser, Lists.newArrayList(mSystemUser, mManagedUser), mRefreshes::add);
+        mUserManagerState.refreshAsync();
+        mUserManagerState.refreshAsync();
+        final Runnable staleRefresh = mRefreshes.remove(0);
+
+        when(mMockUserManager.getUserProfiles()).thenReturn(Lists.newArrayList(mSystemUser));
+        runRefreshes();
+        when(mMockUserManager.getUserProfiles())
+                .thenReturn(Lists.newArrayList(mSystemUser, mManagedUser));
+        staleRefresh.run();
+
+        assertWithMessage("A refresh started before the latest one should be discarded")
+                .that(mUserManagerState.getUserIds())
+                .containsExactly(currentUser);
+    }
+
     @Test
     public void testGetCanForwardToProfileIdMap_systemUserCanForwardToManaged() {
         UserId currentUser = UserId.of(mSystemUser);
@@ -864,12 +979,26 @@ public class UserManagerStateTest {
     }
 
     private void initializeUserManagerState(UserId current, List<UserHandle> usersOnDevice) {
+        // Refreshes run right away, so values are computed on first use.
+        initializeUserManagerState(current, usersOnDevice, Runnable::run);
+    }
+
+    private void initializeUserManagerState(
+            UserId current, List<UserHandle> usersOnDevice, Executor executor) {
         when(mMockUserManager.getUserProfiles()).thenReturn(usersOnDevice);
         TestConfigStore testConfigStore = new TestConfigStore();
         testConfigStore.enablePrivateSpaceInPhotoPicker();
         mUserManagerState =
                 new UserManagerState.RuntimeUserManagerState(
-                        mMockContext, current, true, testConfigStore);
+                        mMockContext, current, true, testConfigStore, executor);
+    }
+
+    private void runRefreshes() {
+        final List<Runnable> refreshes = new ArrayList<>(mRefreshes);
+        mRefreshes.clear();
+        for (Runnable refresh : refreshes) {
+            refresh.run();
+        }
     }
 
     private UserManager getUserManagerForManagedUser() {
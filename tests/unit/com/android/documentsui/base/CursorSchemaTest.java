@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.MatrixCursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CursorSchemaTest {
+
+    @Test
+    public void testAccessors_MatchCursorHelpers() {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_SIZE,
+                Document.COLUMN_LAST_MODIFIED,
+                Document.COLUMN_FLAGS,
+                RootCursorWrapper.COLUMN_AUTHORITY,
+                RootCursorWrapper.COLUMN_USER_ID,
+        });
+        cursor.addRow(new Object[] {"doc", "name.txt", 42L, null, 7, "authority", 10});
+        cursor.addRow(new Object[] {"doc2", "name2.txt", "43", "not a number", null, null, 0});
+        final CursorSchema schema = CursorSchema.of(cursor);
+
+        while (cursor.moveToNext()) {
+            assertThat(schema.getDocumentId(cursor))
+                    .isEqualTo(DocumentInfo.getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+            assertThat(schema.getDisplayName(cursor))
+                    .isEqualTo(DocumentInfo.getCursorString(cursor, Document.COLUMN_DISPLAY_NAME));
+            assertThat(schema.getSize(cursor))
+                    .isEqualTo(DocumentInfo.getCursorLong(cursor, Document.COLUMN_SIZE));
+            assertThat(schema.getLastModified(cursor))
+                    .isEqualTo(DocumentInfo.getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED));
+            assertThat(schema.getFlags(cursor))
+                    .isEqualTo(DocumentInfo.getCursorInt(cursor, Document.COLUMN_FLAGS));
+            assertThat(schema.getAuthority(cursor)).isEqualTo(
+                    DocumentInfo.getCursorString(cursor, RootCursorWrapper.COLUMN_AUTHORITY));
+            assertThat(schema.getUserId(cursor)).isEqualTo(DocumentInfo.getUserId(cursor));
+        }
+    }
+
+    @Test
+    public void testAccessors_MissingColumns() {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {Document.COLUMN_DOCUMENT_ID});
+        cursor.addRow(new Object[] {"doc"});
+        cursor.moveToFirst();
+        final CursorSchema schema = CursorSchema.of(cursor);
+
+        assertThat(schema.getMimeType(cursor)).isNull();
+        assertThat(schema.getSize(cursor)).isEqualTo(-1);
+        assertThat(schema.getIcon(cursor)).isEqualTo(0);
+        assertThat(schema.getUserId(cursor)).isEqualTo(UserId.of(0));
+    }
+
+    @Test
+    public void testOf_ReusesSchemaOfSameCursor() {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {Document.COLUMN_DOCUMENT_ID});
+        final CursorSchema schema = CursorSchema.of(cursor);
+
+        assertThat(CursorSchema.of(schema, cursor)).isSameInstanceAs(schema);
+        assertThat(CursorSchema.of(schema, new MatrixCursor(new String[0])))
+                .isNotSameInstanceAs(schema);
+        assertThat(CursorSchema.of(null, cursor)).isNotNull();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.documentsui.loaders
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.os.CancellationSignal
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import junit.framework.Assert.assertEquals
+import junit.framework.Assert.assertNotSame
+import junit.framework.Assert.assertNull
+import junit.framework.Assert.assertSame
+import junit.framework.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class SearchExecutorTest {
+    // Runnables handed to the executor, run manually by the tests.
+    private val mScheduled = ArrayDeque<Runnable>()
+    private lateinit var mSearchExecutor: SearchExecutor
+
+    private var mQueryCount = 0
+
+    @Before
+    fun setUp() {
+        mSearchExecutor = SearchExecutor({ mScheduled.addLast(it) }, 2)
+    }
+
+    private fun query(signal: CancellationSignal): Cursor {
+        mQueryCount++
+        val cursor = MatrixCursor(arrayOf("name"))
+        cursor.addRow(arrayOf("report.txt"))
+        return cursor
+    }
+
+    @Test
+    fun testCoalescesIdenticalQueries() {
+        val results = mutableListOf<Cursor?>()
+        mSearchExecutor.submit("key", "authority", ::query) { results.add(it) }
+        mSearchExecutor.submit("key", "authority", ::query) { results.add(it) }
+
+        assertEquals(1, mScheduled.size)
+        mScheduled.removeFirst().run()
+
+        assertEquals(1, mQueryCount)
+        assertEquals(2, results.size)
+        assertNotSame(results[0], results[1])
+        assertEquals(1, results[1]!!.count)
+    }
+
+    @Test
+    fun testLimitsQueriesPerAuthority() {
+        mSearchExecutor.submit("a", "authority", ::query) {}
+        mSearchExecutor.submit("b", "authority", ::query) {}
+        mSearchExecutor.submit("c", "authority", ::query) {}
+        mSearchExecutor.submit("d", "other", ::query) {}
+        assertEquals(3, mScheduled.size)
+
+        mScheduled.removeFirst().run()
+        assertEquals(3, mScheduled.size)
+    }
+
+    @Test
+    fun testCancel_WaitingQueryDropped() {
+        mSearchExecutor.submit("a", "authority", ::query) {}
+        mSearchExecutor.submit("b", "authority", ::query) {}
+        var result: Cursor? = MatrixCursor(arrayOf())
+        val token = mSearchExecutor.submit("c", "authority", ::query) { result = it }
+
+        token.cancel()
+        assertNull(result)
+
+        mScheduled.removeFirst().run()
+        mScheduled.removeFirst().run()
+        assertTrue(mScheduled.isEmpty())
+        assertEquals(2, mQueryCount)
+    }
+
+    @Test
+    fun testCancel_KeepsQueryWithOtherSubscribers() {
+        val token = mSearchExecutor.submit("a", "authority", ::query) {}
+        var result: Cursor? = null
+        mSearchExecutor.submit("a", "authority", ::query) { result = it }
+
+        token.cancel()
+        mScheduled.removeFirst().run()
+
+        assertEquals(1, mQueryCount)
+        assertEquals(1, result!!.count)
+    }
+
+    @Test
+    fun testCancel_AllSubscribersSkipsQuery() {
+        val results = mutableListOf<Cursor?>()
+        val first = mSearchExecutor.submit("a", "authority", ::query) { results.add(it) }
+        val second = mSearchExecutor.submit("a", "authority", ::query) { results.add(it) }
+
+        first.cancel()
+        second.cancel()
+        mScheduled.removeFirst().run()
+
+        assertEquals(0, mQueryCount)
+        assertEquals(listOf<Cursor?>(null, null), results)
+    }
+
+    @Test
+    fun testCancel_RunningQuerySignalledAndCursorClosed() {
+        lateinit var token: SearchExecutor.Token
+        var cancelledDuringQuery = false
+        var cursor: Cursor? = null
+        token = mSearchExecutor.submit("a", "authority", { signal ->
+            // Cancelled while the provider is being queried.
+            token.cancel()
+            cancelledDuringQuery = signal.isCanceled
+            cursor = query(signal)
+            cursor
+        }) {}
+
+        mScheduled.removeFirst().run()
+
+        assertTrue(cancelledDuringQuery)
+        assertTrue(cursor!!.isClosed)
+    }
+
+    @Test
+    fun testFirstSubscriberGetsProviderCursor() {
+        var cursor: Cursor? = null
+        var result: Cursor? = null
+        mSearchExecutor.submit("a", "authority", {
+            cursor = query(it)
+            cursor
+        }) { result = it }
+
+        mScheduled.removeFirst().run()
+
+        assertSame(cursor, result)
+    }
+}
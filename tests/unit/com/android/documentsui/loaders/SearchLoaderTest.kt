@@ -21,6 +21,7 @@ import android.platform.test.flag.junit.CheckFlagsRule
 import android.platform.test.flag.junit.DeviceFlagsValueProvider
 import android.provider.DocumentsContract
 import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
 import com.android.documentsui.ContentLock
 import com.android.documentsui.LockingContentObserver
 import com.android.documentsui.base.DocumentInfo
@@ -28,9 +29,11 @@ import com.android.documentsui.flags.Flags.FLAG_USE_SEARCH_V2_READ_ONLY
 import com.android.documentsui.testing.TestFileTypeLookup
 import com.android.documentsui.testing.TestProvidersAccess
 import java.time.Duration
-import java.util.concurrent.ExecutorService
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import junit.framework.Assert.assertEquals
+import junit.framework.Assert.assertTrue
 import org.junit.Assert.assertThrows
 import org.junit.Before
 import org.junit.Ignore
@@ -51,7 +54,8 @@ fun createQueryArgs(vararg mimeTypes: String): Bundle {
 @RunWith(Parameterized::class)
 @SmallTest
 class SearchLoaderTest(private val testParams: LoaderTestParams) : BaseLoaderTest() {
-    lateinit var mExecutor: ExecutorService
+    lateinit var mExecutor: SearchExecutor
+    lateinit var mResultCache: SearchResultCache
     val mContentLock = ContentLock()
     val mContentObserver = LockingContentObserver(mContentLock) {}
 
@@ -76,7 +80,8 @@ class SearchLoaderTest(private val testParams: LoaderTestParams) : BaseLoaderTes
     @Before
     override fun setUp() {
         super.setUp()
-        mExecutor = Executors.newSingleThreadExecutor()
+        mExecutor = SearchExecutor(Executors.newSingleThreadExecutor(), 1)
+        mResultCache = SearchResultCache(1, 0L) { 0L }
     }
 
     @Test
@@ -113,11 +118,48 @@ class SearchLoaderTest(private val testParams: LoaderTestParams) : BaseLoaderTes
                 queryOptions,
                 mEnv.state.sortModel,
                 mExecutor,
+                mResultCache,
+                null,
             )
         val directoryResult = loader.loadInBackground()
         assertEquals(testParams.expectedCount, getFileCount(directoryResult))
     }
 
+    @Test
+    @RequiresFlagsEnabled(FLAG_USE_SEARCH_V2_READ_ONLY)
+    fun testLoadInBackground_MultipleRoots() {
+        val directoryResult = createMultipleRootsLoader().loadInBackground()
+        assertEquals(2 * testParams.expectedCount, getFileCount(directoryResult))
+    }
+
+    @Test
+    @RequiresFlagsEnabled(FLAG_USE_SEARCH_V2_READ_ONLY)
+    fun testStartLoading_MultipleRoots_StreamsResults() {
+        val counts = startAndCollect(createMultipleRootsLoader(), 2) {}
+
+        // The results of the first root to answer, then the complete results.
+        assertEquals(2, counts.size)
+        assertEquals(testParams.expectedCount, counts[0])
+        assertEquals(2 * testParams.expectedCount, counts[1])
+    }
+
+    @Test
+    @RequiresFlagsEnabled(FLAG_USE_SEARCH_V2_READ_ONLY)
+    fun testStartLoading_StoppedAfterPartialResult_LoadsAgain() {
+        val loader = createMultipleRootsLoader()
+        val counts = startAndCollect(loader, 4) { delivery ->
+            if (delivery == 1) {
+                loader.stopLoading()
+                loader.startLoading()
+            }
+        }
+
+        // The partial result is delivered again on start, but the load is run again too.
+        assertEquals(4, counts.size)
+        assertEquals(testParams.expectedCount, counts[1])
+        assertEquals(2 * testParams.expectedCount, counts[3])
+    }
+
     @Test
     @RequiresFlagsEnabled(FLAG_USE_SEARCH_V2_READ_ONLY)
     @Ignore("b/397095797")
@@ -139,6 +181,8 @@ class SearchLoaderTest(private val testParams: LoaderTestParams) : BaseLoaderTes
                 noLastModifiedQueryOptions,
                 mEnv.state.sortModel,
                 mExecutor,
+                mResultCache,
+                null,
             )
         }
 
@@ -154,7 +198,70 @@ class SearchLoaderTest(private val testParams: LoaderTestParams) : BaseLoaderTes
                 noLastModifiedQueryOptions,
                 mEnv.state.sortModel,
                 mExecutor,
+                mResultCache,
+                null,
             )
         }
     }
+
+    private fun createMultipleRootsLoader(): SearchLoader {
+        val docs = createDocuments(TOTAL_FILE_COUNT)
+        val rootIds = listOf(TestProvidersAccess.DOWNLOADS, TestProvidersAccess.HOME)
+        for (root in rootIds) {
+            mEnv.mockProviders[root.authority]!!.setNextChildDocumentsReturns(*docs)
+        }
+        val userIds = listOf(TestProvidersAccess.DOWNLOADS.userId)
+        val queryOptions =
+            QueryOptions(
+                TOTAL_FILE_COUNT + 1,
+                testParams.lastModifiedDelta,
+                null,
+                true,
+                arrayOf("*/*"),
+                testParams.otherArgs,
+            )
+
+        return SearchLoader(
+            mActivity,
+            userIds,
+            TestFileTypeLookup(),
+            mContentObserver,
+            rootIds,
+            testParams.query,
+            queryOptions,
+            mEnv.state.sortModel,
+            mExecutor,
+            mResultCache,
+            null,
+        )
+    }
+
+    /**
+     * Starts the loader on the main thread, and returns the file counts of the first
+     * [deliveries] results it delivers. [onDelivery] is called on the main thread with the
+     * number of results delivered so far.
+     */
+    private fun startAndCollect(
+        loader: SearchLoader,
+        deliveries: Int,
+        onDelivery: (Int) -> Unit,
+    ): List<Int> {
+        val counts = mutableListOf<Int>()
+        val latch = CountDownLatch(deliveries)
+        val instrumentation = InstrumentationRegistry.getInstrumentation()
+        instrumentation.runOnMainSync {
+            loader.registerListener(0) { _, result ->
+                if (counts.size < deliveries) {
+                    counts.add(getFileCount(result))
+                    onDelivery(counts.size)
+                    latch.countDown()
+                }
+            }
+            loader.startLoading()
+        }
+        val delivered = latch.await(5, TimeUnit.SECONDS)
+        instrumentation.runOnMainSync { loader.reset() }
+        assertTrue("Only ${counts.size} results delivered", delivered)
+        return counts
+    }
 }
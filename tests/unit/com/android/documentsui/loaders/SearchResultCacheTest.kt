@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.documentsui.loaders
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.provider.DocumentsContract.Document
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import junit.framework.Assert.assertEquals
+import junit.framework.Assert.assertNull
+import junit.framework.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+private const val TTL_MILLIS = 1000L
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class SearchResultCacheTest {
+    private var mTime = 0L
+    private lateinit var mCache: SearchResultCache
+
+    @Before
+    fun setUp() {
+        mCache = SearchResultCache(2, TTL_MILLIS) { mTime }
+    }
+
+    private fun createRows(vararg names: String): MatrixCursor {
+        val cursor =
+            MatrixCursor(arrayOf(Document.COLUMN_DOCUMENT_ID, Document.COLUMN_DISPLAY_NAME))
+        names.forEachIndexed { i, name -> cursor.addRow(arrayOf(i.toString(), name)) }
+        return cursor
+    }
+
+    private fun getNames(cursor: Cursor): List<String> {
+        val names = mutableListOf<String>()
+        val index = cursor.getColumnIndex(Document.COLUMN_DISPLAY_NAME)
+        while (cursor.moveToNext()) {
+            names.add(cursor.getString(index))
+        }
+        return names
+    }
+
+    @Test
+    fun testGetRefined_FiltersCachedResults() {
+        mCache.put("scope", "rep", createRows("report.pdf", "Repo", "prepare.txt", "reply"))
+
+        val refined = mCache.getRefined("scope", "repo")
+
+        assertEquals(listOf("report.pdf", "Repo"), getNames(refined!!))
+    }
+
+    @Test
+    fun testGetRefined_UsesLongestCachedQuery() {
+        mCache.put("scope", "r", createRows("report.pdf", "reply", "other"))
+        mCache.put("scope", "rep", createRows("report.pdf"))
+
+        assertEquals(listOf("report.pdf"), getNames(mCache.getRefined("scope", "repo")!!))
+    }
+
+    @Test
+    fun testGetRefined_OtherScopeOrQuery() {
+        mCache.put("scope", "rep", createRows("report.pdf"))
+
+        assertNull(mCache.getRefined("other scope", "report"))
+        assertNull(mCache.getRefined("scope", "re"))
+    }
+
+    @Test
+    fun testGetRefined_Expired() {
+        val rows = createRows("report.pdf")
+        mCache.put("scope", "rep", rows)
+
+        mTime += TTL_MILLIS + 1
+
+        assertNull(mCache.getRefined("scope", "report"))
+        assertTrue(rows.isClosed)
+    }
+
+    @Test
+    fun testPut_EvictsLeastRecentlyUsed() {
+        val rows = createRows("report.pdf")
+        mCache.put("scope", "a", rows)
+        mCache.put("scope", "b", createRows("b"))
+        mCache.put("scope", "c", createRows("c"))
+
+        assertTrue(rows.isClosed)
+        assertNull(mCache.getRefined("scope", "a"))
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.queries;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public final class FilenameIndexTest {
+
+    private static final String AUTHORITY = "com.example.documents";
+    private static final String[] COLUMNS = {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            RootCursorWrapper.COLUMN_ROOT_ID,
+    };
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private File mFile;
+    private FilenameIndex mIndex;
+    private RootInfo mRoot;
+    private RootInfo mOtherRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        mThread = new HandlerThread("FilenameIndexTest");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "filename_index_test");
+        mFile.delete();
+        mIndex = new FilenameIndex(mFile, mHandler);
+
+        mRoot = createRoot("root");
+        mOtherRoot = createRoot("other");
+    }
+
+    @After
+    public void tearDown() {
+        mThread.quitSafely();
+        mFile.delete();
+    }
+
+    @Test
+    public void testSearch_ByName() throws Exception {
+        update(mRoot, "dir", "report.pdf", "Report 2024.txt", "photo.jpg");
+
+        assertThat(search("report", null, mRoot)).containsExactly("report.pdf", "Report 2024.txt");
+        assertThat(search("zzz", null, mRoot)).isEmpty();
+    }
+
+    @Test
+    public void testSearch_ByMimeType() throws Exception {
+        update(mRoot, "dir", "report.pdf", "photo.jpg");
+
+        assertThat(search(null, new String[] {"image/*"}, mRoot)).containsExactly("photo.jpg");
+    }
+
+    @Test
+    public void testSearch_OnlySearchedRoots() throws Exception {
+        update(mRoot, "dir", "report.pdf");
+        update(mOtherRoot, "dir", "report.txt");
+
+        assertThat(search("report", null, mOtherRoot)).containsExactly("report.txt");
+    }
+
+    @Test
+    public void testUpdateDirectory_ReplacesChildren() throws Exception {
+        update(mRoot, "dir", "report.pdf", "photo.jpg");
+        update(mRoot, "dir", "photo.jpg");
+
+        assertThat(search("report", null, mRoot)).isEmpty();
+        assertThat(mIndex.getDocumentCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSave_RestoredOnLoad() throws Exception {
+        update(mRoot, "dir", "report.pdf", "photo.jpg");
+        mHandler.post(mIndex::save);
+        flush();
+
+        final FilenameIndex restored = new FilenameIndex(mFile, mHandler);
+        flush();
+
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        assertThat(restored.search("report", null, Collections.singleton(mRoot), cursor))
+                .isEqualTo(1);
+        assertThat(restored.getDocumentCount()).isEqualTo(2);
+    }
+
+    private RootInfo createRoot(String rootId) {
+        final RootInfo root = new RootInfo();
+        root.userId = UserId.DEFAULT_USER;
+        root.authority = AUTHORITY;
+        root.rootId = rootId;
+        return root;
+    }
+
+    private void update(RootInfo root, String documentId, String... names) throws Exception {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_MIME_TYPE,
+                Document.COLUMN_LAST_MODIFIED,
+                Document.COLUMN_SIZE,
+                Document.COLUMN_FLAGS,
+        });
+        for (String name : names) {
+            final String mimeType = name.endsWith(".jpg") ? "image/jpeg"
+                    : name.endsWith(".pdf") ? "application/pdf" : "text/plain";
+            cursor.addRow(new Object[] {documentId + "/" + name, name, mimeType, 0L, 0L, 0});
+        }
+        mIndex.updateDirectory(root.userId, root.authority, root.rootId, documentId, cursor);
+        flush();
+    }
+
+    private List<String> search(String query, String[] mimeTypes, RootInfo root) {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        mIndex.search(query, mimeTypes, Collections.singleton(root), cursor);
+
+        final List<String> names = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            assertThat(cursor.getString(3)).isEqualTo(root.rootId);
+            names.add(cursor.getString(1));
+        }
+        return names;
+    }
+
+    // Waits for the work posted to the index thread so far.
+    private void flush() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(latch::countDown);
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
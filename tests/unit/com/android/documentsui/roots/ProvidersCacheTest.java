@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.MediumTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.ProvidersCache.Snapshot;
+import com.android.documentsui.roots.ProvidersCache.UserAuthority;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public final class ProvidersCacheTest {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final UserId USER_ID = UserId.DEFAULT_USER;
+    private static final String AUTHORITY_NAME = "com.example.documents";
+    private static final String OTHER_AUTHORITY_NAME = "com.example.other";
+    private static final UserAuthority AUTHORITY = new UserAuthority(USER_ID, AUTHORITY_NAME);
+    private static final UserAuthority OTHER_AUTHORITY =
+            new UserAuthority(USER_ID, OTHER_AUTHORITY_NAME);
+
+    // The packages of each incremental update, which waits for the latch, if any.
+    private final BlockingQueue<Multimap<UserId, String>> mUpdates = new LinkedBlockingQueue<>();
+    private volatile CountDownLatch mUpdateLatch;
+
+    private ProvidersCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new ProvidersCache(InstrumentationRegistry.getTargetContext()) {
+            @Override
+            void updatePackages(Multimap<UserId, String> packages) {
+                mUpdates.add(HashMultimap.create(packages));
+                final CountDownLatch latch = mUpdateLatch;
+                if (latch != null) {
+                    try {
+                        latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+        mCache.setFirstLoadDoneForTest();
+    }
+
+    @After
+    public void tearDown() {
+        if (mUpdateLatch != null) {
+            mUpdateLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testUpdatePackageAsync_CoalescesBurst() throws Exception {
+        mCache.updatePackageAsync(USER_ID, "com.example");
+        mCache.updatePackageAsync(USER_ID, "com.example.other");
+        mCache.updatePackageAsync(USER_ID, "com.example");
+
+        assertThat(nextUpdate().get(USER_ID))
+                .containsExactly("com.example", "com.example.other");
+        assertThat(mUpdates.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testUpdatePackageAsync_CoalescesWhileUpdating() throws Exception {
+        mUpdateLatch = new CountDownLatch(1);
+        mCache.updatePackageAsync(USER_ID, "com.example");
+        assertThat(nextUpdate().get(USER_ID)).containsExactly("com.example");
+
+        mCache.updatePackageAsync(USER_ID, "com.example.other");
+        mCache.updatePackageAsync(USER_ID, "com.example.third");
+        mUpdateLatch.countDown();
+
+        assertThat(nextUpdate().get(USER_ID))
+                .containsExactly("com.example.other", "com.example.third");
+        assertThat(mUpdates.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testSnapshot_WithChanges_KeepsOtherAuthorities() {
+        final Snapshot previous = createSnapshot();
+        final RootInfo reloaded = createRoot(AUTHORITY_NAME, "root", "Reloaded");
+
+        final Snapshot snapshot = previous.withChanges(
+                Map.of(AUTHORITY, List.of(reloaded)), Collections.emptySet(),
+                Collections.emptySet(), Map.of(AUTHORITY, "com.example"));
+
+        assertThat(snapshot.roots.get(AUTHORITY)).containsExactly(reloaded);
+        assertThat(snapshot.roots.get(OTHER_AUTHORITY))
+                .isEqualTo(previous.roots.get(OTHER_AUTHORITY));
+        assertThat(snapshot.getChangedAuthorities(previous)).containsExactly(AUTHORITY);
+    }
+
+    @Test
+    public void testSnapshot_WithChanges_RemovesAuthority() {
+        final Snapshot previous = createSnapshot();
+
+        final Snapshot snapshot = previous.withChanges(Collections.emptyMap(),
+                Collections.emptySet(), Set.of(OTHER_AUTHORITY), Collections.emptyMap());
+
+        assertThat(snapshot.roots.containsKey(OTHER_AUTHORITY)).isFalse();
+        assertThat(snapshot.packageNames).doesNotContainKey(OTHER_AUTHORITY);
+        assertThat(snapshot.getChangedAuthorities(previous)).containsExactly(OTHER_AUTHORITY);
+    }
+
+    @Test
+    public void testSnapshot_WithChanges_StopsAuthority() {
+        final Snapshot previous = createSnapshot();
+
+        final Snapshot snapshot = previous.withChanges(Collections.emptyMap(),
+                Set.of(AUTHORITY), Collections.emptySet(), Collections.emptyMap());
+
+        assertThat(snapshot.roots.containsKey(AUTHORITY)).isFalse();
+        assertThat(snapshot.stoppedAuthorities).containsExactly(AUTHORITY);
+        assertThat(snapshot.packageNames).containsKey(AUTHORITY);
+        assertThat(snapshot.getChangedAuthorities(previous)).containsExactly(AUTHORITY);
+    }
+
+    @Test
+    public void testSnapshot_WithRoots_SameContent_NotChanged() {
+        final Snapshot previous = createSnapshot();
+
+        final Snapshot snapshot = previous.withRoots(
+                AUTHORITY, List.of(createRoot(AUTHORITY_NAME, "root", "Title")));
+
+        assertThat(snapshot.getChangedAuthorities(previous)).isEmpty();
+    }
+
+    private Multimap<UserId, String> nextUpdate() throws InterruptedException {
+        final Multimap<UserId, String> packages = mUpdates.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertThat(packages).isNotNull();
+        return packages;
+    }
+
+    private static Snapshot createSnapshot() {
+        final Collection<RootInfo> roots = List.of(createRoot(AUTHORITY_NAME, "root", "Title"));
+        final Collection<RootInfo> otherRoots = List.of(
+                createRoot(OTHER_AUTHORITY_NAME, "first", "First"),
+                createRoot(OTHER_AUTHORITY_NAME, "second", "Second"));
+        return new Snapshot(
+                ImmutableListMultimap.<UserAuthority, RootInfo>builder()
+                        .putAll(AUTHORITY, roots)
+                        .putAll(OTHER_AUTHORITY, otherRoots)
+                        .build(),
+                ImmutableSet.of(),
+                ImmutableMap.of(AUTHORITY, "com.example", OTHER_AUTHORITY, "com.example.other"));
+    }
+
+    private static RootInfo createRoot(String authority, String rootId, String title) {
+        final RootInfo root = new RootInfo();
+        root.userId = USER_ID;
+        root.authority = authority;
+        root.rootId = rootId;
+        root.title = title;
+        return root;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public final class RootsSnapshotStoreTest {
+
+    private static final String AUTHORITY = "com.example.documents";
+    private static final String PACKAGE = "com.example";
+    private static final String LOCALE = "en-US";
+
+    private File mFile;
+    private RootsSnapshotStore mStore;
+
+    @Before
+    public void setUp() {
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "roots_snapshot_test");
+        mFile.delete();
+        mStore = new RootsSnapshotStore(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void testLoad_NothingStored() {
+        assertThat(mStore.load(LOCALE)).isEmpty();
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        final RootInfo root = createRoot("root", "Title");
+        mStore.save(LOCALE, Arrays.asList(
+                new RootsSnapshotStore.AuthorityRoots(UserId.DEFAULT_USER, AUTHORITY, PACKAGE,
+                        "Example", 3, 42, false, Arrays.asList(root)),
+                new RootsSnapshotStore.AuthorityRoots(UserId.DEFAULT_USER, "stopped", PACKAGE,
+                        null, 3, 42, true, Collections.emptyList())));
+
+        final List<RootsSnapshotStore.AuthorityRoots> entries =
+                new RootsSnapshotStore(mFile).load(LOCALE);
+
+        assertThat(entries).hasSize(2);
+        final RootsSnapshotStore.AuthorityRoots entry = entries.get(0);
+        assertThat(entry.userId).isEqualTo(UserId.DEFAULT_USER);
+        assertThat(entry.authority).isEqualTo(AUTHORITY);
+        assertThat(entry.packageName).isEqualTo(PACKAGE);
+        assertThat(entry.applicationName).isEqualTo("Example");
+        assertThat(entry.versionCode).isEqualTo(3);
+        assertThat(entry.lastUpdateTime).isEqualTo(42);
+        assertThat(entry.stopped).isFalse();
+        assertThat(entry.roots).containsExactly(root);
+        assertThat(entry.roots.get(0).title).isEqualTo("Title");
+        assertThat(entries.get(1).applicationName).isNull();
+        assertThat(entries.get(1).stopped).isTrue();
+        assertThat(entries.get(1).roots).isEmpty();
+    }
+
+    @Test
+    public void testLoad_OtherLocale() {
+        mStore.save(LOCALE, Arrays.asList(
+                new RootsSnapshotStore.AuthorityRoots(UserId.DEFAULT_USER, AUTHORITY, PACKAGE,
+                        "Example", 3, 42, false, Arrays.asList(createRoot("root", "Title")))));
+
+        assertThat(mStore.load("fr-FR")).isEmpty();
+    }
+
+    @Test
+    public void testLoad_Corrupted() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(new byte[] {0, 0, 0, 1, 0});
+        }
+
+        assertThat(mStore.load(LOCALE)).isEmpty();
+        assertThat(mFile.exists()).isFalse();
+    }
+
+    private static RootInfo createRoot(String rootId, String title) {
+        final RootInfo root = new RootInfo();
+        root.userId = UserId.DEFAULT_USER;
+        root.authority = AUTHORITY;
+        root.rootId = rootId;
+        root.title = title;
+        return root;
+    }
+}
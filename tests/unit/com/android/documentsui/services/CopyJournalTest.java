@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.FileOperationService.OPERATION_COPY;
+import static com.android.documentsui.services.FileOperationService.OPERATION_MOVE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.testing.TestProvidersAccess;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CopyJournalTest {
+    private static final String AUTHORITY = "com.test.authority";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mFile;
+    private CopyJournal.Header mHeader;
+    private DocumentInfo mSrc;
+    private Uri mDst;
+    private CopyJournal mJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(folder.getRoot(), "journals/job");
+        mSrc = createDoc("src", 100, 1000);
+        mDst = DocumentsContract.buildDocumentUri(AUTHORITY, "dst");
+        mHeader = createHeader(OPERATION_COPY);
+        mJournal = CopyJournal.open(mFile, mHeader);
+    }
+
+    @After
+    public void tearDown() {
+        mJournal.close();
+    }
+
+    @Test
+    public void testOpen_Empty() {
+        assertNull(mJournal.getCreated(mSrc.derivedUri));
+        assertFalse(mJournal.isCompleted(mSrc));
+        assertEquals(0, mJournal.getResumeOffset(mSrc));
+    }
+
+    @Test
+    public void testOpen_InUse() {
+        try {
+            CopyJournal.open(mFile, mHeader);
+            fail("Journal should be locked.");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testReopen_RestoresState() throws IOException {
+        DocumentInfo other = createDoc("other", 10, 1000);
+        mJournal.recordCreated(mSrc.derivedUri, mDst);
+        mJournal.recordOffset(mSrc, 64);
+        mJournal.recordCompleted(other);
+
+        reopen(mHeader);
+
+        assertEquals(mDst, mJournal.getCreated(mSrc.derivedUri));
+        assertEquals(64, mJournal.getResumeOffset(mSrc));
+        assertFalse(mJournal.isCompleted(mSrc));
+        assertTrue(mJournal.isCompleted(other));
+        assertTrue(mJournal.isCompleted(other.derivedUri));
+    }
+
+    @Test
+    public void testReopen_ModifiedSource() throws IOException {
+        mJournal.recordOffset(mSrc, 64);
+        mJournal.recordCompleted(mSrc);
+
+        reopen(mHeader);
+
+        DocumentInfo modified = createDoc("src", 100, 2000);
+        assertFalse(mJournal.isCompleted(modified));
+        assertEquals(0, mJournal.getResumeOffset(modified));
+    }
+
+    @Test
+    public void testReopen_OtherOperation() throws IOException {
+        mJournal.recordCompleted(mSrc);
+
+        reopen(createHeader(OPERATION_MOVE));
+
+        assertFalse(mJournal.isCompleted(mSrc));
+    }
+
+    @Test
+    public void testReopen_TornRecord() throws IOException {
+        mJournal.recordCompleted(mSrc);
+        mJournal.recordOffset(createDoc("other", 100, 1000), 64);
+        mJournal.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        mJournal = CopyJournal.open(mFile, mHeader);
+
+        assertTrue(mJournal.isCompleted(mSrc));
+        assertEquals(0, mJournal.getResumeOffset(createDoc("other", 100, 1000)));
+
+        mJournal.recordCreated(mSrc.derivedUri, mDst);
+        reopen(mHeader);
+
+        assertEquals(mDst, mJournal.getCreated(mSrc.derivedUri));
+    }
+
+    @Test
+    public void testFindInterrupted_Running() {
+        assertTrue(CopyJournal.findInterrupted(mFile.getParentFile()).isEmpty());
+    }
+
+    @Test
+    public void testFindInterrupted_OnlyUntilOffered() {
+        mJournal.close();
+        assertEquals(mHeader, CopyJournal.findInterrupted(mFile.getParentFile()).get("job"));
+
+        CopyJournal.markOffered(mFile);
+
+        assertTrue(CopyJournal.findInterrupted(mFile.getParentFile()).isEmpty());
+    }
+
+    @Test
+    public void testFindInterrupted_OfferedAgainAfterRunning() throws IOException {
+        mJournal.recordCompleted(mSrc);
+        mJournal.close();
+        CopyJournal.markOffered(mFile);
+
+        mJournal = CopyJournal.open(mFile, mHeader);
+        assertTrue(mJournal.isCompleted(mSrc));
+        mJournal.close();
+
+        assertEquals(mHeader, CopyJournal.findInterrupted(mFile.getParentFile()).get("job"));
+    }
+
+    @Test
+    public void testDelete() {
+        mJournal.delete();
+
+        assertFalse(mFile.exists());
+    }
+
+    private void reopen(CopyJournal.Header header) throws IOException {
+        mJournal.close();
+        mJournal = CopyJournal.open(mFile, header);
+    }
+
+    private static CopyJournal.Header createHeader(int opType) {
+        DocumentInfo dest = createDoc("dest", 0, 0);
+        return new CopyJournal.Header(opType, new DocumentStack(TestProvidersAccess.HOME, dest),
+                null, Arrays.asList(createDoc("src", 100, 1000).derivedUri));
+    }
+
+    private static DocumentInfo createDoc(String documentId, long size, long lastModified) {
+        DocumentInfo doc = new DocumentInfo();
+        doc.authority = AUTHORITY;
+        doc.documentId = documentId;
+        doc.derivedUri = DocumentsContract.buildDocumentUri(AUTHORITY, documentId);
+        doc.size = size;
+        doc.lastModified = lastModified;
+        return doc;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.ProgressSampler.HEARTBEAT_MILLIS;
+import static com.android.documentsui.services.ProgressSampler.MIN_INTERVAL_MILLIS;
+import static com.android.documentsui.services.ProgressSampler.POLL_INTERVAL_MILLIS;
+import static com.android.documentsui.services.ProgressSampler.SCREEN_OFF_INTERVAL_MILLIS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ProgressSamplerTest {
+
+    private long mTime;
+    private boolean mScreenOn;
+    private ProgressSampler mSampler;
+
+    @Before
+    public void setUp() {
+        mTime = 1000;
+        mScreenOn = true;
+        mSampler = new ProgressSampler(() -> mTime, () -> mScreenOn);
+    }
+
+    @Test
+    public void testPublishesFirstValue() {
+        assertTrue(mSampler.shouldPublish(0));
+    }
+
+    @Test
+    public void testThrottlesWithinInterval() {
+        assertTrue(mSampler.shouldPublish(1));
+
+        mTime += MIN_INTERVAL_MILLIS - 1;
+        assertFalse(mSampler.shouldPublish(2));
+
+        mTime += 1;
+        assertTrue(mSampler.shouldPublish(3));
+    }
+
+    @Test
+    public void testSkipsUnchangedValueUntilHeartbeat() {
+        assertTrue(mSampler.shouldPublish(1));
+
+        mTime += MIN_INTERVAL_MILLIS;
+        assertFalse(mSampler.shouldPublish(1));
+
+        mTime += HEARTBEAT_MILLIS;
+        assertTrue(mSampler.shouldPublish(1));
+    }
+
+    @Test
+    public void testScreenOff_StretchesInterval() {
+        mScreenOn = false;
+        assertTrue(mSampler.shouldPublish(1));
+
+        mTime += HEARTBEAT_MILLIS;
+        assertFalse(mSampler.shouldPublish(2));
+
+        mTime += SCREEN_OFF_INTERVAL_MILLIS;
+        assertTrue(mSampler.shouldPublish(2));
+    }
+
+    @Test
+    public void testAlwaysPublishesMaxValueOnce() {
+        assertTrue(mSampler.shouldPublish(99, 100));
+
+        mTime += 1;
+        assertTrue(mSampler.shouldPublish(100, 100));
+
+        mTime += 1;
+        assertFalse(mSampler.shouldPublish(100, 100));
+    }
+
+    @Test
+    public void testPollInterval() {
+        assertEquals(POLL_INTERVAL_MILLIS, mSampler.getPollIntervalMillis());
+
+        mScreenOn = false;
+        assertEquals(SCREEN_OFF_INTERVAL_MILLIS, mSampler.getPollIntervalMillis());
+    }
+}
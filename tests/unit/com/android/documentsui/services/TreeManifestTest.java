@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class TreeManifestTest {
+    private static final String AUTHORITY = "com.test.authority";
+    private static final Uri DIR_1 = DocumentsContract.buildDocumentUri(AUTHORITY, "dir1");
+    private static final Uri DIR_2 = DocumentsContract.buildDocumentUri(AUTHORITY, "dir2");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mSpillFile;
+    private TreeManifest mManifest;
+
+    @Before
+    public void setUp() {
+        mSpillFile = new File(folder.getRoot(), "manifest");
+        mManifest = new TreeManifest(mSpillFile, 3);
+    }
+
+    @After
+    public void tearDown() {
+        mManifest.close();
+    }
+
+    @Test
+    public void testPutChildren_ReturnsEntries() {
+        List<TreeManifest.Entry> children = mManifest.putChildren(DIR_1, createListing(2));
+
+        assertEquals(2, children.size());
+        assertEquals("doc0", children.get(0).documentId);
+        assertTrue(children.get(1).isDirectory());
+    }
+
+    @Test
+    public void testGetChildren_InMemory() {
+        mManifest.putChildren(DIR_1, createListing(2));
+
+        assertFalse(mManifest.isSpilled(DIR_1));
+        assertListing(mManifest.getChildren(DIR_1), 2);
+    }
+
+    @Test
+    public void testGetChildren_Spilled() {
+        mManifest.putChildren(DIR_1, createListing(2));
+        mManifest.putChildren(DIR_2, createListing(4));
+
+        assertTrue(mManifest.isSpilled(DIR_2));
+        assertTrue(mSpillFile.exists());
+        assertListing(mManifest.getChildren(DIR_1), 2);
+        assertListing(mManifest.getChildren(DIR_2), 4);
+    }
+
+    @Test
+    public void testGetChildren_SpilledNullDocumentId() {
+        MatrixCursor listing = new MatrixCursor(TreeManifest.COLUMNS);
+        listing.newRow().add(Document.COLUMN_DISPLAY_NAME, "name");
+        mManifest.putChildren(DIR_1, createListing(3));
+        mManifest.putChildren(DIR_2, listing);
+
+        assertTrue(mManifest.isSpilled(DIR_2));
+        Cursor cursor = mManifest.getChildren(DIR_2);
+        assertTrue(cursor.moveToFirst());
+        assertNull(cursor.getString(cursor.getColumnIndex(Document.COLUMN_DOCUMENT_ID)));
+        cursor.close();
+    }
+
+    @Test
+    public void testGetChildren_Unknown() {
+        assertNull(mManifest.getChildren(DIR_1));
+    }
+
+    @Test
+    public void testTreeSize() {
+        assertEquals(-1, mManifest.getTreeSize(DIR_1));
+
+        mManifest.putTreeSize(DIR_1, 42);
+
+        assertEquals(42, mManifest.getTreeSize(DIR_1));
+    }
+
+    @Test
+    public void testClose_DeletesSpillFile() {
+        mManifest.putChildren(DIR_1, createListing(5));
+        assertTrue(mSpillFile.exists());
+
+        mManifest.close();
+
+        assertFalse(mSpillFile.exists());
+        assertNull(mManifest.getChildren(DIR_1));
+    }
+
+    private static Cursor createListing(int count) {
+        MatrixCursor cursor = new MatrixCursor(TreeManifest.COLUMNS);
+        for (int i = 0; i < count; i++) {
+            cursor.newRow()
+                    .add(Document.COLUMN_DISPLAY_NAME, "name" + i)
+                    .add(Document.COLUMN_DOCUMENT_ID, "doc" + i)
+                    .add(Document.COLUMN_MIME_TYPE,
+                            i % 2 == 0 ? "text/plain" : Document.MIME_TYPE_DIR)
+                    .add(Document.COLUMN_SIZE, i * 10L)
+                    .add(Document.COLUMN_FLAGS, Document.FLAG_SUPPORTS_COPY)
+                    .add(Document.COLUMN_LAST_MODIFIED, 1000L + i);
+        }
+        return cursor;
+    }
+
+    private static void assertListing(Cursor cursor, int count) {
+        assertEquals(count, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            DocumentInfo doc = DocumentInfo.fromCursor(cursor, null, AUTHORITY);
+            assertEquals("doc" + i, doc.documentId);
+            assertEquals("name" + i, doc.displayName);
+            assertEquals(i * 10L, doc.size);
+            assertEquals(Document.FLAG_SUPPORTS_COPY, doc.flags);
+            assertEquals(1000L + i, doc.lastModified);
+        }
+        cursor.close();
+    }
+}
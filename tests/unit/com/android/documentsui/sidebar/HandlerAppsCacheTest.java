@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2025 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sidebar;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ChangedPackages;
+import android.content.pm.ResolveInfo;
+import android.provider.MediaStore;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.TestActivity;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.testing.TestEnv;
+import com.android.documentsui.testing.TestPackageManager;
+import com.android.documentsui.testing.TestProvidersAccess;
+import com.android.documentsui.testing.TestResolveInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class HandlerAppsCacheTest {
+
+    private static final UserId USER_ID = TestProvidersAccess.USER_ID;
+    private static final UserId OTHER_USER_ID = TestProvidersAccess.OtherUser.USER_ID;
+    private static final Intent INTENT = new Intent(Intent.ACTION_GET_CONTENT).setType("*/*");
+
+    private TestActivity mActivity;
+    private TestPackageManager mPackageManager;
+    private TestPackageManager mOtherPackageManager;
+    private HandlerAppsCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mActivity = TestActivity.create(TestEnv.create());
+        mPackageManager = createPackageManager();
+        mActivity.packageMgr = mPackageManager;
+
+        mOtherPackageManager = createPackageManager();
+        final Context otherContext = mock(Context.class);
+        when(otherContext.getPackageManager()).thenReturn(mOtherPackageManager);
+        doReturn(otherContext).when(mActivity).createPackageContextAsUser(
+                anyString(), anyInt(), eq(OTHER_USER_ID.getUserHandle()));
+
+        mCache = new HandlerAppsCache();
+    }
+
+    @Test
+    public void testGetHandlerApps_ExcludesNonExportedAndOwnApps() {
+        final ResolveInfo nonExported = createResolveInfo("com.example.hidden", "Hidden");
+        nonExported.activityInfo.exported = false;
+        mPackageManager.queryIntentProvidersResults = List.of(
+                createResolveInfo("com.example.app", "App"), nonExported,
+                createResolveInfo(mActivity.getPackageName(), "Files"));
+
+        assertThat(getLabels(USER_ID)).containsExactly("App");
+    }
+
+    @Test
+    public void testGetHandlerApps_Cached() {
+        setApps(mPackageManager, "App");
+        assertThat(getLabels(USER_ID)).containsExactly("App");
+
+        setApps(mPackageManager, "Other app");
+
+        assertThat(getLabels(USER_ID)).containsExactly("App");
+    }
+
+    @Test
+    public void testInvalidate() {
+        setApps(mPackageManager, "App");
+        getLabels(USER_ID);
+
+        setApps(mPackageManager, "Other app");
+        mCache.invalidate();
+
+        assertThat(getLabels(USER_ID)).containsExactly("Other app");
+    }
+
+    @Test
+    public void testWarmUp_QueriesEachUser() {
+        setApps(mPackageManager, "App");
+        setApps(mOtherPackageManager, "Work app");
+
+        mCache.warmUp(mActivity, List.of(USER_ID, OTHER_USER_ID), INTENT);
+        setApps(mPackageManager, "Other app");
+        setApps(mOtherPackageManager, "Other work app");
+
+        assertThat(getLabels(USER_ID)).containsExactly("App");
+        assertThat(getLabels(OTHER_USER_ID)).containsExactly("Work app");
+    }
+
+    @Test
+    public void testWarmUp_NoPackageChanges_KeepsApps() {
+        setApps(mOtherPackageManager, "Work app");
+        mCache.warmUp(mActivity, List.of(OTHER_USER_ID), INTENT);
+
+        setApps(mOtherPackageManager, "Other work app");
+        mCache.warmUp(mActivity, List.of(OTHER_USER_ID), INTENT);
+
+        assertThat(getLabels(OTHER_USER_ID)).containsExactly("Work app");
+    }
+
+    @Test
+    public void testWarmUp_PackagesChanged_DropsAppsOfUser() {
+        setApps(mPackageManager, "App");
+        setApps(mOtherPackageManager, "Work app");
+        mCache.warmUp(mActivity, List.of(USER_ID, OTHER_USER_ID), INTENT);
+
+        setApps(mPackageManager, "Other app");
+        setApps(mOtherPackageManager, "Other work app");
+        setChangedPackages(mOtherPackageManager, 0, 1);
+        mCache.warmUp(mActivity, List.of(OTHER_USER_ID), INTENT);
+
+        assertThat(getLabels(USER_ID)).containsExactly("App");
+        assertThat(getLabels(OTHER_USER_ID)).containsExactly("Other work app");
+    }
+
+    @Test
+    public void testWarmUp_PackagesChanged_ChecksSinceLastChanges() {
+        setApps(mOtherPackageManager, "Work app");
+        setChangedPackages(mOtherPackageManager, 0, 1);
+        mCache.warmUp(mActivity, List.of(OTHER_USER_ID), INTENT);
+        assertThat(getLabels(OTHER_USER_ID)).containsExactly("Work app");
+
+        // The changes already seen are not reported again.
+        setApps(mOtherPackageManager, "Other work app");
+        mCache.warmUp(mActivity, List.of(OTHER_USER_ID), INTENT);
+        assertThat(getLabels(OTHER_USER_ID)).containsExactly("Work app");
+
+        setChangedPackages(mOtherPackageManager, 1, 2);
+        mCache.warmUp(mActivity, List.of(OTHER_USER_ID), INTENT);
+        assertThat(getLabels(OTHER_USER_ID)).containsExactly("Other work app");
+    }
+
+    private List<String> getLabels(UserId userId) {
+        final List<String> labels = new ArrayList<>();
+        for (HandlerAppsCache.HandlerApp app : mCache.getHandlerApps(mActivity, userId, INTENT)) {
+            labels.add(app.label);
+        }
+        return labels;
+    }
+
+    private static TestPackageManager createPackageManager() {
+        final TestPackageManager pm = TestPackageManager.create();
+        // The photo picker is resolved with the same query, which would exclude every app.
+        doReturn(new ArrayList<>()).when(pm).queryIntentActivities(
+                argThat(intent -> MediaStore.ACTION_PICK_IMAGES.equals(intent.getAction())),
+                anyInt());
+        doReturn(null).when(pm).getChangedPackages(anyInt());
+        return pm;
+    }
+
+    private static void setApps(TestPackageManager pm, String... labels) {
+        final List<ResolveInfo> infos = new ArrayList<>();
+        for (String label : labels) {
+            infos.add(createResolveInfo("com.example." + infos.size(), label));
+        }
+        pm.queryIntentProvidersResults = infos;
+    }
+
+    private static void setChangedPackages(
+            TestPackageManager pm, int sinceSequenceNumber, int sequenceNumber) {
+        doReturn(null).when(pm).getChangedPackages(anyInt());
+        doReturn(new ChangedPackages(sequenceNumber, List.of("com.example.0")))
+                .when(pm).getChangedPackages(sinceSequenceNumber);
+    }
+
+    private static ResolveInfo createResolveInfo(String packageName, String label) {
+        final ResolveInfo info = TestResolveInfo.create();
+        info.activityInfo.packageName = packageName;
+        info.activityInfo.exported = true;
+        info.nonLocalizedLabel = label;
+        return info;
+    }
+}